@@ -0,0 +1,280 @@
+/*
+ * Created on Mon Oct 19 2026
+ *
+ * Copyright (c) 2026 Smart DCC Limited
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package uk.co.smartdcc.boxed.xmldsig;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+
+/**
+ * Bounds the work the server takes on, so that a burst of requests is
+ * refused quickly instead of queueing until the heap is exhausted.
+ *
+ * Used as the executor of the {@code HttpServer}, at most
+ * {@code maxInFlight} requests are handled at once and at most
+ * {@code maxQueued} wait for a worker. A request beyond that is handed to a
+ * single rejection thread, where the handler returned by {@link #admit}
+ * answers 503 with {@code Retry-After} without reading the body. At most
+ * {@value #MAX_REJECTIONS_QUEUED} rejections wait for that thread, beyond
+ * that {@link #execute} throws {@link RejectedExecutionException} and the
+ * server closes the connection without an answer. Optionally
+ * each client address may have at most {@code maxPerClient} requests in
+ * flight, further requests are answered with 429.
+ *
+ * On shutdown {@link #drain} stops admitting requests, answering them 503 so
+ * that clients retry against another instance, and waits for the requests
+ * already admitted or queued to complete.
+ */
+public final class Admission implements Executor {
+  static final int HTTP_TOO_MANY_REQUESTS = 429;
+  private static final String RETRY_AFTER_SECONDS = "1";
+  /** Rejections waiting to be answered, before connections are just closed. */
+  static final int MAX_REJECTIONS_QUEUED = 256;
+  private static final ThreadLocal<Boolean> REJECTING = ThreadLocal.withInitial(() -> false);
+
+  private final ThreadPoolExecutor workers;
+  private final ExecutorService rejecter;
+  private final int perClient;
+  private final Map<InetAddress, AtomicInteger> clients = new ConcurrentHashMap<>();
+  private final List<Runnable> closers = new CopyOnWriteArrayList<>();
+  private final AtomicLong drainMillis = new AtomicLong();
+  private volatile boolean draining = false;
+
+  /**
+   * Create the worker pool and register its gauges in {@link Metrics}.
+   *
+   * @param maxInFlight
+   *          requests handled concurrently
+   * @param maxQueued
+   *          requests waiting for a worker, 0 for none
+   * @param maxPerClient
+   *          requests in flight per client address, 0 for no limit
+   */
+  public Admission(final int maxInFlight, final int maxQueued, final int maxPerClient) {
+    BlockingQueue<Runnable> queue = maxQueued > 0
+        ? new ArrayBlockingQueue<>(maxQueued)
+        : new SynchronousQueue<>();
+    this.workers = new ThreadPoolExecutor(
+        maxInFlight, maxInFlight, 0, TimeUnit.MILLISECONDS, queue, daemon("server-worker")
+    );
+    this.rejecter = new ThreadPoolExecutor(
+        1, 1, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(MAX_REJECTIONS_QUEUED),
+        daemon("server-reject")
+    );
+    this.perClient = maxPerClient;
+    Metrics metrics = Metrics.getInstance();
+    metrics.gauge("xmldsig_requests_in_flight", workers::getActiveCount);
+    metrics.gauge("xmldsig_requests_queued", () -> workers.getQueue().size());
+    metrics.gauge("xmldsig_requests_in_flight_limit", () -> maxInFlight);
+    metrics.gauge("xmldsig_requests_queued_limit", () -> maxQueued);
+    metrics.gauge("xmldsig_requests_per_client_limit", () -> maxPerClient);
+    metrics.gauge("xmldsig_drain_milliseconds", drainMillis::get);
+  }
+
+  private static ThreadFactory daemon(final String name) {
+    return r -> {
+      Thread t = new Thread(r, name);
+      t.setDaemon(true);
+      return t;
+    };
+  }
+
+  /**
+   * Run a request on a worker, or answer it on the rejection thread.
+   *
+   * @throws RejectedExecutionException
+   *           if the rejection cannot be queued either, the caller closes the
+   *           connection
+   */
+  @Override
+  public void execute(final Runnable command) {
+    try {
+      workers.execute(command);
+    } catch (RejectedExecutionException e) {
+      try {
+        rejecter.execute(() -> {
+          REJECTING.set(true);
+          try {
+            command.run();
+          } finally {
+            REJECTING.set(false);
+          }
+        });
+      } catch (RejectedExecutionException dropped) {
+        Metrics.getInstance().increment("xmldsig_requests_rejected_total", "reason", "Dropped");
+        throw dropped;
+      }
+    }
+  }
+
+  /**
+   * Wrap a handler so that it is only called for admitted requests.
+   *
+   * @param handler
+   *          endpoint handler
+   * @return handler that refuses requests over the limits
+   */
+  public HttpHandler admit(final HttpHandler handler) {
+    return exchange -> {
+      if (draining) {
+        exchange.getResponseHeaders().set("Connection", "close");
+        reject(exchange, Proxy.HTTP_SERVICE_UNAVAILABLE, "Server shutting down", "Draining");
+        return;
+      }
+      if (REJECTING.get()) {
+        reject(exchange, Proxy.HTTP_SERVICE_UNAVAILABLE, "Server overloaded", "Overloaded");
+        return;
+      }
+      if (perClient <= 0) {
+        handler.handle(exchange);
+        return;
+      }
+      InetAddress client = exchange.getRemoteAddress().getAddress();
+      int[] count = new int[1];
+      clients.compute(client, (k, v) -> {
+        AtomicInteger n = v == null ? new AtomicInteger() : v;
+        count[0] = n.incrementAndGet();
+        return n;
+      });
+      try {
+        if (count[0] > perClient) {
+          String message = "Too many requests from " + client;
+          reject(exchange, HTTP_TOO_MANY_REQUESTS, message, "ClientLimit");
+          return;
+        }
+        handler.handle(exchange);
+      } finally {
+        clients.computeIfPresent(client, (k, v) -> v.decrementAndGet() == 0 ? null : v);
+      }
+    };
+  }
+
+  /**
+   * Run a request that does not come through an {@link HttpHandler}, such
+   * as a {@link FrameServer} frame, under the same limits as {@link #admit}
+   * except the per client limit.
+   *
+   * @param task
+   *          handles the request on a worker
+   * @param rejected
+   *          given the error message and code instead when the request is
+   *          refused, as it would be with 503
+   * @throws RejectedExecutionException
+   *           if the refusal cannot be queued either, see {@link #execute}
+   */
+  void submit(final Runnable task, final BiConsumer<String, String> rejected) {
+    execute(() -> {
+      if (draining) {
+        Metrics.getInstance().increment("xmldsig_requests_rejected_total", "reason", "Draining");
+        rejected.accept("Server shutting down", "Draining");
+      } else if (REJECTING.get()) {
+        Metrics.getInstance().increment(
+            "xmldsig_requests_rejected_total", "reason", "Overloaded"
+        );
+        rejected.accept("Server overloaded", "Overloaded");
+      } else {
+        task.run();
+      }
+    });
+  }
+
+  private static void reject(
+      final HttpExchange exchange, final int status, final String message, final String code
+  ) throws IOException {
+    Metrics.getInstance().increment("xmldsig_requests_rejected_total", "reason", code);
+    exchange.getResponseHeaders().set("Retry-After", RETRY_AFTER_SECONDS);
+    Server.sendResponse(exchange, status, Map.of("error", message, "errorCode", code));
+  }
+
+  /**
+   * Whether requests are being admitted.
+   *
+   * @return false once draining has started
+   */
+  public boolean isReady() {
+    return !draining;
+  }
+
+  /**
+   * Run a task when the admission is closed, to release what the handlers
+   * depend on only after the last request has completed.
+   *
+   * @param closer
+   *          task to run
+   */
+  public void onClose(final Runnable closer) {
+    closers.add(closer);
+  }
+
+  /**
+   * Stop admitting requests, and the {@link Warmup}, and wait for those
+   * admitted or queued to complete. Requests arriving meanwhile are answered 503,
+   * with the
+   * connection closed. The time taken is reported as
+   * {@code xmldsig_drain_milliseconds}.
+   *
+   * @param timeoutMs
+   *          longest time to wait
+   * @return true if every request completed in time
+   * @throws InterruptedException
+   *           if interrupted while waiting
+   */
+  public boolean drain(final long timeoutMs) throws InterruptedException {
+    long start = System.nanoTime();
+    draining = true;
+    Warmup.cancel();
+    workers.shutdown();
+    try {
+      return workers.awaitTermination(timeoutMs, TimeUnit.MILLISECONDS);
+    } finally {
+      drainMillis.set(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+    }
+  }
+
+  /**
+   * Stop the workers and the {@link Warmup}, requests already admitted are
+   * completed, then run the tasks given to {@link #onClose}.
+   */
+  public void close() {
+    draining = true;
+    Warmup.cancel();
+    workers.shutdown();
+    rejecter.shutdown();
+    for (Runnable closer : closers) {
+      closer.run();
+    }
+    closers.clear();
+  }
+}
@@ -0,0 +1,348 @@
+/*
+ * Created on Mon Oct 19 2026
+ *
+ * Copyright (c) 2026 Smart DCC Limited
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package uk.co.smartdcc.boxed.xmldsig;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Sign or validate many messages in one process.
+ *
+ * Reached through {@code Sign --batch} and {@code Validate --batch}. Inputs
+ * may be files, directories (all files directly inside) or glob patterns,
+ * and are processed in parallel sharing one compiled schema and certificate
+ * library. Each output is written to the target directory under the input
+ * name, and each input gets its own {@link ResultCode}.
+ */
+public final class Batch {
+  static final String FLAG = "--batch";
+  private static final double MS_PER_S = 1000.0;
+  private static final double NS_PER_S = 1e9;
+
+  private Batch() {
+  }
+
+  /**
+   * A message to process, and the name its output is written under.
+   */
+  static final class Input {
+    private final Path _path;
+    private final String _outputName;
+
+    Input(final Path path, final String outputName) {
+      this._path = path;
+      this._outputName = outputName;
+    }
+
+    public Path getPath() {
+      return _path;
+    }
+
+    public String getOutputName() {
+      return _outputName;
+    }
+  }
+
+  private static boolean isGlob(final String s) {
+    return s.contains("*") || s.contains("?") || s.contains("[") || s.contains("{");
+  }
+
+  /**
+   * Expand command line inputs into the list of messages to process.
+   *
+   * @param inputs
+   *          files, directories or glob patterns
+   * @return inputs in command line order, directories and globs sorted
+   * @throws IOException
+   *           if a directory could not be listed
+   */
+  static List<Input> expand(final List<String> inputs) throws IOException {
+    List<Input> result = new ArrayList<>();
+    for (String input : inputs) {
+      if (isGlob(input)) {
+        result.addAll(expandGlob(input));
+        continue;
+      }
+      Path path = Paths.get(input);
+      if (Files.isDirectory(path)) {
+        try (Stream<Path> s = Files.list(path)) {
+          for (Path p : s.filter(Files::isRegularFile).sorted().collect(Collectors.toList())) {
+            result.add(new Input(p, p.getFileName().toString()));
+          }
+        }
+      } else {
+        result.add(new Input(path, path.getFileName().toString()));
+      }
+    }
+    return result;
+  }
+
+  private static List<Input> expandGlob(final String pattern) throws IOException {
+    String separator = FileSystems.getDefault().getSeparator();
+    String[] parts = pattern.split(separator.equals("\\") ? "\\\\" : separator, -1);
+    int first = 0;
+    while (first < parts.length - 1 && !isGlob(parts[first])) {
+      first++;
+    }
+    Path base = Paths.get(pattern.startsWith(separator) ? separator : ".");
+    for (int i = 0; i < first; i++) {
+      if (!parts[i].isEmpty()) {
+        base = base.resolve(parts[i]);
+      }
+    }
+    String rest = String.join(separator, Arrays.copyOfRange(parts, first, parts.length));
+    int depth = rest.contains("**") ? Integer.MAX_VALUE : parts.length - first;
+    PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:" + rest);
+
+    List<Input> result = new ArrayList<>();
+    if (!Files.isDirectory(base)) {
+      return result;
+    }
+    final Path root = base;
+    try (Stream<Path> s = Files.walk(root, depth)) {
+      for (Path p : s.filter(Files::isRegularFile).sorted().collect(Collectors.toList())) {
+        Path relative = root.relativize(p);
+        if (matcher.matches(relative)) {
+          result.add(new Input(p, relative.toString()));
+        }
+      }
+    }
+    return result;
+  }
+
+  /*
+   * Input that an output would replace, compared by real path so that a
+   * relative or linked output directory is caught as well.
+   */
+  private static Input overwrittenInput(final List<Input> files, final Path outdir)
+      throws IOException {
+    Path root = outdir.toRealPath();
+    Set<Path> outputs = new HashSet<>();
+    for (Input f : files) {
+      outputs.add(root.resolve(f.getOutputName()).normalize());
+    }
+    for (Input f : files) {
+      if (Files.exists(f.getPath()) && outputs.contains(f.getPath().toRealPath())) {
+        return f;
+      }
+    }
+    return null;
+  }
+
+  static void showHelp(final String tool, final PrintStream err) {
+    err.println(
+        "[I] usage: " + FLAG + " -o outdir [-j threads] [" + Sign.TRUSTED_FLAG + "]"
+            + (Daemon.SIGN.equals(tool) ? " [--preserveCounter]" : "")
+            + " message.xml|directory|glob..."
+    );
+  }
+
+  /**
+   * Run a batch.
+   *
+   * @param tool
+   *          {@link Daemon#SIGN} or {@link Daemon#VALIDATE}
+   * @param args
+   *          batch arguments, without {@value #FLAG}
+   * @param err
+   *          stream for per file results and the summary
+   * @return {@link ResultCode#SUCCESS} if every input succeeded, otherwise the
+   *         result of the first input (in command line order) that failed
+   */
+  public static ResultCode main_aux(final String tool, final String[] args, final PrintStream err) {
+    Path outdir = null;
+    int threads = Runtime.getRuntime().availableProcessors();
+    boolean preserveCounter = false;
+    boolean trusted = false;
+    List<String> inputs = new ArrayList<>();
+    for (int i = 0; i < args.length; i++) {
+      try {
+        switch (args[i]) {
+          case "-o":
+            outdir = Paths.get(args[++i]);
+            break;
+          case "-j":
+            threads = Integer.parseInt(args[++i]);
+            break;
+          case "--preserveCounter":
+            preserveCounter = true;
+            break;
+          case Sign.TRUSTED_FLAG:
+            trusted = true;
+            break;
+          default:
+            inputs.add(args[i]);
+            break;
+        }
+      } catch (ArrayIndexOutOfBoundsException | NumberFormatException e) {
+        showHelp(tool, err);
+        return ResultCode.GENERIC_ERROR;
+      }
+    }
+    if (outdir == null || inputs.isEmpty() || threads < 1) {
+      showHelp(tool, err);
+      err.println("[E] output directory and at least one message required");
+      return ResultCode.GENERIC_ERROR;
+    }
+
+    List<Input> files;
+    try {
+      files = expand(inputs);
+      Files.createDirectories(outdir);
+    } catch (IOException e) {
+      err.println("[E] could not prepare batch: " + e.getMessage());
+      return ResultCode.OS_FAIL;
+    }
+    Set<String> names = new HashSet<>();
+    for (Input f : files) {
+      if (!names.add(f.getOutputName())) {
+        err.println("[E] more than one input would be written to " + f.getOutputName());
+        return ResultCode.GENERIC_ERROR;
+      }
+    }
+    try {
+      Input overwritten = overwrittenInput(files, outdir);
+      if (overwritten != null) {
+        err.println("[E] output would overwrite input " + overwritten.getPath());
+        return ResultCode.GENERIC_ERROR;
+      }
+    } catch (IOException e) {
+      err.println("[E] could not prepare batch: " + e.getMessage());
+      return ResultCode.OS_FAIL;
+    }
+
+    /* compile schema and load credentials once, before the workers start */
+    Util.get_document_builder_factory();
+    Credentials.getInstance();
+
+    long start = System.nanoTime();
+    ExecutorService pool = Executors.newFixedThreadPool(threads);
+    List<String> flags = new ArrayList<>();
+    if (preserveCounter) {
+      flags.add("--preserveCounter");
+    }
+    if (trusted) {
+      flags.add(Sign.TRUSTED_FLAG);
+    }
+    List<Future<ResultCode>> results = new ArrayList<>();
+    for (Input f : files) {
+      final Path output = outdir.resolve(f.getOutputName());
+      results.add(pool.submit(() -> process(tool, f, output, flags, err)));
+    }
+    pool.shutdown();
+
+    ResultCode overall = ResultCode.SUCCESS;
+    int failed = 0;
+    for (Future<ResultCode> r : results) {
+      ResultCode code;
+      try {
+        code = r.get();
+      } catch (InterruptedException | ExecutionException e) {
+        code = ResultCode.GENERIC_ERROR;
+      }
+      if (code != ResultCode.SUCCESS) {
+        failed++;
+        if (overall == ResultCode.SUCCESS) {
+          overall = code;
+        }
+      }
+    }
+    double seconds = (System.nanoTime() - start) / NS_PER_S;
+    err.println(
+        String.format(
+            "[I] processed %d files in %.0f ms (%.1f files/s): %d succeeded, %d failed",
+            files.size(), seconds * MS_PER_S, seconds > 0 ? files.size() / seconds : 0.0,
+            files.size() - failed, failed
+        )
+    );
+    return overall;
+  }
+
+  private static ResultCode process(
+      final String tool, final Input input, final Path output, final List<String> flags,
+      final PrintStream err
+  ) {
+    ByteArrayOutputStream log = new ByteArrayOutputStream();
+    ResultCode code;
+    List<String> args = new ArrayList<>();
+    args.add(input.getPath().toString());
+    args.addAll(flags);
+    Path temp = null;
+    try {
+      Path directory = output.toAbsolutePath().getParent();
+      Files.createDirectories(directory);
+      /*
+       * the output only appears once complete, and an existing one is kept on failure
+       */
+      temp = Files.createTempFile(directory, "." + output.getFileName(), ".tmp");
+      try (OutputStream os = Files.newOutputStream(temp);
+          PrintStream out = new PrintStream(os);
+          PrintStream logStream = new PrintStream(log)) {
+        code = Daemon.run(
+            tool, args.toArray(new String[0]), InputStream.nullInputStream(), out, logStream
+        );
+      }
+      if (code == ResultCode.SUCCESS) {
+        Files.move(temp, output, StandardCopyOption.ATOMIC_MOVE);
+      }
+    } catch (IOException e) {
+      code = ResultCode.OS_FAIL;
+      new PrintStream(log, true).println("[E] could not write output: " + e.getMessage());
+    } finally {
+      if (temp != null) {
+        try {
+          Files.deleteIfExists(temp);
+        } catch (IOException ignored) {
+        }
+      }
+    }
+
+    StringBuilder report = new StringBuilder();
+    report.append("[I] ").append(input.getPath()).append(": ").append(code).append(" (")
+        .append(code.value()).append(")");
+    if (code != ResultCode.SUCCESS) {
+      for (String line : log.toString().split("\n")) {
+        if (!line.isEmpty()) {
+          report.append(System.lineSeparator()).append("    ").append(line);
+        }
+      }
+    }
+    err.println(report);
+    return code;
+  }
+}
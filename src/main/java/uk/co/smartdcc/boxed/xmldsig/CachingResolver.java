@@ -0,0 +1,274 @@
+/*
+ * Created on Mon Oct 19 2026
+ *
+ * Copyright (c) 2026 Smart DCC Limited
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package uk.co.smartdcc.boxed.xmldsig;
+
+import java.math.BigInteger;
+import java.security.PrivateKey;
+import java.security.cert.X509Certificate;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+
+/**
+ * Caches the lookups of a slower {@link CredentialResolver}, such as one
+ * backed by a key service or a database.
+ *
+ * Results are kept for a time to live, up to a number of entries per kind of
+ * lookup with the least recently used dropped first. Unknown identifiers are
+ * cached as well, so that they do not reach the backend on every message.
+ * An entry used after its refresh time is reloaded in the background while
+ * the cached value is still returned, so that a busy credential does not
+ * expire in front of a request. Concurrent misses for the same EUI-64 or
+ * serial share one backend call. A failed call is not cached, its exception
+ * is thrown to every caller waiting for it.
+ *
+ * The certificate and key of an EUI-64 are loaded together, as signing asks
+ * for both. Lookups are counted in {@code xmldsig_credential_lookups_total}.
+ */
+public final class CachingResolver implements CredentialResolver {
+  static final int DEFAULT_MAX_ENTRIES = 1024;
+  static final long DEFAULT_TTL_MS = 5 * 60 * 1000;
+  private static final long REFRESH_PERCENT = 80;
+  private static final long PERCENT = 100;
+  private static final int INITIAL_CAPACITY = 16;
+  private static final float LOAD_FACTOR = 0.75f;
+
+  private final CredentialResolver backend;
+  private final Cache<String, Credential> byEui64;
+  private final Cache<BigInteger, X509Certificate> bySerial;
+
+  private static final class Credential {
+    private final X509Certificate certificate;
+    private final PrivateKey key;
+
+    Credential(final X509Certificate cert, final PrivateKey privateKey) {
+      this.certificate = cert;
+      this.key = privateKey;
+    }
+  }
+
+  private static final class Cached<V> {
+    private final V value;
+    private final long loaded;
+    private final AtomicBoolean refreshing = new AtomicBoolean();
+
+    Cached(final V cached, final long loadedNanos) {
+      this.value = cached;
+      this.loaded = loadedNanos;
+    }
+  }
+
+  /*
+   * least recently used entries, plus the loads in progress so that they are
+   * shared
+   */
+  private static final class Cache<K, V> {
+    private final String name;
+    private final Function<K, V> loader;
+    private final long ttlNanos;
+    private final long refreshNanos;
+    private final Executor refresher;
+    private final Map<K, Cached<V>> entries;
+    private final Map<K, CompletableFuture<V>> loading = new ConcurrentHashMap<>();
+
+    Cache(
+        final String cacheName, final Function<K, V> load, final int maxEntries,
+        final long ttlMs, final long refreshAfterMs, final Executor refreshExecutor
+    ) {
+      this.name = cacheName;
+      this.loader = load;
+      this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(ttlMs);
+      this.refreshNanos = refreshAfterMs > 0
+          ? TimeUnit.MILLISECONDS.toNanos(refreshAfterMs)
+          : Long.MAX_VALUE;
+      this.refresher = refreshExecutor;
+      this.entries = new LinkedHashMap<K, Cached<V>>(INITIAL_CAPACITY, LOAD_FACTOR, true) {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(final Map.Entry<K, Cached<V>> eldest) {
+          return size() > maxEntries;
+        }
+      };
+    }
+
+    V get(final K key) {
+      Cached<V> entry;
+      synchronized (entries) {
+        entry = entries.get(key);
+      }
+      long age = entry == null ? Long.MAX_VALUE : System.nanoTime() - entry.loaded;
+      if (age >= ttlNanos) {
+        return load(key);
+      }
+      count("hit");
+      if (age >= refreshNanos && entry.refreshing.compareAndSet(false, true)) {
+        refresher.execute(() -> {
+          count("refresh");
+          try {
+            load(key);
+          } catch (RuntimeException e) {
+            /* the entry is kept until it expires, the next use retries */
+            entry.refreshing.set(false);
+          }
+        });
+      }
+      return entry.value;
+    }
+
+    private V load(final K key) {
+      CompletableFuture<V> mine = new CompletableFuture<>();
+      CompletableFuture<V> running = loading.putIfAbsent(key, mine);
+      if (running != null) {
+        count("coalesced");
+        try {
+          return running.join();
+        } catch (CompletionException e) {
+          if (e.getCause() instanceof RuntimeException) {
+            throw (RuntimeException) e.getCause();
+          }
+          throw e;
+        }
+      }
+      count("miss");
+      try {
+        V value = loader.apply(key);
+        synchronized (entries) {
+          entries.put(key, new Cached<>(value, System.nanoTime()));
+        }
+        mine.complete(value);
+        return value;
+      } catch (RuntimeException e) {
+        count("error");
+        mine.completeExceptionally(e);
+        throw e;
+      } finally {
+        loading.remove(key, mine);
+      }
+    }
+
+    int size() {
+      synchronized (entries) {
+        return entries.size();
+      }
+    }
+
+    private void count(final String result) {
+      Metrics.getInstance().increment(
+          "xmldsig_credential_lookups_total", "cache", name, "result", result
+      );
+    }
+  }
+
+  /**
+   * Cache with the default bounds, refreshing entries after 80% of their
+   * time to live.
+   *
+   * @param resolver
+   *          backend
+   */
+  public CachingResolver(final CredentialResolver resolver) {
+    this(resolver, DEFAULT_MAX_ENTRIES, DEFAULT_TTL_MS);
+  }
+
+  /**
+   * Cache refreshing entries after 80% of their time to live.
+   *
+   * @param resolver
+   *          backend
+   * @param maxEntries
+   *          entries kept per kind of lookup
+   * @param ttlMs
+   *          time an entry is used for
+   */
+  public CachingResolver(
+      final CredentialResolver resolver, final int maxEntries, final long ttlMs
+  ) {
+    this(resolver, maxEntries, ttlMs, ttlMs * REFRESH_PERCENT / PERCENT);
+  }
+
+  /**
+   * Cache with explicit bounds.
+   *
+   * @param resolver
+   *          backend
+   * @param maxEntries
+   *          entries kept per kind of lookup
+   * @param ttlMs
+   *          time an entry is used for
+   * @param refreshAfterMs
+   *          age from which a used entry is reloaded in the background, 0
+   *          for never
+   */
+  public CachingResolver(
+      final CredentialResolver resolver, final int maxEntries, final long ttlMs,
+      final long refreshAfterMs
+  ) {
+    if (maxEntries < 1 || ttlMs < 1 || refreshAfterMs < 0) {
+      throw new IllegalArgumentException("cache bounds must be positive");
+    }
+    this.backend = resolver;
+    ThreadPoolExecutor refresher = new ThreadPoolExecutor(
+        0, 1, 1, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), r -> {
+          Thread t = new Thread(r, "xmldsig-credential-refresh");
+          t.setDaemon(true);
+          return t;
+        }
+    );
+    this.byEui64 = new Cache<>(
+        "eui64", id -> new Credential(backend.lookup(id), backend.lookup_key(id)),
+        maxEntries, ttlMs, refreshAfterMs, refresher
+    );
+    this.bySerial = new Cache<>(
+        "serial", backend::lookup, maxEntries, ttlMs, refreshAfterMs, refresher
+    );
+  }
+
+  /* the library ignores dashes and case, so the cache does too */
+  private static String normalize(final String eui64) {
+    return eui64.replace("-", "").toLowerCase(Locale.ROOT);
+  }
+
+  @Override
+  public X509Certificate lookup(final String eui64) {
+    return byEui64.get(normalize(eui64)).certificate;
+  }
+
+  @Override
+  public PrivateKey lookup_key(final String eui64) {
+    return byEui64.get(normalize(eui64)).key;
+  }
+
+  @Override
+  public X509Certificate lookup(final BigInteger serial) {
+    return bySerial.get(serial);
+  }
+
+  int size() {
+    return byEui64.size() + bySerial.size();
+  }
+}
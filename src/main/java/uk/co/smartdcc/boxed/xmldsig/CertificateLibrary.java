@@ -17,17 +17,52 @@
 
 package uk.co.smartdcc.boxed.xmldsig;
 
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
 import java.io.InputStream;
 import java.math.BigInteger;
-import java.security.KeyFactory;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
 import java.security.PrivateKey;
-import java.security.cert.CertificateFactory;
 import java.security.cert.X509Certificate;
 import java.security.spec.PKCS8EncodedKeySpec;
-import java.util.ArrayList;
-import java.util.List;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The bundled credentials, indexed by business originator id and serial.
+ *
+ * Only the id and serial are read when the library is built, from the DER
+ * of each certificate. Certificates and keys are decoded on first use and
+ * then kept, so a run that signs for one user does not pay for the others.
+ * The number decoded and still pending is published on {@code /metrics} as
+ * {@code xmldsig_library_credentials}.
+ */
+public final class CertificateLibrary implements CredentialResolver {
+  /**
+   * The bundled test credentials, as the {@code library} credential source.
+   */
+  public static final class Source implements CredentialSource {
+    @Override
+    public String getName() {
+      return Credentials.LIBRARY;
+    }
+
+    @Override
+    public CredentialResolver open(final String config) {
+      return getInstance();
+    }
+
+    @Override
+    public boolean isInMemory() {
+      return true;
+    }
+  }
 
-public final class CertificateLibrary implements Eui64CredentialResolver, SerialCredentialResolver {
   private static String[] certificate_names_xmlSign = {
       "dsp-xml-sign-90B3D51F30000002-ds",
       "dsp-xml-sign-90B3D51F30000002-ds-pre-1.4.1",
@@ -44,7 +79,7 @@ public final class CertificateLibrary implements Eui64CredentialResolver, Serial
 
   private static CertificateLibrary INSTANCE;
 
-  public static CertificateLibrary getInstance() {
+  public static synchronized CertificateLibrary getInstance() {
     if (INSTANCE == null) {
       try {
         INSTANCE = new CertificateLibrary();
@@ -56,98 +91,252 @@ public final class CertificateLibrary implements Eui64CredentialResolver, Serial
     return INSTANCE;
   }
 
-  private class Tuple {
-    private String _businessId;
-    private X509Certificate _certificate;
-    private PrivateKey _key;
+  private static final int SEQUENCE = 0x30;
+  private static final int SET = 0x31;
+  private static final int INTEGER = 0x02;
+  private static final int EXPLICIT_VERSION = 0xa0;
+  private static final int LONG_LENGTH = 0x80;
+  private static final int BIT_STRING = 0x03;
+  private static final int BYTE = 0xff;
+  private static final int EUI64_BYTES = 8;
+  private static final int NIBBLE = 4;
+  private static final int NIBBLE_MASK = 0x0f;
+  private static final int HEX = 16;
+
+  /* a DER element, tag and the bounds of its content */
+  private static final class Tlv {
+    private final int tag;
+    private final int start;
+    private final int end;
 
-    public String getBusinessId() {
-      return _businessId;
+    Tlv(final int t, final int contentStart, final int contentEnd) {
+      this.tag = t;
+      this.start = contentStart;
+      this.end = contentEnd;
     }
+  }
+
+  /* a certificate and key, decoded when first asked for */
+  private final class Entry {
+    private final String name;
+    private final byte[] encodedCertificate;
+    private final byte[] encodedKey;
+    private volatile X509Certificate certificate;
+    private volatile PrivateKey key;
 
-    public X509Certificate getCertificate() {
-      return _certificate;
+    Entry(final String resource, final byte[] der, final byte[] pkcs8) {
+      this.name = resource;
+      this.encodedCertificate = der;
+      this.encodedKey = pkcs8;
     }
 
-    public PrivateKey getKey() {
-      return _key;
+    X509Certificate getCertificate() {
+      X509Certificate cer = certificate;
+      if (cer == null) {
+        synchronized (this) {
+          cer = certificate;
+          if (cer == null) {
+            try {
+              cer = (X509Certificate) Util.create_certificate_factory()
+                  .generateCertificate(new ByteArrayInputStream(encodedCertificate));
+            } catch (GeneralSecurityException e) {
+              throw new IllegalStateException("could not decode " + name + ".pem", e);
+            }
+            certificate = cer;
+            decoded.incrementAndGet();
+          }
+        }
+      }
+      return cer;
     }
 
-    Tuple(final String businessId, final X509Certificate certificate, final PrivateKey key) {
-      this._businessId = businessId;
-      this._certificate = certificate;
-      this._key = key;
+    PrivateKey getKey() {
+      PrivateKey pkey = key;
+      if (pkey == null) {
+        synchronized (this) {
+          pkey = key;
+          if (pkey == null) {
+            try {
+              pkey = Util.create_key_factory()
+                  .generatePrivate(new PKCS8EncodedKeySpec(encodedKey));
+            } catch (GeneralSecurityException e) {
+              throw new IllegalStateException("could not decode " + name + ".key", e);
+            }
+            key = pkey;
+            decoded.incrementAndGet();
+          }
+        }
+      }
+      return pkey;
     }
   }
 
-  private List<Tuple> certificates = new ArrayList<Tuple>();
+  /* first entry of a business id or serial wins, as listed */
+  private final Map<String, Entry> byBusinessId = new HashMap<>();
+  private final Map<BigInteger, Entry> bySerial = new HashMap<>();
+  private final AtomicInteger decoded = new AtomicInteger();
+  private int total = 0;
 
   private CertificateLibrary() throws Exception {
-    CertificateFactory fact = Util.create_certificate_factory();
-    KeyFactory keyFactory = Util.create_key_factory();
-
     for (String name : certificate_names) {
-      X509Certificate cer = null;
-      InputStream is = Validate.class.getClassLoader().getResourceAsStream(name + ".pem");
-      cer = (X509Certificate) fact.generateCertificate(is);
-      is.close();
-      String principal = cer.getSubjectX500Principal().getName();
-      if (!principal.contains(",")) {
-        continue;
+      byte[] der = pemToDer(readResource(name + ".pem"));
+      Tlv field = element(der, element(der, element(der, 0).start).start);
+      if (field.tag == EXPLICIT_VERSION) {
+        field = element(der, field.end);
       }
-      principal = principal.split(",")[0];
-      if (!principal.contains("#030900")) {
+      if (field.tag != INTEGER) {
+        throw new IOException(name + ".pem: serial number expected");
+      }
+      BigInteger serial = new BigInteger(Arrays.copyOfRange(der, field.start, field.end));
+      /* signature algorithm, issuer and validity come before the subject */
+      for (int i = 0; i < 3; i++) {
+        field = element(der, field.end);
+      }
+      String principal = businessId(der, element(der, field.end));
+      if (principal == null) {
         continue;
       }
-      principal = principal.split("#030900")[1];
 
-      PKCS8EncodedKeySpec privkeySpec = null;
-      is = Validate.class.getClassLoader().getResourceAsStream(name + ".key");
-      privkeySpec = new PKCS8EncodedKeySpec(is.readAllBytes());
-      is.close();
+      Entry entry = new Entry(name, der, readResource(name + ".key"));
+      byBusinessId.putIfAbsent(principal, entry);
+      bySerial.putIfAbsent(serial, entry);
+      total += 2;
+    }
+    Metrics.getInstance().gauge(
+        "xmldsig_library_credentials", this::getDecodedCount, "state", "decoded"
+    );
+    Metrics.getInstance().gauge(
+        "xmldsig_library_credentials", this::getPendingCount, "state", "pending"
+    );
+  }
 
-      PrivateKey pkey = null;
-      pkey = keyFactory.generatePrivate(privkeySpec);
+  private static byte[] readResource(final String name) throws IOException {
+    try (InputStream is = CertificateLibrary.class.getClassLoader().getResourceAsStream(name)) {
+      if (is == null) {
+        throw new IOException(name + " not found");
+      }
+      return is.readAllBytes();
+    }
+  }
 
-      this.certificates.add(new Tuple(principal, cer, pkey));
+  private static byte[] pemToDer(final byte[] pem) {
+    String text = new String(pem, StandardCharsets.US_ASCII);
+    int begin = text.indexOf("-----BEGIN CERTIFICATE-----");
+    if (begin < 0) {
+      return pem;
     }
+    int start = text.indexOf('\n', begin) + 1;
+    int end = text.indexOf("-----END CERTIFICATE-----", start);
+    return Base64.getMimeDecoder().decode(text.substring(start, end));
   }
 
-  public X509Certificate lookup(final String businessId) {
-    String id = businessId.replace("-", "").toLowerCase();
-    for (Tuple t : this.certificates) {
-      if (t.getBusinessId().equals(id)) {
-        return t.getCertificate();
+  private static Tlv element(final byte[] der, final int offset) throws IOException {
+    if (offset + 1 >= der.length) {
+      throw new IOException("truncated certificate");
+    }
+    int length = der[offset + 1] & BYTE;
+    int start = offset + 2;
+    if (length >= LONG_LENGTH) {
+      int bytes = length - LONG_LENGTH;
+      length = 0;
+      for (int i = 0; i < bytes; i++) {
+        length = (length << Byte.SIZE) | (der[start + i] & BYTE);
       }
+      start += bytes;
     }
-    return null;
+    if (length < 0 || start + length > der.length) {
+      throw new IOException("truncated certificate");
+    }
+    return new Tlv(der[offset] & BYTE, start, start + length);
   }
 
-  public X509Certificate lookup(final BigInteger serial) {
-    for (Tuple t : this.certificates) {
-      if (t.getCertificate().getSerialNumber().equals(serial)) {
-        return t.getCertificate();
-      }
+  /*
+   * As businessId(X509Certificate), from the DER of the subject. The RFC 2253
+   * name starts with the last relative distinguished name, and carries the
+   * EUI-64 as a BIT STRING without unused bits.
+   */
+  private static String businessId(final byte[] der, final Tlv subject) throws IOException {
+    if (subject.tag != SEQUENCE) {
+      throw new IOException("subject expected");
+    }
+    Tlv last = null;
+    int names = 0;
+    for (int p = subject.start; p < subject.end; p = last.end) {
+      last = element(der, p);
+      names++;
+    }
+    if (names < 2 || last.tag != SET) {
+      return null;
+    }
+    Tlv type = element(der, element(der, last.start).start);
+    Tlv value = element(der, type.end);
+    if (value.tag != BIT_STRING || value.end - value.start != EUI64_BYTES + 1
+        || der[value.start] != 0) {
+      return null;
+    }
+    StringBuilder id = new StringBuilder();
+    for (int i = value.start + 1; i < value.end; i++) {
+      id.append(Character.forDigit((der[i] & BYTE) >> NIBBLE, HEX))
+          .append(Character.forDigit(der[i] & NIBBLE_MASK, HEX));
     }
-    return null;
+    return id.toString();
   }
 
-  public PrivateKey lookup_key(final String businessId) {
-    String id = businessId.replace("-", "").toLowerCase();
-    for (Tuple t : this.certificates) {
-      if (t.getBusinessId().equals(id)) {
-        return t.getKey();
-      }
+  /**
+   * Certificates and keys decoded so far.
+   *
+   * @return count
+   */
+  public int getDecodedCount() {
+    return decoded.get();
+  }
+
+  /**
+   * Certificates and keys not yet used.
+   *
+   * @return count
+   */
+  public int getPendingCount() {
+    return total - decoded.get();
+  }
+
+  /**
+   * Business originator id a certificate is issued to, the EUI-64 encoded in
+   * the first attribute of its subject.
+   *
+   * @param cer
+   *          certificate
+   * @return lower case hex EUI-64, or null if the subject does not carry one
+   */
+  static String businessId(final X509Certificate cer) {
+    String principal = cer.getSubjectX500Principal().getName();
+    if (!principal.contains(",")) {
+      return null;
     }
-    return null;
+    principal = principal.split(",")[0];
+    if (!principal.contains("#030900")) {
+      return null;
+    }
+    return principal.split("#030900")[1];
+  }
+
+  public X509Certificate lookup(final String businessId) {
+    Entry entry = byBusinessId.get(businessId.replace("-", "").toLowerCase(Locale.ROOT));
+    return entry == null ? null : entry.getCertificate();
+  }
+
+  public X509Certificate lookup(final BigInteger serial) {
+    Entry entry = bySerial.get(serial);
+    return entry == null ? null : entry.getCertificate();
+  }
+
+  public PrivateKey lookup_key(final String businessId) {
+    Entry entry = byBusinessId.get(businessId.replace("-", "").toLowerCase(Locale.ROOT));
+    return entry == null ? null : entry.getKey();
   }
 
   public PrivateKey lookup_key(final BigInteger serial) {
-    for (Tuple t : this.certificates) {
-      if (t.getCertificate().getSerialNumber().equals(serial)) {
-        return t.getKey();
-      }
-    }
-    return null;
+    Entry entry = bySerial.get(serial);
+    return entry == null ? null : entry.getKey();
   }
 }
@@ -0,0 +1,62 @@
+/*
+ * Created on Mon Oct 19 2026
+ *
+ * Copyright (c) 2026 Smart DCC Limited
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package uk.co.smartdcc.boxed.xmldsig;
+
+import java.io.IOException;
+
+/**
+ * Service provider interface for where credentials come from, found with
+ * {@link java.util.ServiceLoader} and selected by name, see
+ * {@link Credentials}.
+ *
+ * An implementation is listed in
+ * {@code META-INF/services/uk.co.smartdcc.boxed.xmldsig.CredentialSource}
+ * and needs a public constructor without arguments. Resolvers opened from a
+ * source are called concurrently, and return null for an unknown identifier.
+ * Failures to reach a backend are thrown as unchecked exceptions, such as
+ * {@link java.io.UncheckedIOException}.
+ */
+public interface CredentialSource {
+  /**
+   * Name the source is selected by, such as {@code library}.
+   *
+   * @return name
+   */
+  String getName();
+
+  /**
+   * Open a resolver.
+   *
+   * @param config
+   *          setting after the name, such as a path, or null
+   * @return resolver
+   * @throws IOException
+   *           if the backend could not be opened
+   */
+  CredentialResolver open(String config) throws IOException;
+
+  /**
+   * Whether lookups are cheap enough to be used without a
+   * {@link CachingResolver} in front.
+   *
+   * @return true for sources held in memory
+   */
+  default boolean isInMemory() {
+    return false;
+  }
+}
@@ -0,0 +1,464 @@
+/*
+ * Created on Mon Oct 19 2026
+ *
+ * Copyright (c) 2026 Smart DCC Limited
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package uk.co.smartdcc.boxed.xmldsig;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.GeneralSecurityException;
+import java.security.PrivateKey;
+import java.security.cert.CertificateException;
+import java.security.cert.X509Certificate;
+import java.security.spec.InvalidKeySpecException;
+import java.security.spec.PKCS8EncodedKeySpec;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Credentials in a single memory mapped file, for estates with millions of
+ * device certificates, as the {@code store} credential source, for example
+ * {@code store:/var/lib/xmldsig/devices.store}.
+ *
+ * The file holds the DER of each certificate and the PKCS#8 of its key,
+ * followed by two sorted index blocks of 16 byte slots: one by EUI-64 and one
+ * by a 64 bit hash of the serial number. A lookup binary searches the mapped
+ * index and decodes only the record it finds, so the heap used does not grow
+ * with the store. Stores are built from a directory of {@code name.pem}
+ * certificates and {@code name.key} keys, laid out as for
+ * {@link DirectorySource}, with {@link #main}.
+ *
+ * <pre>
+ * header   int magic, int version, long eui64 index, int eui64 slots,
+ *          long serial index, int serial slots
+ * record   int length, certificate DER, int length, key PKCS#8 (0 if none)
+ * slot     long key, long record offset
+ * </pre>
+ */
+public final class CredentialStore implements CredentialResolver, Closeable {
+  static final String NAME = "store";
+  private static final int MAGIC = 0x58445343;
+  private static final int VERSION = 1;
+  private static final int HEADER = 32;
+  private static final int SLOT = 16;
+  /* 1 GB */
+  private static final long SEGMENT = 0x40000000L;
+  private static final int EUI64_HEX = 16;
+  private static final int HEX = 16;
+  private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+  private static final long FNV_PRIME = 0x100000001b3L;
+  private static final int BYTE = 0xff;
+
+  /**
+   * The store named by the config, as the {@code store} credential source.
+   */
+  public static final class Source implements CredentialSource {
+    @Override
+    public String getName() {
+      return NAME;
+    }
+
+    @Override
+    public CredentialResolver open(final String config) throws IOException {
+      if (config == null || config.isEmpty()) {
+        throw new IllegalArgumentException("expected " + NAME + ":path");
+      }
+      return CredentialStore.open(Paths.get(config));
+    }
+  }
+
+  private final FileChannel channel;
+  /* the file in segments, as a single mapping is limited to 2 GB */
+  private final List<MappedByteBuffer> segments = new ArrayList<>();
+  private final long eui64Index;
+  private final int eui64Slots;
+  private final long serialIndex;
+  private final int serialSlots;
+
+  private CredentialStore(final FileChannel file) throws IOException {
+    this.channel = file;
+    long size = file.size();
+    for (long position = 0; position < size; position += SEGMENT) {
+      segments.add(
+          file.map(
+              FileChannel.MapMode.READ_ONLY, position,
+              Math.min(SEGMENT, size - position)
+          )
+      );
+    }
+    if (size < HEADER || readInt(0) != MAGIC) {
+      throw new IOException("not a credential store");
+    }
+    if (readInt(Integer.BYTES) != VERSION) {
+      throw new IOException("unsupported credential store version " + readInt(Integer.BYTES));
+    }
+    long p = Integer.BYTES * 2;
+    this.eui64Index = readLong(p);
+    this.eui64Slots = readInt(p + Long.BYTES);
+    this.serialIndex = readLong(p + Long.BYTES + Integer.BYTES);
+    this.serialSlots = readInt(p + Long.BYTES * 2 + Integer.BYTES);
+    if (eui64Index + (long) eui64Slots * SLOT > size
+        || serialIndex + (long) serialSlots * SLOT > size) {
+      throw new IOException("truncated credential store");
+    }
+  }
+
+  /**
+   * Map a store.
+   *
+   * @param path
+   *          store file
+   * @return store, closed with {@link #close()}
+   * @throws IOException
+   *           if the file cannot be read or is not a store
+   */
+  public static CredentialStore open(final Path path) throws IOException {
+    FileChannel file = FileChannel.open(path, StandardOpenOption.READ);
+    try {
+      return new CredentialStore(file);
+    } catch (IOException | RuntimeException e) {
+      file.close();
+      throw e;
+    }
+  }
+
+  /**
+   * Credentials in the store.
+   *
+   * @return records indexed by serial
+   */
+  public int size() {
+    return serialSlots;
+  }
+
+  @Override
+  public void close() throws IOException {
+    channel.close();
+  }
+
+  @Override
+  public X509Certificate lookup(final String eui64) {
+    long record = findEui64(eui64);
+    return record < 0 ? null : certificate(record);
+  }
+
+  @Override
+  public PrivateKey lookup_key(final String eui64) {
+    long record = findEui64(eui64);
+    if (record < 0) {
+      return null;
+    }
+    long keyAt = record + Integer.BYTES + readInt(record);
+    int length = readInt(keyAt);
+    if (length == 0) {
+      return null;
+    }
+    try {
+      return Util.create_key_factory()
+          .generatePrivate(new PKCS8EncodedKeySpec(read(keyAt + Integer.BYTES, length)));
+    } catch (InvalidKeySpecException e) {
+      throw new IllegalStateException("could not decode key at " + keyAt, e);
+    }
+  }
+
+  @Override
+  public X509Certificate lookup(final BigInteger serial) {
+    long hash = hash(serial);
+    /* hashes can collide, so each candidate is checked */
+    for (int i = lowerBound(serialIndex, serialSlots, hash); i < serialSlots
+        && readLong(serialIndex + (long) i * SLOT) == hash; i++) {
+      X509Certificate cer = certificate(readLong(serialIndex + (long) i * SLOT + Long.BYTES));
+      if (cer.getSerialNumber().equals(serial)) {
+        return cer;
+      }
+    }
+    return null;
+  }
+
+  private long findEui64(final String eui64) {
+    String id = eui64.replace("-", "");
+    if (id.length() != EUI64_HEX) {
+      return -1;
+    }
+    long key;
+    try {
+      key = Long.parseUnsignedLong(id, HEX);
+    } catch (NumberFormatException e) {
+      return -1;
+    }
+    int i = lowerBound(eui64Index, eui64Slots, key);
+    if (i == eui64Slots || readLong(eui64Index + (long) i * SLOT) != key) {
+      return -1;
+    }
+    return readLong(eui64Index + (long) i * SLOT + Long.BYTES);
+  }
+
+  /* first slot whose key is not below key, in unsigned order */
+  private int lowerBound(final long index, final int slots, final long key) {
+    int low = 0;
+    int high = slots;
+    while (low < high) {
+      int mid = (low + high) >>> 1;
+      if (Long.compareUnsigned(readLong(index + (long) mid * SLOT), key) < 0) {
+        low = mid + 1;
+      } else {
+        high = mid;
+      }
+    }
+    return low;
+  }
+
+  private X509Certificate certificate(final long record) {
+    byte[] der = read(record + Integer.BYTES, readInt(record));
+    try {
+      return (X509Certificate) Util.create_certificate_factory()
+          .generateCertificate(new ByteArrayInputStream(der));
+    } catch (CertificateException e) {
+      throw new IllegalStateException("could not decode certificate at " + record, e);
+    }
+  }
+
+  private byte[] read(final long position, final int length) {
+    byte[] bytes = new byte[length];
+    int done = 0;
+    while (done < length) {
+      long at = position + done;
+      ByteBuffer segment = segments.get((int) (at / SEGMENT)).duplicate();
+      segment.position((int) (at % SEGMENT));
+      int n = Math.min(length - done, segment.remaining());
+      segment.get(bytes, done, n);
+      done += n;
+    }
+    return bytes;
+  }
+
+  private int readInt(final long position) {
+    return ByteBuffer.wrap(read(position, Integer.BYTES)).getInt();
+  }
+
+  private long readLong(final long position) {
+    return ByteBuffer.wrap(read(position, Long.BYTES)).getLong();
+  }
+
+  static long hash(final BigInteger serial) {
+    long h = FNV_OFFSET;
+    for (byte b : serial.toByteArray()) {
+      h = (h ^ (b & BYTE)) * FNV_PRIME;
+    }
+    return h;
+  }
+
+  private static final class Slot {
+    private final long key;
+    private final long record;
+
+    Slot(final long slotKey, final long recordOffset) {
+      this.key = slotKey;
+      this.record = recordOffset;
+    }
+  }
+
+  /**
+   * Writes a store, records first and the index blocks on {@link #commit()}.
+   * The index is sorted in memory, 16 bytes per slot.
+   *
+   * Everything goes to a temporary file next to the store, which replaces it
+   * atomically on commit, as a running server may have the old one mapped.
+   * Closing without a commit deletes the temporary file and leaves any
+   * existing store as it was.
+   */
+  static final class Writer implements Closeable {
+    private final Path target;
+    private final Path temp;
+    private final FileChannel out;
+    private final List<Slot> byEui64 = new ArrayList<>();
+    private final List<Slot> bySerial = new ArrayList<>();
+    private long position = HEADER;
+    private boolean committed = false;
+
+    Writer(final Path path) throws IOException {
+      this.target = path;
+      Path directory = path.toAbsolutePath().getParent();
+      this.temp = Files.createTempFile(directory, "." + path.getFileName(), ".tmp");
+      try {
+        this.out = FileChannel.open(temp, StandardOpenOption.WRITE);
+      } catch (IOException e) {
+        Files.deleteIfExists(temp);
+        throw e;
+      }
+    }
+
+    /*
+     * key is the PKCS#8 encoding, or null; a certificate without an EUI-64 is
+     * only found by serial
+     */
+    void add(
+        final byte[] certificate, final byte[] key, final String eui64, final BigInteger serial
+    ) throws IOException {
+      int keyLength = key == null ? 0 : key.length;
+      ByteBuffer record = ByteBuffer.allocate(Integer.BYTES * 2 + certificate.length + keyLength);
+      record.putInt(certificate.length).put(certificate).putInt(keyLength);
+      if (key != null) {
+        record.put(key);
+      }
+      if (eui64 != null) {
+        byEui64.add(new Slot(Long.parseUnsignedLong(eui64, HEX), position));
+      }
+      bySerial.add(new Slot(hash(serial), position));
+      position += write(record);
+    }
+
+    private long write(final ByteBuffer buffer) throws IOException {
+      buffer.flip();
+      long written = 0;
+      while (buffer.hasRemaining()) {
+        written += out.write(buffer, position + written);
+      }
+      return written;
+    }
+
+    private long writeIndex(final List<Slot> slots) throws IOException {
+      /* stable, so the first record added wins on equal keys */
+      slots.sort(Comparator.comparing(s -> s.key, Long::compareUnsigned));
+      long start = position;
+      ByteBuffer block = ByteBuffer.allocate(SLOT * Short.MAX_VALUE);
+      for (Slot slot : slots) {
+        if (!block.hasRemaining()) {
+          position += write(block);
+          block.clear();
+        }
+        block.putLong(slot.key).putLong(slot.record);
+      }
+      position += write(block);
+      return start;
+    }
+
+    /**
+     * Write the index blocks and the header, then move the store into place.
+     *
+     * @throws IOException
+     *           if the store could not be written or moved
+     */
+    void commit() throws IOException {
+      long eui64At = writeIndex(byEui64);
+      long serialAt = writeIndex(bySerial);
+      ByteBuffer header = ByteBuffer.allocate(HEADER);
+      header.putInt(MAGIC).putInt(VERSION)
+          .putLong(eui64At).putInt(byEui64.size())
+          .putLong(serialAt).putInt(bySerial.size());
+      position = 0;
+      write(header);
+      out.force(true);
+      out.close();
+      Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE);
+      committed = true;
+    }
+
+    @Override
+    public void close() throws IOException {
+      if (!committed) {
+        try {
+          out.close();
+        } finally {
+          Files.deleteIfExists(temp);
+        }
+      }
+    }
+  }
+
+  /**
+   * Build a store from a directory of {@code name.pem} certificates, each with
+   * an optional key in {@code name.key}. Files that are not certificates are
+   * skipped, and the first certificate by file name wins a duplicate EUI-64.
+   *
+   * @param directory
+   *          certificates and keys
+   * @param store
+   *          file written
+   * @return credentials written
+   * @throws IOException
+   *           if a file cannot be read or written
+   * @throws GeneralSecurityException
+   *           if a key cannot be parsed
+   */
+  public static int build(final Path directory, final Path store)
+      throws IOException, GeneralSecurityException {
+    List<Path> pems = new ArrayList<>();
+    try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*.pem")) {
+      files.forEach(pems::add);
+    }
+    pems.sort(Comparator.naturalOrder());
+    int count = 0;
+    try (Writer writer = new Writer(store)) {
+      for (Path pem : pems) {
+        X509Certificate cer;
+        try (InputStream is = Files.newInputStream(pem)) {
+          cer = (X509Certificate) Util.create_certificate_factory().generateCertificate(is);
+        } catch (CertificateException e) {
+          continue;
+        }
+        String name = pem.getFileName().toString();
+        Path key = pem.resolveSibling(name.substring(0, name.length() - ".pem".length()) + ".key");
+        byte[] pkcs8 = Files.exists(key)
+            ? Util.load_key(Util.create_key_factory(), key.toString()).getEncoded()
+            : null;
+        String id = CertificateLibrary.businessId(cer);
+        if (id != null && id.length() != EUI64_HEX) {
+          id = null;
+        }
+        writer.add(cer.getEncoded(), pkcs8, id, cer.getSerialNumber());
+        count++;
+      }
+      writer.commit();
+    }
+    return count;
+  }
+
+  public static void main(final String[] args) {
+    if (args.length != 2) {
+      System.err.println("[I] usage: directory store");
+      System.exit(ResultCode.GENERIC_ERROR.value());
+    }
+    try {
+      long start = System.nanoTime();
+      int count = build(Paths.get(args[0]), Paths.get(args[1]));
+      System.err.println(
+          String.format(
+              Locale.ROOT, "[I] wrote %d credentials to %s in %d ms", count, args[1],
+              TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)
+          )
+      );
+    } catch (IOException | GeneralSecurityException e) {
+      System.err.println("[E] could not build store: " + e.getMessage());
+      System.exit(ResultCode.GENERIC_ERROR.value());
+    }
+  }
+}
@@ -0,0 +1,114 @@
+/*
+ * Created on Mon Oct 19 2026
+ *
+ * Copyright (c) 2026 Smart DCC Limited
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package uk.co.smartdcc.boxed.xmldsig;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.ServiceLoader;
+
+/**
+ * The credentials the tools sign and verify with, opened from a
+ * {@link CredentialSource} selected by the {@code xmldsig.credentials}
+ * system property, or {@code --credentials} on the server, as
+ * {@code name} or {@code name:config}. The bundled {@code library} is used
+ * by default.
+ *
+ * Sources other than those held in memory are put behind a
+ * {@link CachingResolver}.
+ */
+public final class Credentials {
+  static final String PROPERTY = "xmldsig.credentials";
+  static final String LIBRARY = "library";
+
+  private static CredentialResolver INSTANCE;
+
+  private Credentials() {
+  }
+
+  public static synchronized CredentialResolver getInstance() {
+    if (INSTANCE == null) {
+      String setting = System.getProperty(PROPERTY, LIBRARY);
+      try {
+        INSTANCE = open(setting);
+      } catch (IOException | RuntimeException e) {
+        System.err.println("[E] failed to open credentials " + setting + ": " + e.toString());
+        System.exit(2);
+      }
+    }
+    return INSTANCE;
+  }
+
+  /**
+   * Select the credentials for the process, in place of the system property.
+   * Should be called during start up.
+   *
+   * @param resolver
+   *          credentials
+   */
+  public static synchronized void setInstance(final CredentialResolver resolver) {
+    INSTANCE = resolver;
+  }
+
+  /**
+   * Open a source with the default cache bounds.
+   *
+   * @param setting
+   *          {@code name} or {@code name:config}
+   * @return resolver, cached unless the source is held in memory
+   * @throws IOException
+   *           if the source could not be opened
+   */
+  public static CredentialResolver open(final String setting) throws IOException {
+    return open(setting, CachingResolver.DEFAULT_MAX_ENTRIES, CachingResolver.DEFAULT_TTL_MS);
+  }
+
+  /**
+   * Open a source.
+   *
+   * @param setting
+   *          {@code name} or {@code name:config}
+   * @param maxEntries
+   *          entries cached per kind of lookup
+   * @param ttlMs
+   *          time a lookup is cached for
+   * @return resolver, cached unless the source is held in memory
+   * @throws IOException
+   *           if the source could not be opened
+   * @throws IllegalArgumentException
+   *           if no source has that name
+   */
+  public static CredentialResolver open(
+      final String setting, final int maxEntries, final long ttlMs
+  ) throws IOException {
+    int colon = setting.indexOf(':');
+    String name = colon < 0 ? setting : setting.substring(0, colon);
+    String config = colon < 0 ? null : setting.substring(colon + 1);
+    List<String> names = new ArrayList<>();
+    for (CredentialSource source : ServiceLoader.load(CredentialSource.class)) {
+      if (source.getName().equals(name)) {
+        CredentialResolver resolver = source.open(config);
+        return source.isInMemory() ? resolver : new CachingResolver(resolver, maxEntries, ttlMs);
+      }
+      names.add(source.getName());
+    }
+    throw new IllegalArgumentException(
+        "unknown credential source " + name + ", expected one of " + names
+    );
+  }
+}
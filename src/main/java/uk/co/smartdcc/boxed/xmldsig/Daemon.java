@@ -0,0 +1,581 @@
+/*
+ * Created on Mon Oct 19 2026
+ *
+ * Copyright (c) 2026 Smart DCC Limited
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package uk.co.smartdcc.boxed.xmldsig;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.nio.file.attribute.UserPrincipal;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Long lived process that runs the {@link Sign} and {@link Validate} tools on
+ * behalf of their {@code main} entry points.
+ *
+ * When the {@value #ENV} environment variable is set, {@code Sign.main} and
+ * {@code Validate.main} forward their arguments (and {@code stdin}) over a
+ * unix domain socket, starting the daemon if it is not already running. This
+ * avoids paying for jvm start up, schema compilation and key decoding on
+ * every invocation. Output and result codes are the same as running the tool
+ * in process, which is what happens if the daemon cannot be reached.
+ */
+public final class Daemon {
+  static final String SIGN = "Sign";
+  static final String VALIDATE = "Validate";
+  static final String ENV = "XMLDSIG_DAEMON";
+  static final String RUNTIME_DIR = "XDG_RUNTIME_DIR";
+  /* set by GraalVM in native executables */
+  private static final String NATIVE_IMAGE = "org.graalvm.nativeimage.imagecode";
+
+  private static final int DEFAULT_IDLE_SECONDS = 600;
+  private static final long START_TIMEOUT_MS = 10000;
+  private static final long START_POLL_MS = 50;
+
+  private final ServerSocketChannel channel;
+  private final Path socket;
+  private final ExecutorService workers;
+  private final ScheduledExecutorService reaper;
+  private final AtomicInteger active = new AtomicInteger();
+  private volatile long lastActivity = System.nanoTime();
+  private volatile boolean quiet = false;
+
+  private Daemon(final ServerSocketChannel bound, final Path path, final int threads) {
+    this.channel = bound;
+    this.socket = path;
+    this.workers = Executors.newFixedThreadPool(threads);
+    this.reaper = Executors.newSingleThreadScheduledExecutor();
+  }
+
+  /**
+   * Bind a daemon to the given socket and start serving requests.
+   *
+   * @param socket
+   *          socket file, a stale file left by a dead daemon is replaced
+   * @param threads
+   *          number of requests processed concurrently
+   * @param idleSeconds
+   *          shut down after this long without requests, or never if 0
+   * @return running daemon
+   * @throws IOException
+   *           if the socket is in use or could not be bound
+   */
+  public static Daemon start(final Path socket, final int threads, final int idleSeconds)
+      throws IOException {
+    if (UnixSockets.inUse(socket)) {
+      throw new IOException("daemon already running on " + socket);
+    }
+    Files.deleteIfExists(socket);
+
+    /* warm up shared state before accepting concurrent requests */
+    Util.get_document_builder_factory();
+    Credentials.getInstance();
+
+    Daemon daemon = new Daemon(UnixSockets.bind(socket), socket, threads);
+    Thread acceptor = new Thread(daemon::acceptLoop, "xmldsig-daemon-accept");
+    acceptor.setDaemon(true);
+    acceptor.start();
+    if (idleSeconds > 0) {
+      daemon.reaper.scheduleWithFixedDelay(() -> {
+        long idle = System.nanoTime() - daemon.lastActivity;
+        if (daemon.active.get() == 0 && idle > TimeUnit.SECONDS.toNanos(idleSeconds)) {
+          daemon.log(false, "idle for " + idleSeconds + "s, shutting down");
+          daemon.close();
+        }
+      }, 1, 1, TimeUnit.SECONDS);
+    }
+    return daemon;
+  }
+
+  public boolean isOpen() {
+    return channel.isOpen();
+  }
+
+  /**
+   * Stop accepting requests and remove the socket file. Requests already
+   * accepted are completed.
+   */
+  public void close() {
+    try {
+      channel.close();
+    } catch (IOException e) {
+    }
+    try {
+      Files.deleteIfExists(socket);
+    } catch (IOException e) {
+    }
+    reaper.shutdown();
+    workers.shutdown();
+    synchronized (this) {
+      notifyAll();
+    }
+  }
+
+  private void log(final boolean error, final String message) {
+    if (!quiet) {
+      String code = "I";
+      if (error) {
+        code = "E";
+      }
+      System.err.println("[" + code + "] [" + ProcessHandle.current().pid() + "] " + message);
+    }
+  }
+
+  private void acceptLoop() {
+    while (channel.isOpen()) {
+      SocketChannel client;
+      try {
+        client = channel.accept();
+      } catch (IOException e) {
+        break;
+      }
+      lastActivity = System.nanoTime();
+      active.incrementAndGet();
+      try {
+        workers.execute(() -> serve(client));
+      } catch (Exception e) {
+        active.decrementAndGet();
+        try {
+          client.close();
+        } catch (IOException ignored) {
+        }
+      }
+    }
+  }
+
+  private void serve(final SocketChannel client) {
+    try (SocketChannel c = client) {
+      DataInputStream request = new DataInputStream(Channels.newInputStream(c));
+      String tool = request.readUTF();
+      String[] args = new String[request.readInt()];
+      for (int i = 0; i < args.length; i++) {
+        args[i] = request.readUTF();
+      }
+      byte[] stdin = new byte[request.readInt()];
+      request.readFully(stdin);
+
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      ByteArrayOutputStream err = new ByteArrayOutputStream();
+      ResultCode result = run(
+          tool, args, new ByteArrayInputStream(stdin), new PrintStream(out), new PrintStream(err)
+      );
+
+      DataOutputStream response = new DataOutputStream(Channels.newOutputStream(c));
+      response.writeInt(result.value());
+      response.writeInt(out.size());
+      out.writeTo(response);
+      response.writeInt(err.size());
+      err.writeTo(response);
+      response.flush();
+    } catch (Exception e) {
+      log(true, "request failed: " + e.getMessage());
+    } finally {
+      lastActivity = System.nanoTime();
+      active.decrementAndGet();
+    }
+  }
+
+  static ResultCode run(
+      final String tool, final String[] args, final InputStream in, final PrintStream out,
+      final PrintStream err
+  ) {
+    if (SIGN.equals(tool)) {
+      return Sign.main_aux(args, in, out, err);
+    } else if (VALIDATE.equals(tool)) {
+      return Validate.main_aux(args, in, out, err);
+    }
+    err.println("[E] unknown tool: " + tool);
+    return ResultCode.GENERIC_ERROR;
+  }
+
+  /**
+   * Thrown when no daemon accepted the connection, as opposed to a daemon
+   * failing part way through a request.
+   */
+  static final class NotRunningException extends IOException {
+    private static final long serialVersionUID = 1L;
+
+    NotRunningException(final Path socket, final IOException cause) {
+      super("no daemon listening on " + socket + ": " + cause.getMessage(), cause);
+    }
+  }
+
+  /**
+   * Run a tool in a daemon.
+   *
+   * File arguments are made absolute, as the daemon does not share the
+   * working directory of the caller. If the message is read from
+   * {@code stdin} it is forwarded in full.
+   *
+   * @param socket
+   *          socket of a running daemon
+   * @param tool
+   *          {@link #SIGN} or {@link #VALIDATE}
+   * @param args
+   *          command line arguments for the tool
+   * @param in
+   *          stream read when the message is given as "-"
+   * @param out
+   *          stream the tool output is copied to
+   * @param err
+   *          stream the tool log lines are copied to
+   * @return result code of the tool
+   * @throws IOException
+   *           if the daemon could not be reached
+   */
+  public static ResultCode invoke(
+      final Path socket, final String tool, final String[] args, final InputStream in,
+      final PrintStream out, final PrintStream err
+  ) throws IOException {
+    return invoke(socket, tool, args, readStdin(args, in), out, err);
+  }
+
+  private static byte[] readStdin(final String[] args, final InputStream in) throws IOException {
+    if (Arrays.asList(args).contains("-")) {
+      return in.readAllBytes();
+    }
+    return new byte[0];
+  }
+
+  /**
+   * Run a tool in a daemon, with {@code stdin} already read by the caller so
+   * that the request can be retried.
+   *
+   * @param socket
+   *          socket of a running daemon
+   * @param tool
+   *          {@link #SIGN} or {@link #VALIDATE}
+   * @param args
+   *          command line arguments for the tool
+   * @param stdin
+   *          message given as "-", or empty
+   * @param out
+   *          stream the tool output is copied to
+   * @param err
+   *          stream the tool log lines are copied to
+   * @return result code of the tool
+   * @throws NotRunningException
+   *           if nothing is listening on the socket
+   * @throws IOException
+   *           if the socket is not owned by the current user, or the request
+   *           failed after it was sent
+   */
+  static ResultCode invoke(
+      final Path socket, final String tool, final String[] args, final byte[] stdin,
+      final PrintStream out, final PrintStream err
+  ) throws IOException {
+    if (Files.exists(socket, LinkOption.NOFOLLOW_LINKS)) {
+      checkOwner(socket);
+    }
+    SocketChannel connected;
+    try {
+      connected = UnixSockets.connect(socket);
+    } catch (IOException e) {
+      throw new NotRunningException(socket, e);
+    }
+    try (SocketChannel c = connected) {
+      DataOutputStream request = new DataOutputStream(Channels.newOutputStream(c));
+      request.writeUTF(tool);
+      request.writeInt(args.length);
+      for (String arg : args) {
+        if (arg.startsWith("--") || "-".equals(arg)) {
+          request.writeUTF(arg);
+        } else {
+          request.writeUTF(Paths.get(arg).toAbsolutePath().toString());
+        }
+      }
+      request.writeInt(stdin.length);
+      request.write(stdin);
+      request.flush();
+
+      DataInputStream response = new DataInputStream(Channels.newInputStream(c));
+      ResultCode result = ResultCode.fromValue(response.readInt());
+      byte[] buffer = new byte[response.readInt()];
+      response.readFully(buffer);
+      out.write(buffer);
+      out.flush();
+      buffer = new byte[response.readInt()];
+      response.readFully(buffer);
+      err.write(buffer);
+      err.flush();
+      return result;
+    }
+  }
+
+  static boolean isDefault(final String setting) {
+    return setting == null || setting.isEmpty() || "1".equals(setting) || "true".equals(setting);
+  }
+
+  /**
+   * The socket file for a {@value #ENV} setting. The default lives in
+   * {@code $XDG_RUNTIME_DIR}, or else in a per user directory under the
+   * temporary directory, so that other users cannot put a socket in its
+   * place. See {@link #privateDirectory(Path)}.
+   *
+   * @param setting
+   *          value of {@value #ENV}, or null for the default
+   * @return socket file
+   */
+  static Path socketPath(final String setting) {
+    if (isDefault(setting)) {
+      String runtime = System.getenv(RUNTIME_DIR);
+      if (runtime != null && !runtime.isEmpty()) {
+        return Paths.get(runtime, "xmldsig.sock");
+      }
+      return Paths.get(
+          System.getProperty("java.io.tmpdir"),
+          "xmldsig-" + System.getProperty("user.name"),
+          "daemon.sock"
+      );
+    }
+    return Paths.get(setting);
+  }
+
+  /**
+   * Create a directory only the current user can enter, or check that an
+   * existing one is.
+   *
+   * @param directory
+   *          directory holding the socket file
+   * @throws IOException
+   *           if it is owned by another user or open to other users
+   */
+  static void privateDirectory(final Path directory) throws IOException {
+    try {
+      Files.createDirectory(
+          directory,
+          PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rwx------"))
+      );
+    } catch (FileAlreadyExistsException e) {
+      /* checked below */
+    } catch (UnsupportedOperationException e) {
+      /* not a posix file system, rely on the parent directory */
+      Files.createDirectories(directory);
+      return;
+    }
+    if (!Files.isDirectory(directory, LinkOption.NOFOLLOW_LINKS)) {
+      throw new IOException(directory + " is not a directory");
+    }
+    checkOwner(directory);
+    Set<PosixFilePermission> shared = EnumSet.of(
+        PosixFilePermission.GROUP_READ, PosixFilePermission.GROUP_WRITE,
+        PosixFilePermission.GROUP_EXECUTE, PosixFilePermission.OTHERS_READ,
+        PosixFilePermission.OTHERS_WRITE, PosixFilePermission.OTHERS_EXECUTE
+    );
+    shared.retainAll(Files.getPosixFilePermissions(directory, LinkOption.NOFOLLOW_LINKS));
+    if (!shared.isEmpty()) {
+      throw new IOException(directory + " is accessible by other users");
+    }
+  }
+
+  private static void checkOwner(final Path path) throws IOException {
+    UserPrincipal user = path.getFileSystem()
+        .getUserPrincipalLookupService()
+        .lookupPrincipalByName(System.getProperty("user.name"));
+    UserPrincipal owner = Files.getOwner(path, LinkOption.NOFOLLOW_LINKS);
+    if (!user.equals(owner)) {
+      throw new IOException(path + " is owned by " + owner.getName() + ", not " + user.getName());
+    }
+  }
+
+  /**
+   * Forward a tool invocation to the daemon, if enabled by the
+   * {@value #ENV} environment variable. Its value is either a socket path,
+   * or "1" to use a per user socket. A daemon is started in the background
+   * if none is listening. A native executable starts faster than it could
+   * reach a daemon, so it always runs in process.
+   *
+   * {@code stdin} is read once, and handed back through {@link System#setIn}
+   * if the tool ends up running in process.
+   *
+   * @param tool
+   *          {@link #SIGN} or {@link #VALIDATE}
+   * @param args
+   *          command line arguments for the tool
+   * @return result code, or null if the tool should run in process
+   */
+  public static ResultCode delegate(final String tool, final String[] args) {
+    String setting = System.getenv(ENV);
+    if (setting == null || setting.isEmpty() || "0".equals(setting)
+        || !UnixSockets.isSupported() || System.getProperty(NATIVE_IMAGE) != null) {
+      return null;
+    }
+    /* a batch already amortises start up over many messages */
+    if (Arrays.asList(args).contains(Batch.FLAG)) {
+      return null;
+    }
+    byte[] stdin;
+    try {
+      stdin = readStdin(args, System.in);
+    } catch (IOException e) {
+      System.err.println("[W] could not read stdin: " + e.getMessage());
+      return null;
+    }
+    Path socket = socketPath(setting);
+    try {
+      if (isDefault(setting)) {
+        privateDirectory(socket.getParent());
+      }
+      if (Files.exists(socket, LinkOption.NOFOLLOW_LINKS)) {
+        checkOwner(socket);
+      }
+    } catch (IOException e) {
+      System.err.println("[W] refusing daemon socket: " + e.getMessage());
+      return runInProcess(stdin);
+    }
+    try {
+      return invokeOrStart(socket, tool, args, stdin);
+    } catch (NotRunningException e) {
+      System.err.println("[W] could not start daemon: " + e.getMessage());
+    } catch (IOException e) {
+      /* the daemon may have acted on the request, so do not run it again */
+      System.err.println("[E] daemon request failed: " + e.getMessage());
+      return ResultCode.GENERIC_ERROR;
+    }
+    return runInProcess(stdin);
+  }
+
+  private static ResultCode runInProcess(final byte[] stdin) {
+    System.err.println("[W] daemon unavailable, running in process");
+    System.setIn(new ByteArrayInputStream(stdin));
+    return null;
+  }
+
+  private static ResultCode invokeOrStart(
+      final Path socket, final String tool, final String[] args, final byte[] stdin
+  ) throws IOException {
+    try {
+      return invoke(socket, tool, args, stdin, System.out, System.err);
+    } catch (NotRunningException e) {
+      /* not running, start it below */
+    }
+    try {
+      spawn(socket);
+    } catch (IOException e) {
+      throw new NotRunningException(socket, e);
+    }
+    long deadline = System.currentTimeMillis() + START_TIMEOUT_MS;
+    while (true) {
+      try {
+        return invoke(socket, tool, args, stdin, System.out, System.err);
+      } catch (NotRunningException e) {
+        if (System.currentTimeMillis() >= deadline) {
+          throw e;
+        }
+        try {
+          Thread.sleep(START_POLL_MS);
+        } catch (InterruptedException interrupted) {
+          Thread.currentThread().interrupt();
+          throw e;
+        }
+      }
+    }
+  }
+
+  private static void spawn(final Path socket) throws IOException {
+    String java = Paths.get(System.getProperty("java.home"), "bin", "java").toString();
+    ProcessBuilder pb = new ProcessBuilder(
+        java, "-cp", System.getProperty("java.class.path"), Daemon.class.getName(),
+        "-s", socket.toString(), "-q"
+    );
+    pb.redirectOutput(ProcessBuilder.Redirect.DISCARD);
+    pb.redirectError(ProcessBuilder.Redirect.DISCARD);
+    pb.start().getOutputStream().close();
+  }
+
+  static void showHelp() {
+    System.out.println(
+        "Usage: java -cp xmldsign.jar uk.co.smartdcc.boxed.xmldsig.Daemon [-s socket] [-t idle]"
+            + " [-j threads] [-q] [-h]"
+    );
+    System.out.println("  -s socket  Socket file (default: " + socketPath(null) + ")");
+    System.out.println(
+        "  -t idle    Exit after idle seconds, 0 for never (default: " + DEFAULT_IDLE_SECONDS
+            + ")"
+    );
+    System.out.println("  -j threads Concurrent requests (default: number of processors)");
+    System.out.println("  -q         Quiet mode (no logging)");
+    System.out.println("  -h         Show this help");
+  }
+
+  public static void main(final String[] args) throws IOException, InterruptedException {
+    Path socket = socketPath(null);
+    int idle = DEFAULT_IDLE_SECONDS;
+    int threads = Runtime.getRuntime().availableProcessors();
+    boolean quiet = false;
+
+    for (int i = 0; i < args.length; i++) {
+      try {
+        switch (args[i]) {
+          case "-s":
+            socket = Paths.get(args[++i]);
+            break;
+          case "-t":
+            idle = Integer.parseInt(args[++i]);
+            break;
+          case "-j":
+            threads = Integer.parseInt(args[++i]);
+            break;
+          case "-q":
+            quiet = true;
+            break;
+          case "-h":
+          default:
+            showHelp();
+            return;
+        }
+      } catch (ArrayIndexOutOfBoundsException | NumberFormatException e) {
+        showHelp();
+        return;
+      }
+    }
+
+    if (socket.equals(socketPath(null))) {
+      privateDirectory(socket.getParent());
+    }
+    Daemon daemon = start(socket, threads, idle);
+    daemon.quiet = quiet;
+    Runtime.getRuntime().addShutdownHook(new Thread(daemon::close));
+    daemon.log(false, "Daemon listening on " + socket);
+    synchronized (daemon) {
+      while (daemon.isOpen()) {
+        daemon.wait();
+      }
+    }
+  }
+}
@@ -0,0 +1,84 @@
+/*
+ * Created on Mon Oct 19 2026
+ *
+ * Copyright (c) 2026 Smart DCC Limited
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package uk.co.smartdcc.boxed.xmldsig;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Writes each response to its own file in a directory.
+ *
+ * Files are named {@code <millis>-<sequence>.xml} and are written under a
+ * temporary name and then renamed, so a consumer (for example {@link Watcher}
+ * style tooling) never sees a partial message. Rejected responses are written
+ * to a {@code rejected} sub-directory together with a {@code .error} file
+ * holding the reason.
+ */
+public final class DirectorySink implements ResponseSink {
+  private final Path directory;
+  private final Path rejected;
+  private final AtomicLong sequence = new AtomicLong();
+
+  /**
+   * Create a sink.
+   *
+   * @param target
+   *          directory responses are written to, created if missing
+   * @throws IOException
+   *           if the directory could not be created
+   */
+  public DirectorySink(final Path target) throws IOException {
+    this.directory = Files.createDirectories(target);
+    this.rejected = directory.resolve("rejected");
+  }
+
+  private String nextName() {
+    return String.format("%d-%06d", System.currentTimeMillis(), sequence.incrementAndGet());
+  }
+
+  private static void write(final Path target, final byte[] content) throws IOException {
+    Path tmp = target.resolveSibling("." + target.getFileName() + ".tmp");
+    Files.write(tmp, content);
+    Files.move(tmp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+  }
+
+  @Override
+  public void accept(final byte[] message) throws IOException {
+    write(directory.resolve(nextName() + ".xml"), message);
+  }
+
+  @Override
+  public void reject(final byte[] message, final Exception cause) {
+    String name = nextName();
+    try {
+      Files.createDirectories(rejected);
+      write(rejected.resolve(name + ".xml"), message);
+      write(
+          rejected.resolve(name + ".error"),
+          (cause.getClass().getSimpleName() + ": " + cause.getMessage() + System.lineSeparator())
+              .getBytes(StandardCharsets.UTF_8)
+      );
+    } catch (IOException e) {
+      System.err.println("[E] could not write rejected response " + name + ": " + e.getMessage());
+    }
+  }
+}
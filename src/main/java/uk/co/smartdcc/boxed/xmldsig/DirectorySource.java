@@ -0,0 +1,130 @@
+/*
+ * Created on Mon Oct 19 2026
+ *
+ * Copyright (c) 2026 Smart DCC Limited
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package uk.co.smartdcc.boxed.xmldsig;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.math.BigInteger;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NotDirectoryException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.PrivateKey;
+import java.security.cert.CertificateException;
+import java.security.cert.X509Certificate;
+import java.security.spec.InvalidKeySpecException;
+import java.util.Locale;
+import java.util.function.Predicate;
+
+/**
+ * Credentials read from a directory of {@code name.pem} certificates, each
+ * with its private key in {@code name.key}, as the {@code directory}
+ * credential source, for example {@code directory:/etc/xmldsig/keys}.
+ *
+ * The directory is read on every lookup, so that credentials can be added or
+ * replaced without a restart, and stands in for a key service behind a
+ * {@link CachingResolver}. Files that are not certificates are skipped.
+ */
+public final class DirectorySource implements CredentialSource {
+  static final String NAME = "directory";
+
+  @Override
+  public String getName() {
+    return NAME;
+  }
+
+  @Override
+  public CredentialResolver open(final String config) throws IOException {
+    if (config == null || config.isEmpty()) {
+      throw new IllegalArgumentException("expected " + NAME + ":path");
+    }
+    Path directory = Paths.get(config);
+    if (!Files.isDirectory(directory)) {
+      throw new NotDirectoryException(config);
+    }
+    return new Resolver(directory);
+  }
+
+  private static final class Resolver implements CredentialResolver {
+    private final Path directory;
+
+    Resolver(final Path dir) {
+      this.directory = dir;
+    }
+
+    @Override
+    public X509Certificate lookup(final String eui64) {
+      String id = eui64.replace("-", "").toLowerCase(Locale.ROOT);
+      Path pem = find(cer -> id.equals(CertificateLibrary.businessId(cer)));
+      return pem == null ? null : certificate(pem);
+    }
+
+    @Override
+    public PrivateKey lookup_key(final String eui64) {
+      String id = eui64.replace("-", "").toLowerCase(Locale.ROOT);
+      Path pem = find(cer -> id.equals(CertificateLibrary.businessId(cer)));
+      if (pem == null) {
+        return null;
+      }
+      String name = pem.getFileName().toString();
+      Path key = pem.resolveSibling(name.substring(0, name.length() - ".pem".length()) + ".key");
+      if (!Files.exists(key)) {
+        return null;
+      }
+      try {
+        return Util.load_key(Util.create_key_factory(), key.toString());
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      } catch (InvalidKeySpecException e) {
+        throw new UncheckedIOException(new IOException(key + ": " + e.getMessage(), e));
+      }
+    }
+
+    @Override
+    public X509Certificate lookup(final BigInteger serial) {
+      Path pem = find(cer -> cer.getSerialNumber().equals(serial));
+      return pem == null ? null : certificate(pem);
+    }
+
+    private Path find(final Predicate<X509Certificate> match) {
+      try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*.pem")) {
+        for (Path pem : files) {
+          X509Certificate cer = certificate(pem);
+          if (cer != null && match.test(cer)) {
+            return pem;
+          }
+        }
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+      return null;
+    }
+
+    private static X509Certificate certificate(final Path pem) {
+      try (InputStream is = Files.newInputStream(pem)) {
+        return (X509Certificate) Util.create_certificate_factory().generateCertificate(is);
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      } catch (CertificateException e) {
+        return null;
+      }
+    }
+  }
+}
@@ -0,0 +1,456 @@
+/*
+ * Created on Mon Oct 19 2026
+ *
+ * Copyright (c) 2026 Smart DCC Limited
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package uk.co.smartdcc.boxed.xmldsig;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import javax.xml.XMLConstants;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+
+/**
+ * Writes a DOM as UTF-8 XML into a buffer that is reused from one message to
+ * the next.
+ *
+ * The output is the same as an identity {@code Transformer} produces, without
+ * creating a transformer, a serializer and a copy of the result per message.
+ * Namespace declarations that are already in scope are left out and missing
+ * ones are added, as the transformer does. Once the buffer has grown to the
+ * size of the largest message, writing allocates nothing.
+ *
+ * Instances are not thread safe, {@link #local} gives one per thread. The
+ * buffer is only valid until the next {@link #write} on the same instance.
+ */
+public final class DomWriter {
+  private static final int INITIAL_CAPACITY = 16 * 1024;
+  /* a buffer grown beyond this by one large message is not kept */
+  private static final int RETAIN_LIMIT = 1024 * 1024;
+  private static final int BASE64_CHUNK = 3 * 1024;
+  private static final int BASE64_GROUP = 3;
+  private static final int BASE64_CHARS = 4;
+  private static final int SIX_BITS = 0x3f;
+  private static final int BYTE = 0xff;
+  private static final int SHIFT_6 = 6;
+  private static final int SHIFT_8 = 8;
+  private static final int SHIFT_12 = 12;
+  private static final int SHIFT_16 = 16;
+  private static final int SHIFT_18 = 18;
+  private static final int ONE_BYTE_LIMIT = 0x80;
+  private static final int TWO_BYTE_LIMIT = 0x800;
+  private static final int CONTINUATION = 0x80;
+  private static final int TWO_BYTE_LEAD = 0xc0;
+  private static final int THREE_BYTE_LEAD = 0xe0;
+  private static final int MAX_UTF8_BYTES = 3;
+  /* "&#1114111;" */
+  private static final int MAX_REFERENCE = 10;
+  private static final int DECIMAL = 10;
+  private static final int INITIAL_SCOPE = 16;
+
+  private static final byte[] DECLARATION = ascii(
+      "<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"no\"?>"
+  );
+  private static final byte[] STANDALONE_DECLARATION = ascii(
+      "<?xml version=\"1.0\" encoding=\"UTF-8\"?>"
+  );
+  private static final byte[] ALPHABET = ascii(
+      "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/"
+  );
+  private static final ThreadLocal<DomWriter> LOCAL = ThreadLocal.withInitial(DomWriter::new);
+
+  private byte[] buf = new byte[INITIAL_CAPACITY];
+  private int count = 0;
+  private final byte[] base64 = new byte[BASE64_CHUNK / BASE64_GROUP * BASE64_CHARS];
+  /* prefixes in scope, as the first scopeLengths[i] chars of scopeNames[i] */
+  private String[] scopeNames = new String[INITIAL_SCOPE];
+  private int[] scopeLengths = new int[INITIAL_SCOPE];
+  private String[] scopeUris = new String[INITIAL_SCOPE];
+  private int scope = 0;
+
+  private static byte[] ascii(final String s) {
+    return s.getBytes(StandardCharsets.US_ASCII);
+  }
+
+  /**
+   * Writer owned by the calling thread.
+   *
+   * @return writer
+   */
+  public static DomWriter local() {
+    return LOCAL.get();
+  }
+
+  /**
+   * Replace the buffer contents with a serialized document.
+   *
+   * @param doc
+   *          document to write
+   * @return this
+   */
+  public DomWriter write(final Document doc) {
+    if (buf.length > RETAIN_LIMIT) {
+      buf = new byte[INITIAL_CAPACITY];
+    }
+    count = 0;
+    scope = 0;
+    put(doc.getXmlStandalone() ? STANDALONE_DECLARATION : DECLARATION);
+    for (Node c = doc.getFirstChild(); c != null; c = c.getNextSibling()) {
+      node(c);
+    }
+    return this;
+  }
+
+  /**
+   * Serialized document, only the first {@link #size} bytes are valid.
+   *
+   * @return internal buffer
+   */
+  public byte[] buffer() {
+    return buf;
+  }
+
+  public int size() {
+    return count;
+  }
+
+  public byte[] toByteArray() {
+    return Arrays.copyOf(buf, count);
+  }
+
+  /**
+   * Copy the serialized document to a stream.
+   *
+   * @param os
+   *          destination
+   * @throws IOException
+   *           if the stream could not be written
+   */
+  public void writeTo(final OutputStream os) throws IOException {
+    os.write(buf, 0, count);
+  }
+
+  /**
+   * Length of the padded Base64 encoding of the serialized document.
+   *
+   * @return number of characters
+   */
+  public int base64Size() {
+    return (count + BASE64_GROUP - 1) / BASE64_GROUP * BASE64_CHARS;
+  }
+
+  /**
+   * Write the serialized document to a stream as padded Base64, without an
+   * intermediate copy.
+   *
+   * @param os
+   *          destination
+   * @throws IOException
+   *           if the stream could not be written
+   */
+  public void writeBase64To(final OutputStream os) throws IOException {
+    for (int start = 0; start < count; start += BASE64_CHUNK) {
+      int end = Math.min(count, start + BASE64_CHUNK);
+      int n = 0;
+      int i = start;
+      for (; i + BASE64_GROUP <= end; i += BASE64_GROUP) {
+        int bits = (buf[i] & BYTE) << SHIFT_16 | (buf[i + 1] & BYTE) << SHIFT_8
+            | (buf[i + 2] & BYTE);
+        base64[n++] = ALPHABET[bits >>> SHIFT_18 & SIX_BITS];
+        base64[n++] = ALPHABET[bits >>> SHIFT_12 & SIX_BITS];
+        base64[n++] = ALPHABET[bits >>> SHIFT_6 & SIX_BITS];
+        base64[n++] = ALPHABET[bits & SIX_BITS];
+      }
+      if (i < end) {
+        int bits = (buf[i] & BYTE) << SHIFT_16;
+        if (i + 1 < end) {
+          bits |= (buf[i + 1] & BYTE) << SHIFT_8;
+        }
+        base64[n++] = ALPHABET[bits >>> SHIFT_18 & SIX_BITS];
+        base64[n++] = ALPHABET[bits >>> SHIFT_12 & SIX_BITS];
+        base64[n++] = i + 1 < end ? ALPHABET[bits >>> SHIFT_6 & SIX_BITS] : (byte) '=';
+        base64[n++] = '=';
+      }
+      os.write(base64, 0, n);
+    }
+  }
+
+  private void node(final Node n) {
+    switch (n.getNodeType()) {
+      case Node.ELEMENT_NODE:
+        element((Element) n);
+        break;
+      case Node.TEXT_NODE:
+        escaped(n.getNodeValue(), false);
+        break;
+      case Node.CDATA_SECTION_NODE:
+        cdata(n.getNodeValue());
+        break;
+      case Node.COMMENT_NODE:
+        put("<!--");
+        put(n.getNodeValue());
+        put("-->");
+        break;
+      case Node.PROCESSING_INSTRUCTION_NODE:
+        put("<?");
+        put(n.getNodeName());
+        if (!n.getNodeValue().isEmpty()) {
+          put(' ');
+          put(n.getNodeValue());
+        }
+        put("?>");
+        break;
+      case Node.ENTITY_REFERENCE_NODE:
+        for (Node c = n.getFirstChild(); c != null; c = c.getNextSibling()) {
+          node(c);
+        }
+        break;
+      default:
+        /* document type declarations are refused by the parser */
+        break;
+    }
+  }
+
+  /*
+   * the element's own namespace is declared first, then any other namespace
+   * declarations and finally the attributes, in the order the transformer uses
+   */
+  private void element(final Element e) {
+    int mark = scope;
+    put('<');
+    put(e.getNodeName());
+    ensureDeclared(e.getNodeName(), e.getNamespaceURI());
+    NamedNodeMap attributes = e.hasAttributes() ? e.getAttributes() : null;
+    if (attributes != null) {
+      for (int i = 0; i < attributes.getLength(); i++) {
+        Node a = attributes.item(i);
+        if (XMLConstants.XMLNS_ATTRIBUTE_NS_URI.equals(a.getNamespaceURI())) {
+          String prefix = XMLConstants.XMLNS_ATTRIBUTE.equals(a.getNodeName())
+              ? XMLConstants.DEFAULT_NS_PREFIX
+              : a.getLocalName();
+          if (!a.getNodeValue().equals(lookup(prefix, prefix.length()))) {
+            declare(prefix, prefix.length(), a.getNodeValue());
+            attribute(a.getNodeName(), a.getNodeValue());
+          }
+        }
+      }
+      for (int i = 0; i < attributes.getLength(); i++) {
+        Node a = attributes.item(i);
+        if (a.getNodeName().indexOf(':') > 0
+            && !XMLConstants.XMLNS_ATTRIBUTE_NS_URI.equals(a.getNamespaceURI())) {
+          ensureDeclared(a.getNodeName(), a.getNamespaceURI());
+        }
+      }
+      for (int i = 0; i < attributes.getLength(); i++) {
+        Node a = attributes.item(i);
+        if (!XMLConstants.XMLNS_ATTRIBUTE_NS_URI.equals(a.getNamespaceURI())) {
+          attribute(a.getNodeName(), a.getNodeValue());
+        }
+      }
+    }
+    if (e.hasChildNodes()) {
+      put('>');
+      for (Node c = e.getFirstChild(); c != null; c = c.getNextSibling()) {
+        node(c);
+      }
+      put("</");
+      put(e.getNodeName());
+      put('>');
+    } else {
+      put("/>");
+    }
+    scope = mark;
+  }
+
+  /*
+   * prefixes are taken from the qualified name, as getPrefix() creates a new
+   * string on every call
+   */
+  private void ensureDeclared(final String qname, final String uri) {
+    int colon = Math.max(qname.indexOf(':'), 0);
+    if (colon == XMLConstants.XML_NS_PREFIX.length()
+        && qname.startsWith(XMLConstants.XML_NS_PREFIX)) {
+      return;
+    }
+    String value = uri == null ? "" : uri;
+    String current = lookup(qname, colon);
+    if (value.equals(current == null ? "" : current)) {
+      return;
+    }
+    declare(qname, colon, value);
+    put(' ');
+    put(XMLConstants.XMLNS_ATTRIBUTE);
+    if (colon > 0) {
+      put(':');
+      put(qname, 0, colon);
+    }
+    put("=\"");
+    escaped(value, true);
+    put('"');
+  }
+
+  private String lookup(final String name, final int length) {
+    for (int i = scope - 1; i >= 0; i--) {
+      if (scopeLengths[i] == length && scopeNames[i].regionMatches(0, name, 0, length)) {
+        return scopeUris[i];
+      }
+    }
+    return null;
+  }
+
+  private void declare(final String name, final int length, final String uri) {
+    if (scope == scopeNames.length) {
+      scopeNames = Arrays.copyOf(scopeNames, scope * 2);
+      scopeLengths = Arrays.copyOf(scopeLengths, scope * 2);
+      scopeUris = Arrays.copyOf(scopeUris, scope * 2);
+    }
+    scopeNames[scope] = name;
+    scopeLengths[scope] = length;
+    scopeUris[scope] = uri;
+    scope++;
+  }
+
+  private void attribute(final String name, final String value) {
+    put(' ');
+    put(name);
+    put("=\"");
+    escaped(value, true);
+    put('"');
+  }
+
+  private void cdata(final String value) {
+    put("<![CDATA[");
+    int from = 0;
+    int split = value.indexOf("]]>");
+    while (split >= 0) {
+      put(value, from, split + 2);
+      put("]]><![CDATA[");
+      from = split + 2;
+      split = value.indexOf("]]>", from);
+    }
+    put(value, from, value.length());
+    put("]]>");
+  }
+
+  private void escaped(final String s, final boolean attribute) {
+    for (int i = 0; i < s.length(); i++) {
+      char c = s.charAt(i);
+      switch (c) {
+        case '<':
+          put("&lt;");
+          break;
+        case '>':
+          put("&gt;");
+          break;
+        case '&':
+          put("&amp;");
+          break;
+        case '\r':
+          put("&#13;");
+          break;
+        case '"':
+          put(attribute ? "&quot;" : "\"");
+          break;
+        case '\n':
+          put(attribute ? "&#10;" : "\n");
+          break;
+        case '\t':
+          put(attribute ? "&#9;" : "\t");
+          break;
+        default:
+          i = utf8(s, i);
+          break;
+      }
+    }
+  }
+
+  private void put(final String s) {
+    put(s, 0, s.length());
+  }
+
+  private void put(final String s, final int from, final int to) {
+    for (int i = from; i < to; i++) {
+      i = utf8(s, i);
+    }
+  }
+
+  /*
+   * encodes the character at i, returns the index of its last char. Like the
+   * transformer, characters outside the basic plane are written as references.
+   */
+  private int utf8(final String s, final int i) {
+    char c = s.charAt(i);
+    if (Character.isHighSurrogate(c) && i + 1 < s.length()
+        && Character.isLowSurrogate(s.charAt(i + 1))) {
+      reference(Character.toCodePoint(c, s.charAt(i + 1)));
+      return i + 1;
+    }
+    ensure(MAX_UTF8_BYTES);
+    if (c < ONE_BYTE_LIMIT) {
+      buf[count++] = (byte) c;
+    } else if (c < TWO_BYTE_LIMIT) {
+      buf[count++] = (byte) (TWO_BYTE_LEAD | c >>> SHIFT_6);
+      buf[count++] = (byte) (CONTINUATION | c & SIX_BITS);
+    } else {
+      buf[count++] = (byte) (THREE_BYTE_LEAD | c >>> SHIFT_12);
+      buf[count++] = (byte) (CONTINUATION | c >>> SHIFT_6 & SIX_BITS);
+      buf[count++] = (byte) (CONTINUATION | c & SIX_BITS);
+    }
+    return i;
+  }
+
+  /* &#n; without going through a String */
+  private void reference(final int codePoint) {
+    ensure(MAX_REFERENCE);
+    buf[count++] = '&';
+    buf[count++] = '#';
+    int start = count;
+    int v = codePoint;
+    do {
+      buf[count++] = (byte) ('0' + v % DECIMAL);
+      v /= DECIMAL;
+    } while (v > 0);
+    for (int l = start, r = count - 1; l < r; l++, r--) {
+      byte t = buf[l];
+      buf[l] = buf[r];
+      buf[r] = t;
+    }
+    buf[count++] = ';';
+  }
+
+  private void put(final char c) {
+    ensure(1);
+    buf[count++] = (byte) c;
+  }
+
+  private void put(final byte[] b) {
+    ensure(b.length);
+    System.arraycopy(b, 0, buf, count, b.length);
+    count += b.length;
+  }
+
+  private void ensure(final int n) {
+    if (count + n > buf.length) {
+      buf = Arrays.copyOf(buf, Math.max(buf.length * 2, count + n));
+    }
+  }
+}
@@ -0,0 +1,272 @@
+/*
+ * Created on Mon Oct 19 2026
+ *
+ * Copyright (c) 2026 Smart DCC Limited
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package uk.co.smartdcc.boxed.xmldsig;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Client for the binary frame protocol of a {@link Server} started with a
+ * frame port, see {@link FrameServer} for the format.
+ *
+ * A client holds one connection and may be shared between threads. Any
+ * number of requests can be outstanding at once, each is matched to its
+ * response by id, whatever order the responses come back in.
+ */
+public final class FrameClient implements Closeable {
+  private static final int BUFFER_SIZE = 16 * 1024;
+  private static final int HTTP_OK = 200;
+  private static final byte[] NO_MESSAGE = new byte[0];
+
+  /**
+   * A request the server answered with an error.
+   */
+  public static final class FrameException extends IOException {
+    private static final long serialVersionUID = 1L;
+    private final int _status;
+    private final String _errorCode;
+
+    FrameException(final int status, final String message, final String errorCode) {
+      super(message);
+      this._status = status;
+      this._errorCode = errorCode;
+    }
+
+    /**
+     * Status, as the matching HTTP endpoint would have answered.
+     *
+     * @return http status code
+     */
+    public int getStatus() {
+      return _status;
+    }
+
+    /**
+     * Error code, such as {@code SAXParseException} or {@code Overloaded}.
+     *
+     * @return name of the error
+     */
+    public String getErrorCode() {
+      return _errorCode;
+    }
+  }
+
+  private final Socket socket;
+  private final DataOutputStream out;
+  private final Map<Integer, CompletableFuture<byte[]>> pending = new ConcurrentHashMap<>();
+  private final AtomicInteger ids = new AtomicInteger();
+  private volatile IOException failure;
+
+  /**
+   * Connect to a server.
+   *
+   * @param host
+   *          server host
+   * @param port
+   *          frame port of the server
+   * @throws IOException
+   *           if the server could not be reached
+   */
+  public FrameClient(final String host, final int port) throws IOException {
+    this.socket = new Socket(host, port);
+    this.socket.setTcpNoDelay(true);
+    this.out = new DataOutputStream(
+        new BufferedOutputStream(socket.getOutputStream(), BUFFER_SIZE)
+    );
+    Thread reader = new Thread(this::read, "frame-client");
+    reader.setDaemon(true);
+    reader.start();
+  }
+
+  /**
+   * Sign a request.
+   *
+   * @param message
+   *          unsigned DUIS request
+   * @param preserveCounter
+   *          keep the counter in the request id
+   * @return signed request
+   * @throws IOException
+   *           if the request failed, with {@link FrameException} if the
+   *           server refused it
+   */
+  public byte[] sign(final byte[] message, final boolean preserveCounter) throws IOException {
+    return await(signAsync(message, preserveCounter));
+  }
+
+  /**
+   * Sign a request without waiting for the response.
+   *
+   * @param message
+   *          unsigned DUIS request
+   * @param preserveCounter
+   *          keep the counter in the request id
+   * @return signed request, once answered
+   */
+  public CompletableFuture<byte[]> signAsync(final byte[] message, final boolean preserveCounter) {
+    return send(FrameServer.SIGN, preserveCounter ? FrameServer.PRESERVE_COUNTER : 0, message);
+  }
+
+  /**
+   * Verify a response.
+   *
+   * @param message
+   *          signed DUIS response
+   * @return response without its signature
+   * @throws IOException
+   *           if the request failed, with {@link FrameException} if the
+   *           response is not valid
+   */
+  public byte[] verify(final byte[] message) throws IOException {
+    return await(verifyAsync(message));
+  }
+
+  /**
+   * Verify a response without waiting for the result.
+   *
+   * @param message
+   *          signed DUIS response
+   * @return response without its signature, once answered
+   */
+  public CompletableFuture<byte[]> verifyAsync(final byte[] message) {
+    return send(FrameServer.VERIFY, 0, message);
+  }
+
+  /**
+   * Round trip without a message, to check the connection.
+   *
+   * @throws IOException
+   *           if the server did not answer
+   */
+  public void ping() throws IOException {
+    await(send(FrameServer.PING, 0, NO_MESSAGE));
+  }
+
+  CompletableFuture<byte[]> send(final int operation, final int flags, final byte[] message) {
+    CompletableFuture<byte[]> response = new CompletableFuture<>();
+    int id = ids.incrementAndGet();
+    pending.put(id, response);
+    try {
+      synchronized (out) {
+        if (failure != null) {
+          throw failure;
+        }
+        out.writeInt(FrameServer.REQUEST_HEADER + message.length);
+        out.writeInt(id);
+        out.writeByte(operation);
+        out.writeByte(flags);
+        out.write(message);
+        out.flush();
+      }
+    } catch (IOException e) {
+      pending.remove(id);
+      response.completeExceptionally(e);
+    }
+    return response;
+  }
+
+  private static byte[] await(final CompletableFuture<byte[]> response) throws IOException {
+    try {
+      return response.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("interrupted waiting for a response");
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof IOException) {
+        throw (IOException) e.getCause();
+      }
+      throw new IOException(e.getCause());
+    }
+  }
+
+  private void read() {
+    try (DataInputStream in = new DataInputStream(
+        new BufferedInputStream(socket.getInputStream(), BUFFER_SIZE)
+    )) {
+      while (true) {
+        int length = in.readInt();
+        int id = in.readInt();
+        int status = in.readUnsignedShort();
+        byte[] body = new byte[length - FrameServer.RESPONSE_HEADER];
+        in.readFully(body);
+        CompletableFuture<byte[]> response = pending.remove(id);
+        if (response == null) {
+          continue;
+        }
+        if (status == HTTP_OK) {
+          response.complete(body);
+        } else {
+          response.completeExceptionally(error(status, body));
+        }
+      }
+    } catch (IOException e) {
+      fail(e);
+    }
+  }
+
+  private static FrameException error(final int status, final byte[] body) {
+    String message = "request failed with " + status;
+    String code = "";
+    try {
+      JsonObject json = JsonParser
+          .parseString(new String(body, StandardCharsets.UTF_8))
+          .getAsJsonObject();
+      message += ": " + json.get("error").getAsString();
+      code = json.get("errorCode").getAsString();
+    } catch (RuntimeException ignored) {
+    }
+    return new FrameException(status, message, code);
+  }
+
+  private void fail(final IOException e) {
+    synchronized (out) {
+      if (failure == null) {
+        failure = e;
+      }
+    }
+    for (Integer id : pending.keySet()) {
+      CompletableFuture<byte[]> response = pending.remove(id);
+      if (response != null) {
+        response.completeExceptionally(failure);
+      }
+    }
+  }
+
+  /**
+   * Close the connection, requests still outstanding fail.
+   */
+  @Override
+  public void close() throws IOException {
+    fail(new IOException("client closed"));
+    socket.close();
+  }
+}
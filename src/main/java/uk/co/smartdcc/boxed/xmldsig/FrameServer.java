@@ -0,0 +1,435 @@
+/*
+ * Created on Mon Oct 19 2026
+ *
+ * Copyright (c) 2026 Smart DCC Limited
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package uk.co.smartdcc.boxed.xmldsig;
+
+import com.google.gson.Gson;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sign and verify over a length prefixed binary protocol, for clients
+ * sending many small messages, where the HTTP headers and the Base64 JSON
+ * bodies cost more than the messages themselves. See {@link FrameClient}.
+ *
+ * A request frame is
+ *
+ * <pre>
+ *   int32   length of the rest of the frame
+ *   int32   id, chosen by the client
+ *   uint8   operation: PING, SIGN or VERIFY
+ *   uint8   flags: PRESERVE_COUNTER, TRUSTED
+ *   bytes   XML message
+ * </pre>
+ *
+ * and a response frame is
+ *
+ * <pre>
+ *   int32   length of the rest of the frame
+ *   int32   id of the request
+ *   uint16  status, as the matching HTTP endpoint would answer
+ *   bytes   XML message on 200, otherwise the JSON error body
+ * </pre>
+ *
+ * in network byte order. A connection carries any number of requests at
+ * once. Each is handed to the {@link Admission} workers as soon as it is
+ * read, and its response is written when it completes, so responses may
+ * come back in a different order. A frame over the size limit is answered
+ * with 413 and the connection is closed, without reading the message.
+ *
+ * Each connection has a thread reading it and one writing its responses,
+ * the server is meant for a few long lived connections from other services.
+ * Workers queue a response and return, so a peer that stops reading holds up
+ * only its own connection. At most {@value #MAX_OUTSTANDING} requests per
+ * connection are being handled or waiting to be written, beyond that the
+ * next frame is not read until a response has been written.
+ */
+final class FrameServer {
+  static final int PING = 0;
+  static final int SIGN = 1;
+  static final int VERIFY = 2;
+  static final int PRESERVE_COUNTER = 1;
+  static final int TRUSTED = 2;
+  /** Bytes of a request frame after the length, before the message. */
+  static final int REQUEST_HEADER = 6;
+  /** Bytes of a response frame after the length, before the body. */
+  static final int RESPONSE_HEADER = 6;
+  /** Requests per connection whose response has not been written yet. */
+  static final int MAX_OUTSTANDING = 64;
+  private static final long CLOSE_TIMEOUT_MS = 1000;
+  /* queued after the last response, the writer thread stops on it */
+  private static final byte[] END = new byte[0];
+  private static final Gson GSON = new Gson();
+  private static final int BUFFER_SIZE = 16 * 1024;
+  private static final int HTTP_OK = 200;
+  private static final int HTTP_PAYLOAD_TOO_LARGE = 413;
+  private static final int HTTP_INTERNAL_ERROR = 500;
+  private static final int HTTP_SERVICE_UNAVAILABLE = 503;
+
+  /** Handles a request frame, on one of the workers. */
+  interface Handler {
+    void handle(Exchange exchange) throws IOException;
+  }
+
+  private final ServerSocket listener;
+  private final Thread acceptor;
+  private final Admission admission;
+  private final Handler handler;
+  private final int maxMessage;
+  private final Set<Connection> connections = ConcurrentHashMap.newKeySet();
+  private volatile boolean closed = false;
+
+  /**
+   * A request and the connection its response is written to.
+   */
+  final class Exchange {
+    private final Connection connection;
+    private final int id;
+    private final int operation;
+    private final int flags;
+    private final byte[] message;
+
+    Exchange(
+        final Connection owner, final int requestId, final int op, final int requestFlags,
+        final byte[] body
+    ) {
+      this.connection = owner;
+      this.id = requestId;
+      this.operation = op;
+      this.flags = requestFlags;
+      this.message = body;
+    }
+
+    int getOperation() {
+      return operation;
+    }
+
+    boolean isPreserveCounter() {
+      return (flags & PRESERVE_COUNTER) != 0;
+    }
+
+    boolean isTrusted() {
+      return (flags & TRUSTED) != 0;
+    }
+
+    byte[] getMessage() {
+      return message;
+    }
+
+    InetSocketAddress getRemoteAddress() {
+      return (InetSocketAddress) connection.socket.getRemoteSocketAddress();
+    }
+
+    void respond(final int status, final byte[] body) throws IOException {
+      connection.write(id, status, body, body.length);
+    }
+
+    /*
+     * the writer belongs to the calling worker, so it is copied before returning
+     */
+    void respond(final DomWriter body) throws IOException {
+      connection.write(id, HTTP_OK, body.buffer(), body.size());
+    }
+
+    void respondError(final int status, final String error, final String errorCode)
+        throws IOException {
+      respond(status, errorBody(error, errorCode));
+    }
+  }
+
+  private final class Connection implements Runnable {
+    private final Socket socket;
+    private final DataOutputStream out;
+    private final Semaphore outstanding = new Semaphore(MAX_OUTSTANDING);
+    private final BlockingQueue<byte[]> responses = new LinkedBlockingQueue<>();
+    private final Thread reader;
+    private final Thread writer;
+
+    Connection(final Socket accepted) throws IOException {
+      this.socket = accepted;
+      this.out = new DataOutputStream(
+          new BufferedOutputStream(accepted.getOutputStream(), BUFFER_SIZE)
+      );
+      this.reader = new Thread(this, "frame-connection");
+      this.reader.setDaemon(true);
+      this.writer = new Thread(this::writeResponses, "frame-writer");
+      this.writer.setDaemon(true);
+    }
+
+    void start() {
+      writer.start();
+      reader.start();
+    }
+
+    /*
+     * closing the input stream would close the socket before the responses are
+     * written
+     */
+    @Override
+    public void run() {
+      try {
+        DataInputStream in = new DataInputStream(
+            new BufferedInputStream(socket.getInputStream(), BUFFER_SIZE)
+        );
+        while (!closed) {
+          int length;
+          try {
+            length = in.readInt();
+          } catch (EOFException e) {
+            break;
+          }
+          if (length < REQUEST_HEADER) {
+            break;
+          }
+          int id = in.readInt();
+          int op = in.readUnsignedByte();
+          int flags = in.readUnsignedByte();
+          /* released once the response to this frame has been written */
+          outstanding.acquire();
+          if (length - REQUEST_HEADER > maxMessage) {
+            Metrics.getInstance().increment(
+                "xmldsig_requests_rejected_total", "reason", "TooLarge"
+            );
+            write(
+                id, HTTP_PAYLOAD_TOO_LARGE, errorBody(
+                    "Message of " + (length - REQUEST_HEADER) + " bytes is over the limit of "
+                        + maxMessage,
+                    "TooLargeException"
+                )
+            );
+            break;
+          }
+          byte[] message = new byte[length - REQUEST_HEADER];
+          in.readFully(message);
+          dispatch(new Exchange(this, id, op, flags, message));
+        }
+      } catch (IOException | RejectedExecutionException ignored) {
+      } catch (InterruptedException e) {
+        /* closed */
+        return;
+      }
+      /*
+       * a client may half close once it has sent its requests, so the frames
+       * already dispatched are answered first, every permit is back once they
+       * are written
+       */
+      try {
+        outstanding.acquire(MAX_OUTSTANDING);
+      } catch (InterruptedException e) {
+        return;
+      }
+      finish();
+    }
+
+    private void dispatch(final Exchange exchange) {
+      try {
+        submit(exchange);
+      } catch (RejectedExecutionException e) {
+        /* no response will be written for it */
+        outstanding.release();
+        throw e;
+      }
+    }
+
+    private void submit(final Exchange exchange) {
+      admission.submit(() -> {
+        try {
+          handler.handle(exchange);
+        } catch (IOException e) {
+          close();
+        } catch (RuntimeException e) {
+          try {
+            exchange.respondError(
+                HTTP_INTERNAL_ERROR, e.getMessage(), e.getClass().getSimpleName()
+            );
+          } catch (IOException ignored) {
+            close();
+          }
+        }
+      }, (error, code) -> {
+        try {
+          exchange.respondError(HTTP_SERVICE_UNAVAILABLE, error, code);
+        } catch (IOException e) {
+          close();
+        }
+      });
+    }
+
+    private void write(final int id, final int status, final byte[] body) throws IOException {
+      write(id, status, body, body.length);
+    }
+
+    /* queues the response frame for the writer thread */
+    private void write(
+        final int id, final int status, final byte[] body, final int length
+    ) throws IOException {
+      if (socket.isClosed()) {
+        throw new IOException("connection closed");
+      }
+      ByteBuffer frame = ByteBuffer.allocate(Integer.BYTES + RESPONSE_HEADER + length);
+      frame.putInt(RESPONSE_HEADER + length).putInt(id).putShort((short) status)
+          .put(body, 0, length);
+      responses.add(frame.array());
+    }
+
+    /* flushes only once the queue is empty, so that responses share packets */
+    private void writeResponses() {
+      try {
+        while (true) {
+          byte[] frame = responses.poll();
+          if (frame == null) {
+            out.flush();
+            frame = responses.take();
+          }
+          if (frame == END) {
+            out.flush();
+            break;
+          }
+          out.write(frame);
+          outstanding.release();
+        }
+      } catch (IOException | InterruptedException ignored) {
+      }
+      close();
+    }
+
+    /* stop once the responses already queued are written */
+    private void finish() {
+      responses.add(END);
+    }
+
+    private void awaitFinished(final long deadline) {
+      try {
+        writer.join(Math.max(1, TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime())));
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+
+    private void close() {
+      connections.remove(this);
+      try {
+        socket.close();
+      } catch (IOException ignored) {
+      }
+      /* wakes the reader waiting for a permit, and the writer waiting for a frame */
+      reader.interrupt();
+      responses.add(END);
+    }
+  }
+
+  /**
+   * Bind the port and start accepting connections.
+   *
+   * @param address
+   *          address to listen on
+   * @param backlog
+   *          connections waiting to be accepted, 0 for the system default
+   * @param workers
+   *          admits and runs the requests
+   * @param requestHandler
+   *          answers each request
+   * @param maxBytes
+   *          bytes in a message, 0 for no limit
+   * @throws IOException
+   *           if the port could not be bound
+   */
+  FrameServer(
+      final InetSocketAddress address, final int backlog, final Admission workers,
+      final Handler requestHandler, final long maxBytes
+  ) throws IOException {
+    this.listener = new ServerSocket();
+    this.listener.bind(address, backlog);
+    this.admission = workers;
+    this.handler = requestHandler;
+    this.maxMessage = (int) Math.min(
+        maxBytes > 0 ? maxBytes : Long.MAX_VALUE, Integer.MAX_VALUE - REQUEST_HEADER
+    );
+    this.acceptor = new Thread(this::accept, "frame-acceptor");
+    this.acceptor.setDaemon(true);
+    this.acceptor.start();
+  }
+
+  InetSocketAddress getAddress() {
+    return (InetSocketAddress) listener.getLocalSocketAddress();
+  }
+
+  private void accept() {
+    while (!closed) {
+      try {
+        Socket socket = listener.accept();
+        socket.setTcpNoDelay(true);
+        Connection connection = new Connection(socket);
+        connections.add(connection);
+        connection.start();
+      } catch (IOException e) {
+        if (listener.isClosed()) {
+          return;
+        }
+      }
+    }
+  }
+
+  static byte[] errorBody(final String error, final String errorCode) {
+    return GSON.toJson(Map.of("error", String.valueOf(error), "errorCode", errorCode))
+        .getBytes(StandardCharsets.UTF_8);
+  }
+
+  /**
+   * Stop listening and close every connection, once the responses queued on
+   * it are written or {@value #CLOSE_TIMEOUT_MS} ms have passed. Called once
+   * the requests admitted have completed, see {@link Admission#onClose}.
+   */
+  void close() {
+    closed = true;
+    long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(CLOSE_TIMEOUT_MS);
+    try {
+      listener.close();
+    } catch (IOException ignored) {
+    }
+    try {
+      /* the port is only released once the acceptor has left accept() */
+      acceptor.join(CLOSE_TIMEOUT_MS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    for (Connection connection : connections) {
+      connection.finish();
+    }
+    for (Connection connection : connections) {
+      connection.awaitFinished(deadline);
+      connection.close();
+    }
+  }
+}
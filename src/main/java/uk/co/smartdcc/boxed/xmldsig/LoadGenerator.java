@@ -0,0 +1,469 @@
+/*
+ * Created on Mon Oct 19 2026
+ *
+ * Copyright (c) 2026 Smart DCC Limited
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package uk.co.smartdcc.boxed.xmldsig;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.URI;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Closed loop HTTP load generator, so that the transports of the
+ * {@link Server} are compared with the same client.
+ *
+ * Each connection is a thread with a persistent socket, sending
+ * {@code depth} requests back to back before reading their responses, so
+ * that with a depth over 1 the requests are pipelined. A connection the
+ * server closes is reopened. Throughput and latency percentiles are
+ * reported, a request's latency being measured from when its batch was
+ * sent.
+ *
+ * Against the frame protocol of {@link FrameServer}, each connection is a
+ * {@link FrameClient} keeping {@code depth} requests outstanding, sent
+ * together and waited for together in the same way.
+ */
+public final class LoadGenerator {
+  private static final int BUFFER_SIZE = 16 * 1024;
+  private static final int DEFAULT_CONNECTIONS = 4;
+  private static final int DEFAULT_REQUESTS = 1000;
+  private static final double PERCENT = 100;
+  private static final double MEDIAN = 50;
+  private static final double TAIL = 99;
+  private static final double NANOS_PER_MILLI = 1e6;
+  private static final double NANOS_PER_SECOND = 1e9;
+
+  private final URI url;
+  private final byte[] request;
+  private final int depth;
+  private final Path socket;
+  private final InetSocketAddress frames;
+
+  /** Outcome of a run. */
+  public static final class Result {
+    private final long[] latencies;
+    private final int errors;
+    private final long elapsedNanos;
+
+    Result(final long[] measured, final int failed, final long elapsed) {
+      this.latencies = measured.clone();
+      Arrays.sort(this.latencies);
+      this.errors = failed;
+      this.elapsedNanos = elapsed;
+    }
+
+    public int getRequests() {
+      return latencies.length;
+    }
+
+    /**
+     * Requests answered with a status other than 200, or not answered.
+     *
+     * @return error count
+     */
+    public int getErrors() {
+      return errors;
+    }
+
+    public double getRequestsPerSecond() {
+      return latencies.length * NANOS_PER_SECOND / elapsedNanos;
+    }
+
+    /**
+     * Latency percentile.
+     *
+     * @param percent
+     *          percentile, 0 to 100
+     * @return latency in milliseconds
+     */
+    public double percentile(final double percent) {
+      if (latencies.length == 0) {
+        return 0;
+      }
+      int index = (int) Math.ceil(percent / PERCENT * latencies.length) - 1;
+      return latencies[Math.max(0, Math.min(index, latencies.length - 1))] / NANOS_PER_MILLI;
+    }
+
+    @Override
+    public String toString() {
+      return String.format(
+          Locale.ROOT, "%d requests, %d errors in %.2f s: %.0f req/s, p50 %.2f ms, p99 %.2f ms",
+          getRequests(), errors, elapsedNanos / NANOS_PER_SECOND, getRequestsPerSecond(),
+          percentile(MEDIAN), percentile(TAIL)
+      );
+    }
+  }
+
+  /**
+   * Prepare a load generator.
+   *
+   * @param endpoint
+   *          url, http only
+   * @param body
+   *          JSON posted with each request, or null to send GET requests
+   * @param pipelineDepth
+   *          requests sent on a connection before reading the responses
+   */
+  public LoadGenerator(final URI endpoint, final byte[] body, final int pipelineDepth) {
+    this(endpoint, body, pipelineDepth, null);
+  }
+
+  /**
+   * Prepare a load generator connecting to a unix domain socket, see
+   * {@link ServerOptions#setSocketPath}.
+   *
+   * @param endpoint
+   *          url, http only, the host and port only go in the {@code Host}
+   *          header when a socket is given
+   * @param body
+   *          JSON posted with each request, or null to send GET requests
+   * @param pipelineDepth
+   *          requests sent on a connection before reading the responses
+   * @param socketPath
+   *          socket file, or null to connect to the host and port
+   */
+  public LoadGenerator(
+      final URI endpoint, final byte[] body, final int pipelineDepth, final Path socketPath
+  ) {
+    if (!"http".equals(endpoint.getScheme())) {
+      throw new IllegalArgumentException("only http urls are supported");
+    }
+    this.url = endpoint;
+    this.depth = Math.max(1, pipelineDepth);
+    this.socket = socketPath;
+    this.frames = null;
+    String path = endpoint.getRawPath() == null || endpoint.getRawPath().isEmpty()
+        ? "/"
+        : endpoint.getRawPath();
+    this.request = UnixSocketClient.request(
+        body == null ? "GET" : "POST", path, endpoint.getHost() + ":" + port(), body
+    );
+  }
+
+  /**
+   * Prepare a load generator for the frame protocol, see
+   * {@link ServerOptions#setFramePort}.
+   *
+   * @param framesAddress
+   *          host and frame port of the server
+   * @param message
+   *          XML signed with its counter preserved by each request, or null
+   *          to send pings
+   * @param pipelineDepth
+   *          requests outstanding on a connection
+   */
+  public LoadGenerator(
+      final InetSocketAddress framesAddress, final byte[] message, final int pipelineDepth
+  ) {
+    this.url = null;
+    this.request = message;
+    this.depth = Math.max(1, pipelineDepth);
+    this.socket = null;
+    this.frames = framesAddress;
+  }
+
+  /**
+   * Sign request for the bundled message, see {@link Warmup}.
+   *
+   * @return JSON body for {@code /sign}
+   */
+  public static byte[] signRequest() {
+    return ("{\"message\":\""
+        + Base64.getEncoder().encodeToString(Warmup.REQUEST.getBytes(StandardCharsets.UTF_8))
+        + "\",\"preserveCounter\":true}").getBytes(StandardCharsets.US_ASCII);
+  }
+
+  private int port() {
+    return url.getPort() < 0 ? ServerOptions.DEFAULT_PORT : url.getPort();
+  }
+
+  /**
+   * Send requests and wait for every response.
+   *
+   * @param connections
+   *          concurrent connections
+   * @param requests
+   *          requests in total, spread over the connections
+   * @return outcome
+   * @throws InterruptedException
+   *           if interrupted while waiting
+   */
+  public Result run(final int connections, final int requests) throws InterruptedException {
+    long[] latencies = new long[requests];
+    AtomicInteger errors = new AtomicInteger();
+    List<Thread> threads = new ArrayList<>();
+    long start = System.nanoTime();
+    int offset = 0;
+    for (int i = 0; i < connections; i++) {
+      int count = requests / connections + (i < requests % connections ? 1 : 0);
+      int from = offset;
+      Thread thread = new Thread(
+          () -> connection(latencies, from, count, errors), "load-" + i
+      );
+      thread.start();
+      threads.add(thread);
+      offset += count;
+    }
+    for (Thread thread : threads) {
+      thread.join();
+    }
+    return new Result(latencies, errors.get(), System.nanoTime() - start);
+  }
+
+  private void connection(
+      final long[] latencies, final int from, final int count, final AtomicInteger errors
+  ) {
+    if (frames != null) {
+      frameConnection(latencies, from, count, errors);
+      return;
+    }
+    Closeable connection = null;
+    InputStream in = null;
+    OutputStream out = null;
+    int sent = 0;
+    try {
+      while (sent < count) {
+        int batch = Math.min(depth, count - sent);
+        long start = System.nanoTime();
+        int answered = 0;
+        boolean close = false;
+        try {
+          if (connection == null) {
+            if (socket != null) {
+              SocketChannel channel = UnixSockets.connect(socket);
+              connection = channel;
+              in = Channels.newInputStream(channel);
+              out = Channels.newOutputStream(channel);
+            } else {
+              Socket tcp = new Socket(url.getHost(), port());
+              connection = tcp;
+              tcp.setTcpNoDelay(true);
+              in = tcp.getInputStream();
+              out = tcp.getOutputStream();
+            }
+            in = new BufferedInputStream(in, BUFFER_SIZE);
+            out = new BufferedOutputStream(out, BUFFER_SIZE);
+          }
+          for (int i = 0; i < batch; i++) {
+            out.write(request);
+          }
+          out.flush();
+          while (answered < batch) {
+            UnixSocketClient.Response response = UnixSocketClient.read(in);
+            latencies[from + sent + answered] = System.nanoTime() - start;
+            answered++;
+            if (response.getStatus() != UnixSocketClient.HTTP_OK) {
+              errors.incrementAndGet();
+            }
+            if (response.isClose()) {
+              close = true;
+              break;
+            }
+          }
+        } catch (IOException e) {
+          close = true;
+        }
+        for (int i = answered; i < batch; i++) {
+          latencies[from + sent + i] = System.nanoTime() - start;
+          errors.incrementAndGet();
+        }
+        sent += batch;
+        if (close && connection != null) {
+          connection.close();
+          connection = null;
+        }
+      }
+    } catch (IOException ignored) {
+    } finally {
+      if (connection != null) {
+        try {
+          connection.close();
+        } catch (IOException ignored) {
+        }
+      }
+    }
+  }
+
+  private void frameConnection(
+      final long[] latencies, final int from, final int count, final AtomicInteger errors
+  ) {
+    FrameClient client = null;
+    int sent = 0;
+    try {
+      while (sent < count) {
+        int batch = Math.min(depth, count - sent);
+        if (client == null) {
+          client = new FrameClient(frames.getHostString(), frames.getPort());
+        }
+        long start = System.nanoTime();
+        List<CompletableFuture<byte[]>> responses = new ArrayList<>(batch);
+        for (int i = 0; i < batch; i++) {
+          int index = from + sent + i;
+          responses.add(
+              (request == null
+                  ? client.send(FrameServer.PING, 0, new byte[0])
+                  : client.send(FrameServer.SIGN, FrameServer.PRESERVE_COUNTER, request))
+                  .whenComplete((r, e) -> latencies[index] = System.nanoTime() - start)
+          );
+        }
+        boolean failed = false;
+        for (CompletableFuture<byte[]> response : responses) {
+          try {
+            response.join();
+          } catch (CompletionException e) {
+            errors.incrementAndGet();
+            failed |= !(e.getCause() instanceof FrameClient.FrameException);
+          }
+        }
+        sent += batch;
+        if (failed) {
+          client.close();
+          client = null;
+        }
+      }
+    } catch (IOException e) {
+      for (int i = sent; i < count; i++) {
+        errors.incrementAndGet();
+      }
+    } finally {
+      if (client != null) {
+        try {
+          client.close();
+        } catch (IOException ignored) {
+        }
+      }
+    }
+  }
+
+  static void showHelp() {
+    System.out.println(
+        "Usage: java -cp xmldsign.jar uk.co.smartdcc.boxed.xmldsig.LoadGenerator [-u url]"
+            + " [-s socket | -b port] [-c connections] [-n requests] [-d depth] [-w requests]"
+            + " [-f body.json] [--get]"
+    );
+    System.out.println(
+        "  -u url        Endpoint (default: http://localhost:" + ServerOptions.DEFAULT_PORT
+            + "/sign)"
+    );
+    System.out.println("  -s socket     Connect to a unix domain socket, see --socket");
+    System.out.println(
+        "  -b port       Sign over the frame protocol on the url's host, see --framePort"
+    );
+    System.out.println(
+        "  -c n          Concurrent connections (default: " + DEFAULT_CONNECTIONS + ")"
+    );
+    System.out.println("  -n n          Requests measured (default: " + DEFAULT_REQUESTS + ")");
+    System.out.println("  -d n          Requests pipelined per connection (default: 1)");
+    System.out.println("  -w n          Requests sent before measuring (default: same as -n)");
+    System.out.println(
+        "  -f file       JSON body, XML with -b (default: sign the bundled request)"
+    );
+    System.out.println("  --get         Send GET requests without a body, pings with -b");
+  }
+
+  public static void main(final String[] args) throws IOException, InterruptedException {
+    URI url = URI.create("http://localhost:" + ServerOptions.DEFAULT_PORT + "/sign");
+    int connections = DEFAULT_CONNECTIONS;
+    int requests = DEFAULT_REQUESTS;
+    int depth = 1;
+    int warmup = -1;
+    byte[] file = null;
+    boolean get = false;
+    Path socket = null;
+    int framePort = 0;
+    try {
+      for (int i = 0; i < args.length; i++) {
+        switch (args[i]) {
+          case "-u":
+            url = URI.create(args[++i]);
+            break;
+          case "-s":
+            socket = Paths.get(args[++i]);
+            break;
+          case "-b":
+            framePort = Integer.parseInt(args[++i]);
+            break;
+          case "-c":
+            connections = Integer.parseInt(args[++i]);
+            break;
+          case "-n":
+            requests = Integer.parseInt(args[++i]);
+            break;
+          case "-d":
+            depth = Integer.parseInt(args[++i]);
+            break;
+          case "-w":
+            warmup = Integer.parseInt(args[++i]);
+            break;
+          case "-f":
+            file = Files.readAllBytes(Paths.get(args[++i]));
+            break;
+          case "--get":
+            get = true;
+            break;
+          case "-h":
+          default:
+            showHelp();
+            return;
+        }
+      }
+    } catch (ArrayIndexOutOfBoundsException | IllegalArgumentException e) {
+      showHelp();
+      return;
+    }
+    if (connections < 1 || requests < 1 || depth < 1) {
+      showHelp();
+      return;
+    }
+    LoadGenerator generator;
+    if (framePort > 0) {
+      byte[] message = file != null ? file : Warmup.REQUEST.getBytes(StandardCharsets.UTF_8);
+      generator = new LoadGenerator(
+          new InetSocketAddress(url.getHost(), framePort), get ? null : message, depth
+      );
+    } else {
+      byte[] body = file != null ? file : signRequest();
+      generator = new LoadGenerator(url, get ? null : body, depth, socket);
+    }
+    int warmupRequests = warmup < 0 ? requests : warmup;
+    if (warmupRequests > 0) {
+      System.err.println("[I] warm-up: " + generator.run(connections, warmupRequests));
+    }
+    Result result = generator.run(connections, requests);
+    System.err.println("[I] " + result);
+    System.exit(result.getErrors() == 0 ? 0 : 1);
+  }
+}
@@ -0,0 +1,328 @@
+/*
+ * Created on Mon Oct 19 2026
+ *
+ * Copyright (c) 2026 Smart DCC Limited
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package uk.co.smartdcc.boxed.xmldsig;
+
+import com.sun.net.httpserver.HttpExchange;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Size limits for messages accepted by the {@link Server}, so that a single
+ * oversized or hostile request cannot take an unbounded share of the heap.
+ *
+ * The request body is refused from its {@code Content-Length} before anything
+ * is read, and a chunked body is counted while it is read. The XML carried by
+ * a request is limited in the number of elements and how deeply they nest,
+ * counted while the parser reads it, so a message is abandoned as soon as it
+ * goes over. Deep nesting is limited by default, as signing and serializing
+ * walk the tree recursively.
+ */
+public final class MessageLimits {
+  static final int HTTP_PAYLOAD_TOO_LARGE = 413;
+  static final long DEFAULT_MAX_BYTES = 16L * 1024 * 1024;
+  static final int DEFAULT_MAX_DEPTH = 64;
+
+  /**
+   * A message went over one of the limits, reported to the client as 413.
+   */
+  public static final class TooLargeException extends IOException {
+    private static final long serialVersionUID = 1L;
+
+    TooLargeException(final String message) {
+      super(message);
+    }
+  }
+
+  private final long _maxBytes;
+  private final int _maxElements;
+  private final int _maxDepth;
+
+  /**
+   * Limits, each 0 for none.
+   *
+   * @param maxBytes
+   *          bytes in a request body
+   * @param maxElements
+   *          elements in a message
+   * @param maxDepth
+   *          nesting depth of elements in a message
+   */
+  public MessageLimits(final long maxBytes, final int maxElements, final int maxDepth) {
+    this._maxBytes = maxBytes;
+    this._maxElements = maxElements;
+    this._maxDepth = maxDepth;
+  }
+
+  public long getMaxBytes() {
+    return _maxBytes;
+  }
+
+  public int getMaxElements() {
+    return _maxElements;
+  }
+
+  public int getMaxDepth() {
+    return _maxDepth;
+  }
+
+  /**
+   * Read a request body, refusing it before reading if the declared length is
+   * over the byte limit.
+   *
+   * @param exchange
+   *          request
+   * @return body
+   * @throws TooLargeException
+   *           if the body is over the byte limit
+   * @throws IOException
+   *           if the body could not be read
+   */
+  public byte[] readBody(final HttpExchange exchange) throws IOException {
+    return body(exchange, 0, 0).readAllBytes();
+  }
+
+  /**
+   * Request body carrying a bare XML message, limited in size and in its
+   * elements.
+   *
+   * @param exchange
+   *          request
+   * @return body, raising {@link TooLargeException} once a limit is passed
+   * @throws TooLargeException
+   *           if the declared length is over the byte limit
+   */
+  public InputStream xmlBody(final HttpExchange exchange) throws TooLargeException {
+    return body(exchange, _maxElements, _maxDepth);
+  }
+
+  /**
+   * XML message carried by a request, limited in its elements.
+   *
+   * @param message
+   *          message
+   * @return message, raising {@link TooLargeException} once a limit is passed
+   */
+  public InputStream xml(final InputStream message) {
+    if (_maxElements <= 0 && _maxDepth <= 0) {
+      return message;
+    }
+    return new LimitedInputStream(message, 0, _maxElements, _maxDepth);
+  }
+
+  private InputStream body(final HttpExchange exchange, final int elements, final int depth)
+      throws TooLargeException {
+    String declared = exchange.getRequestHeaders().getFirst("Content-Length");
+    if (_maxBytes > 0 && declared != null) {
+      long length;
+      try {
+        length = Long.parseLong(declared.trim());
+      } catch (NumberFormatException e) {
+        length = -1;
+      }
+      if (length > _maxBytes) {
+        throw new TooLargeException(
+            "Request of " + length + " bytes is over the limit of " + _maxBytes
+        );
+      }
+    }
+    InputStream is = exchange.getRequestBody();
+    if (_maxBytes <= 0 && elements <= 0 && depth <= 0) {
+      return is;
+    }
+    return new LimitedInputStream(is, _maxBytes, elements, depth);
+  }
+
+  /*
+   * Counts bytes, and start and end tags without parsing: a tag is only
+   * recognised outside comments, processing instructions and CDATA sections,
+   * and quoted attribute values are skipped. The markup characters are ASCII,
+   * so multi-byte UTF-8 sequences never match them.
+   */
+  private static final class LimitedInputStream extends FilterInputStream {
+    private static final int TEXT = 0;
+    private static final int OPEN = 1;
+    private static final int START_TAG = 2;
+    private static final int QUOTED = 3;
+    private static final int END_TAG = 4;
+    private static final int BANG = 5;
+    private static final int COMMENT = 6;
+    private static final int CDATA = 7;
+    private static final int DECLARATION = 8;
+    private static final int INSTRUCTION = 9;
+    private static final int CLOSE_RUN = 2;
+    private static final int SKIP_BUFFER = 4096;
+
+    private final long _maxBytes;
+    private final int _maxElements;
+    private final int _maxDepth;
+    private long _bytes = 0;
+    private int _elements = 0;
+    private int _depth = 0;
+    private int _state = TEXT;
+    private int _quote = 0;
+    private int _run = 0;
+    private boolean _slash = false;
+
+    LimitedInputStream(
+        final InputStream in, final long maxBytes, final int maxElements, final int maxDepth
+    ) {
+      super(in);
+      this._maxBytes = maxBytes;
+      this._maxElements = maxElements;
+      this._maxDepth = maxDepth;
+    }
+
+    @Override
+    public int read() throws IOException {
+      int b = super.read();
+      if (b >= 0) {
+        count(1);
+        scan(b);
+      }
+      return b;
+    }
+
+    @Override
+    public int read(final byte[] b, final int off, final int len) throws IOException {
+      int n = super.read(b, off, len);
+      if (n > 0) {
+        count(n);
+        if (_maxElements > 0 || _maxDepth > 0) {
+          for (int i = off; i < off + n; i++) {
+            scan(b[i]);
+          }
+        }
+      }
+      return n;
+    }
+
+    @Override
+    public long skip(final long n) throws IOException {
+      /* skipped bytes could hide markup, so they are read */
+      if (n <= 0) {
+        return 0;
+      }
+      byte[] buffer = new byte[(int) Math.min(n, SKIP_BUFFER)];
+      int read = read(buffer, 0, buffer.length);
+      return Math.max(read, 0);
+    }
+
+    @Override
+    public boolean markSupported() {
+      return false;
+    }
+
+    private void count(final int n) throws TooLargeException {
+      _bytes += n;
+      if (_maxBytes > 0 && _bytes > _maxBytes) {
+        throw new TooLargeException("Request is over the limit of " + _maxBytes + " bytes");
+      }
+    }
+
+    private void scan(final int b) throws TooLargeException {
+      switch (_state) {
+        case TEXT:
+          if (b == '<') {
+            _state = OPEN;
+          }
+          break;
+        case OPEN:
+          if (b == '/') {
+            _state = END_TAG;
+            _depth--;
+          } else if (b == '!') {
+            _state = BANG;
+          } else if (b == '?') {
+            _state = INSTRUCTION;
+            _run = 0;
+          } else {
+            _state = START_TAG;
+            _slash = false;
+            open();
+          }
+          break;
+        case START_TAG:
+          if (b == '"' || b == '\'') {
+            _state = QUOTED;
+            _quote = b;
+          } else if (b == '>') {
+            _state = TEXT;
+            if (_slash) {
+              _depth--;
+            }
+          } else {
+            _slash = b == '/';
+          }
+          break;
+        case QUOTED:
+          if (b == _quote) {
+            _state = START_TAG;
+            _slash = false;
+          }
+          break;
+        case END_TAG:
+        case DECLARATION:
+          if (b == '>') {
+            _state = TEXT;
+          }
+          break;
+        case BANG:
+          _state = b == '-' ? COMMENT : b == '[' ? CDATA : DECLARATION;
+          _run = 0;
+          break;
+        case COMMENT:
+          _run = closes(b, '-');
+          break;
+        case CDATA:
+          _run = closes(b, ']');
+          break;
+        case INSTRUCTION:
+          if (b == '>' && _run > 0) {
+            _state = TEXT;
+          }
+          _run = b == '?' ? 1 : 0;
+          break;
+        default:
+          break;
+      }
+    }
+
+    /* "-->" and "]]>", the opening "<!-" or "<![" never counts towards the run */
+    private int closes(final int b, final int marker) {
+      if (b == marker) {
+        return _run + 1;
+      }
+      if (b == '>' && _run >= CLOSE_RUN) {
+        _state = TEXT;
+      }
+      return 0;
+    }
+
+    private void open() throws TooLargeException {
+      _elements++;
+      _depth++;
+      if (_maxElements > 0 && _elements > _maxElements) {
+        throw new TooLargeException("Message has more than " + _maxElements + " elements");
+      }
+      if (_maxDepth > 0 && _depth > _maxDepth) {
+        throw new TooLargeException("Message nests elements deeper than " + _maxDepth);
+      }
+    }
+  }
+}
@@ -0,0 +1,129 @@
+/*
+ * Created on Mon Oct 19 2026
+ *
+ * Copyright (c) 2026 Smart DCC Limited
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package uk.co.smartdcc.boxed.xmldsig;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Process wide counters and gauges, exposed by the server on {@code /metrics}
+ * in the
+ * Prometheus text format.
+ *
+ * A series is a metric name and a list of label name and value pairs, for
+ * example {@code increment("xmldsig_requests_total", "endpoint", "sign")}.
+ */
+public final class Metrics {
+  private static final Metrics INSTANCE = new Metrics();
+
+  private final Map<String, LongAdder> counters = new ConcurrentHashMap<>();
+  private final Map<String, LongSupplier> gauges = new ConcurrentHashMap<>();
+
+  Metrics() {
+  }
+
+  public static Metrics getInstance() {
+    return INSTANCE;
+  }
+
+  private static String series(final String name, final String... labels) {
+    if (labels.length % 2 != 0) {
+      throw new IllegalArgumentException("labels must be name and value pairs");
+    }
+    if (labels.length == 0) {
+      return name;
+    }
+    StringBuilder sb = new StringBuilder(name).append('{');
+    for (int i = 0; i < labels.length; i += 2) {
+      if (i > 0) {
+        sb.append(',');
+      }
+      sb.append(labels[i]).append("=\"").append(labels[i + 1]).append('"');
+    }
+    return sb.append('}').toString();
+  }
+
+  /**
+   * Add one to a counter.
+   *
+   * @param name
+   *          metric name
+   * @param labels
+   *          label name and value pairs
+   */
+  public void increment(final String name, final String... labels) {
+    counters.computeIfAbsent(series(name, labels), k -> new LongAdder()).increment();
+  }
+
+  /**
+   * Current value of a counter.
+   *
+   * @param name
+   *          metric name
+   * @param labels
+   *          label name and value pairs
+   * @return value, 0 if never incremented
+   */
+  public long get(final String name, final String... labels) {
+    LongAdder counter = counters.get(series(name, labels));
+    return counter == null ? 0 : counter.sum();
+  }
+
+  /**
+   * Register a gauge, read each time the metrics are rendered. A gauge
+   * registered again under the same series replaces the previous one.
+   *
+   * @param name
+   *          metric name
+   * @param value
+   *          current value
+   * @param labels
+   *          label name and value pairs
+   */
+  public void gauge(final String name, final LongSupplier value, final String... labels) {
+    gauges.put(series(name, labels), value);
+  }
+
+  /**
+   * Render all series in the Prometheus text exposition format.
+   *
+   * @return metrics text
+   */
+  public String render() {
+    StringBuilder sb = new StringBuilder();
+    String last = null;
+    Map<String, Long> values = new TreeMap<>();
+    counters.forEach((k, v) -> values.put(k, v.sum()));
+    gauges.forEach((k, v) -> values.put(k, v.getAsLong()));
+    for (Map.Entry<String, Long> e : values.entrySet()) {
+      String key = e.getKey();
+      int brace = key.indexOf('{');
+      String name = brace < 0 ? key : key.substring(0, brace);
+      if (!name.equals(last)) {
+        sb.append("# TYPE ").append(name)
+            .append(gauges.containsKey(key) ? " gauge\n" : " counter\n");
+        last = name;
+      }
+      sb.append(key).append(' ').append(e.getValue()).append('\n');
+    }
+    return sb.toString();
+  }
+}
@@ -0,0 +1,1176 @@
+/*
+ * Created on Mon Oct 19 2026
+ *
+ * Copyright (c) 2026 Smart DCC Limited
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package uk.co.smartdcc.boxed.xmldsig;
+
+import com.sun.net.httpserver.Authenticator;
+import com.sun.net.httpserver.Filter;
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpContext;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpPrincipal;
+import com.sun.net.httpserver.HttpServer;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ProtocolException;
+import java.net.SocketAddress;
+import java.net.StandardSocketOptions;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A selector based HTTP/1.1 server, used in place of the JDK server with
+ * {@link Transport#NIO}.
+ *
+ * A single thread accepts connections and reads and writes them without
+ * blocking. Requests are parsed from the bytes read and once the body is
+ * complete the exchange is handed to the executor, normally the
+ * {@link Admission} workers. Connections are persistent and requests may be
+ * pipelined: they are handled one at a time per connection, the next being
+ * parsed as soon as the response to the previous one has been queued, so
+ * responses go out in order. Reads go through one direct buffer, responses
+ * are written from pooled direct buffers with a gathering write and are sent
+ * with {@code Content-Length} rather than chunked.
+ *
+ * It implements the {@link HttpServer} API so that the server's handlers run
+ * on it unchanged. Authenticators are not supported, and a body over the
+ * size limit is not read: the exchange gets the headers, or the first bytes
+ * past the limit of a chunked body, and the connection is closed after the
+ * response.
+ */
+final class NioHttpServer extends HttpServer {
+  static final int BUFFER_SIZE = 16 * 1024;
+  private static final int MAX_HEAD = 64 * 1024;
+  private static final int MAX_CHUNK_LINE = 1024;
+  private static final long MAX_BODY = Integer.MAX_VALUE - 2 * MAX_HEAD;
+  private static final int MAX_POOLED = 1024;
+  private static final long IDLE_TIMEOUT_MS = 30000;
+  private static final long SELECT_TIMEOUT_MS = 1000;
+  private static final long STOP_POLL_MS = 10;
+  private static final int HEX = 16;
+  private static final int HTTP_OK = 200;
+  private static final int HTTP_NO_CONTENT = 204;
+  private static final int HTTP_NOT_MODIFIED = 304;
+  private static final int HTTP_BAD_REQUEST = 400;
+  private static final int HTTP_NOT_FOUND = 404;
+  private static final int HTTP_HEADERS_TOO_LARGE = 431;
+  private static final int HTTP_NOT_IMPLEMENTED = 501;
+  private static final Map<Integer, String> REASONS = Map.ofEntries(
+      Map.entry(200, "OK"), Map.entry(204, "No Content"), Map.entry(304, "Not Modified"),
+      Map.entry(400, "Bad Request"), Map.entry(404, "Not Found"),
+      Map.entry(405, "Method Not Allowed"), Map.entry(413, "Payload Too Large"),
+      Map.entry(429, "Too Many Requests"), Map.entry(431, "Request Header Fields Too Large"),
+      Map.entry(500, "Internal Server Error"), Map.entry(501, "Not Implemented"),
+      Map.entry(502, "Bad Gateway"), Map.entry(503, "Service Unavailable"),
+      Map.entry(504, "Gateway Timeout")
+  );
+  private static final byte[] CRLF = "\r\n".getBytes(StandardCharsets.US_ASCII);
+  private static final byte[] END_OF_HEAD = "\r\n\r\n".getBytes(StandardCharsets.US_ASCII);
+  private static final byte[] CONTINUE = "HTTP/1.1 100 Continue\r\n\r\n"
+      .getBytes(StandardCharsets.US_ASCII);
+  private static final byte[] NO_BODY = new byte[0];
+
+  private final ServerSocketChannel channel;
+  private final Selector selector;
+  private final long maxBody;
+  private final List<Context> contexts = new CopyOnWriteArrayList<>();
+  /* connections and the read buffer are only used by the dispatcher thread */
+  private final Set<Connection> connections = new HashSet<>();
+  private final ByteBuffer readBuffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+  private final Queue<Exchange> completed = new ConcurrentLinkedQueue<>();
+  private final Queue<ByteBuffer> pool = new ConcurrentLinkedQueue<>();
+  private final AtomicInteger pooled = new AtomicInteger();
+  private final AtomicInteger inFlight = new AtomicInteger();
+  private volatile Executor executor;
+  private volatile boolean running;
+  private Thread dispatcher;
+
+  /**
+   * Create an unbound server.
+   *
+   * @param maxRequestBytes
+   *          longest request body that is read, 0 for no limit
+   * @throws IOException
+   *           if the listening socket could not be opened
+   */
+  NioHttpServer(final long maxRequestBytes) throws IOException {
+    this(ServerSocketChannel.open(), maxRequestBytes);
+  }
+
+  /**
+   * Create a server on a channel bound elsewhere, such as a unix domain
+   * socket from {@link UnixSockets#bind}. Peers on a unix domain socket
+   * have no address, so exchanges report them as the loopback address.
+   *
+   * @param bound
+   *          listening channel
+   * @param maxRequestBytes
+   *          longest request body that is read, 0 for no limit
+   * @throws IOException
+   *           if the selector could not be opened
+   */
+  NioHttpServer(final ServerSocketChannel bound, final long maxRequestBytes) throws IOException {
+    this.channel = bound;
+    this.selector = Selector.open();
+    this.maxBody = maxRequestBytes > 0 ? Math.min(maxRequestBytes, MAX_BODY) : MAX_BODY;
+  }
+
+  /**
+   * @return true if the platform has {@code SO_REUSEPORT}
+   */
+  static boolean isReusePortSupported() {
+    try (ServerSocketChannel probe = ServerSocketChannel.open()) {
+      return probe.supportedOptions().contains(StandardSocketOptions.SO_REUSEPORT);
+    } catch (IOException e) {
+      return false;
+    }
+  }
+
+  /**
+   * Share the port with other listeners, must be called before binding.
+   *
+   * @throws IOException
+   *           if the platform does not support {@code SO_REUSEPORT}
+   */
+  void reusePort() throws IOException {
+    try {
+      channel.setOption(StandardSocketOptions.SO_REUSEPORT, true);
+    } catch (UnsupportedOperationException e) {
+      throw new IOException("SO_REUSEPORT is not supported", e);
+    }
+  }
+
+  @Override
+  public void bind(final InetSocketAddress addr, final int backlog) throws IOException {
+    channel.bind(addr, backlog);
+  }
+
+  @Override
+  public void start() {
+    if (dispatcher != null) {
+      throw new IllegalStateException("server already started");
+    }
+    try {
+      channel.configureBlocking(false);
+      channel.register(selector, SelectionKey.OP_ACCEPT);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    running = true;
+    dispatcher = new Thread(this::dispatch, "nio-http-dispatcher");
+    dispatcher.start();
+  }
+
+  @Override
+  public void setExecutor(final Executor workers) {
+    this.executor = workers;
+  }
+
+  @Override
+  public Executor getExecutor() {
+    return executor;
+  }
+
+  /**
+   * Stop accepting connections, wait up to the delay for exchanges in
+   * progress and close every connection.
+   *
+   * @param delay
+   *          longest time to wait in seconds
+   */
+  @Override
+  public void stop(final int delay) {
+    try {
+      channel.close();
+    } catch (IOException ignored) {
+    }
+    long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(delay);
+    while (inFlight.get() > 0 && System.nanoTime() < deadline) {
+      try {
+        Thread.sleep(STOP_POLL_MS);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        break;
+      }
+    }
+    running = false;
+    selector.wakeup();
+    if (dispatcher == null) {
+      try {
+        selector.close();
+      } catch (IOException ignored) {
+      }
+    } else if (dispatcher != Thread.currentThread()) {
+      try {
+        dispatcher.join();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+
+  @Override
+  public HttpContext createContext(final String path, final HttpHandler handler) {
+    HttpContext context = createContext(path);
+    context.setHandler(handler);
+    return context;
+  }
+
+  @Override
+  public HttpContext createContext(final String path) {
+    if (path == null || !path.startsWith("/")) {
+      throw new IllegalArgumentException("invalid context path " + path);
+    }
+    for (Context context : contexts) {
+      if (context.getPath().equals(path)) {
+        throw new IllegalArgumentException("context already exists for " + path);
+      }
+    }
+    Context context = new Context(path);
+    contexts.add(context);
+    return context;
+  }
+
+  @Override
+  public void removeContext(final String path) {
+    for (Context context : contexts) {
+      if (context.getPath().equals(path)) {
+        contexts.remove(context);
+        return;
+      }
+    }
+    throw new IllegalArgumentException("no context for " + path);
+  }
+
+  @Override
+  public void removeContext(final HttpContext context) {
+    if (!contexts.remove(context)) {
+      throw new IllegalArgumentException("context not registered with this server");
+    }
+  }
+
+  /**
+   * @return address bound, null for a unix domain socket
+   */
+  @Override
+  public InetSocketAddress getAddress() {
+    try {
+      return inet(channel.getLocalAddress());
+    } catch (IOException e) {
+      return null;
+    }
+  }
+
+  private static InetSocketAddress inet(final SocketAddress address) {
+    return address instanceof InetSocketAddress ? (InetSocketAddress) address : null;
+  }
+
+  /*
+   * the longest context path the request path starts with, as the JDK server does
+   */
+  private Context findContext(final String path) {
+    Context found = null;
+    for (Context context : contexts) {
+      if (path.startsWith(context.getPath())
+          && (found == null || context.getPath().length() > found.getPath().length())) {
+        found = context;
+      }
+    }
+    return found;
+  }
+
+  private ByteBuffer acquire() {
+    ByteBuffer buffer = pool.poll();
+    if (buffer == null) {
+      return ByteBuffer.allocateDirect(BUFFER_SIZE);
+    }
+    pooled.decrementAndGet();
+    buffer.clear();
+    return buffer;
+  }
+
+  private void release(final ByteBuffer buffer) {
+    if (pooled.incrementAndGet() <= MAX_POOLED) {
+      pool.offer(buffer);
+    } else {
+      pooled.decrementAndGet();
+    }
+  }
+
+  /* copy into pooled buffers, filling the last one first */
+  private void append(
+      final List<ByteBuffer> buffers, final byte[] bytes, final int off,
+      final int len
+  ) {
+    int from = off;
+    int remaining = len;
+    while (remaining > 0) {
+      ByteBuffer last = buffers.isEmpty() ? null : buffers.get(buffers.size() - 1);
+      if (last == null || !last.hasRemaining()) {
+        last = acquire();
+        buffers.add(last);
+      }
+      int n = Math.min(remaining, last.remaining());
+      last.put(bytes, from, n);
+      from += n;
+      remaining -= n;
+    }
+  }
+
+  private static String reason(final int status) {
+    return REASONS.getOrDefault(status, "");
+  }
+
+  private static boolean keepAlive(final String protocol, final Headers headers) {
+    String connection = headers.getFirst("Connection");
+    if ("HTTP/1.0".equals(protocol)) {
+      return "keep-alive".equalsIgnoreCase(connection);
+    }
+    return !"close".equalsIgnoreCase(connection);
+  }
+
+  private void dispatch() {
+    long lastSweep = System.currentTimeMillis();
+    try {
+      while (running) {
+        selector.select(SELECT_TIMEOUT_MS);
+        Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+        while (keys.hasNext()) {
+          SelectionKey key = keys.next();
+          keys.remove();
+          if (key.isValid() && key.isAcceptable()) {
+            accept();
+            continue;
+          }
+          Connection connection = (Connection) key.attachment();
+          try {
+            if (key.isValid() && key.isReadable()) {
+              connection.read();
+            }
+            if (key.isValid() && key.isWritable()) {
+              connection.write();
+            }
+          } catch (IOException | RuntimeException e) {
+            /*
+             * a request the parser did not expect costs its connection, not the dispatcher
+             */
+            connection.close();
+          }
+        }
+        Exchange exchange;
+        while ((exchange = completed.poll()) != null) {
+          exchange.connection.responded(exchange);
+        }
+        long now = System.currentTimeMillis();
+        if (now - lastSweep >= SELECT_TIMEOUT_MS) {
+          lastSweep = now;
+          sweep(now);
+        }
+      }
+    } catch (IOException | ClosedSelectorException e) {
+      running = false;
+    } finally {
+      for (Connection connection : new ArrayList<>(connections)) {
+        connection.close();
+      }
+      try {
+        selector.close();
+      } catch (IOException ignored) {
+      }
+    }
+  }
+
+  private void accept() {
+    try {
+      SocketChannel socket;
+      while ((socket = channel.accept()) != null) {
+        socket.configureBlocking(false);
+        if (socket.supportedOptions().contains(StandardSocketOptions.TCP_NODELAY)) {
+          socket.setOption(StandardSocketOptions.TCP_NODELAY, true);
+        }
+        Connection connection = new Connection(socket);
+        connection.key = socket.register(selector, SelectionKey.OP_READ, connection);
+        connections.add(connection);
+      }
+    } catch (IOException e) {
+      /* the listening socket was closed by stop, or the connection was reset */
+    }
+  }
+
+  private void sweep(final long now) {
+    for (Connection connection : new ArrayList<>(connections)) {
+      if (connection.current == null && connection.output.isEmpty()
+          && now - connection.lastActive > IDLE_TIMEOUT_MS) {
+        connection.close();
+      }
+    }
+  }
+
+  private static int indexOf(
+      final byte[] data, final byte[] pattern, final int from, final int to
+  ) {
+    outer: for (int i = from; i <= to - pattern.length; i++) {
+      for (int j = 0; j < pattern.length; j++) {
+        if (data[i + j] != pattern[j]) {
+          continue outer;
+        }
+      }
+      return i;
+    }
+    return -1;
+  }
+
+  /* where the decoded bytes of a chunked body are in the read buffer */
+  private static final class Chunks {
+    private final List<int[]> regions = new ArrayList<>();
+    private long length;
+    private int end = -1;
+    private boolean over;
+
+    void add(final int offset, final int size) {
+      int[] region = new int[2];
+      region[0] = offset;
+      region[1] = size;
+      regions.add(region);
+      length += size;
+    }
+
+    byte[] copy(final byte[] data, final long limit) {
+      byte[] body = new byte[(int) Math.min(length, limit)];
+      int pos = 0;
+      for (int[] region : regions) {
+        int n = Math.min(region[1], body.length - pos);
+        System.arraycopy(data, region[0], body, pos, n);
+        pos += n;
+      }
+      return body;
+    }
+  }
+
+  private final class Connection {
+    private final SocketChannel socket;
+    private final InetSocketAddress local;
+    private final InetSocketAddress remote;
+    private final ArrayDeque<ByteBuffer> output = new ArrayDeque<>();
+    private SelectionKey key;
+    private byte[] data = new byte[BUFFER_SIZE];
+    private int start;
+    private int end;
+    private Exchange current;
+    private boolean continued;
+    private boolean closing;
+    private boolean eof;
+    private long lastActive = System.currentTimeMillis();
+
+    Connection(final SocketChannel accepted) throws IOException {
+      this.socket = accepted;
+      InetSocketAddress loopback = new InetSocketAddress(InetAddress.getLoopbackAddress(), 0);
+      InetSocketAddress address = inet(accepted.getLocalAddress());
+      this.local = address != null ? address : loopback;
+      address = inet(accepted.getRemoteAddress());
+      this.remote = address != null ? address : loopback;
+    }
+
+    void read() throws IOException {
+      readBuffer.clear();
+      int n = socket.read(readBuffer);
+      if (n < 0) {
+        eof = true;
+        interest(SelectionKey.OP_READ, false);
+        process();
+        return;
+      }
+      lastActive = System.currentTimeMillis();
+      readBuffer.flip();
+      if (end + n > data.length) {
+        System.arraycopy(data, start, data, 0, end - start);
+        end -= start;
+        start = 0;
+        if (end + n > data.length) {
+          byte[] grown = new byte[Math.max(data.length * 2, end + n)];
+          System.arraycopy(data, 0, grown, 0, end);
+          data = grown;
+        }
+      }
+      readBuffer.get(data, end, n);
+      end += n;
+      process();
+    }
+
+    /* parse and dispatch the next request, unless one is being handled */
+    void process() throws IOException {
+      while (current == null && !closing && start < end) {
+        if (!parse()) {
+          break;
+        }
+      }
+      if (current != null && end - start > MAX_HEAD) {
+        /* enough pipelined requests are waiting, read more once they are handled */
+        interest(SelectionKey.OP_READ, false);
+      }
+      if (eof && current == null) {
+        closing = true;
+      }
+      if (closing && current == null && output.isEmpty()) {
+        close();
+      }
+    }
+
+    /* returns whether a request was taken from the buffer */
+    private boolean parse() throws IOException {
+      int headEnd = indexOf(data, END_OF_HEAD, start, end);
+      if (headEnd < 0 || headEnd - start > MAX_HEAD) {
+        if (end - start > MAX_HEAD) {
+          reject(HTTP_HEADERS_TOO_LARGE);
+        }
+        return false;
+      }
+      String[] lines = new String(data, start, headEnd - start, StandardCharsets.ISO_8859_1)
+          .split("\r\n");
+      String[] requestLine = lines[0].split(" ");
+      URI uri;
+      Headers headers = new Headers();
+      try {
+        if (requestLine.length != 3 || !requestLine[2].startsWith("HTTP/1.")) {
+          throw new ProtocolException("invalid request line");
+        }
+        uri = new URI(requestLine[1]);
+        for (int i = 1; i < lines.length; i++) {
+          int colon = lines[i].indexOf(':');
+          if (colon <= 0) {
+            throw new ProtocolException("invalid header");
+          }
+          headers.add(lines[i].substring(0, colon).trim(), lines[i].substring(colon + 1).trim());
+        }
+      } catch (ProtocolException | URISyntaxException | IllegalArgumentException e) {
+        /*
+         * Headers refuses values with a line break, as a bare LF is not a line end here
+         */
+        reject(HTTP_BAD_REQUEST);
+        return false;
+      }
+      byte[] body = body(headEnd + END_OF_HEAD.length, headers);
+      if (body == null) {
+        if (!continued && "100-continue".equalsIgnoreCase(headers.getFirst("Expect"))) {
+          continued = true;
+          List<ByteBuffer> buffers = new ArrayList<>();
+          append(buffers, CONTINUE, 0, CONTINUE.length);
+          send(buffers);
+        }
+        return false;
+      }
+      continued = false;
+      dispatch(requestLine[0], uri, requestLine[2], headers, body);
+      return true;
+    }
+
+    /*
+     * the body if it has been read, consuming the request from the buffer,
+     * null while waiting for more of it
+     */
+    private byte[] body(final int from, final Headers headers) throws IOException {
+      String encoding = headers.getFirst("Transfer-Encoding");
+      if (encoding != null) {
+        if (!"chunked".equalsIgnoreCase(encoding)) {
+          reject(HTTP_NOT_IMPLEMENTED);
+          return null;
+        }
+        Chunks chunks;
+        try {
+          chunks = chunks(from);
+        } catch (ProtocolException e) {
+          reject(HTTP_BAD_REQUEST);
+          return null;
+        }
+        if (chunks.over) {
+          return overLimit(chunks.copy(data, maxBody + 1));
+        }
+        if (chunks.end < 0) {
+          return null;
+        }
+        start = chunks.end;
+        return chunks.copy(data, maxBody + 1);
+      }
+      long length;
+      try {
+        String declared = headers.getFirst("Content-Length");
+        length = declared == null ? 0 : Long.parseLong(declared);
+      } catch (NumberFormatException e) {
+        length = -1;
+      }
+      if (length < 0) {
+        reject(HTTP_BAD_REQUEST);
+        return null;
+      }
+      if (length > maxBody) {
+        /* left to the handler to refuse from the Content-Length */
+        return overLimit(NO_BODY);
+      }
+      if (end - from < length) {
+        return null;
+      }
+      byte[] body = length == 0 ? NO_BODY : new byte[(int) length];
+      System.arraycopy(data, from, body, 0, body.length);
+      start = from + body.length;
+      return body;
+    }
+
+    /* the rest of the body is not read, so the connection cannot be reused */
+    private byte[] overLimit(final byte[] body) {
+      closing = true;
+      start = end;
+      interest(SelectionKey.OP_READ, false);
+      return body;
+    }
+
+    private Chunks chunks(final int from) throws ProtocolException {
+      Chunks chunks = new Chunks();
+      long pos = from;
+      while (true) {
+        int eol = indexOf(data, CRLF, (int) pos, end);
+        if (eol < 0) {
+          if (end - pos > MAX_CHUNK_LINE) {
+            throw new ProtocolException("chunk size line too long");
+          }
+          return chunks;
+        }
+        String line = new String(data, (int) pos, eol - (int) pos, StandardCharsets.ISO_8859_1);
+        int extension = line.indexOf(';');
+        long size;
+        try {
+          size = Long.parseLong((extension < 0 ? line : line.substring(0, extension)).trim(), HEX);
+        } catch (NumberFormatException e) {
+          throw new ProtocolException("invalid chunk size");
+        }
+        if (size < 0) {
+          throw new ProtocolException("invalid chunk size");
+        }
+        pos = eol + CRLF.length;
+        if (size == 0) {
+          return trailers(chunks, (int) pos);
+        }
+        chunks.add((int) pos, (int) Math.min(size, end - pos));
+        /* the declared size is checked too, so that it cannot overflow the position */
+        if (chunks.length > maxBody || size > maxBody) {
+          chunks.over = true;
+          return chunks;
+        }
+        if (size > end - pos - CRLF.length) {
+          return chunks;
+        }
+        pos += size;
+        if (data[(int) pos] != '\r' || data[(int) pos + 1] != '\n') {
+          throw new ProtocolException("chunk not terminated");
+        }
+        pos += CRLF.length;
+      }
+    }
+
+    /* trailers are skipped, the body ends with an empty line */
+    private Chunks trailers(final Chunks chunks, final int from) {
+      int pos = from;
+      while (true) {
+        int eol = indexOf(data, CRLF, pos, end);
+        if (eol < 0) {
+          return chunks;
+        }
+        if (eol == pos) {
+          chunks.end = eol + CRLF.length;
+          return chunks;
+        }
+        pos = eol + CRLF.length;
+      }
+    }
+
+    private void dispatch(
+        final String method, final URI uri, final String protocol, final Headers headers,
+        final byte[] body
+    ) throws IOException {
+      Context context = findContext(uri.getPath() == null ? "/" : uri.getPath());
+      if (!keepAlive(protocol, headers)) {
+        closing = true;
+      }
+      if (context == null || context.getHandler() == null) {
+        respond(HTTP_NOT_FOUND, "<h1>404 Not Found</h1>No context found for request");
+        return;
+      }
+      Exchange exchange = new Exchange(this, context, method, uri, protocol, headers, body);
+      current = exchange;
+      inFlight.incrementAndGet();
+      Executor workers = executor;
+      if (workers == null) {
+        exchange.handle();
+        return;
+      }
+      try {
+        workers.execute(exchange::handle);
+      } catch (RejectedExecutionException e) {
+        exchange.abort();
+      }
+    }
+
+    /* a request that cannot be parsed, the connection is closed after answering */
+    private void reject(final int status) throws IOException {
+      closing = true;
+      start = end;
+      respond(status, "<h1>" + status + " " + reason(status) + "</h1>");
+    }
+
+    private void respond(final int status, final String message) throws IOException {
+      byte[] body = message.getBytes(StandardCharsets.US_ASCII);
+      byte[] head = ("HTTP/1.1 " + status + " " + reason(status) + "\r\n"
+          + "Content-Type: text/html\r\n"
+          + "Content-Length: " + body.length + "\r\n"
+          + (closing ? "Connection: close\r\n" : "") + "\r\n")
+          .getBytes(StandardCharsets.US_ASCII);
+      List<ByteBuffer> buffers = new ArrayList<>();
+      append(buffers, head, 0, head.length);
+      append(buffers, body, 0, body.length);
+      send(buffers);
+    }
+
+    private void send(final List<ByteBuffer> buffers) throws IOException {
+      for (ByteBuffer buffer : buffers) {
+        buffer.flip();
+        output.add(buffer);
+      }
+      write();
+    }
+
+    /* called on the dispatcher thread once a worker has finished an exchange */
+    void responded(final Exchange exchange) {
+      if (exchange != current) {
+        /* the connection was closed meanwhile */
+        exchange.output.forEach(NioHttpServer.this::release);
+        return;
+      }
+      current = null;
+      inFlight.decrementAndGet();
+      if (exchange.closeAfter) {
+        closing = true;
+      }
+      lastActive = System.currentTimeMillis();
+      output.addAll(exchange.output);
+      try {
+        write();
+        if (key.isValid() && !closing) {
+          interest(SelectionKey.OP_READ, !eof);
+          process();
+        }
+      } catch (IOException | RuntimeException e) {
+        close();
+      }
+    }
+
+    void write() throws IOException {
+      while (!output.isEmpty()) {
+        long n = socket.write(output.toArray(new ByteBuffer[0]));
+        while (!output.isEmpty() && !output.peekFirst().hasRemaining()) {
+          release(output.pollFirst());
+        }
+        if (n == 0) {
+          break;
+        }
+      }
+      interest(SelectionKey.OP_WRITE, !output.isEmpty());
+      if (output.isEmpty() && closing && current == null) {
+        close();
+      }
+    }
+
+    private void interest(final int op, final boolean on) {
+      if (key.isValid()) {
+        key.interestOps(on ? key.interestOps() | op : key.interestOps() & ~op);
+      }
+    }
+
+    void close() {
+      if (!connections.remove(this)) {
+        return;
+      }
+      key.cancel();
+      try {
+        socket.close();
+      } catch (IOException ignored) {
+      }
+      output.forEach(NioHttpServer.this::release);
+      output.clear();
+      if (current != null) {
+        current = null;
+        inFlight.decrementAndGet();
+      }
+    }
+  }
+
+  private final class Context extends HttpContext {
+    private final String path;
+    private final Map<String, Object> attributes = new ConcurrentHashMap<>();
+    private final List<Filter> filters = new CopyOnWriteArrayList<>();
+    private volatile HttpHandler handler;
+
+    Context(final String contextPath) {
+      this.path = contextPath;
+    }
+
+    @Override
+    public HttpHandler getHandler() {
+      return handler;
+    }
+
+    @Override
+    public void setHandler(final HttpHandler h) {
+      if (h == null) {
+        throw new NullPointerException("handler");
+      }
+      if (handler != null) {
+        throw new IllegalArgumentException("handler already set");
+      }
+      this.handler = h;
+    }
+
+    @Override
+    public String getPath() {
+      return path;
+    }
+
+    @Override
+    public HttpServer getServer() {
+      return NioHttpServer.this;
+    }
+
+    @Override
+    public Map<String, Object> getAttributes() {
+      return attributes;
+    }
+
+    @Override
+    public List<Filter> getFilters() {
+      return filters;
+    }
+
+    @Override
+    public Authenticator setAuthenticator(final Authenticator auth) {
+      throw new UnsupportedOperationException("authenticators are not supported");
+    }
+
+    @Override
+    public Authenticator getAuthenticator() {
+      return null;
+    }
+  }
+
+  private final class Exchange extends HttpExchange {
+    private final Connection connection;
+    private final Context context;
+    private final String method;
+    private final URI uri;
+    private final String protocol;
+    private final Headers requestHeaders;
+    private final Headers responseHeaders = new Headers();
+    private final Map<String, Object> attributes = new HashMap<>();
+    private final boolean keepAlive;
+    private final List<ByteBuffer> output = new ArrayList<>();
+    private InputStream requestBody;
+    private OutputStream responseBody;
+    private int status = -1;
+    private long declared;
+    private long written;
+    private boolean done;
+    private boolean closeAfter;
+
+    Exchange(
+        final Connection owner, final Context httpContext, final String requestMethod,
+        final URI requestUri, final String requestProtocol, final Headers headers,
+        final byte[] body
+    ) {
+      this.connection = owner;
+      this.context = httpContext;
+      this.method = requestMethod;
+      this.uri = requestUri;
+      this.protocol = requestProtocol;
+      this.requestHeaders = headers;
+      this.requestBody = new ByteArrayInputStream(body);
+      this.responseBody = new ResponseBody();
+      /* read on the dispatcher thread, before the worker is handed the exchange */
+      this.keepAlive = !owner.closing;
+    }
+
+    void handle() {
+      try {
+        new Filter.Chain(context.getFilters(), context.getHandler()).doFilter(this);
+      } catch (Throwable e) {
+        abort();
+        if (e instanceof Error) {
+          throw (Error) e;
+        }
+      }
+    }
+
+    /* answer nothing and close the connection */
+    void abort() {
+      synchronized (this) {
+        if (done) {
+          return;
+        }
+        done = true;
+      }
+      output.forEach(NioHttpServer.this::release);
+      output.clear();
+      closeAfter = true;
+      complete();
+    }
+
+    private void complete() {
+      completed.offer(this);
+      selector.wakeup();
+    }
+
+    private void finish() {
+      synchronized (this) {
+        if (done) {
+          return;
+        }
+        done = true;
+      }
+      closeAfter = !keepAlive || "close".equalsIgnoreCase(responseHeaders.getFirst("Connection"));
+      StringBuilder head = new StringBuilder()
+          .append("HTTP/1.1 ").append(status).append(' ').append(reason(status)).append("\r\n")
+          .append("Date: ")
+          .append(DateTimeFormatter.RFC_1123_DATE_TIME.format(ZonedDateTime.now(ZoneOffset.UTC)))
+          .append("\r\n");
+      if (status >= HTTP_OK && status != HTTP_NO_CONTENT && status != HTTP_NOT_MODIFIED) {
+        long length = "HEAD".equals(method) ? Math.max(declared, 0) : written;
+        head.append("Content-Length: ").append(length).append("\r\n");
+      }
+      responseHeaders.remove("Content-Length");
+      responseHeaders.remove("Connection");
+      if (closeAfter) {
+        head.append("Connection: close\r\n");
+      } else if ("HTTP/1.0".equals(protocol)) {
+        head.append("Connection: keep-alive\r\n");
+      }
+      for (Map.Entry<String, List<String>> header : responseHeaders.entrySet()) {
+        for (String value : header.getValue()) {
+          head.append(header.getKey()).append(": ").append(value).append("\r\n");
+        }
+      }
+      byte[] bytes = head.append("\r\n").toString().getBytes(StandardCharsets.ISO_8859_1);
+      List<ByteBuffer> buffers = new ArrayList<>();
+      append(buffers, bytes, 0, bytes.length);
+      for (ByteBuffer buffer : buffers) {
+        buffer.flip();
+      }
+      for (ByteBuffer buffer : output) {
+        buffer.flip();
+        buffers.add(buffer);
+      }
+      output.clear();
+      output.addAll(buffers);
+      complete();
+    }
+
+    @Override
+    public Headers getRequestHeaders() {
+      return requestHeaders;
+    }
+
+    @Override
+    public Headers getResponseHeaders() {
+      return responseHeaders;
+    }
+
+    @Override
+    public URI getRequestURI() {
+      return uri;
+    }
+
+    @Override
+    public String getRequestMethod() {
+      return method;
+    }
+
+    @Override
+    public HttpContext getHttpContext() {
+      return context;
+    }
+
+    @Override
+    public void close() {
+      try {
+        requestBody.close();
+        if (status < 0) {
+          abort();
+        } else {
+          responseBody.close();
+        }
+      } catch (IOException e) {
+        abort();
+      }
+    }
+
+    @Override
+    public InputStream getRequestBody() {
+      return requestBody;
+    }
+
+    @Override
+    public OutputStream getResponseBody() {
+      return responseBody;
+    }
+
+    /**
+     * As the JDK server, a length of 0 sends a body of any length and -1 no
+     * body at all.
+     *
+     * @param rCode
+     *          status code
+     * @param responseLength
+     *          body length, 0 if not known or -1 for none
+     */
+    @Override
+    public void sendResponseHeaders(final int rCode, final long responseLength)
+        throws IOException {
+      if (status >= 0) {
+        throw new IOException("headers already sent");
+      }
+      status = rCode;
+      declared = responseLength;
+    }
+
+    @Override
+    public InetSocketAddress getRemoteAddress() {
+      return connection.remote;
+    }
+
+    @Override
+    public int getResponseCode() {
+      return status;
+    }
+
+    @Override
+    public InetSocketAddress getLocalAddress() {
+      return connection.local;
+    }
+
+    @Override
+    public String getProtocol() {
+      return protocol;
+    }
+
+    @Override
+    public Object getAttribute(final String name) {
+      return attributes.get(name);
+    }
+
+    @Override
+    public void setAttribute(final String name, final Object value) {
+      attributes.put(name, value);
+    }
+
+    @Override
+    public void setStreams(final InputStream i, final OutputStream o) {
+      if (i != null) {
+        requestBody = i;
+      }
+      if (o != null) {
+        responseBody = o;
+      }
+    }
+
+    @Override
+    public HttpPrincipal getPrincipal() {
+      return null;
+    }
+
+    /* collects the body in pooled buffers, the response is queued on close */
+    private final class ResponseBody extends OutputStream {
+      private final byte[] single = new byte[1];
+      private boolean closed;
+
+      @Override
+      public void write(final int b) throws IOException {
+        single[0] = (byte) b;
+        write(single, 0, 1);
+      }
+
+      @Override
+      public void write(final byte[] b, final int off, final int len) throws IOException {
+        if (status < 0) {
+          throw new IOException("response headers not sent");
+        }
+        if (closed) {
+          throw new IOException("stream closed");
+        }
+        if (len == 0) {
+          return;
+        }
+        if (declared < 0 || declared > 0 && written + len > declared) {
+          throw new IOException("too many bytes to write to stream");
+        }
+        written += len;
+        if (!"HEAD".equals(method)) {
+          append(output, b, off, len);
+        }
+      }
+
+      @Override
+      public void close() throws IOException {
+        if (closed) {
+          return;
+        }
+        closed = true;
+        if (declared > 0 && written < declared && !"HEAD".equals(method)) {
+          abort();
+          throw new IOException("insufficient bytes written to stream");
+        }
+        finish();
+      }
+    }
+  }
+}
@@ -0,0 +1,106 @@
+/*
+ * Created on Mon Oct 19 2026
+ *
+ * Copyright (c) 2026 Smart DCC Limited
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package uk.co.smartdcc.boxed.xmldsig;
+
+import java.util.Locale;
+
+import javax.xml.XMLConstants;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+
+/**
+ * Parser settings applied to every document builder factory, selected once
+ * per deployment with {@link Util#set_parser_profile} or the
+ * {@code xmldsig.parserProfile} system property.
+ *
+ * {@link #DEFAULT} leaves the JDK parser as it is. {@link #LARGE} is for
+ * multi-megabyte responses: deferred node expansion is turned off, as signing
+ * and verification touch every node, which makes the deferred DOM cost more
+ * heap than building the nodes directly. It also enables the JDK security
+ * manager with tight limits on nesting depth, attributes per element and
+ * name length, well above anything DUIS needs.
+ */
+public enum ParserProfile {
+  DEFAULT(true, 0, 0, 0), LARGE(false, 64, 64, 256);
+
+  static final String PROPERTY = "xmldsig.parserProfile";
+  private static final String DEFER_NODE_EXPANSION = "http://apache.org/xml/features/"
+      + "dom/defer-node-expansion";
+  private static final String JDK_PROPERTIES = "http://www.oracle.com/xml/jaxp/properties/";
+
+  private final boolean _defer;
+  private final int _maxDepth;
+  private final int _maxAttributes;
+  private final int _maxNameLength;
+
+  ParserProfile(
+      final boolean defer, final int maxDepth, final int maxAttributes, final int maxNameLength
+  ) {
+    this._defer = defer;
+    this._maxDepth = maxDepth;
+    this._maxAttributes = maxAttributes;
+    this._maxNameLength = maxNameLength;
+  }
+
+  /**
+   * Look up a profile by name, ignoring case.
+   *
+   * @param name
+   *          profile name, or null
+   * @return profile, {@link #DEFAULT} for null
+   * @throws IllegalArgumentException
+   *           if no profile has that name
+   */
+  public static ParserProfile of(final String name) {
+    if (name == null) {
+      return DEFAULT;
+    }
+    return valueOf(name.toUpperCase(Locale.ROOT));
+  }
+
+  /* a bad value must not stop the tools from loading, so it only warns */
+  static ParserProfile fromSystemProperty() {
+    try {
+      return of(System.getProperty(PROPERTY));
+    } catch (IllegalArgumentException e) {
+      System.err.println("[W] unknown parser profile " + System.getProperty(PROPERTY));
+      return DEFAULT;
+    }
+  }
+
+  /**
+   * Configure a factory for this profile.
+   *
+   * @param dbf
+   *          factory to configure
+   */
+  void apply(final DocumentBuilderFactory dbf) {
+    if (this == DEFAULT) {
+      return;
+    }
+    try {
+      dbf.setFeature(DEFER_NODE_EXPANSION, _defer);
+      dbf.setFeature(XMLConstants.FEATURE_SECURE_PROCESSING, true);
+    } catch (ParserConfigurationException e) {
+      System.err.println("[W] could not apply parser profile " + this + ": " + e.getMessage());
+    }
+    dbf.setAttribute(JDK_PROPERTIES + "maxElementDepth", Integer.toString(_maxDepth));
+    dbf.setAttribute(JDK_PROPERTIES + "elementAttributeLimit", Integer.toString(_maxAttributes));
+    dbf.setAttribute(JDK_PROPERTIES + "maxXMLNameLimit", Integer.toString(_maxNameLength));
+  }
+}
@@ -0,0 +1,295 @@
+/*
+ * Created on Mon Oct 19 2026
+ *
+ * Copyright (c) 2026 Smart DCC Limited
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package uk.co.smartdcc.boxed.xmldsig;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.InvalidAlgorithmParameterException;
+import java.security.KeyException;
+import java.security.NoSuchAlgorithmException;
+import java.security.SignatureException;
+import java.security.cert.CertificateException;
+import java.security.cert.X509Certificate;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.xml.XMLConstants;
+import javax.xml.crypto.MarshalException;
+import javax.xml.crypto.dsig.XMLSignatureException;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.parsers.SAXParserFactory;
+import javax.xml.transform.sax.SAXSource;
+import javax.xml.validation.Schema;
+import javax.xml.validation.Validator;
+
+import org.w3c.dom.Document;
+import org.xml.sax.ErrorHandler;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.SAXParseException;
+import org.xml.sax.XMLReader;
+
+/**
+ * Signs and verifies messages with schema validation taken off the critical
+ * path.
+ *
+ * {@link Sign#verify_and_sign_input_stream} and
+ * {@link Validate#validate_input_stream} validate while parsing, so signing
+ * cannot start until validation has finished. Here the message is parsed
+ * without a schema and signed (or its signature checked) straight away,
+ * while a {@link Validator} checks the same bytes on one of the validation
+ * threads. The result is only released once both have finished, if
+ * validation fails the signature is discarded and the validation error is
+ * thrown, exactly as the sequential path would have.
+ *
+ * The output is the same as the sequential path, as whitespace between
+ * elements is stripped after parsing. The gain comes from running the two
+ * stages on different cores, on a single core it only adds a hand-off.
+ */
+public final class Pipeline {
+  private final ExecutorService validators;
+
+  /**
+   * Create a pipeline.
+   *
+   * @param threads
+   *          number of messages validated concurrently
+   */
+  public Pipeline(final int threads) {
+    this.validators = Executors.newFixedThreadPool(threads, r -> {
+      Thread t = new Thread(r, "xmldsig-validator");
+      t.setDaemon(true);
+      return t;
+    });
+  }
+
+  /**
+   * As {@link Sign#verify_and_sign_input_stream(boolean, InputStream,
+   * OutputStream, Eui64CredentialResolver, String)}.
+   *
+   * @param preserveCounter
+   *          keep the counter in the request id
+   * @param is
+   *          unsigned request
+   * @param os
+   *          stream the signed request is written to, only once it has been
+   *          validated
+   * @param resolver
+   *          signing credentials
+   * @param schemaName
+   *          name in the {@link SchemaRegistry}, or null to select by the
+   *          message root
+   * @return certificate the request was signed with
+   * @throws SAXException
+   *           if the request could not be parsed or failed validation, in
+   *           preference to any signing error
+   */
+  public X509Certificate sign(
+      final boolean preserveCounter, final InputStream is, final OutputStream os,
+      final Eui64CredentialResolver resolver, final String schemaName
+  )
+      throws IOException, SAXException, ParserConfigurationException, CertificateException,
+      KeyException, NoSuchAlgorithmException, InvalidAlgorithmParameterException,
+      MarshalException, XMLSignatureException {
+    DomWriter signed = DomWriter.local();
+    X509Certificate cert = sign(preserveCounter, is, signed, resolver, schemaName);
+    signed.writeTo(os);
+    return cert;
+  }
+
+  /**
+   * As {@link #sign(boolean, InputStream, OutputStream,
+   * Eui64CredentialResolver, String)}, leaving the signed request in the
+   * calling thread's {@link DomWriter}.
+   *
+   * @param preserveCounter
+   *          keep the counter in the request id
+   * @param is
+   *          unsigned request
+   * @param resolver
+   *          signing credentials
+   * @param schemaName
+   *          name in the {@link SchemaRegistry}, or null to select by the
+   *          message root
+   * @return writer holding the signed request, only once it has been
+   *         validated
+   * @throws SAXException
+   *           if the request could not be parsed or failed validation, in
+   *           preference to any signing error
+   */
+  public DomWriter sign(
+      final boolean preserveCounter, final InputStream is,
+      final Eui64CredentialResolver resolver, final String schemaName
+  )
+      throws IOException, SAXException, ParserConfigurationException, CertificateException,
+      KeyException, NoSuchAlgorithmException, InvalidAlgorithmParameterException,
+      MarshalException, XMLSignatureException {
+    DomWriter signed = DomWriter.local();
+    sign(preserveCounter, is, signed, resolver, schemaName);
+    return signed;
+  }
+
+  private X509Certificate sign(
+      final boolean preserveCounter, final InputStream is, final DomWriter signed,
+      final Eui64CredentialResolver resolver, final String schemaName
+  )
+      throws IOException, SAXException, ParserConfigurationException, CertificateException,
+      KeyException, NoSuchAlgorithmException, InvalidAlgorithmParameterException,
+      MarshalException, XMLSignatureException {
+    byte[] message = is.readAllBytes();
+    Future<Void> validation = validate(message, schemaName);
+    X509Certificate cert;
+    try {
+      Document doc = parse(message);
+      cert = Sign.sign_document(preserveCounter, doc, resolver);
+      signed.write(doc);
+    } catch (IOException | SAXException | ParserConfigurationException | CertificateException
+        | KeyException | NoSuchAlgorithmException | InvalidAlgorithmParameterException
+        | MarshalException | XMLSignatureException | RuntimeException e) {
+      /* an invalid message most likely caused this, report it as such */
+      await(validation);
+      throw e;
+    }
+    await(validation);
+    return cert;
+  }
+
+  /**
+   * As {@link Validate#validate_input_stream(InputStream,
+   * SerialCredentialResolver, String)}.
+   *
+   * @param is
+   *          signed message
+   * @param resolver
+   *          certificates to validate against
+   * @param schemaName
+   *          name in the {@link SchemaRegistry}, or null to select by the
+   *          message root
+   * @return message without its signature, or null for an unsigned response
+   * @throws SAXException
+   *           if the message could not be parsed or failed validation, in
+   *           preference to any signature error
+   */
+  public byte[] verify(
+      final InputStream is, final SerialCredentialResolver resolver, final String schemaName
+  )
+      throws IOException, SAXException, ParserConfigurationException, SignatureException,
+      CertificateException, MarshalException, XMLSignatureException {
+    byte[] message = is.readAllBytes();
+    Future<Void> validation = validate(message, schemaName);
+    byte[] result;
+    try {
+      result = Validate.validate_document(parse(message), resolver);
+    } catch (IOException | SAXException | ParserConfigurationException | SignatureException
+        | CertificateException | MarshalException | XMLSignatureException
+        | RuntimeException e) {
+      await(validation);
+      throw e;
+    }
+    await(validation);
+    return result;
+  }
+
+  /**
+   * Stop the validation threads, messages in progress are completed.
+   */
+  public void close() {
+    validators.shutdown();
+  }
+
+  private static Document parse(final byte[] message)
+      throws IOException, SAXException, ParserConfigurationException {
+    Document doc = Util.get_trusted_document_builder_factory()
+        .newDocumentBuilder()
+        .parse(new ByteArrayInputStream(message));
+    Util.strip_element_content_whitespace(doc.getDocumentElement());
+    return doc;
+  }
+
+  /*
+   * schema selection is cheap, so it happens up front and an unknown name fails
+   * fast
+   */
+  private Future<Void> validate(final byte[] message, final String schemaName)
+      throws IOException, SAXException {
+    SchemaRegistry schemas = SchemaRegistry.getInstance();
+    String name = schemaName;
+    if (name == null) {
+      name = schemas.select(new ByteArrayInputStream(message));
+    }
+    if (SchemaRegistry.NONE.equals(name)) {
+      return CompletableFuture.completedFuture(null);
+    }
+    Schema schema = schemas.getDocumentBuilderFactory(name).getSchema();
+    return validators.submit(() -> {
+      Validator validator = schema.newValidator();
+      validator.setProperty(XMLConstants.ACCESS_EXTERNAL_DTD, "");
+      validator.setProperty(XMLConstants.ACCESS_EXTERNAL_SCHEMA, "");
+      validator.setErrorHandler(new ErrorHandler() {
+        @Override
+        public void error(final SAXParseException exception) throws SAXException {
+          throw exception;
+        }
+
+        @Override
+        public void fatalError(final SAXParseException exception) throws SAXException {
+          throw exception;
+        }
+
+        @Override
+        public void warning(final SAXParseException exception) throws SAXException {
+          throw exception;
+        }
+      });
+      InputSource source = new InputSource(new ByteArrayInputStream(message));
+      validator.validate(new SAXSource(reader(), source));
+      return null;
+    });
+  }
+
+  /* refuses doctypes like the document builders, so nothing is expanded */
+  private static XMLReader reader() throws ParserConfigurationException, SAXException {
+    SAXParserFactory spf = SAXParserFactory.newInstance();
+    spf.setNamespaceAware(true);
+    spf.setFeature("http://apache.org/xml/features/disallow-doctype-decl", true);
+    spf.setXIncludeAware(false);
+    return spf.newSAXParser().getXMLReader();
+  }
+
+  private static void await(final Future<Void> validation) throws IOException, SAXException {
+    try {
+      validation.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted waiting for validation", e);
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof SAXException) {
+        throw (SAXException) e.getCause();
+      }
+      if (e.getCause() instanceof IOException) {
+        throw (IOException) e.getCause();
+      }
+      throw new IOException("Validation failed", e.getCause());
+    }
+  }
+}
@@ -0,0 +1,144 @@
+/*
+ * Created on Mon Oct 19 2026
+ *
+ * Copyright (c) 2026 Smart DCC Limited
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package uk.co.smartdcc.boxed.xmldsig;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+import java.time.Duration;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Forwards signed DUIS requests to DCC Boxed.
+ *
+ * Connections are pooled by a shared {@link HttpClient}, and the number of
+ * requests outstanding against the upstream is capped. A request that cannot
+ * get a slot, or an answer, within the timeout fails with an
+ * {@link UpstreamException}.
+ */
+public final class Proxy {
+  static final int HTTP_BAD_GATEWAY = 502;
+  static final int HTTP_SERVICE_UNAVAILABLE = 503;
+  static final int HTTP_GATEWAY_TIMEOUT = 504;
+  private static final int HTTP_OK = 200;
+  private static final int HTTP_MULTIPLE_CHOICES = 300;
+
+  /**
+   * Failure to get a usable answer from the upstream.
+   */
+  public static final class UpstreamException extends IOException {
+    private static final long serialVersionUID = 1L;
+    private final int _status;
+
+    UpstreamException(final int status, final String message) {
+      super(message);
+      this._status = status;
+    }
+
+    UpstreamException(final int status, final String message, final Throwable cause) {
+      super(message, cause);
+      this._status = status;
+    }
+
+    /**
+     * Status to return to the client.
+     *
+     * @return http status code
+     */
+    public int getStatus() {
+      return _status;
+    }
+  }
+
+  private final URI upstream;
+  private final Duration timeout;
+  private final Semaphore slots;
+  private final HttpClient client;
+
+  /**
+   * Create a proxy.
+   *
+   * @param target
+   *          url signed requests are posted to
+   * @param concurrency
+   *          maximum requests outstanding against the upstream
+   * @param timeoutMs
+   *          connect, slot wait and response timeout in milliseconds
+   */
+  public Proxy(final URI target, final int concurrency, final int timeoutMs) {
+    this.upstream = target;
+    this.timeout = Duration.ofMillis(timeoutMs);
+    this.slots = new Semaphore(concurrency, true);
+    this.client = HttpClient
+        .newBuilder()
+        .version(HttpClient.Version.HTTP_1_1)
+        .connectTimeout(timeout)
+        .build();
+  }
+
+  public URI getUpstream() {
+    return upstream;
+  }
+
+  /**
+   * Post a signed request upstream.
+   *
+   * @param signed
+   *          signed DUIS request
+   * @return body of the upstream response
+   * @throws UpstreamException
+   *           if the upstream is busy, times out, fails or answers with a
+   *           non 2xx status
+   * @throws InterruptedException
+   *           if interrupted while waiting
+   */
+  public byte[] forward(final byte[] signed) throws UpstreamException, InterruptedException {
+    if (!slots.tryAcquire(timeout.toMillis(), TimeUnit.MILLISECONDS)) {
+      throw new UpstreamException(HTTP_SERVICE_UNAVAILABLE, "Upstream concurrency limit reached");
+    }
+    try {
+      HttpRequest request = HttpRequest
+          .newBuilder(upstream)
+          .timeout(timeout)
+          .header("Content-Type", "application/xml")
+          .POST(HttpRequest.BodyPublishers.ofByteArray(signed))
+          .build();
+      HttpResponse<byte[]> response = client.send(
+          request, HttpResponse.BodyHandlers.ofByteArray()
+      );
+      if (response.statusCode() < HTTP_OK || response.statusCode() >= HTTP_MULTIPLE_CHOICES) {
+        throw new UpstreamException(
+            HTTP_BAD_GATEWAY, "Upstream returned status " + response.statusCode()
+        );
+      }
+      return response.body();
+    } catch (HttpTimeoutException e) {
+      throw new UpstreamException(HTTP_GATEWAY_TIMEOUT, "Upstream timed out", e);
+    } catch (UpstreamException e) {
+      throw e;
+    } catch (IOException e) {
+      throw new UpstreamException(HTTP_BAD_GATEWAY, "Upstream failed: " + e.getMessage(), e);
+    } finally {
+      slots.release();
+    }
+  }
+}
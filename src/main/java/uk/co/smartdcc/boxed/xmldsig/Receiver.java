@@ -0,0 +1,189 @@
+/*
+ * Created on Mon Oct 19 2026
+ *
+ * Copyright (c) 2026 Smart DCC Limited
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package uk.co.smartdcc.boxed.xmldsig;
+
+import java.io.ByteArrayInputStream;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.w3c.dom.Document;
+
+/**
+ * Verifies asynchronous responses and alerts delivered by DCC Boxed.
+ *
+ * Messages are accepted with {@link #offer}, which only enqueues them so the
+ * caller can acknowledge straight away. A pool of workers verifies each
+ * message with {@link Validate#validate_document} and passes the unsigned
+ * payload to a {@link ResponseSink}. The queue is bounded, when it is full
+ * {@link #offer} refuses the message and the sender is expected to retry.
+ */
+public final class Receiver {
+  private static final long POLL_MS = 100;
+  private static final int CLOSE_TIMEOUT_SECONDS = 10;
+
+  private final BlockingQueue<byte[]> queue;
+  private final ResponseSink sink;
+  private final int threads;
+  private final ExecutorService workers;
+  private final AtomicLong accepted = new AtomicLong();
+  private final AtomicLong delivered = new AtomicLong();
+  private final AtomicLong failed = new AtomicLong();
+  private final AtomicLong refused = new AtomicLong();
+  private volatile boolean closed = false;
+  private volatile boolean quiet = false;
+
+  /**
+   * Create a receiver, workers are started with {@link #start}.
+   *
+   * @param capacity
+   *          maximum messages waiting to be verified
+   * @param workerThreads
+   *          number of messages verified concurrently
+   * @param target
+   *          where verified messages are delivered
+   */
+  public Receiver(final int capacity, final int workerThreads, final ResponseSink target) {
+    this.queue = new ArrayBlockingQueue<>(capacity);
+    this.threads = workerThreads;
+    this.sink = target;
+    this.workers = Executors.newFixedThreadPool(threads, r -> {
+      Thread t = new Thread(r, "xmldsig-receiver");
+      t.setDaemon(true);
+      return t;
+    });
+  }
+
+  public void setQuiet(final boolean q) {
+    this.quiet = q;
+  }
+
+  private void log(final boolean error, final String message) {
+    if (!quiet) {
+      String code = "I";
+      if (error) {
+        code = "E";
+      }
+      System.err.println("[" + code + "] [" + ProcessHandle.current().pid() + "] " + message);
+    }
+  }
+
+  /**
+   * Start the workers, returns immediately.
+   */
+  public void start() {
+    /* compile schema and load credentials before the first message */
+    Util.get_document_builder_factory();
+    Credentials.getInstance();
+    for (int i = 0; i < threads; i++) {
+      workers.submit(this::work);
+    }
+  }
+
+  /**
+   * Queue a message for verification.
+   *
+   * @param message
+   *          signed response as received
+   * @return false if the queue is full or the receiver is closed
+   */
+  public boolean offer(final byte[] message) {
+    if (!closed && queue.offer(message)) {
+      accepted.incrementAndGet();
+      return true;
+    }
+    refused.incrementAndGet();
+    return false;
+  }
+
+  /**
+   * Stop accepting messages and wait a short time for those already queued to
+   * be delivered.
+   */
+  public void close() {
+    closed = true;
+    workers.shutdown();
+    try {
+      workers.awaitTermination(CLOSE_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  public long getAccepted() {
+    return accepted.get();
+  }
+
+  public long getDelivered() {
+    return delivered.get();
+  }
+
+  public long getFailed() {
+    return failed.get();
+  }
+
+  public long getRefused() {
+    return refused.get();
+  }
+
+  /**
+   * Messages accepted but not yet picked up by a worker.
+   *
+   * @return queue depth
+   */
+  public int getBacklog() {
+    return queue.size();
+  }
+
+  private void work() {
+    while (true) {
+      byte[] message;
+      try {
+        message = queue.poll(POLL_MS, TimeUnit.MILLISECONDS);
+      } catch (InterruptedException e) {
+        return;
+      }
+      if (message == null) {
+        if (closed) {
+          return;
+        }
+        continue;
+      }
+      process(message);
+    }
+  }
+
+  private void process(final byte[] message) {
+    try {
+      Document doc = Util.parse_duis_stream(new ByteArrayInputStream(message));
+      byte[] validated = Validate.validate_document(doc, Credentials.getInstance());
+      /* response without signature */
+      if (validated == null) {
+        validated = message;
+      }
+      sink.accept(validated);
+      delivered.incrementAndGet();
+    } catch (Exception e) {
+      failed.incrementAndGet();
+      log(true, "Received response rejected: " + e.getMessage());
+      sink.reject(message, e);
+    }
+  }
+}
@@ -0,0 +1,50 @@
+/*
+ * Created on Mon Oct 19 2026
+ *
+ * Copyright (c) 2026 Smart DCC Limited
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package uk.co.smartdcc.boxed.xmldsig;
+
+import java.io.IOException;
+
+/**
+ * Destination for asynchronous responses and alerts accepted by
+ * {@link Receiver}.
+ *
+ * Implementations are called concurrently from the receiver worker threads.
+ */
+public interface ResponseSink {
+  /**
+   * Deliver a verified response.
+   *
+   * @param message
+   *          response with its signature removed
+   * @throws IOException
+   *           if the message could not be delivered, it is then passed to
+   *           {@link #reject}
+   */
+  void accept(byte[] message) throws IOException;
+
+  /**
+   * Called for a response that failed verification or delivery.
+   *
+   * @param message
+   *          response as received
+   * @param cause
+   *          reason it was rejected
+   */
+  default void reject(final byte[] message, final Exception cause) {
+  }
+}
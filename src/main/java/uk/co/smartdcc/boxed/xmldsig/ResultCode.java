@@ -31,4 +31,20 @@ public enum ResultCode {
   public int value() {
     return _v;
   }
+
+  /**
+   * Map a process exit status back to its result code.
+   *
+   * @param v
+   *          exit status
+   * @return result code, or {@link #GENERIC_ERROR} if v is not known
+   */
+  public static ResultCode fromValue(final int v) {
+    for (ResultCode r : values()) {
+      if (r._v == v) {
+        return r;
+      }
+    }
+    return GENERIC_ERROR;
+  }
 }
@@ -0,0 +1,294 @@
+/*
+ * Created on Mon Oct 19 2026
+ *
+ * Copyright (c) 2026 Smart DCC Limited
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package uk.co.smartdcc.boxed.xmldsig;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigDecimal;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.validation.Schema;
+
+import org.xml.sax.SAXException;
+
+/**
+ * The XSDs messages can be validated against.
+ *
+ * The bundled DUIS and MMC schemas are always registered, further (for
+ * example older DUIS) versions can be added with {@link #register}. Each
+ * schema is compiled once, on first use, and has its own
+ * {@link DocumentBuilderFactory}. Schemas are named {@code <prefix>-<version>},
+ * and a message is matched to a schema by the namespace of its root element
+ * and its {@code schemaVersion} attribute. If no schema of that version is
+ * registered the first one registered for the namespace is used.
+ *
+ * The reserved name {@link #NONE} selects a non-validating parser, for
+ * messages from a trusted source.
+ */
+public final class SchemaRegistry {
+  public static final String DUIS = "DUIS-5.4";
+  public static final String MMC = "MMC-5.4";
+  public static final String NONE = "none";
+  static final String DUIS_NAMESPACE = "http://www.dccinterface.co.uk/ServiceUserGateway";
+  static final String MMC_NAMESPACE = "http://www.dccinterface.co.uk/ResponseAndAlert";
+  static final int PEEK_LIMIT = 8192;
+  private static final String MMC_FILE_NAME = "MMC Schema V5.4.xsd";
+
+  private static SchemaRegistry INSTANCE;
+
+  public static synchronized SchemaRegistry getInstance() {
+    if (INSTANCE == null) {
+      INSTANCE = new SchemaRegistry();
+    }
+    return INSTANCE;
+  }
+
+  /**
+   * A registered schema, compiled on first use.
+   */
+  private static final class Entry {
+    private final String _name;
+    private final String _namespace;
+    private final BigDecimal _version;
+    private final URL _source;
+    private Schema _schema;
+    private DocumentBuilderFactory _factory;
+    private ParserProfile _profile;
+
+    Entry(final String name, final String namespace, final URL source) {
+      this._name = name;
+      this._namespace = namespace;
+      this._version = version_of(name);
+      this._source = source;
+    }
+
+    /*
+     * the bundled DUIS schema is shared with Util, so it is only compiled once.
+     * A change of parser profile gives a new factory but keeps the schema.
+     */
+    synchronized DocumentBuilderFactory factory() throws SAXException {
+      if (_source == null) {
+        return Util.get_document_builder_factory();
+      }
+      if (_schema == null) {
+        try {
+          _schema = Util.compile_schema(_source);
+        } catch (SAXException e) {
+          throw e;
+        } catch (Exception e) {
+          throw new SAXException("could not load schema " + _name + ": " + e.getMessage(), e);
+        }
+      }
+      if (_factory == null || _profile != Util.get_parser_profile()) {
+        _profile = Util.get_parser_profile();
+        _factory = Util.create_document_builder_factory(_schema);
+      }
+      return _factory;
+    }
+  }
+
+  private final List<Entry> entries = new CopyOnWriteArrayList<>();
+  private final XMLInputFactory inputFactory;
+
+  SchemaRegistry() {
+    inputFactory = XMLInputFactory.newInstance();
+    inputFactory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+    inputFactory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+    entries.add(new Entry(DUIS, DUIS_NAMESPACE, null));
+    entries.add(
+        new Entry(MMC, MMC_NAMESPACE, Util.class.getClassLoader().getResource(MMC_FILE_NAME))
+    );
+  }
+
+  private static BigDecimal version_of(final String name) {
+    int dash = name.lastIndexOf('-');
+    if (dash < 0) {
+      return null;
+    }
+    try {
+      return new BigDecimal(name.substring(dash + 1));
+    } catch (NumberFormatException e) {
+      return null;
+    }
+  }
+
+  private Entry find(final String name) {
+    for (Entry e : entries) {
+      if (e._name.equals(name)) {
+        return e;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Register an XSD, it is compiled the first time a message uses it.
+   *
+   * @param name
+   *          name of the form {@code <prefix>-<version>}, for example
+   *          {@code DUIS-5.2}
+   * @param source
+   *          location of the XSD, schemas it imports are resolved relative to
+   *          it
+   * @throws IOException
+   *           if the XSD could not be read
+   * @throws IllegalArgumentException
+   *           if the name is already registered or the XSD has no target
+   *           namespace
+   */
+  public void register(final String name, final URL source) throws IOException {
+    String namespace;
+    try (InputStream is = source.openStream()) {
+      namespace = root(is)[2];
+    } catch (XMLStreamException e) {
+      throw new IOException("could not read schema " + source + ": " + e.getMessage(), e);
+    }
+    if (namespace == null || namespace.isEmpty()) {
+      throw new IllegalArgumentException("schema " + source + " has no target namespace");
+    }
+    synchronized (entries) {
+      if (NONE.equals(name) || find(name) != null) {
+        throw new IllegalArgumentException("schema " + name + " already registered");
+      }
+      entries.add(new Entry(name, namespace, source));
+    }
+  }
+
+  /**
+   * Names of the registered schemas, in registration order.
+   *
+   * @return names
+   */
+  public List<String> names() {
+    List<String> names = new ArrayList<>();
+    for (Entry e : entries) {
+      names.add(e._name);
+    }
+    return names;
+  }
+
+  /**
+   * Select a schema for a message.
+   *
+   * @param namespace
+   *          namespace of the message root element
+   * @param version
+   *          {@code schemaVersion} of the message, or null
+   * @return name of the schema, {@link #DUIS} if none is registered for the
+   *         namespace
+   */
+  public String select(final String namespace, final String version) {
+    BigDecimal wanted = null;
+    if (version != null) {
+      try {
+        wanted = new BigDecimal(version);
+      } catch (NumberFormatException e) {
+        wanted = null;
+      }
+    }
+    String fallback = null;
+    for (Entry e : entries) {
+      if (!e._namespace.equals(namespace)) {
+        continue;
+      }
+      if (wanted != null && e._version != null && wanted.compareTo(e._version) == 0) {
+        return e._name;
+      }
+      if (fallback == null) {
+        fallback = e._name;
+      }
+    }
+    return fallback == null ? DUIS : fallback;
+  }
+
+  /**
+   * Select a schema for a message by peeking at its root element, the stream
+   * is left positioned at the start of the message.
+   *
+   * @param is
+   *          message, must support mark
+   * @return name of the schema
+   * @throws IOException
+   *           if the message could not be read
+   */
+  public String select(final InputStream is) throws IOException {
+    is.mark(PEEK_LIMIT);
+    byte[] head = is.readNBytes(PEEK_LIMIT);
+    is.reset();
+    try {
+      String[] root = root(new ByteArrayInputStream(head));
+      return select(root[0], root[1]);
+    } catch (XMLStreamException e) {
+      /* not well formed, the parser reports it */
+      return DUIS;
+    }
+  }
+
+  /*
+   * namespace and schemaVersion of the root element, or targetNamespace of an XSD
+   */
+  private String[] root(final InputStream is) throws XMLStreamException {
+    String[] result = new String[3];
+    XMLStreamReader reader = inputFactory.createXMLStreamReader(is);
+    try {
+      while (reader.hasNext()) {
+        if (reader.next() == XMLStreamConstants.START_ELEMENT) {
+          result[0] = reader.getNamespaceURI();
+          result[1] = reader.getAttributeValue(null, "schemaVersion");
+          result[2] = reader.getAttributeValue(null, "targetNamespace");
+          break;
+        }
+      }
+    } finally {
+      reader.close();
+    }
+    return result;
+  }
+
+  /**
+   * Factory validating against a schema, compiling the schema if it has not
+   * been used before.
+   *
+   * @param name
+   *          registered name, or {@link #NONE}
+   * @return factory
+   * @throws SAXException
+   *           if the schema could not be compiled
+   * @throws IllegalArgumentException
+   *           if no schema of that name is registered
+   */
+  public DocumentBuilderFactory getDocumentBuilderFactory(final String name) throws SAXException {
+    if (NONE.equals(name)) {
+      return Util.get_trusted_document_builder_factory();
+    }
+    Entry e = find(name);
+    if (e == null) {
+      throw new IllegalArgumentException("unknown schema " + name + ", expected one of " + names());
+    }
+    return e.factory();
+  }
+}
@@ -22,27 +22,46 @@ import com.google.gson.JsonObject;
 import com.google.gson.JsonParser;
 import com.google.gson.reflect.TypeToken;
 import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
 import com.sun.net.httpserver.HttpServer;
 import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
 import java.lang.reflect.Type;
 import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.w3c.dom.Document;
 
 public final class Server {
   private static final Gson GSON = new Gson();
   private static final Type MAP_TYPE = new TypeToken<Map<String, String>>() {
   }.getType();
-  private static final int PORT = 8080;
+  private static final int PORT = ServerOptions.DEFAULT_PORT;
+  private static final String NODELAY_PROPERTY = "sun.net.httpserver.nodelay";
+  private static final String REUSE_PORT_TRANSPORT = "SO_REUSEPORT needs --transport nio";
   private static boolean quiet = false;
 
   private static final int HTTP_NOT_FOUND = 404;
   private static final int HTTP_METHOD_NOT_ALLOWED = 405;
   private static final int HTTP_BAD_REQUEST = 400;
   private static final int HTTP_OK = 200;
+  private static final byte[] MESSAGE_PREFIX = "{\"message\":\""
+      .getBytes(StandardCharsets.US_ASCII);
+  private static final byte[] MESSAGE_SUFFIX = "\"}".getBytes(StandardCharsets.US_ASCII);
 
   private Server() {
   }
@@ -58,60 +77,453 @@ public final class Server {
   }
 
   public static HttpServer createServer(final int port) throws IOException {
-    HttpServer server = HttpServer.create(new InetSocketAddress(port), 0);
-    server.createContext("/sign", Server::handleSign);
-    server.createContext("/verify", Server::handleVerify);
-    server.setExecutor(null);
-    return server;
+    return createServer(new ServerOptions().setPort(port));
+  }
+
+  /**
+   * Create (but do not start) a server.
+   *
+   * Requests are handled on a bounded pool, requests over the limits are
+   * refused by {@link Admission}. When an upstream is configured
+   * {@code /proxy} is registered as well, and by default the pool is sized so
+   * that requests waiting on the upstream do not hold up {@code /sign} and
+   * {@code /verify}. With validation threads configured, messages are
+   * validated alongside signing by a {@link Pipeline}.
+   *
+   * @param options
+   *          deployment settings, with a single listener
+   * @return server
+   * @throws IOException
+   *           if the port could not be bound
+   */
+  public static HttpServer createServer(final ServerOptions options) throws IOException {
+    if (options.getListeners() != 1 || options.getSocketPath() != null) {
+      throw new IllegalArgumentException("use createServers for more than one listener");
+    }
+    return createServers(options).get(0);
+  }
+
+  /**
+   * Create (but do not start) the listeners of a server, see
+   * {@link #createServer(ServerOptions)}.
+   *
+   * Each listener has its own accept loop and dispatcher, with the port
+   * shared through {@code SO_REUSEPORT}, while workers, limits and the
+   * endpoints behind them are shared by all. Requests are counted per
+   * listener so that the spread of connections can be checked. With a socket
+   * path, a {@link NioHttpServer} on that unix domain socket is added last.
+   * With a frame port, a {@link FrameServer} accepts connections on it right
+   * away and is closed with the workers once the servers are drained.
+   *
+   * @param options
+   *          deployment settings
+   * @return one server per listener
+   * @throws IOException
+   *           if the port could not be bound
+   */
+  public static List<HttpServer> createServers(final ServerOptions options) throws IOException {
+    if (options.isReusePort() && options.getTransport() != Transport.NIO) {
+      throw new IllegalArgumentException(REUSE_PORT_TRANSPORT);
+    }
+    int maxInFlight = options.getMaxInFlight();
+    if (maxInFlight == 0) {
+      maxInFlight = Runtime.getRuntime().availableProcessors()
+          + (options.getUpstream() != null ? options.getUpstreamConcurrency() : 0);
+    }
+    Admission admission = new Admission(
+        maxInFlight, options.getMaxQueued(), options.getMaxPerClient()
+    );
+    Pipeline pipeline = null;
+    if (options.getValidationThreads() > 0) {
+      pipeline = new Pipeline(options.getValidationThreads());
+      admission.onClose(pipeline::close);
+    }
+    final Pipeline pipelined = pipeline;
+    MessageLimits limits = new MessageLimits(
+        options.getMaxRequestBytes(), options.getMaxElements(), options.getMaxElementDepth()
+    );
+    Map<String, HttpHandler> handlers = new LinkedHashMap<>();
+    handlers.put(
+        "/sign", admission.admit(exchange -> handleSign(exchange, pipelined, limits))
+    );
+    handlers.put(
+        "/verify", admission.admit(exchange -> handleVerify(exchange, pipelined, limits))
+    );
+    handlers.put("/metrics", admission.admit(Server::handleMetrics));
+    /* not admitted, so that they are answered even when overloaded or draining */
+    Warmup warmup = new Warmup(options.getWarmupIterations());
+    warmup.setQuiet(quiet);
+    handlers.put("/health", Server::handleHealth);
+    handlers.put("/ready", exchange -> handleReady(exchange, warmup, admission));
+    if (options.getUpstream() != null) {
+      Proxy proxy = new Proxy(
+          options.getUpstream(), options.getUpstreamConcurrency(), options.getUpstreamTimeoutMs()
+      );
+      handlers.put(
+          "/proxy", admission.admit(exchange -> handleProxy(exchange, proxy, pipelined, limits))
+      );
+    }
+
+    ResponseSink sink = options.getResponseSink();
+    if (sink == null && options.getReceiveDirectory() != null) {
+      sink = new DirectorySink(options.getReceiveDirectory());
+    }
+    if (sink != null) {
+      Receiver receiver = new Receiver(
+          options.getReceiveQueue(), options.getReceiveThreads(), sink
+      );
+      receiver.setQuiet(quiet);
+      receiver.start();
+      admission.onClose(receiver::close);
+      handlers.put(
+          "/receive", admission.admit(exchange -> handleReceive(exchange, receiver, limits))
+      );
+    }
+
+    List<HttpServer> servers = new ArrayList<>();
+    InetSocketAddress address = new InetSocketAddress(options.getPort());
+    try {
+      for (int i = 0; i < options.getListeners(); i++) {
+        HttpServer server = bind(options, address);
+        servers.add(server);
+        /* with an ephemeral port, the rest join the one the first was given */
+        address = server.getAddress();
+        server.setExecutor(admission);
+        String listener = Integer.toString(i);
+        for (Map.Entry<String, HttpHandler> entry : handlers.entrySet()) {
+          HttpHandler handler = entry.getValue();
+          server.createContext(entry.getKey(), !options.isReusePort() ? handler : exchange -> {
+            Metrics.getInstance().increment(
+                "xmldsig_listener_requests_total", "listener", listener
+            );
+            handler.handle(exchange);
+          });
+        }
+      }
+      Path socket = options.getSocketPath();
+      if (socket != null) {
+        if (UnixSockets.inUse(socket)) {
+          throw new IOException("socket " + socket + " is in use");
+        }
+        Files.deleteIfExists(socket);
+        HttpServer server = new NioHttpServer(
+            UnixSockets.bind(socket), options.getMaxRequestBytes()
+        );
+        admission.onClose(() -> {
+          try {
+            Files.deleteIfExists(socket);
+          } catch (IOException ignored) {
+          }
+        });
+        servers.add(server);
+        server.setExecutor(admission);
+        handlers.forEach(server::createContext);
+      }
+      if (options.getFramePort() > 0) {
+        FrameServer frames = new FrameServer(
+            new InetSocketAddress(options.getFramePort()), options.getBacklog(), admission,
+            exchange -> handleFrame(exchange, pipelined, limits), options.getMaxRequestBytes()
+        );
+        admission.onClose(frames::close);
+      }
+    } catch (IOException e) {
+      for (HttpServer server : servers) {
+        server.stop(0);
+      }
+      admission.close();
+      throw e;
+    }
+
+    Metrics.getInstance().gauge(
+        "xmldsig_ready", () -> warmup.isDone() && admission.isReady() ? 1 : 0
+    );
+    warmup.start();
+    return servers;
+  }
+
+  private static HttpServer bind(final ServerOptions options, final InetSocketAddress address)
+      throws IOException {
+    if (options.getTransport() == Transport.NIO) {
+      NioHttpServer server = new NioHttpServer(options.getMaxRequestBytes());
+      try {
+        if (options.isReusePort()) {
+          server.reusePort();
+        }
+        server.bind(address, options.getBacklog());
+      } catch (IOException e) {
+        server.stop(0);
+        throw e;
+      }
+      return server;
+    }
+    return HttpServer.create(address, options.getBacklog());
   }
 
   static void showHelp() {
     System.out.println(
-        "Usage: java -cp xmldsign.jar uk.co.smartdcc.boxed.xmldsig.jar Server [-p port] [-q] [-h]"
+        "Usage: java -cp xmldsign.jar uk.co.smartdcc.boxed.xmldsig.jar Server [-p port] [-u url]"
+            + " [--upstreamConcurrency n] [--upstreamTimeout ms] [-r dir] [--receiveQueue n]"
+            + " [--receiveThreads n] [--schema name=file.xsd] [--pipeline n]"
+            + " [--parserProfile default|large] [--maxInFlight n] [--maxQueued n]"
+            + " [--maxPerClient n] [--backlog n] [--maxRequestBytes n] [--maxElements n]"
+            + " [--maxElementDepth n] [--drainTimeout ms] [--warmup n] [--listeners n]"
+            + " [--reusePort] [--transport jdk|nio] [--socket path] [--framePort port]"
+            + " [--credentials name[:config]] [--credentialCache n] [--credentialTtl ms]"
+            + " [-q] [-h]"
     );
     System.out.println("  -p port  Server port (default: " + PORT + ")");
+    System.out.println("  -u url   DCC Boxed url that /proxy forwards signed requests to");
+    System.out.println(
+        "  --upstreamConcurrency n  Maximum requests outstanding upstream (default: "
+            + ServerOptions.DEFAULT_UPSTREAM_CONCURRENCY + ")"
+    );
+    System.out.println(
+        "  --upstreamTimeout ms     Upstream timeout in milliseconds (default: "
+            + ServerOptions.DEFAULT_UPSTREAM_TIMEOUT_MS + ")"
+    );
+    System.out.println("  -r dir   Directory /receive writes verified responses to");
+    System.out.println(
+        "  --receiveQueue n         Responses waiting to be verified (default: "
+            + ServerOptions.DEFAULT_RECEIVE_QUEUE + ")"
+    );
+    System.out.println(
+        "  --receiveThreads n       Responses verified concurrently (default: cores)"
+    );
+    System.out.println(
+        "  --schema name=file.xsd   Register an additional schema, name is <prefix>-<version>"
+    );
+    System.out.println(
+        "  --pipeline n             Validate on n threads while signing (default: off)"
+    );
+    System.out.println(
+        "  --parserProfile name     Parser settings, large for multi-MB messages (default: "
+            + Util.get_parser_profile().toString().toLowerCase(Locale.ROOT) + ")"
+    );
+    System.out.println(
+        "  --maxInFlight n          Requests handled concurrently (default: cores, plus"
+            + " upstreamConcurrency with -u)"
+    );
+    System.out.println(
+        "  --maxQueued n            Requests waiting for a worker before 503 (default: "
+            + ServerOptions.DEFAULT_MAX_QUEUED + ")"
+    );
+    System.out.println(
+        "  --maxPerClient n         Requests in flight per client address before 429"
+            + " (default: no limit)"
+    );
+    System.out.println("  --backlog n              Connections waiting to be accepted");
+    System.out.println(
+        "  --maxRequestBytes n      Request body size before 413 (default: "
+            + MessageLimits.DEFAULT_MAX_BYTES + ")"
+    );
+    System.out.println(
+        "  --maxElements n          Elements in a message before 413 (default: no limit)"
+    );
+    System.out.println(
+        "  --maxElementDepth n      Element nesting in a message before 413 (default: "
+            + MessageLimits.DEFAULT_MAX_DEPTH + ")"
+    );
+    System.out.println(
+        "  --drainTimeout ms        Wait for requests in progress on shutdown (default: "
+            + ServerOptions.DEFAULT_DRAIN_TIMEOUT_MS + ")"
+    );
+    System.out.println(
+        "  --warmup n               Sign and verify round trips before /ready (default: "
+            + ServerOptions.DEFAULT_WARMUP_ITERATIONS + ")"
+    );
+    System.out.println(
+        "  --listeners n            Accept loops sharing the port, nio transport only"
+            + " (default: 1)"
+    );
+    System.out.println(
+        "  --reusePort              Share the port with other server processes, nio transport"
+            + " only"
+    );
+    System.out.println(
+        "  --transport name         HTTP implementation, nio for the selector based engine"
+            + " (default: jdk, or nio with --listeners and --reusePort)"
+    );
+    System.out.println(
+        "  --socket path            Also serve on a unix domain socket (java 16 or later)"
+    );
+    System.out.println(
+        "  --framePort port         Also serve the binary frame protocol on a port"
+    );
+    System.out.println(
+        "  --credentials source     Credential source, library or directory:path (default: "
+            + Credentials.LIBRARY + ")"
+    );
+    System.out.println(
+        "  --credentialCache n      Credentials cached from a source (default: "
+            + CachingResolver.DEFAULT_MAX_ENTRIES + ")"
+    );
+    System.out.println(
+        "  --credentialTtl ms       Time credentials are cached for (default: "
+            + CachingResolver.DEFAULT_TTL_MS + ")"
+    );
     System.out.println("  -q       Quiet mode (no logging)");
     System.out.println("  -h       Show this help");
   }
 
-  public static void main(final String[] args) throws IOException {
-    int port = PORT;
+  /* null once help or an error has been shown */
+  private static ServerOptions parseArguments(final String[] args) {
+    ServerOptions options = new ServerOptions();
+    boolean transportGiven = false;
 
     for (int i = 0; i < args.length; i++) {
-      switch (args[i]) {
-        case "-p":
-          if (i + 1 < args.length) {
-            try {
-              port = Integer.parseInt(args[++i]);
-            } catch (NumberFormatException e) {
-              showHelp();
-              return;
-            }
-          } else {
+      try {
+        switch (args[i]) {
+          case "-p":
+            options.setPort(Integer.parseInt(args[++i]));
+            break;
+          case "-u":
+            options.setUpstream(URI.create(args[++i]));
+            break;
+          case "--upstreamConcurrency":
+            options.setUpstreamConcurrency(Integer.parseInt(args[++i]));
+            break;
+          case "--upstreamTimeout":
+            options.setUpstreamTimeoutMs(Integer.parseInt(args[++i]));
+            break;
+          case "-r":
+            options.setReceiveDirectory(Paths.get(args[++i]));
+            break;
+          case "--receiveQueue":
+            options.setReceiveQueue(Integer.parseInt(args[++i]));
+            break;
+          case "--receiveThreads":
+            options.setReceiveThreads(Integer.parseInt(args[++i]));
+            break;
+          case "--pipeline":
+            options.setValidationThreads(Integer.parseInt(args[++i]));
+            break;
+          case "--parserProfile":
+            Util.set_parser_profile(ParserProfile.of(args[++i]));
+            break;
+          case "--maxInFlight":
+            options.setMaxInFlight(Integer.parseInt(args[++i]));
+            break;
+          case "--maxQueued":
+            options.setMaxQueued(Integer.parseInt(args[++i]));
+            break;
+          case "--maxPerClient":
+            options.setMaxPerClient(Integer.parseInt(args[++i]));
+            break;
+          case "--backlog":
+            options.setBacklog(Integer.parseInt(args[++i]));
+            break;
+          case "--maxRequestBytes":
+            options.setMaxRequestBytes(Long.parseLong(args[++i]));
+            break;
+          case "--maxElements":
+            options.setMaxElements(Integer.parseInt(args[++i]));
+            break;
+          case "--maxElementDepth":
+            options.setMaxElementDepth(Integer.parseInt(args[++i]));
+            break;
+          case "--drainTimeout":
+            options.setDrainTimeoutMs(Long.parseLong(args[++i]));
+            break;
+          case "--warmup":
+            options.setWarmupIterations(Integer.parseInt(args[++i]));
+            break;
+          case "--listeners":
+            options.setListeners(Integer.parseInt(args[++i]));
+            break;
+          case "--reusePort":
+            options.setReusePort(true);
+            break;
+          case "--transport":
+            options.setTransport(Transport.of(args[++i]));
+            transportGiven = true;
+            break;
+          case "--framePort":
+            options.setFramePort(Integer.parseInt(args[++i]));
+            break;
+          case "--credentials":
+            options.setCredentials(args[++i]);
+            break;
+          case "--credentialCache":
+            options.setCredentialCache(Integer.parseInt(args[++i]));
+            break;
+          case "--credentialTtl":
+            options.setCredentialTtlMs(Long.parseLong(args[++i]));
+            break;
+          case "--socket":
+            options.setSocketPath(Paths.get(args[++i]));
+            break;
+          case "--schema":
+            registerSchema(args[++i]);
+            break;
+          case "-q":
+            quiet = true;
+            break;
+          case "-h":
+          default:
             showHelp();
-            return;
-          }
-          break;
-        case "-q":
-          quiet = true;
-          break;
-        case "-h":
-        default:
-          showHelp();
-          return;
+            return null;
+        }
+      } catch (ArrayIndexOutOfBoundsException | IllegalArgumentException e) {
+        showHelp();
+        return null;
+      } catch (IOException e) {
+        log(true, e.getMessage());
+        return null;
       }
     }
+    if (options.getUpstreamConcurrency() < 1 || options.getUpstreamTimeoutMs() < 1
+        || options.getReceiveQueue() < 1 || options.getReceiveThreads() < 1
+        || options.getValidationThreads() < 0 || options.getMaxInFlight() < 0
+        || options.getMaxQueued() < 0 || options.getMaxPerClient() < 0
+        || options.getBacklog() < 0 || options.getMaxRequestBytes() < 0
+        || options.getMaxElements() < 0 || options.getMaxElementDepth() < 0
+        || options.getDrainTimeoutMs() < 0 || options.getWarmupIterations() < 0
+        || options.getListeners() < 1 || options.getFramePort() < 0
+        || options.getCredentialCache() < 1 || options.getCredentialTtlMs() < 1) {
+      showHelp();
+      return null;
+    }
+    /* only the nio transport can set SO_REUSEPORT before binding */
+    if (options.isReusePort() && !transportGiven) {
+      options.setTransport(Transport.NIO);
+    }
+    return options;
+  }
 
-    HttpServer server = createServer(port);
+  public static void main(final String[] args) throws IOException {
+    ServerOptions options = parseArguments(args);
+    if (options == null) {
+      return;
+    }
+    if (!isSupported(options) || !openCredentials(options)) {
+      return;
+    }
+
+    /*
+     * the JDK server writes a response in parts, each waiting on a delayed ack
+     * without this
+     */
+    if (System.getProperty(NODELAY_PROPERTY) == null) {
+      System.setProperty(NODELAY_PROPERTY, "true");
+    }
+    List<HttpServer> servers = createServers(options);
     Object sync = new Object();
+    CountDownLatch stopped = new CountDownLatch(1);
+    /* the JVM exits once the hook returns, so it waits for the drain */
     Thread shutdownHook = new Thread(() -> {
       synchronized (sync) {
         sync.notifyAll();
       }
+      try {
+        stopped.await();
+      } catch (InterruptedException ignored) {
+      }
     });
     Runtime.getRuntime().addShutdownHook(shutdownHook);
-    server.start();
-    log(false, "Server started on port " + port);
+    for (HttpServer server : servers) {
+      server.start();
+    }
+    logStarted(options);
     synchronized (sync) {
       try {
         sync.wait();
@@ -119,10 +531,139 @@ public final class Server {
       }
     }
     log(false, "Shutting down server...");
-    server.stop(0);
+    try {
+      long start = System.nanoTime();
+      boolean drained = drain(servers, options.getDrainTimeoutMs());
+      long ms = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+      log(!drained, (drained ? "Drained" : "Drain timed out") + " after " + ms + " ms");
+    } finally {
+      stopped.countDown();
+    }
+  }
+
+  private static boolean isSupported(final ServerOptions options) {
+    if (options.isReusePort() && options.getTransport() != Transport.NIO) {
+      log(true, REUSE_PORT_TRANSPORT);
+      return false;
+    }
+    if (options.isReusePort() && !NioHttpServer.isReusePortSupported()) {
+      log(true, "SO_REUSEPORT is not supported on this platform");
+      return false;
+    }
+    if (options.getSocketPath() != null && !UnixSockets.isSupported()) {
+      log(true, "Unix domain sockets require java 16 or later");
+      return false;
+    }
+    return true;
+  }
+
+  private static boolean openCredentials(final ServerOptions options) {
+    if (options.getCredentials() == null) {
+      return true;
+    }
+    try {
+      Credentials.setInstance(
+          Credentials.open(
+              options.getCredentials(), options.getCredentialCache(), options.getCredentialTtlMs()
+          )
+      );
+      return true;
+    } catch (IOException | IllegalArgumentException e) {
+      log(true, "Could not open credentials " + options.getCredentials() + ": " + e.getMessage());
+      return false;
+    }
+  }
+
+  private static void logStarted(final ServerOptions options) {
+    int listeners = options.getListeners();
+    log(false, "Server started on port " + options.getPort());
+    if (options.getTransport() != Transport.JDK) {
+      log(false, "Using the " + options.getTransport() + " transport");
+    }
+    if (listeners > 1) {
+      log(false, listeners + " listeners sharing the port");
+    } else if (options.isReusePort()) {
+      log(false, "Sharing the port with other processes");
+    }
+    if (options.getSocketPath() != null) {
+      log(false, "Listening on " + options.getSocketPath());
+    }
+    if (options.getFramePort() > 0) {
+      log(false, "Frame protocol on port " + options.getFramePort());
+    }
+    if (options.getCredentials() != null) {
+      log(false, "Credentials from " + options.getCredentials());
+    }
+    if (options.getUpstream() != null) {
+      log(false, "Proxying to " + options.getUpstream());
+    }
+    if (options.getReceiveDirectory() != null) {
+      log(false, "Receiving responses into " + options.getReceiveDirectory());
+    }
+    if (Util.get_parser_profile() != ParserProfile.DEFAULT) {
+      log(false, "Parser profile " + Util.get_parser_profile());
+    }
+    if (options.getValidationThreads() > 0) {
+      log(false, "Validating on " + options.getValidationThreads() + " threads while signing");
+    }
+  }
+
+  /**
+   * Stop a server created by {@link #createServer(ServerOptions)} without
+   * cutting off requests in progress.
+   *
+   * New requests are refused with 503 while those admitted or queued are
+   * given up to the timeout to complete, then the server is stopped and the
+   * receiver and pipeline are closed.
+   *
+   * @param server
+   *          server to stop
+   * @param timeoutMs
+   *          longest time to wait for requests in progress
+   * @return true if every request completed in time
+   */
+  public static boolean drain(final HttpServer server, final long timeoutMs) {
+    return drain(List.of(server), timeoutMs);
   }
 
-  static void handleSign(final HttpExchange exchange) throws IOException {
+  /**
+   * As {@link #drain(HttpServer, long)}, for the listeners created by
+   * {@link #createServers(ServerOptions)}.
+   *
+   * @param servers
+   *          listeners to stop
+   * @param timeoutMs
+   *          longest time to wait for requests in progress
+   * @return true if every request completed in time
+   */
+  public static boolean drain(final List<HttpServer> servers, final long timeoutMs) {
+    Admission admission = (Admission) servers.get(0).getExecutor();
+    boolean drained = false;
+    try {
+      drained = admission.drain(timeoutMs);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    for (HttpServer server : servers) {
+      server.stop(0);
+    }
+    admission.close();
+    return drained;
+  }
+
+  private static void registerSchema(final String setting) throws IOException {
+    int eq = setting.indexOf('=');
+    if (eq < 1) {
+      throw new IllegalArgumentException("expected name=file.xsd");
+    }
+    SchemaRegistry.getInstance().register(
+        setting.substring(0, eq), Paths.get(setting.substring(eq + 1)).toUri().toURL()
+    );
+  }
+
+  static void handleSign(
+      final HttpExchange exchange, final Pipeline pipeline, final MessageLimits limits
+  ) throws IOException {
     if (!"/sign".equals(exchange.getRequestURI().getPath())) {
       exchange.sendResponseHeaders(HTTP_NOT_FOUND, 0);
       exchange.close();
@@ -133,36 +674,236 @@ public final class Server {
       return;
     }
     log(false, "(" + exchange.getRemoteAddress() + ") Sign request received ");
+    String schemaName = null;
     try {
-      JsonObject request = JsonParser.parseString(
-          new String(exchange.getRequestBody().readAllBytes())
-      ).getAsJsonObject();
-      byte[] xmlBytes = Base64.getDecoder().decode(request.get("message").getAsString());
-      boolean preserveCounter = /* */
-          request.has("preserveCounter")
-              && request.get("preserveCounter").getAsBoolean();
-      ByteArrayInputStream input = new ByteArrayInputStream(xmlBytes);
-      ByteArrayOutputStream output = new ByteArrayOutputStream();
-      Sign.verify_and_sign_input_stream(
-          preserveCounter,
-          input,
-          output,
-          CertificateLibrary.getInstance()
-      );
-      String encoded = Base64.getEncoder().encodeToString(output.toByteArray());
-      sendResponse(exchange, HTTP_OK, Map.of("message", encoded));
+      JsonObject request = readRequest(exchange, limits);
+      schemaName = schemaOf(request);
+      DomWriter signed = signRequest(request, schemaName, pipeline, limits);
+      count("sign", schemaName, true);
+      sendMessage(exchange, signed);
       log(false, "(" + exchange.getRemoteAddress() + ") Sign request completed successfully");
+    } catch (MessageLimits.TooLargeException e) {
+      sendTooLarge(exchange, "Sign", e);
+    } catch (Exception e) {
+      count("sign", schemaName, false);
+      log(true, "(" + exchange.getRemoteAddress() + ") Sign request failed: " + e.getMessage());
+      sendResponse(
+          exchange,
+          HTTP_BAD_REQUEST,
+          Map.of("error", e.getMessage(), "errorCode", e.getClass().getSimpleName())
+      );
+    }
+  }
+
+  private static JsonObject readRequest(
+      final HttpExchange exchange, final MessageLimits limits
+  ) throws IOException {
+    return JsonParser.parseString(new String(limits.readBody(exchange))).getAsJsonObject();
+  }
+
+  private static void sendTooLarge(
+      final HttpExchange exchange, final String endpoint, final MessageLimits.TooLargeException e
+  ) throws IOException {
+    Metrics.getInstance().increment("xmldsig_requests_rejected_total", "reason", "TooLarge");
+    log(
+        true, "(" + exchange.getRemoteAddress() + ") " + endpoint + " request refused: "
+            + e.getMessage()
+    );
+    sendResponse(
+        exchange,
+        MessageLimits.HTTP_PAYLOAD_TOO_LARGE,
+        Map.of("error", e.getMessage(), "errorCode", e.getClass().getSimpleName())
+    );
+  }
+
+  /* "trusted": true skips schema validation, otherwise "schema" may name one */
+  private static String schemaOf(final JsonObject request) {
+    if (request.has("trusted") && request.get("trusted").getAsBoolean()) {
+      return SchemaRegistry.NONE;
+    }
+    return request.has("schema") ? request.get("schema").getAsString() : null;
+  }
+
+  private static void count(final String endpoint, final String schemaName, final boolean ok) {
+    Metrics.getInstance().increment(
+        "xmldsig_requests_total",
+        "endpoint", endpoint,
+        "validation", SchemaRegistry.NONE.equals(schemaName) ? "none" : "schema",
+        "result", ok ? "ok" : "error"
+    );
+  }
+
+  /* the signed request is left in the calling thread's writer */
+  private static DomWriter signRequest(
+      final JsonObject request, final String schemaName, final Pipeline pipeline,
+      final MessageLimits limits
+  ) throws Exception {
+    byte[] xmlBytes = Base64.getDecoder().decode(request.get("message").getAsString());
+    boolean preserveCounter = /* */
+        request.has("preserveCounter")
+            && request.get("preserveCounter").getAsBoolean();
+    return sign(xmlBytes, preserveCounter, schemaName, pipeline, limits);
+  }
+
+  /*
+   * shared by /sign and the frame protocol, the result is the calling thread's
+   * writer
+   */
+  private static DomWriter sign(
+      final byte[] xmlBytes, final boolean preserveCounter, final String schemaName,
+      final Pipeline pipeline, final MessageLimits limits
+  ) throws Exception {
+    InputStream input = limits.xml(new ByteArrayInputStream(xmlBytes));
+    if (pipeline != null) {
+      return pipeline.sign(preserveCounter, input, Credentials.getInstance(), schemaName);
+    }
+    Document doc = Util.parse_duis_stream(input, schemaName);
+    Sign.sign_document(preserveCounter, doc, Credentials.getInstance());
+    return DomWriter.local().write(doc);
+  }
+
+  /**
+   * Sign a request, forward it to DCC Boxed and verify the reply.
+   *
+   * Takes the same body as {@code /sign} and answers like {@code /verify}.
+   * Failures to sign are reported with 400, upstream failures with the status
+   * carried by {@link Proxy.UpstreamException} and a reply that fails
+   * verification with 502.
+   *
+   * @param exchange
+   *          request to answer
+   * @param proxy
+   *          upstream connection
+   * @param pipeline
+   *          validates alongside signing, or null
+   * @param limits
+   *          size limits of the request
+   * @throws IOException
+   *           if the response could not be sent
+   */
+  static void handleProxy(
+      final HttpExchange exchange, final Proxy proxy, final Pipeline pipeline,
+      final MessageLimits limits
+  ) throws IOException {
+    if (!"/proxy".equals(exchange.getRequestURI().getPath())) {
+      exchange.sendResponseHeaders(HTTP_NOT_FOUND, 0);
+      exchange.close();
+      return;
+    }
+    if (!"POST".equals(exchange.getRequestMethod())) {
+      sendResponse(exchange, HTTP_METHOD_NOT_ALLOWED, Map.of("error", "Method not allowed"));
+      return;
+    }
+    log(false, "(" + exchange.getRemoteAddress() + ") Proxy request received");
+    byte[] signed;
+    String schemaName = null;
+    try {
+      JsonObject request = readRequest(exchange, limits);
+      schemaName = schemaOf(request);
+      /* copied, as the upstream client may still be reading it after a timeout */
+      signed = signRequest(request, schemaName, pipeline, limits).toByteArray();
+    } catch (MessageLimits.TooLargeException e) {
+      sendTooLarge(exchange, "Proxy", e);
+      return;
     } catch (Exception e) {
+      count("proxy", schemaName, false);
+      log(true, "(" + exchange.getRemoteAddress() + ") Proxy request failed: " + e.getMessage());
       sendResponse(
           exchange,
           HTTP_BAD_REQUEST,
           Map.of("error", e.getMessage(), "errorCode", e.getClass().getSimpleName())
       );
-      log(true, "(" + exchange.getRemoteAddress() + ") Sign request failed: " + e.getMessage());
+      return;
+    }
+    try {
+      byte[] reply = proxy.forward(signed);
+      byte[] validated = Validate.validate_input_stream(
+          new ByteArrayInputStream(reply),
+          Credentials.getInstance()
+      );
+      /* response without signature */
+      if (validated == null) {
+        validated = reply;
+      }
+      String encoded = Base64.getEncoder().encodeToString(validated);
+      count("proxy", schemaName, true);
+      sendResponse(exchange, HTTP_OK, Map.of("message", encoded));
+      log(false, "(" + exchange.getRemoteAddress() + ") Proxy request completed successfully");
+    } catch (Proxy.UpstreamException e) {
+      count("proxy", schemaName, false);
+      log(true, "(" + exchange.getRemoteAddress() + ") Proxy request failed: " + e.getMessage());
+      sendResponse(
+          exchange,
+          e.getStatus(),
+          Map.of("error", e.getMessage(), "errorCode", e.getClass().getSimpleName())
+      );
+    } catch (Exception e) {
+      if (e instanceof InterruptedException) {
+        Thread.currentThread().interrupt();
+      }
+      count("proxy", schemaName, false);
+      log(true, "(" + exchange.getRemoteAddress() + ") Proxy request failed: " + e.getMessage());
+      sendResponse(
+          exchange,
+          Proxy.HTTP_BAD_GATEWAY,
+          Map.of("error", String.valueOf(e.getMessage()), "errorCode", e.getClass().getSimpleName())
+      );
     }
   }
 
-  static void handleVerify(final HttpExchange exchange) throws IOException {
+  /**
+   * Accept an asynchronous response or alert from DCC Boxed.
+   *
+   * The body is the signed XML as posted by DCC Boxed. It is acknowledged with
+   * an empty 200 as soon as it is queued, verification and delivery happen on
+   * the {@link Receiver} workers. If the queue is full 503 is returned, a body
+   * over the limits is refused with 413 as soon as it is read past them.
+   *
+   * @param exchange
+   *          request to answer
+   * @param receiver
+   *          queue and workers
+   * @param limits
+   *          size limits of the body
+   * @throws IOException
+   *           if the response could not be sent
+   */
+  static void handleReceive(
+      final HttpExchange exchange, final Receiver receiver, final MessageLimits limits
+  ) throws IOException {
+    if (!"/receive".equals(exchange.getRequestURI().getPath())) {
+      exchange.sendResponseHeaders(HTTP_NOT_FOUND, 0);
+      exchange.close();
+      return;
+    }
+    if (!"POST".equals(exchange.getRequestMethod())) {
+      sendResponse(exchange, HTTP_METHOD_NOT_ALLOWED, Map.of("error", "Method not allowed"));
+      return;
+    }
+    byte[] body;
+    try (InputStream is = limits.xmlBody(exchange)) {
+      body = is.readAllBytes();
+    } catch (MessageLimits.TooLargeException e) {
+      sendTooLarge(exchange, "Receive", e);
+      return;
+    }
+    if (receiver.offer(body)) {
+      exchange.sendResponseHeaders(HTTP_OK, -1);
+      exchange.close();
+    } else {
+      exchange.getResponseHeaders().set("Retry-After", "1");
+      log(true, "(" + exchange.getRemoteAddress() + ") Receive refused, queue full");
+      sendResponse(
+          exchange,
+          Proxy.HTTP_SERVICE_UNAVAILABLE,
+          Map.of("error", "Receive queue full", "errorCode", "QueueFull")
+      );
+    }
+  }
+
+  static void handleVerify(
+      final HttpExchange exchange, final Pipeline pipeline, final MessageLimits limits
+  ) throws IOException {
     if (!"/verify".equals(exchange.getRequestURI().getPath())) {
       exchange.sendResponseHeaders(HTTP_NOT_FOUND, 0);
       exchange.close();
@@ -173,31 +914,206 @@ public final class Server {
       return;
     }
     log(false, "(" + exchange.getRemoteAddress() + ") Verify request received");
+    String schemaName = null;
     try {
       Map<String, String> request = GSON.fromJson(
-          new String(exchange.getRequestBody().readAllBytes()),
+          new String(limits.readBody(exchange)),
           MAP_TYPE
       );
+      schemaName = Boolean.parseBoolean(request.get("trusted"))
+          ? SchemaRegistry.NONE
+          : request.get("schema");
       byte[] xmlBytes = Base64.getDecoder().decode(request.get("message"));
-      ByteArrayInputStream input = new ByteArrayInputStream(xmlBytes);
-      byte[] validated = Validate.validate_input_stream(
-          input,
-          CertificateLibrary.getInstance()
-      );
-      /* response without signature */
-      if (validated == null) {
-        validated = xmlBytes;
-      }
+      byte[] validated = verify(xmlBytes, schemaName, pipeline, limits);
       String encoded = Base64.getEncoder().encodeToString(validated);
+      count("verify", schemaName, true);
       sendResponse(exchange, HTTP_OK, Map.of("message", encoded));
       log(false, "(" + exchange.getRemoteAddress() + ") Verify request completed successfully");
+    } catch (MessageLimits.TooLargeException e) {
+      sendTooLarge(exchange, "Verify", e);
     } catch (Exception e) {
+      count("verify", schemaName, false);
+      log(true, "(" + exchange.getRemoteAddress() + ") Verify request failed: " + e.getMessage());
       sendResponse(
           exchange,
           HTTP_BAD_REQUEST,
           Map.of("error", e.getMessage(), "errorCode", e.getClass().getSimpleName())
       );
-      log(true, "(" + exchange.getRemoteAddress() + ") Verify request failed: " + e.getMessage());
+    }
+  }
+
+  /*
+   * shared by /verify and the frame protocol, a response without signature is
+   * returned as is
+   */
+  private static byte[] verify(
+      final byte[] xmlBytes, final String schemaName, final Pipeline pipeline,
+      final MessageLimits limits
+  ) throws Exception {
+    InputStream input = limits.xml(new ByteArrayInputStream(xmlBytes));
+    byte[] validated = pipeline != null
+        ? pipeline.verify(input, Credentials.getInstance(), schemaName)
+        : Validate.validate_input_stream(input, Credentials.getInstance(), schemaName);
+    return validated != null ? validated : xmlBytes;
+  }
+
+  /**
+   * Answer a request of the frame protocol, as {@code /sign} or
+   * {@code /verify} would. Only failures are logged, as frames are meant for
+   * high request rates.
+   *
+   * @param exchange
+   *          request to answer
+   * @param pipeline
+   *          validates alongside signing, or null
+   * @param limits
+   *          limits of the XML message
+   * @throws IOException
+   *           if the response could not be sent
+   */
+  static void handleFrame(
+      final FrameServer.Exchange exchange, final Pipeline pipeline, final MessageLimits limits
+  ) throws IOException {
+    String endpoint;
+    switch (exchange.getOperation()) {
+      case FrameServer.PING:
+        exchange.respond(HTTP_OK, new byte[0]);
+        return;
+      case FrameServer.SIGN:
+        endpoint = "sign";
+        break;
+      case FrameServer.VERIFY:
+        endpoint = "verify";
+        break;
+      default:
+        exchange.respondError(
+            HTTP_BAD_REQUEST, "Unknown operation " + exchange.getOperation(), "UnknownOperation"
+        );
+        return;
+    }
+    String schemaName = exchange.isTrusted() ? SchemaRegistry.NONE : null;
+    try {
+      if (exchange.getOperation() == FrameServer.SIGN) {
+        DomWriter signed = sign(
+            exchange.getMessage(), exchange.isPreserveCounter(), schemaName, pipeline, limits
+        );
+        count(endpoint, schemaName, true);
+        exchange.respond(signed);
+      } else {
+        byte[] validated = verify(exchange.getMessage(), schemaName, pipeline, limits);
+        count(endpoint, schemaName, true);
+        exchange.respond(HTTP_OK, validated);
+      }
+    } catch (MessageLimits.TooLargeException e) {
+      Metrics.getInstance().increment("xmldsig_requests_rejected_total", "reason", "TooLarge");
+      log(true, "(" + exchange.getRemoteAddress() + ") Frame refused: " + e.getMessage());
+      exchange.respondError(
+          MessageLimits.HTTP_PAYLOAD_TOO_LARGE, e.getMessage(), e.getClass().getSimpleName()
+      );
+    } catch (Exception e) {
+      count(endpoint, schemaName, false);
+      log(
+          true, "(" + exchange.getRemoteAddress() + ") " + endpoint + " frame failed: "
+              + e.getMessage()
+      );
+      exchange.respondError(HTTP_BAD_REQUEST, e.getMessage(), e.getClass().getSimpleName());
+    }
+  }
+
+  static void handleHealth(final HttpExchange exchange) throws IOException {
+    if (!"/health".equals(exchange.getRequestURI().getPath())) {
+      exchange.sendResponseHeaders(HTTP_NOT_FOUND, 0);
+      exchange.close();
+      return;
+    }
+    if (!"GET".equals(exchange.getRequestMethod())) {
+      sendResponse(exchange, HTTP_METHOD_NOT_ALLOWED, Map.of("error", "Method not allowed"));
+      return;
+    }
+    sendResponse(exchange, HTTP_OK, Map.of("status", "up"));
+  }
+
+  /**
+   * Report whether traffic should be routed to this server: 200 once the
+   * {@link Warmup} has completed, otherwise 503 with the status
+   * {@code warming}, {@code failed} or, once shutdown has started,
+   * {@code draining}.
+   *
+   * @param exchange
+   *          request to answer
+   * @param warmup
+   *          warm-up of this server
+   * @param admission
+   *          admission of this server
+   * @throws IOException
+   *           if the response could not be sent
+   */
+  static void handleReady(
+      final HttpExchange exchange, final Warmup warmup, final Admission admission
+  ) throws IOException {
+    if (!"/ready".equals(exchange.getRequestURI().getPath())) {
+      exchange.sendResponseHeaders(HTTP_NOT_FOUND, 0);
+      exchange.close();
+      return;
+    }
+    if (!"GET".equals(exchange.getRequestMethod())) {
+      sendResponse(exchange, HTTP_METHOD_NOT_ALLOWED, Map.of("error", "Method not allowed"));
+      return;
+    }
+    if (!admission.isReady()) {
+      sendResponse(exchange, Proxy.HTTP_SERVICE_UNAVAILABLE, Map.of("status", "draining"));
+    } else if (warmup.getError() != null) {
+      sendResponse(
+          exchange,
+          Proxy.HTTP_SERVICE_UNAVAILABLE,
+          Map.of("status", "failed", "error", warmup.getError())
+      );
+    } else if (!warmup.isDone()) {
+      sendResponse(exchange, Proxy.HTTP_SERVICE_UNAVAILABLE, Map.of("status", "warming"));
+    } else {
+      sendResponse(exchange, HTTP_OK, Map.of("status", "ready"));
+    }
+  }
+
+  static void handleMetrics(final HttpExchange exchange) throws IOException {
+    if (!"/metrics".equals(exchange.getRequestURI().getPath())) {
+      exchange.sendResponseHeaders(HTTP_NOT_FOUND, 0);
+      exchange.close();
+      return;
+    }
+    if (!"GET".equals(exchange.getRequestMethod())) {
+      sendResponse(exchange, HTTP_METHOD_NOT_ALLOWED, Map.of("error", "Method not allowed"));
+      return;
+    }
+    byte[] bytes = Metrics.getInstance().render().getBytes(StandardCharsets.UTF_8);
+    exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4");
+    exchange.sendResponseHeaders(HTTP_OK, bytes.length);
+    OutputStream os = exchange.getResponseBody();
+    os.write(bytes);
+    os.close();
+  }
+
+  /**
+   * Send {@code {"message": "<base64>"}} with status 200, encoding straight
+   * from the writer's buffer into the response body.
+   *
+   * @param exchange
+   *          request to answer
+   * @param message
+   *          serialized message
+   * @throws IOException
+   *           if the response could not be sent
+   */
+  static void sendMessage(final HttpExchange exchange, final DomWriter message)
+      throws IOException {
+    exchange.getResponseHeaders().set("Content-Type", "application/json");
+    exchange.sendResponseHeaders(
+        HTTP_OK, MESSAGE_PREFIX.length + message.base64Size() + MESSAGE_SUFFIX.length
+    );
+    try (OutputStream os = exchange.getResponseBody()) {
+      os.write(MESSAGE_PREFIX);
+      message.writeBase64To(os);
+      os.write(MESSAGE_SUFFIX);
     }
   }
 
@@ -0,0 +1,399 @@
+/*
+ * Created on Mon Oct 19 2026
+ *
+ * Copyright (c) 2026 Smart DCC Limited
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package uk.co.smartdcc.boxed.xmldsig;
+
+import java.net.URI;
+import java.nio.file.Path;
+
+/**
+ * Deployment settings for {@link Server}, the defaults match running the
+ * server without any options.
+ */
+public final class ServerOptions {
+  static final int DEFAULT_PORT = 8080;
+  static final int DEFAULT_UPSTREAM_CONCURRENCY = 16;
+  static final int DEFAULT_UPSTREAM_TIMEOUT_MS = 30000;
+  static final int DEFAULT_RECEIVE_QUEUE = 1024;
+  static final int DEFAULT_MAX_QUEUED = 64;
+  static final long DEFAULT_DRAIN_TIMEOUT_MS = 30000;
+  static final int DEFAULT_WARMUP_ITERATIONS = 200;
+
+  private int _port = DEFAULT_PORT;
+  private URI _upstream = null;
+  private int _upstreamConcurrency = DEFAULT_UPSTREAM_CONCURRENCY;
+  private int _upstreamTimeoutMs = DEFAULT_UPSTREAM_TIMEOUT_MS;
+  private Path _receiveDirectory = null;
+  private ResponseSink _responseSink = null;
+  private int _receiveQueue = DEFAULT_RECEIVE_QUEUE;
+  private int _receiveThreads = Runtime.getRuntime().availableProcessors();
+  private int _validationThreads = 0;
+  private int _backlog = 0;
+  private int _maxInFlight = 0;
+  private int _maxQueued = DEFAULT_MAX_QUEUED;
+  private int _maxPerClient = 0;
+  private long _maxRequestBytes = MessageLimits.DEFAULT_MAX_BYTES;
+  private int _maxElements = 0;
+  private int _maxElementDepth = MessageLimits.DEFAULT_MAX_DEPTH;
+  private long _drainTimeoutMs = DEFAULT_DRAIN_TIMEOUT_MS;
+  private int _warmupIterations = DEFAULT_WARMUP_ITERATIONS;
+  private int _listeners = 1;
+  private boolean _reusePort = false;
+  private Transport _transport = Transport.JDK;
+  private Path _socketPath = null;
+  private int _framePort = 0;
+  private String _credentials = null;
+  private int _credentialCache = CachingResolver.DEFAULT_MAX_ENTRIES;
+  private long _credentialTtlMs = CachingResolver.DEFAULT_TTL_MS;
+
+  public int getPort() {
+    return _port;
+  }
+
+  public ServerOptions setPort(final int port) {
+    this._port = port;
+    return this;
+  }
+
+  /**
+   * DCC Boxed endpoint that {@code /proxy} forwards signed requests to.
+   *
+   * @return upstream url, or null if proxying is disabled
+   */
+  public URI getUpstream() {
+    return _upstream;
+  }
+
+  public ServerOptions setUpstream(final URI upstream) {
+    this._upstream = upstream;
+    return this;
+  }
+
+  public int getUpstreamConcurrency() {
+    return _upstreamConcurrency;
+  }
+
+  public ServerOptions setUpstreamConcurrency(final int upstreamConcurrency) {
+    this._upstreamConcurrency = upstreamConcurrency;
+    return this;
+  }
+
+  public int getUpstreamTimeoutMs() {
+    return _upstreamTimeoutMs;
+  }
+
+  public ServerOptions setUpstreamTimeoutMs(final int upstreamTimeoutMs) {
+    this._upstreamTimeoutMs = upstreamTimeoutMs;
+    return this;
+  }
+
+  /**
+   * Directory {@code /receive} writes verified responses to, see
+   * {@link DirectorySink}.
+   *
+   * @return directory, or null
+   */
+  public Path getReceiveDirectory() {
+    return _receiveDirectory;
+  }
+
+  public ServerOptions setReceiveDirectory(final Path receiveDirectory) {
+    this._receiveDirectory = receiveDirectory;
+    return this;
+  }
+
+  /**
+   * In-process subscriber for {@code /receive}, takes precedence over
+   * {@link #getReceiveDirectory}.
+   *
+   * @return sink, or null
+   */
+  public ResponseSink getResponseSink() {
+    return _responseSink;
+  }
+
+  public ServerOptions setResponseSink(final ResponseSink responseSink) {
+    this._responseSink = responseSink;
+    return this;
+  }
+
+  public int getReceiveQueue() {
+    return _receiveQueue;
+  }
+
+  public ServerOptions setReceiveQueue(final int receiveQueue) {
+    this._receiveQueue = receiveQueue;
+    return this;
+  }
+
+  public int getReceiveThreads() {
+    return _receiveThreads;
+  }
+
+  public ServerOptions setReceiveThreads(final int receiveThreads) {
+    this._receiveThreads = receiveThreads;
+    return this;
+  }
+
+  /**
+   * Threads validating {@code /sign}, {@code /verify} and {@code /proxy}
+   * messages alongside signing, see {@link Pipeline}.
+   *
+   * @return number of threads, 0 to validate before signing
+   */
+  public int getValidationThreads() {
+    return _validationThreads;
+  }
+
+  public ServerOptions setValidationThreads(final int validationThreads) {
+    this._validationThreads = validationThreads;
+    return this;
+  }
+
+  /**
+   * Connections waiting to be accepted.
+   *
+   * @return backlog, 0 for the system default
+   */
+  public int getBacklog() {
+    return _backlog;
+  }
+
+  public ServerOptions setBacklog(final int backlog) {
+    this._backlog = backlog;
+    return this;
+  }
+
+  /**
+   * Requests handled concurrently, see {@link Admission}.
+   *
+   * @return limit, 0 for one per core plus {@link #getUpstreamConcurrency}
+   *         when proxying
+   */
+  public int getMaxInFlight() {
+    return _maxInFlight;
+  }
+
+  public ServerOptions setMaxInFlight(final int maxInFlight) {
+    this._maxInFlight = maxInFlight;
+    return this;
+  }
+
+  public int getMaxQueued() {
+    return _maxQueued;
+  }
+
+  public ServerOptions setMaxQueued(final int maxQueued) {
+    this._maxQueued = maxQueued;
+    return this;
+  }
+
+  /**
+   * Requests in flight from one client address.
+   *
+   * @return limit, 0 for none
+   */
+  public int getMaxPerClient() {
+    return _maxPerClient;
+  }
+
+  public ServerOptions setMaxPerClient(final int maxPerClient) {
+    this._maxPerClient = maxPerClient;
+    return this;
+  }
+
+  /**
+   * Bytes in a request body, see {@link MessageLimits}.
+   *
+   * @return limit, 0 for none
+   */
+  public long getMaxRequestBytes() {
+    return _maxRequestBytes;
+  }
+
+  public ServerOptions setMaxRequestBytes(final long maxRequestBytes) {
+    this._maxRequestBytes = maxRequestBytes;
+    return this;
+  }
+
+  /**
+   * Elements in a message.
+   *
+   * @return limit, 0 for none
+   */
+  public int getMaxElements() {
+    return _maxElements;
+  }
+
+  public ServerOptions setMaxElements(final int maxElements) {
+    this._maxElements = maxElements;
+    return this;
+  }
+
+  /**
+   * Nesting depth of elements in a message.
+   *
+   * @return limit, 0 for none
+   */
+  public int getMaxElementDepth() {
+    return _maxElementDepth;
+  }
+
+  public ServerOptions setMaxElementDepth(final int maxElementDepth) {
+    this._maxElementDepth = maxElementDepth;
+    return this;
+  }
+
+  /**
+   * Longest time shutdown waits for requests in progress, see
+   * {@link Server#drain}.
+   *
+   * @return timeout in milliseconds
+   */
+  public long getDrainTimeoutMs() {
+    return _drainTimeoutMs;
+  }
+
+  public ServerOptions setDrainTimeoutMs(final long drainTimeoutMs) {
+    this._drainTimeoutMs = drainTimeoutMs;
+    return this;
+  }
+
+  /**
+   * Synthetic sign and verify round trips before the server reports ready,
+   * see {@link Warmup}.
+   *
+   * @return iterations, 0 to only compile the schema and load credentials
+   */
+  public int getWarmupIterations() {
+    return _warmupIterations;
+  }
+
+  public ServerOptions setWarmupIterations(final int warmupIterations) {
+    this._warmupIterations = warmupIterations;
+    return this;
+  }
+
+  /**
+   * Servers accepting on the port, sharing workers, schemas and credentials.
+   * More than one binds with {@code SO_REUSEPORT}, which needs
+   * {@link Transport#NIO}.
+   *
+   * @return number of listeners
+   */
+  public int getListeners() {
+    return _listeners;
+  }
+
+  public ServerOptions setListeners(final int listeners) {
+    this._listeners = listeners;
+    return this;
+  }
+
+  /**
+   * Bind with {@code SO_REUSEPORT} so that other processes can listen on the
+   * same port, which needs {@link Transport#NIO}.
+   *
+   * @return true if the port is shared
+   */
+  public boolean isReusePort() {
+    return _reusePort || _listeners > 1;
+  }
+
+  public ServerOptions setReusePort(final boolean reusePort) {
+    this._reusePort = reusePort;
+    return this;
+  }
+
+  /**
+   * HTTP implementation the listeners use.
+   *
+   * @return transport
+   */
+  public Transport getTransport() {
+    return _transport;
+  }
+
+  public ServerOptions setTransport(final Transport transport) {
+    this._transport = transport;
+    return this;
+  }
+
+  /**
+   * Unix domain socket served alongside the port, for clients on the same
+   * host.
+   *
+   * @return socket file, or null for none
+   */
+  public Path getSocketPath() {
+    return _socketPath;
+  }
+
+  public ServerOptions setSocketPath(final Path socketPath) {
+    this._socketPath = socketPath;
+    return this;
+  }
+
+  /**
+   * Port of the binary frame protocol, see {@link FrameServer}, served
+   * alongside HTTP by the same workers.
+   *
+   * @return port, or 0 for none
+   */
+  public int getFramePort() {
+    return _framePort;
+  }
+
+  public ServerOptions setFramePort(final int framePort) {
+    this._framePort = framePort;
+    return this;
+  }
+
+  /**
+   * Credential source, see {@link Credentials#open(String)}, installed when
+   * the server is started from the command line.
+   *
+   * @return name[:config], or null for the {@link Credentials#PROPERTY}
+   *         setting
+   */
+  public String getCredentials() {
+    return _credentials;
+  }
+
+  public ServerOptions setCredentials(final String credentials) {
+    this._credentials = credentials;
+    return this;
+  }
+
+  public int getCredentialCache() {
+    return _credentialCache;
+  }
+
+  public ServerOptions setCredentialCache(final int credentialCache) {
+    this._credentialCache = credentialCache;
+    return this;
+  }
+
+  public long getCredentialTtlMs() {
+    return _credentialTtlMs;
+  }
+
+  public ServerOptions setCredentialTtlMs(final long credentialTtlMs) {
+    this._credentialTtlMs = credentialTtlMs;
+    return this;
+  }
+}
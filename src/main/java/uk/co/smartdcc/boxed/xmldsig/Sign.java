@@ -20,6 +20,7 @@ package uk.co.smartdcc.boxed.xmldsig;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.io.PrintStream;
 import java.security.InvalidAlgorithmParameterException;
 import java.security.KeyException;
 import java.security.NoSuchAlgorithmException;
@@ -49,10 +50,6 @@ import javax.xml.crypto.dsig.keyinfo.X509Data;
 import javax.xml.crypto.dsig.spec.C14NMethodParameterSpec;
 import javax.xml.crypto.dsig.spec.TransformParameterSpec;
 import javax.xml.parsers.ParserConfigurationException;
-import javax.xml.transform.Transformer;
-import javax.xml.transform.TransformerFactory;
-import javax.xml.transform.dom.DOMSource;
-import javax.xml.transform.stream.StreamResult;
 
 import org.w3c.dom.Document;
 import org.w3c.dom.Node;
@@ -60,6 +57,9 @@ import org.w3c.dom.NodeList;
 import org.xml.sax.SAXException;
 
 public final class Sign {
+  /** Skip xsd validation of a message from a trusted source. */
+  static final String TRUSTED_FLAG = "--trusted";
+
   private Sign() {
   }
 
@@ -70,15 +70,36 @@ public final class Sign {
       throws IOException, SAXException, ParserConfigurationException, CertificateException,
       KeyException, NoSuchAlgorithmException, InvalidAlgorithmParameterException,
       MarshalException, XMLSignatureException {
-    Document doc = Util.parse_duis_stream(is);
+    return verify_and_sign_input_stream(preserveCounter, is, os, resolver, null);
+  }
+
+  /**
+   * As {@link #verify_and_sign_input_stream(boolean, InputStream, OutputStream,
+   * Eui64CredentialResolver)}, validating against a named schema.
+   *
+   * @param preserveCounter
+   *          keep the counter in the request id
+   * @param is
+   *          unsigned request
+   * @param os
+   *          stream the signed request is written to
+   * @param resolver
+   *          signing credentials
+   * @param schemaName
+   *          name in the {@link SchemaRegistry}, or null to select by the
+   *          message root
+   * @return certificate the request was signed with
+   */
+  public static X509Certificate verify_and_sign_input_stream(
+      final boolean preserveCounter, final InputStream is, final OutputStream os,
+      final Eui64CredentialResolver resolver, final String schemaName
+  )
+      throws IOException, SAXException, ParserConfigurationException, CertificateException,
+      KeyException, NoSuchAlgorithmException, InvalidAlgorithmParameterException,
+      MarshalException, XMLSignatureException {
+    Document doc = Util.parse_duis_stream(is, schemaName);
     X509Certificate cert = sign_document(preserveCounter, doc, resolver);
-    TransformerFactory tf = TransformerFactory.newInstance();
-    try {
-      Transformer trans = tf.newTransformer();
-      trans.transform(new DOMSource(doc), new StreamResult(os));
-    } catch (Exception e) {
-      throw new IOException("Failed to write signed document", e);
-    }
+    DomWriter.local().write(doc).writeTo(os);
     return cert;
   }
 
@@ -159,43 +180,98 @@ public final class Sign {
   }
 
   public static ResultCode main_aux(final String[] arguments) {
+    return main_aux(arguments, System.in, System.out, System.err);
+  }
+
+  /**
+   * Run the signing tool against explicit streams, so that it can be hosted
+   * by a long lived process without touching the global {@code System}
+   * streams or calling {@code System.exit}.
+   *
+   * @param arguments
+   *          command line arguments
+   * @param in
+   *          stream read when the message is given as "-"
+   * @param out
+   *          stream the signed message is written to
+   * @param err
+   *          stream log lines are written to
+   * @return result code
+   */
+  public static ResultCode main_aux(
+      final String[] arguments, final InputStream in, final PrintStream out, final PrintStream err
+  ) {
+    if (Arrays.asList(arguments).contains(Batch.FLAG)) {
+      return Batch.main_aux(
+          Daemon.SIGN,
+          Arrays.stream(arguments).filter(x -> !Batch.FLAG.equals(x)).toArray(String[]::new),
+          err
+      );
+    }
     Boolean preserveCounter = Arrays.stream(arguments).anyMatch("--preserveCounter"::equals);
+    boolean trusted = Arrays.stream(arguments).anyMatch(TRUSTED_FLAG::equals);
     String[] args = Arrays
         .stream(arguments)
-        .filter(x -> !("--preserveCounter".equals(x)))
+        .filter(x -> !("--preserveCounter".equals(x) || TRUSTED_FLAG.equals(x)))
         .toArray(String[]::new);
     if (args.length < 1 || args.length > 3) {
-      System.err.println(
-          "[I] usage: message.xml [--preserveCounter] [signingcert.pem] [signingkey.key]"
+      err.println(
+          "[I] usage: message.xml [--preserveCounter] [--trusted] [signingcert.pem]"
+              + " [signingkey.key]"
       );
       if (args.length == 0) {
-        System.err.println("[E] message not provided");
+        err.println("[E] message not provided");
         return ResultCode.GENERIC_ERROR;
       }
     }
 
-    Document doc = Util.load_duis_file_checked(args[0]);
+    Document doc;
+    try {
+      doc = Util.load_duis_file(args[0], in, err, trusted ? SchemaRegistry.NONE : null);
+    } catch (Exception e) {
+      err.println(Util.load_failure_message(e));
+      return ResultCode.GENERIC_ERROR;
+    }
     if (doc == null) {
-      System.err.println("[I] failed xsd validation");
+      err.println("[I] failed xsd validation");
       return ResultCode.VALIDATION_FAIL;
     }
-    System.err.println("[I] passed xsd validation");
+    err.println(trusted ? "[I] skipped xsd validation (trusted)" : "[I] passed xsd validation");
+
+    X509Certificate argCertificate = null;
+    if (args.length >= 2) {
+      argCertificate = Util.load_certificate_checked(
+          Util.create_certificate_factory(), args[1], err
+      );
+      if (argCertificate == null) {
+        return ResultCode.MISSING_KEY;
+      }
+    }
+    PrivateKey argKey = null;
+    if (args.length >= 3) {
+      argKey = Util.load_key_checked(Util.create_key_factory(), args[2], err);
+      if (argKey == null) {
+        return ResultCode.MISSING_KEY;
+      }
+    }
+    final X509Certificate fixedCertificate = argCertificate;
+    final PrivateKey fixedKey = argKey;
 
     Eui64CredentialResolver resolver = new Eui64CredentialResolver() {
       @Override
       public X509Certificate lookup(final String eui64) {
-        if (args.length >= 2) {
-          return Util.load_certificate_checked(Util.create_certificate_factory(), args[1]);
+        if (fixedCertificate != null) {
+          return fixedCertificate;
         }
-        return CertificateLibrary.getInstance().lookup(eui64);
+        return Credentials.getInstance().lookup(eui64);
       }
 
       @Override
       public PrivateKey lookup_key(final String eui64) {
-        if (args.length >= 3) {
-          return Util.load_key_checked(Util.create_key_factory(), args[2]);
+        if (fixedKey != null) {
+          return fixedKey;
         }
-        return CertificateLibrary.getInstance().lookup_key(eui64);
+        return Credentials.getInstance().lookup_key(eui64);
       }
     };
 
@@ -203,30 +279,35 @@ public final class Sign {
     try {
       cer = sign_document(preserveCounter, doc, resolver);
     } catch (CertificateException e) {
-      System.err.println("[E] could not load certificate: " + e.getMessage());
+      err.println("[E] could not load certificate: " + e.getMessage());
       return ResultCode.MISSING_KEY;
     } catch (KeyException e) {
-      System.err.println("[E] could not load private key: " + e.getMessage());
+      err.println("[E] could not load private key: " + e.getMessage());
       return ResultCode.MISSING_KEY;
     } catch (Exception e) {
-      System.err.println("[E] internal error: " + e.getMessage());
+      err.println("[E] internal error: " + e.getMessage());
       return ResultCode.GENERIC_ERROR;
     }
-    System.err.println("[I] certificate serial number: " + cer.getSerialNumber());
+    err.println("[I] certificate serial number: " + cer.getSerialNumber());
 
-    TransformerFactory tf = TransformerFactory.newInstance();
     try {
-      Transformer trans = tf.newTransformer();
-      trans.transform(new DOMSource(doc), new StreamResult(System.out));
+      DomWriter.local().write(doc).writeTo(out);
     } catch (Exception e) {
-      System.err.println("[E] internal error: " + e.getMessage());
+      err.println("[E] internal error: " + e.getMessage());
       return ResultCode.GENERIC_ERROR;
     }
+    out.flush();
 
     return ResultCode.SUCCESS;
   }
 
   public static void main(final String[] args) {
-    System.exit(main_aux(args).value());
+    ResultCode result = Daemon.delegate(Daemon.SIGN, args);
+    if (result == null) {
+      /* the library is not needed when both certificate and key are given */
+      Util.preload(Arrays.stream(args).filter(x -> !x.startsWith("--")).count() < 3);
+      result = main_aux(args);
+    }
+    System.exit(result.value());
   }
 }
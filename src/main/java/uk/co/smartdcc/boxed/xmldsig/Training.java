@@ -0,0 +1,133 @@
+/*
+ * Created on Mon Oct 19 2026
+ *
+ * Copyright (c) 2026 Smart DCC Limited
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package uk.co.smartdcc.boxed.xmldsig;
+
+import com.sun.net.httpserver.HttpServer;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * Training run for the class data sharing archive built by the {@code cds}
+ * profile.
+ *
+ * Run with {@code -XX:ArchiveClassesAtExit}, it goes through what a short
+ * lived invocation does: the bundled request is signed and verified by the
+ * command line tools, a bundled sample response is verified, and the
+ * signed request is posted to an in-process {@link Server}, so that the XML,
+ * XML signature, security provider, Gson and HTTP classes all end up in the
+ * archive.
+ */
+public final class Training {
+  private static final String SAMPLE = "message2.xml";
+
+  private Training() {
+  }
+
+  /**
+   * Run the training.
+   *
+   * @param out
+   *          stream a line is written to per step
+   * @return result of the last step that failed, or success
+   * @throws IOException
+   *           if the server could not be started
+   */
+  public static ResultCode run(final PrintStream out) throws IOException {
+    ResultCode result = ResultCode.SUCCESS;
+    PrintStream discard = new PrintStream(OutputStream.nullOutputStream());
+    ByteArrayOutputStream signed = new ByteArrayOutputStream();
+    ResultCode sign = Sign.main_aux(
+        args("-", "--preserveCounter"),
+        new ByteArrayInputStream(Warmup.REQUEST.getBytes(StandardCharsets.UTF_8)),
+        new PrintStream(signed), discard
+    );
+    out.println("[I] sign: " + sign);
+    result = worst(result, sign);
+    ResultCode verify = Validate.main_aux(
+        args("-"), new ByteArrayInputStream(signed.toByteArray()), discard, discard
+    );
+    out.println("[I] validate: " + verify);
+    result = worst(result, verify);
+    try (InputStream is = Training.class.getClassLoader().getResourceAsStream(SAMPLE)) {
+      ResultCode code = Validate.main_aux(args("-"), is, discard, discard);
+      out.println("[I] validate " + SAMPLE + ": " + code);
+      result = worst(result, code);
+    }
+    return worst(result, post(out, signed.toByteArray()));
+  }
+
+  /* post to the server, any status but 200 fails the training */
+  static ResultCode post(final PrintStream out, final byte[] message) throws IOException {
+    int status = serve(message);
+    if (status != HttpURLConnection.HTTP_OK) {
+      out.println("[E] server: " + status);
+      return ResultCode.GENERIC_ERROR;
+    }
+    out.println("[I] server: " + status);
+    return ResultCode.SUCCESS;
+  }
+
+  private static String[] args(final String... args) {
+    return args;
+  }
+
+  private static ResultCode worst(final ResultCode a, final ResultCode b) {
+    return b == ResultCode.SUCCESS ? a : b;
+  }
+
+  /* a single /verify, with no warm-up, on an ephemeral port */
+  private static int serve(final byte[] message) throws IOException {
+    HttpServer server = Server.createServer(
+        new ServerOptions().setPort(0).setWarmupIterations(0)
+    );
+    server.start();
+    try {
+      URL url = new URL("http://localhost:" + server.getAddress().getPort() + "/verify");
+      HttpURLConnection conn = (HttpURLConnection) url.openConnection();
+      conn.setRequestMethod("POST");
+      conn.setDoOutput(true);
+      try (OutputStream os = conn.getOutputStream()) {
+        os.write(
+            ("{\"message\":\"" + Base64.getEncoder().encodeToString(message) + "\"}")
+                .getBytes(StandardCharsets.US_ASCII)
+        );
+      }
+      int status = conn.getResponseCode();
+      try (InputStream is = status < HttpURLConnection.HTTP_BAD_REQUEST
+          ? conn.getInputStream()
+          : conn.getErrorStream()) {
+        is.readAllBytes();
+      }
+      return status;
+    } finally {
+      Server.drain(server, 0);
+    }
+  }
+
+  public static void main(final String[] args) throws IOException {
+    System.exit(run(System.err).value());
+  }
+}
@@ -0,0 +1,50 @@
+/*
+ * Created on Mon Oct 19 2026
+ *
+ * Copyright (c) 2026 Smart DCC Limited
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package uk.co.smartdcc.boxed.xmldsig;
+
+import java.util.Locale;
+
+/**
+ * HTTP implementation the {@link Server} listens with. Both serve the same
+ * handlers, so endpoints, limits and admission behave the same on either.
+ */
+public enum Transport {
+  /** The JDK {@code com.sun.net.httpserver} server. */
+  JDK,
+  /**
+   * A selector based HTTP/1.1 engine with persistent connections, pipelining
+   * and pooled direct buffers, see {@link NioHttpServer}.
+   */
+  NIO;
+
+  /**
+   * Look up a transport by name, ignoring case.
+   *
+   * @param name
+   *          transport name, or null
+   * @return transport, {@link #JDK} for null
+   * @throws IllegalArgumentException
+   *           if no transport has that name
+   */
+  public static Transport of(final String name) {
+    if (name == null) {
+      return JDK;
+    }
+    return valueOf(name.toUpperCase(Locale.ROOT));
+  }
+}
@@ -0,0 +1,304 @@
+/*
+ * Created on Mon Oct 19 2026
+ *
+ * Copyright (c) 2026 Smart DCC Limited
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package uk.co.smartdcc.boxed.xmldsig;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Base64;
+
+/**
+ * Client for a {@link Server} listening on a unix domain socket, see
+ * {@link ServerOptions#setSocketPath}, for callers on the same host.
+ *
+ * Requests are HTTP/1.1 as over TCP. The connection is kept open between
+ * requests and reopened when the server closes it. A client is not thread
+ * safe, use one per thread.
+ */
+public final class UnixSocketClient implements Closeable {
+  static final int HTTP_OK = 200;
+  private static final int BUFFER_SIZE = 16 * 1024;
+  private static final int HEX = 16;
+
+  private final Path socket;
+  private SocketChannel channel;
+  private InputStream in;
+  private OutputStream out;
+
+  /** Status and body of a response. */
+  public static final class Response {
+    private final int status;
+    private final byte[] body;
+    private final boolean close;
+
+    Response(final int code, final byte[] content, final boolean closed) {
+      this.status = code;
+      this.body = content;
+      this.close = closed;
+    }
+
+    public int getStatus() {
+      return status;
+    }
+
+    public byte[] getBody() {
+      return body.clone();
+    }
+
+    /**
+     * Whether the server closes the connection after this response.
+     *
+     * @return true if the connection cannot be reused
+     */
+    boolean isClose() {
+      return close;
+    }
+  }
+
+  /**
+   * Prepare a client, the socket is connected on the first request.
+   *
+   * @param path
+   *          socket file the server listens on
+   */
+  public UnixSocketClient(final Path path) {
+    this.socket = path;
+  }
+
+  /**
+   * Sign a request with {@code /sign}.
+   *
+   * @param message
+   *          unsigned DUIS request
+   * @param preserveCounter
+   *          keep the counter in the request id
+   * @return signed request
+   * @throws IOException
+   *           if the server could not be reached or refused the request
+   */
+  public byte[] sign(final byte[] message, final boolean preserveCounter) throws IOException {
+    JsonObject request = new JsonObject();
+    request.addProperty("message", Base64.getEncoder().encodeToString(message));
+    request.addProperty("preserveCounter", preserveCounter);
+    return message("/sign", request);
+  }
+
+  /**
+   * Verify a response with {@code /verify}.
+   *
+   * @param message
+   *          signed DUIS response
+   * @return response without its signature
+   * @throws IOException
+   *           if the server could not be reached or the response is not valid
+   */
+  public byte[] verify(final byte[] message) throws IOException {
+    JsonObject request = new JsonObject();
+    request.addProperty("message", Base64.getEncoder().encodeToString(message));
+    return message("/verify", request);
+  }
+
+  private byte[] message(final String path, final JsonObject request) throws IOException {
+    Response response = post(path, request.toString().getBytes(StandardCharsets.UTF_8));
+    JsonObject json = JsonParser
+        .parseString(new String(response.body, StandardCharsets.UTF_8))
+        .getAsJsonObject();
+    if (response.status != HTTP_OK) {
+      throw new IOException(
+          path + " failed with " + response.status + ": "
+              + (json.has("error") ? json.get("error").getAsString() : "")
+      );
+    }
+    return Base64.getDecoder().decode(json.get("message").getAsString());
+  }
+
+  /**
+   * Post a JSON body.
+   *
+   * @param path
+   *          endpoint, such as {@code /sign}
+   * @param json
+   *          request body
+   * @return response
+   * @throws IOException
+   *           if the server could not be reached
+   */
+  public Response post(final String path, final byte[] json) throws IOException {
+    return send("POST", path, json);
+  }
+
+  /**
+   * Get a resource, such as {@code /ready}.
+   *
+   * @param path
+   *          endpoint
+   * @return response
+   * @throws IOException
+   *           if the server could not be reached
+   */
+  public Response get(final String path) throws IOException {
+    return send("GET", path, null);
+  }
+
+  private Response send(final String method, final String path, final byte[] body)
+      throws IOException {
+    byte[] request = request(method, path, "localhost", body);
+    /*
+     * a kept open connection may have been closed by the server meanwhile, so retry
+     * once
+     */
+    boolean reused = channel != null;
+    try {
+      return exchange(request);
+    } catch (IOException e) {
+      close();
+      if (!reused) {
+        throw e;
+      }
+    }
+    return exchange(request);
+  }
+
+  private Response exchange(final byte[] request) throws IOException {
+    if (channel == null) {
+      channel = UnixSockets.connect(socket);
+      in = new BufferedInputStream(Channels.newInputStream(channel), BUFFER_SIZE);
+      out = new BufferedOutputStream(Channels.newOutputStream(channel), BUFFER_SIZE);
+    }
+    out.write(request);
+    out.flush();
+    Response response = read(in);
+    if (response.close) {
+      close();
+    }
+    return response;
+  }
+
+  @Override
+  public void close() throws IOException {
+    if (channel != null) {
+      SocketChannel c = channel;
+      channel = null;
+      in = null;
+      out = null;
+      c.close();
+    }
+  }
+
+  static byte[] request(
+      final String method, final String path, final String host, final byte[] body
+  ) {
+    StringBuilder head = new StringBuilder()
+        .append(method).append(' ').append(path).append(" HTTP/1.1\r\n")
+        .append("Host: ").append(host).append("\r\n");
+    if (body != null) {
+      head.append("Content-Type: application/json\r\n")
+          .append("Content-Length: ").append(body.length).append("\r\n");
+    }
+    byte[] bytes = head.append("\r\n").toString().getBytes(StandardCharsets.US_ASCII);
+    if (body == null) {
+      return bytes;
+    }
+    byte[] request = new byte[bytes.length + body.length];
+    System.arraycopy(bytes, 0, request, 0, bytes.length);
+    System.arraycopy(body, 0, request, bytes.length, body.length);
+    return request;
+  }
+
+  /*
+   * the stream is buffered, so responses on a connection must all be read through
+   * here
+   */
+  static Response read(final InputStream stream) throws IOException {
+    String statusLine = readLine(stream);
+    String[] parts = statusLine.split(" ", 3);
+    if (parts.length < 2 || !parts[0].startsWith("HTTP/")) {
+      throw new IOException("invalid status line " + statusLine);
+    }
+    int status = Integer.parseInt(parts[1]);
+    long length = 0;
+    boolean chunked = false;
+    boolean close = "HTTP/1.0".equals(parts[0]);
+    for (String line = readLine(stream); !line.isEmpty(); line = readLine(stream)) {
+      int colon = line.indexOf(':');
+      String name = colon < 0 ? line : line.substring(0, colon).trim();
+      String value = colon < 0 ? "" : line.substring(colon + 1).trim();
+      if ("Content-Length".equalsIgnoreCase(name)) {
+        length = Long.parseLong(value);
+      } else if ("Transfer-Encoding".equalsIgnoreCase(name)) {
+        chunked = "chunked".equalsIgnoreCase(value);
+      } else if ("Connection".equalsIgnoreCase(name)) {
+        close = "close".equalsIgnoreCase(value);
+      }
+    }
+    ByteArrayOutputStream body = new ByteArrayOutputStream();
+    if (chunked) {
+      long size = Long.parseLong(readLine(stream).split(";", 2)[0].trim(), HEX);
+      while (size > 0) {
+        copy(stream, body, size);
+        readLine(stream);
+        size = Long.parseLong(readLine(stream).split(";", 2)[0].trim(), HEX);
+      }
+      for (String line = readLine(stream); !line.isEmpty(); line = readLine(stream)) {
+        continue;
+      }
+    } else {
+      copy(stream, body, length);
+    }
+    return new Response(status, body.toByteArray(), close);
+  }
+
+  private static String readLine(final InputStream stream) throws IOException {
+    ByteArrayOutputStream line = new ByteArrayOutputStream();
+    int b = stream.read();
+    while (b != '\n') {
+      if (b < 0) {
+        throw new IOException("connection closed");
+      }
+      if (b != '\r') {
+        line.write(b);
+      }
+      b = stream.read();
+    }
+    return line.toString(StandardCharsets.ISO_8859_1.name());
+  }
+
+  private static void copy(final InputStream stream, final OutputStream to, final long length)
+      throws IOException {
+    byte[] buffer = new byte[BUFFER_SIZE];
+    long remaining = length;
+    while (remaining > 0) {
+      int n = stream.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+      if (n < 0) {
+        throw new IOException("connection closed");
+      }
+      to.write(buffer, 0, n);
+      remaining -= n;
+    }
+  }
+}
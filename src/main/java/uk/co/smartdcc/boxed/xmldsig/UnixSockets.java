@@ -0,0 +1,142 @@
+/*
+ * Created on Mon Oct 19 2026
+ *
+ * Copyright (c) 2026 Smart DCC Limited
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package uk.co.smartdcc.boxed.xmldsig;
+
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.net.ProtocolFamily;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+
+/**
+ * Unix domain socket channels.
+ *
+ * The tool is built for java 11, whereas unix domain socket channels arrived
+ * in java 16. So the address type and channel factories are looked up
+ * reflectively, and callers fall back to other transports when
+ * {@link #isSupported()} is false.
+ */
+final class UnixSockets {
+  private static final String ADDRESS_CLASS = "java.net.UnixDomainSocketAddress";
+
+  private UnixSockets() {
+  }
+
+  static boolean isSupported() {
+    try {
+      Class.forName(ADDRESS_CLASS);
+      family();
+      return true;
+    } catch (Exception e) {
+      return false;
+    }
+  }
+
+  private static ProtocolFamily family() throws IOException {
+    try {
+      return StandardProtocolFamily.valueOf("UNIX");
+    } catch (IllegalArgumentException e) {
+      throw new IOException("unix domain sockets require java 16 or later", e);
+    }
+  }
+
+  private static <T> T open(final Class<T> type) throws IOException {
+    try {
+      return type.cast(type.getMethod("open", ProtocolFamily.class).invoke(null, family()));
+    } catch (InvocationTargetException e) {
+      if (e.getCause() instanceof IOException) {
+        throw (IOException) e.getCause();
+      }
+      throw new IOException("could not open unix domain socket", e.getCause());
+    } catch (ReflectiveOperationException e) {
+      throw new IOException("unix domain sockets require java 16 or later", e);
+    }
+  }
+
+  static SocketAddress address(final Path path) throws IOException {
+    try {
+      return (SocketAddress) Class
+          .forName(ADDRESS_CLASS)
+          .getMethod("of", Path.class)
+          .invoke(null, path);
+    } catch (ReflectiveOperationException e) {
+      throw new IOException("unix domain sockets require java 16 or later", e);
+    }
+  }
+
+  /**
+   * Bind a listening socket, readable and writable by the current user only.
+   *
+   * @param path
+   *          socket file, which must not exist
+   * @return bound server channel
+   * @throws IOException
+   *           if the socket could not be bound
+   */
+  static ServerSocketChannel bind(final Path path) throws IOException {
+    ServerSocketChannel channel = open(ServerSocketChannel.class);
+    try {
+      channel.bind(address(path));
+    } catch (IOException e) {
+      channel.close();
+      throw e;
+    }
+    try {
+      Files.setPosixFilePermissions(path, PosixFilePermissions.fromString("rw-------"));
+    } catch (UnsupportedOperationException e) {
+      /* not a posix file system, rely on the directory permissions */
+    }
+    return channel;
+  }
+
+  /**
+   * Whether something is listening on a socket file, as opposed to the file
+   * being left behind by a process that has exited.
+   *
+   * @param path
+   *          socket file
+   * @return true if a connection could be made
+   */
+  static boolean inUse(final Path path) {
+    if (!Files.exists(path)) {
+      return false;
+    }
+    try {
+      connect(path).close();
+      return true;
+    } catch (IOException e) {
+      return false;
+    }
+  }
+
+  static SocketChannel connect(final Path path) throws IOException {
+    SocketChannel channel = open(SocketChannel.class);
+    try {
+      channel.connect(address(path));
+    } catch (IOException e) {
+      channel.close();
+      throw e;
+    }
+    return channel;
+  }
+}
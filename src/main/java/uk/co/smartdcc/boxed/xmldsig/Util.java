@@ -17,11 +17,13 @@
 
 package uk.co.smartdcc.boxed.xmldsig;
 
+import java.io.BufferedInputStream;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.PrintStream;
 import java.net.URL;
 import java.nio.charset.StandardCharsets;
 import java.security.KeyFactory;
@@ -41,6 +43,7 @@ import javax.xml.validation.Schema;
 import javax.xml.validation.SchemaFactory;
 
 import org.w3c.dom.Document;
+import org.w3c.dom.Node;
 import org.w3c.dom.bootstrap.DOMImplementationRegistry;
 import org.w3c.dom.ls.DOMImplementationLS;
 import org.w3c.dom.ls.LSInput;
@@ -56,25 +59,31 @@ public final class Util {
   private static String DUIS_FILE_NAME = "DUIS Schema V5.4.xsd";
   private static Schema schema = null;
   private static DocumentBuilderFactory documentBuilderFactory = null;
+  private static DocumentBuilderFactory trustedDocumentBuilderFactory = null;
+  private static volatile ParserProfile parserProfile = ParserProfile.fromSystemProperty();
   private static DOMImplementationRegistry registry = null;
   private static DOMImplementationLS factoryLS = null;
 
-  public static Schema load_schema() {
+  private static synchronized DOMImplementationLS ls_factory() throws Exception {
     if (registry == null) {
-      try {
-        registry = DOMImplementationRegistry.newInstance();
-      } catch (Exception e) {
-        System.err.println("[E] internal error building DOM registry: " + e.getMessage());
-        return null;
-      }
+      registry = DOMImplementationRegistry.newInstance();
     }
     if (factoryLS == null) {
       factoryLS = (DOMImplementationLS) registry.getDOMImplementation("LS");
     }
+    return factoryLS;
+  }
+
+  public static synchronized Schema load_schema() {
+    try {
+      ls_factory();
+    } catch (Exception e) {
+      System.err.println("[E] internal error building DOM registry: " + e.getMessage());
+      return null;
+    }
     if (schema != null) {
       return schema;
     }
-    SchemaFactory sf = SchemaFactory.newInstance(XMLConstants.W3C_XML_SCHEMA_NS_URI);
     URL url = Util.class.getClassLoader().getResource(DUIS_FILE_NAME);
     if (url == null) {
       System.err.println("[E] internal error loading schema, not found");
@@ -82,40 +91,7 @@ public final class Util {
     }
 
     try {
-      /*
-       * below ensures that XMLSchema.dtd and datatyes.dtd are loaded locally
-       * instead of from w3.org
-       */
-      sf.setResourceResolver(new LSResourceResolver() {
-        @Override
-        public LSInput resolveResource(
-            final String type, final String namespace, final String publicId, final String systemId,
-            final String baseURI
-        ) {
-          try {
-            if (systemId.equals("http://www.w3.org/2001/XMLSchema.dtd")
-                || systemId.equals("datatypes.dtd")) {
-              String[] nameParts = systemId.split("/");
-              String basename = nameParts[nameParts.length - 1];
-              LSInput input = factoryLS.createLSInput();
-              InputStream stream = Util.class.getClassLoader().getResource(basename)
-                  .openStream();
-              input.setPublicId(publicId);
-              input.setSystemId(systemId);
-              input.setBaseURI(baseURI);
-              input.setCharacterStream(new InputStreamReader(stream));
-              return input;
-            }
-          } catch (Exception e) {
-            System.err.println(
-                "[W] internal error loading " + systemId + " from local store: " + e.getMessage()
-            );
-          }
-          /* return null for default resolver */
-          return null;
-        }
-      });
-      schema = sf.newSchema(url);
+      schema = compile_schema(url);
     } catch (Exception e) {
       System.err.println("[E] internal error loading schema: " + e.getMessage());
       schema = null;
@@ -123,45 +99,252 @@ public final class Util {
     return schema;
   }
 
-  public static DocumentBuilderFactory get_document_builder_factory() {
+  /**
+   * Compile an XSD, resolving the XML Schema DTDs from the bundled copies.
+   *
+   * @param url
+   *          location of the schema
+   * @return compiled schema
+   * @throws Exception
+   *           if the schema could not be loaded or compiled
+   */
+  static Schema compile_schema(final URL url) throws Exception {
+    final DOMImplementationLS ls = ls_factory();
+    SchemaFactory sf = SchemaFactory.newInstance(XMLConstants.W3C_XML_SCHEMA_NS_URI);
+    /*
+     * below ensures that XMLSchema.dtd and datatyes.dtd are loaded locally
+     * instead of from w3.org
+     */
+    sf.setResourceResolver(new LSResourceResolver() {
+      @Override
+      public LSInput resolveResource(
+          final String type, final String namespace, final String publicId, final String systemId,
+          final String baseURI
+      ) {
+        try {
+          if (systemId.equals("http://www.w3.org/2001/XMLSchema.dtd")
+              || systemId.equals("datatypes.dtd")) {
+            String[] nameParts = systemId.split("/");
+            String basename = nameParts[nameParts.length - 1];
+            LSInput input = ls.createLSInput();
+            InputStream stream = Util.class.getClassLoader().getResource(basename)
+                .openStream();
+            input.setPublicId(publicId);
+            input.setSystemId(systemId);
+            input.setBaseURI(baseURI);
+            input.setCharacterStream(new InputStreamReader(stream));
+            return input;
+          }
+        } catch (Exception e) {
+          System.err.println(
+              "[W] internal error loading " + systemId + " from local store: " + e.getMessage()
+          );
+        }
+        /* return null for default resolver */
+        return null;
+      }
+    });
+    return sf.newSchema(url);
+  }
+
+  /**
+   * Start compiling the schema, and optionally opening the credentials,
+   * on background threads.
+   *
+   * Compiling the DUIS schema dominates the start up time of a one shot
+   * invocation and cannot be cached across processes, as the compiled
+   * grammar is not serializable. Starting it early lets it overlap with the
+   * rest of start up on multi-core machines. Callers of
+   * {@link #load_schema}, {@link #get_document_builder_factory} and
+   * {@link Credentials#getInstance} block until the work in progress
+   * completes, so this is always safe to call.
+   *
+   * @param certificates
+   *          also open the credentials
+   */
+  public static void preload(final boolean certificates) {
+    start_daemon("xmldsig-schema", Util::get_document_builder_factory);
+    if (certificates) {
+      start_daemon("xmldsig-certificates", Credentials::getInstance);
+    }
+  }
+
+  private static void start_daemon(final String name, final Runnable task) {
+    Thread t = new Thread(task, name);
+    t.setDaemon(true);
+    t.start();
+  }
+
+  public static ParserProfile get_parser_profile() {
+    return parserProfile;
+  }
+
+  /**
+   * Select the parser settings for all factories. Factories already handed
+   * out keep their settings, so this should be called during start up. The
+   * compiled schemas are kept.
+   *
+   * @param profile
+   *          parser settings
+   */
+  public static synchronized void set_parser_profile(final ParserProfile profile) {
+    parserProfile = profile;
+    documentBuilderFactory = null;
+    trustedDocumentBuilderFactory = null;
+  }
+
+  public static synchronized DocumentBuilderFactory get_document_builder_factory() {
     if (documentBuilderFactory == null) {
-      documentBuilderFactory = DocumentBuilderFactory.newInstance();
-      documentBuilderFactory.setNamespaceAware(true);
-      documentBuilderFactory.setSchema(load_schema());
-      documentBuilderFactory.setIgnoringElementContentWhitespace(true);
+      documentBuilderFactory = create_document_builder_factory(load_schema());
+    }
+    return documentBuilderFactory;
+  }
+
+  /**
+   * Factory for messages from a trusted source, which only checks that they
+   * are well formed.
+   *
+   * It is hardened in the same way as {@link #get_document_builder_factory},
+   * and additionally has secure processing enabled and all external access
+   * disabled. As no schema is applied, whitespace between elements is kept.
+   *
+   * @return non-validating factory
+   */
+  public static synchronized DocumentBuilderFactory get_trusted_document_builder_factory() {
+    if (trustedDocumentBuilderFactory == null) {
+      DocumentBuilderFactory dbf = create_document_builder_factory(null);
       try {
-        documentBuilderFactory.setFeature(
-            "http://apache.org/xml/features/disallow-doctype-decl",
-            true
-        );
-      } catch (Exception e) {
-        System.err.println("[W] could not disable doctype, system is possibly vulnerable to xxe");
+        dbf.setFeature(XMLConstants.FEATURE_SECURE_PROCESSING, true);
+      } catch (ParserConfigurationException e) {
+        System.err.println("[W] could not enable secure processing: " + e.getMessage());
       }
-      documentBuilderFactory.setXIncludeAware(false);
-      documentBuilderFactory.setExpandEntityReferences(false);
+      dbf.setAttribute(XMLConstants.ACCESS_EXTERNAL_DTD, "");
+      dbf.setAttribute(XMLConstants.ACCESS_EXTERNAL_SCHEMA, "");
+      trustedDocumentBuilderFactory = dbf;
     }
-    return documentBuilderFactory;
+    return trustedDocumentBuilderFactory;
+  }
+
+  /**
+   * Remove whitespace text between elements, as a validating parse does for
+   * element only content. DUIS has no mixed content, so whitespace next to a
+   * child element is never significant.
+   *
+   * @param node
+   *          root of the tree to strip, modified in place
+   */
+  static void strip_element_content_whitespace(final Node node) {
+    boolean hasElements = false;
+    for (Node c = node.getFirstChild(); c != null; c = c.getNextSibling()) {
+      if (c.getNodeType() == Node.ELEMENT_NODE) {
+        hasElements = true;
+        strip_element_content_whitespace(c);
+      }
+    }
+    if (!hasElements) {
+      return;
+    }
+    Node c = node.getFirstChild();
+    while (c != null) {
+      Node next = c.getNextSibling();
+      if (c.getNodeType() == Node.TEXT_NODE && c.getNodeValue().isBlank()) {
+        node.removeChild(c);
+      }
+      c = next;
+    }
+  }
+
+  /**
+   * Create a hardened, namespace aware factory validating against a schema,
+   * configured for the current {@link ParserProfile}.
+   *
+   * @param s
+   *          schema to validate against, or null for none
+   * @return factory
+   */
+  static DocumentBuilderFactory create_document_builder_factory(final Schema s) {
+    DocumentBuilderFactory dbf = DocumentBuilderFactory.newInstance();
+    dbf.setNamespaceAware(true);
+    dbf.setSchema(s);
+    dbf.setIgnoringElementContentWhitespace(true);
+    try {
+      dbf.setFeature(
+          "http://apache.org/xml/features/disallow-doctype-decl",
+          true
+      );
+    } catch (Exception e) {
+      System.err.println("[W] could not disable doctype, system is possibly vulnerable to xxe");
+    }
+    dbf.setXIncludeAware(false);
+    dbf.setExpandEntityReferences(false);
+    parserProfile.apply(dbf);
+    return dbf;
   }
 
   public static Document load_duis_file_checked(final String file_name) {
     try {
       return load_duis_file(file_name);
-    } catch (FileNotFoundException e) {
-      System.err.println("[E] message file not found");
-    } catch (IOException e) {
-      System.err.println("[E] message file could not be read");
-    } catch (SAXException e) {
-      System.err.println("[E] message file could not parse");
-    } catch (ParserConfigurationException e) {
-      System.err.println("[E] internal error while loading duis");
+    } catch (IOException | SAXException | ParserConfigurationException e) {
+      System.err.println(load_failure_message(e));
     }
     System.exit(2);
     return null;
   }
 
+  /**
+   * Describe why {@link #load_duis_file} raised an exception, in the form
+   * printed by the command line tools.
+   *
+   * @param e
+   *          exception raised while loading a duis file
+   * @return log line
+   */
+  public static String load_failure_message(final Exception e) {
+    if (e instanceof FileNotFoundException) {
+      return "[E] message file not found";
+    } else if (e instanceof IOException) {
+      return "[E] message file could not be read";
+    } else if (e instanceof SAXException) {
+      return "[E] message file could not parse";
+    }
+    return "[E] internal error while loading duis";
+  }
+
   public static Document parse_duis_stream(final InputStream is)
       throws IOException, SAXException, ParserConfigurationException {
-    DocumentBuilderFactory dbf = get_document_builder_factory();
+    return parse_duis_stream(is, null);
+  }
+
+  /**
+   * Parse and xsd validate a duis message against a registered schema.
+   *
+   * @param is
+   *          message
+   * @param schemaName
+   *          name of a schema in the {@link SchemaRegistry}, or null to select
+   *          one by the namespace and {@code schemaVersion} of the message
+   *          root, or {@link SchemaRegistry#NONE} to skip validation
+   * @return validated document
+   * @throws IOException
+   *           if the message could not be read
+   * @throws SAXException
+   *           if the message could not be parsed or failed validation
+   * @throws ParserConfigurationException
+   *           if no parser could be created
+   * @throws IllegalArgumentException
+   *           if schemaName is not registered
+   */
+  public static Document parse_duis_stream(final InputStream is, final String schemaName)
+      throws IOException, SAXException, ParserConfigurationException {
+    SchemaRegistry schemas = SchemaRegistry.getInstance();
+    InputStream input = is;
+    String name = schemaName;
+    if (name == null) {
+      BufferedInputStream buffered = new BufferedInputStream(is, SchemaRegistry.PEEK_LIMIT);
+      name = schemas.select(buffered);
+      input = buffered;
+    }
+    DocumentBuilderFactory dbf = schemas.getDocumentBuilderFactory(name);
     DocumentBuilder db = dbf.newDocumentBuilder();
     db.setErrorHandler(new ErrorHandler() {
       @Override
@@ -179,26 +362,65 @@ public final class Util {
         throw exception;
       }
     });
-    Document doc = db.parse(is);
+    Document doc = db.parse(input);
 
     return doc;
   }
 
   public static Document load_duis_file(final String file_name)
       throws FileNotFoundException, IOException, SAXException, ParserConfigurationException {
+    return load_duis_file(file_name, System.in, System.err);
+  }
+
+  /**
+   * Load and xsd validate a duis file.
+   *
+   * @param file_name
+   *          file to load, or "-" to read from {@code stdin}
+   * @param stdin
+   *          stream used in place of the file when file_name is "-"
+   * @param err
+   *          stream that validation failures are reported to
+   * @return document, or null if xsd validation failed
+   */
+  public static Document load_duis_file(
+      final String file_name, final InputStream stdin, final PrintStream err
+  )
+      throws FileNotFoundException, IOException, SAXException, ParserConfigurationException {
+    return load_duis_file(file_name, stdin, err, null);
+  }
+
+  /**
+   * Load and xsd validate a duis file against a named schema.
+   *
+   * @param file_name
+   *          file to load, or "-" to read from {@code stdin}
+   * @param stdin
+   *          stream used in place of the file when file_name is "-"
+   * @param err
+   *          stream that validation failures are reported to
+   * @param schemaName
+   *          see {@link #parse_duis_stream(InputStream, String)}
+   * @return document, or null if xsd validation failed
+   */
+  public static Document load_duis_file(
+      final String file_name, final InputStream stdin, final PrintStream err,
+      final String schemaName
+  )
+      throws FileNotFoundException, IOException, SAXException, ParserConfigurationException {
     InputStream is = null;
     try {
       if (file_name.equals("-")) {
-        is = System.in;
+        is = stdin;
       } else {
         is = new FileInputStream(file_name);
       }
-      return parse_duis_stream(is);
+      return parse_duis_stream(is, schemaName);
     } catch (SAXParseException e) {
       if (e.getMessage().equals("Premature end of file.")) {
         throw e;
       } else {
-        System.err
+        err
             .println(
                 "[E] validation failed: "
                     + e.getLineNumber() + ":" + e.getColumnNumber() + " " + e.getMessage()
@@ -238,15 +460,37 @@ public final class Util {
   public static X509Certificate load_certificate_checked(
       final CertificateFactory f,
       final String file_name
+  ) {
+    X509Certificate cer = load_certificate_checked(f, file_name, System.err);
+    if (cer == null) {
+      System.exit(ResultCode.MISSING_KEY.value());
+    }
+    return cer;
+  }
+
+  /**
+   * Load a certificate, reporting failures instead of exiting.
+   *
+   * @param f
+   *          certificate factory
+   * @param file_name
+   *          pem file to load
+   * @param err
+   *          stream that failures are reported to
+   * @return certificate or null
+   */
+  public static X509Certificate load_certificate_checked(
+      final CertificateFactory f,
+      final String file_name,
+      final PrintStream err
   ) {
     try {
       return load_certificate(f, file_name);
     } catch (FileNotFoundException e) {
-      System.err.println("[E] cert file not found");
+      err.println("[E] cert file not found");
     } catch (CertificateException e) {
-      System.err.println("[E] cert file could not be loaded");
+      err.println("[E] cert file could not be loaded");
     }
-    System.exit(ResultCode.MISSING_KEY.value());
     return null;
   }
 
@@ -272,16 +516,38 @@ public final class Util {
   }
 
   public static PrivateKey load_key_checked(final KeyFactory f, final String file_name) {
+    PrivateKey key = load_key_checked(f, file_name, System.err);
+    if (key == null) {
+      System.exit(ResultCode.MISSING_KEY.value());
+    }
+    return key;
+  }
+
+  /**
+   * Load a private key, reporting failures instead of exiting.
+   *
+   * @param f
+   *          key factory
+   * @param file_name
+   *          pem or der file to load
+   * @param err
+   *          stream that failures are reported to
+   * @return private key or null
+   */
+  public static PrivateKey load_key_checked(
+      final KeyFactory f,
+      final String file_name,
+      final PrintStream err
+  ) {
     try {
       return load_key(f, file_name);
     } catch (FileNotFoundException e) {
-      System.err.println("[E] privkey file not found");
+      err.println("[E] privkey file not found");
     } catch (IOException e) {
-      System.err.println("[E] privkey file could not be loaded");
+      err.println("[E] privkey file could not be loaded");
     } catch (InvalidKeySpecException e) {
-      System.err.println("[E] privkey could not be parsed");
+      err.println("[E] privkey could not be parsed");
     }
-    System.exit(ResultCode.MISSING_KEY.value());
     return null;
   }
 
@@ -19,11 +19,13 @@ package uk.co.smartdcc.boxed.xmldsig;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.PrintStream;
 import java.math.BigInteger;
 import java.security.PublicKey;
 import java.security.SignatureException;
 import java.security.cert.CertificateException;
 import java.security.cert.X509Certificate;
+import java.util.Arrays;
 import java.util.Iterator;
 
 import javax.xml.crypto.MarshalException;
@@ -55,7 +57,30 @@ public final class Validate {
   )
       throws IOException, SAXException, ParserConfigurationException, SignatureException,
       CertificateException, MarshalException, XMLSignatureException {
-    Document doc = Util.parse_duis_stream(is);
+    return validate_input_stream(is, resolver, null);
+  }
+
+  /**
+   * As {@link #validate_input_stream(InputStream, SerialCredentialResolver)},
+   * validating against a named schema.
+   *
+   * @param is
+   *          signed message
+   * @param resolver
+   *          certificates to validate against
+   * @param schemaName
+   *          name in the {@link SchemaRegistry}, or null to select by the
+   *          message root
+   * @return message without its signature, or null for an unsigned response
+   */
+  public static byte[] validate_input_stream(
+      final InputStream is,
+      final SerialCredentialResolver resolver,
+      final String schemaName
+  )
+      throws IOException, SAXException, ParserConfigurationException, SignatureException,
+      CertificateException, MarshalException, XMLSignatureException {
+    Document doc = Util.parse_duis_stream(is, schemaName);
     return validate_document(doc, resolver);
   }
 
@@ -103,28 +128,78 @@ public final class Validate {
   }
 
   public static ResultCode main_aux(final String[] args) {
+    return main_aux(args, System.in, System.out, System.err);
+  }
+
+  /**
+   * Run the validation tool against explicit streams, so that it can be
+   * hosted by a long lived process without touching the global
+   * {@code System} streams or calling {@code System.exit}.
+   *
+   * @param arguments
+   *          command line arguments
+   * @param in
+   *          stream read when the message is given as "-"
+   * @param out
+   *          stream the validated message is written to
+   * @param err
+   *          stream log lines are written to
+   * @return result code
+   */
+  public static ResultCode main_aux(
+      final String[] arguments, final InputStream in, final PrintStream out, final PrintStream err
+  ) {
+    if (Arrays.asList(arguments).contains(Batch.FLAG)) {
+      return Batch.main_aux(
+          Daemon.VALIDATE,
+          Arrays.stream(arguments).filter(x -> !Batch.FLAG.equals(x)).toArray(String[]::new),
+          err
+      );
+    }
+    boolean trusted = Arrays.stream(arguments).anyMatch(Sign.TRUSTED_FLAG::equals);
+    String[] args = Arrays
+        .stream(arguments)
+        .filter(x -> !Sign.TRUSTED_FLAG.equals(x))
+        .toArray(String[]::new);
     if (args.length < 1 || args.length > 2) {
-      System.err.println("[I] usage: message.xml [signingcert.pem]");
+      err.println("[I] usage: message.xml [--trusted] [signingcert.pem]");
       if (args.length == 0) {
-        System.err.println("[E] message not provided");
+        err.println("[E] message not provided");
         return ResultCode.GENERIC_ERROR;
       }
     }
 
-    Document doc = Util.load_duis_file_checked(args[0]);
+    Document doc;
+    try {
+      doc = Util.load_duis_file(args[0], in, err, trusted ? SchemaRegistry.NONE : null);
+    } catch (Exception e) {
+      err.println(Util.load_failure_message(e));
+      return ResultCode.GENERIC_ERROR;
+    }
     if (doc == null) {
-      System.err.println("[I] failed xsd validation");
+      err.println("[I] failed xsd validation");
       return ResultCode.VALIDATION_FAIL;
     }
-    System.err.println("[I] passed xsd validation");
+    err.println(trusted ? "[I] skipped xsd validation (trusted)" : "[I] passed xsd validation");
+
+    X509Certificate argCertificate = null;
+    if (args.length >= 2) {
+      argCertificate = Util.load_certificate_checked(
+          Util.create_certificate_factory(), args[1], err
+      );
+      if (argCertificate == null) {
+        return ResultCode.MISSING_KEY;
+      }
+    }
+    final X509Certificate fixedCertificate = argCertificate;
 
     SerialCredentialResolver resolver = new SerialCredentialResolver() {
       @Override
       public X509Certificate lookup(final BigInteger serial) {
-        if (args.length >= 2) {
-          return Util.load_certificate_checked(Util.create_certificate_factory(), args[1]);
+        if (fixedCertificate != null) {
+          return fixedCertificate;
         }
-        return CertificateLibrary.getInstance().lookup(serial);
+        return Credentials.getInstance().lookup(serial);
       }
     };
 
@@ -132,43 +207,50 @@ public final class Validate {
     try {
       signedXml = validate_document(doc, resolver);
     } catch (CertificateException e) {
-      System.err.println("[E] could not load certificate: " + e.getMessage());
+      err.println("[E] could not load certificate: " + e.getMessage());
       return ResultCode.MISSING_KEY;
     } catch (SignatureException e) {
-      System.err.println("[E] validation failed: " + e.getMessage());
+      err.println("[E] validation failed: " + e.getMessage());
       return ResultCode.VALIDATION_FAIL;
     } catch (Exception e) {
-      System.err.println("[E] internal error: " + e.getMessage());
+      err.println("[E] internal error: " + e.getMessage());
       return ResultCode.GENERIC_ERROR;
     }
 
     if (signedXml == null) {
-      System.err.println("[I] response without signature, validation check skipped");
+      err.println("[I] response without signature, validation check skipped");
       try {
         TransformerFactory tf = TransformerFactory.newInstance();
         Transformer trans = tf.newTransformer();
         trans.setOutputProperty(OutputKeys.INDENT, "yes");
         trans.setOutputProperty("{http://xml.apache.org/xslt}indent-amount", "2");
-        trans.transform(new DOMSource(doc), new StreamResult(System.out));
+        trans.transform(new DOMSource(doc), new StreamResult(out));
       } catch (Exception e) {
-        System.err.println("[E] internal error");
+        err.println("[E] internal error");
         return ResultCode.GENERIC_ERROR;
       }
+      out.flush();
       return ResultCode.SUCCESS;
     }
 
-    System.err.println("[I] passed signature check");
+    err.println("[I] passed signature check");
     try {
-      System.out.write(signedXml);
-      System.out.println();
+      out.write(signedXml);
+      out.println();
     } catch (Exception e) {
-      System.err.println("[E] internal error");
+      err.println("[E] internal error");
       return ResultCode.GENERIC_ERROR;
     }
+    out.flush();
     return ResultCode.SUCCESS;
   }
 
   public static void main(final String[] args) {
-    System.exit(main_aux(args).value());
+    ResultCode result = Daemon.delegate(Daemon.VALIDATE, args);
+    if (result == null) {
+      Util.preload(true);
+      result = main_aux(args);
+    }
+    System.exit(result.value());
   }
 }
@@ -0,0 +1,193 @@
+/*
+ * Created on Mon Oct 19 2026
+ *
+ * Copyright (c) 2026 Smart DCC Limited
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package uk.co.smartdcc.boxed.xmldsig;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import org.w3c.dom.Document;
+
+/**
+ * Brings a server up to speed before it is reported ready.
+ *
+ * On a background thread the default schema is compiled, the configured
+ * {@link Credentials} are opened and looked up through, and a bundled request
+ * is signed, serialized and verified a number of times, so that the first
+ * real requests neither wait for loading nor run interpreted. The request is
+ * signed with the configured credentials if they hold its originator, and
+ * with the bundled {@link CertificateLibrary} otherwise. {@link #isDone}
+ * only becomes true once all of that has succeeded. The compiled code is
+ * shared by the whole process, so are the round trips: every server started
+ * meanwhile waits on the same run rather than starting its own, and a run
+ * that has completed is not repeated. {@link #cancel} stops it.
+ */
+public final class Warmup {
+  /* signed with the bundled credentials of 90-B3-D5-1F-30-01-00-00 */
+  static final String ORIGINATOR = "90B3D51F30010000";
+  static final String REQUEST = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>"
+      + "<sr:Request xmlns:sr=\"http://www.dccinterface.co.uk/ServiceUserGateway\""
+      + " schemaVersion=\"5.0\"><sr:Header>"
+      + "<sr:RequestID>90-B3-D5-1F-30-01-00-00:00-07-81-D7-00-00-36-CE:1000</sr:RequestID>"
+      + "<sr:CommandVariant>1</sr:CommandVariant><sr:ServiceReference>4.1</sr:ServiceReference>"
+      + "<sr:ServiceReferenceVariant>4.1.1</sr:ServiceReferenceVariant></sr:Header>"
+      + "<sr:Body><sr:ReadInstantaneousImportRegisters/></sr:Body></sr:Request>";
+
+  private static final Object LOCK = new Object();
+  /* the round trips of the process, and how many it runs */
+  private static CompletableFuture<Void> shared = null;
+  private static int sharedIterations = 0;
+
+  private final int iterations;
+  private volatile CompletableFuture<Void> trips = null;
+  private volatile String error = null;
+  private volatile boolean quiet = false;
+
+  /**
+   * Create a warm-up, started with {@link #start}.
+   *
+   * @param rounds
+   *          synthetic sign and verify round trips, 0 to only load
+   */
+  public Warmup(final int rounds) {
+    this.iterations = rounds;
+  }
+
+  public void setQuiet(final boolean q) {
+    this.quiet = q;
+  }
+
+  private void log(final boolean isError, final String message) {
+    if (!quiet) {
+      String code = "I";
+      if (isError) {
+        code = "E";
+      }
+      System.err.println("[" + code + "] [" + ProcessHandle.current().pid() + "] " + message);
+    }
+  }
+
+  /**
+   * Run the warm-up on a daemon thread, returns immediately.
+   */
+  public void start() {
+    Thread t = new Thread(this::run, "xmldsig-warmup");
+    t.setDaemon(true);
+    t.start();
+  }
+
+  /**
+   * Run the warm-up on the calling thread, waiting for the round trips if
+   * another server is running them.
+   *
+   * @return true if it succeeded
+   */
+  public boolean run() {
+    long start = System.nanoTime();
+    try {
+      Util.get_document_builder_factory();
+      CredentialResolver credentials = Credentials.getInstance();
+      if (credentials.lookup(ORIGINATOR) == null) {
+        log(false, "Warm-up credential not configured, signing with the bundled library");
+      }
+      CompletableFuture<Void> joined = roundTrips(iterations);
+      trips = joined;
+      joined.join();
+    } catch (CancellationException e) {
+      error = "cancelled";
+      return false;
+    } catch (Exception e) {
+      Throwable cause = e instanceof CompletionException ? e.getCause() : e;
+      error = String.valueOf(cause.getMessage());
+      log(true, "Warm-up failed: " + error);
+      return false;
+    }
+    log(false, "Warmed up in " + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + " ms");
+    return true;
+  }
+
+  /*
+   * joins the run in progress or completed if it has at least as many round
+   * trips, a failed or cancelled one is replaced
+   */
+  private static CompletableFuture<Void> roundTrips(final int count) {
+    if (count <= 0) {
+      return CompletableFuture.completedFuture(null);
+    }
+    synchronized (LOCK) {
+      if (shared == null || shared.isCompletedExceptionally() || sharedIterations < count) {
+        CompletableFuture<Void> run = new CompletableFuture<>();
+        shared = run;
+        sharedIterations = count;
+        Thread t = new Thread(() -> roundTrips(count, run), "xmldsig-warmup-rounds");
+        t.setDaemon(true);
+        t.start();
+      }
+      return shared;
+    }
+  }
+
+  private static void roundTrips(final int count, final CompletableFuture<Void> run) {
+    try {
+      CredentialResolver credentials = Credentials.getInstance();
+      if (credentials.lookup(ORIGINATOR) == null) {
+        credentials = CertificateLibrary.getInstance();
+      }
+      byte[] request = REQUEST.getBytes(StandardCharsets.UTF_8);
+      for (int i = 0; i < count && !run.isDone(); i++) {
+        Document doc = Util.parse_duis_stream(new ByteArrayInputStream(request));
+        Sign.sign_document(true, doc, credentials);
+        byte[] signed = DomWriter.local().write(doc).toByteArray();
+        if (Validate.validate_input_stream(new ByteArrayInputStream(signed), credentials) == null) {
+          throw new IllegalStateException("signature missing");
+        }
+      }
+      run.complete(null);
+    } catch (Exception e) {
+      run.completeExceptionally(e);
+    }
+  }
+
+  /**
+   * Stop the round trips of the process, when a server shuts down. Servers
+   * still waiting on them report the warm-up as failed.
+   */
+  public static void cancel() {
+    synchronized (LOCK) {
+      if (shared != null) {
+        shared.cancel(false);
+      }
+    }
+  }
+
+  public boolean isDone() {
+    CompletableFuture<Void> joined = trips;
+    return joined != null && joined.isDone() && !joined.isCompletedExceptionally();
+  }
+
+  /**
+   * Why the warm-up failed.
+   *
+   * @return message, or null if it has not failed
+   */
+  public String getError() {
+    return error;
+  }
+}
@@ -0,0 +1,421 @@
+/*
+ * Created on Mon Oct 19 2026
+ *
+ * Copyright (c) 2026 Smart DCC Limited
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package uk.co.smartdcc.boxed.xmldsig;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * Continuously sign or validate files dropped into spool directories.
+ *
+ * Each watched directory is paired with an output directory. New files are
+ * picked up with a {@link WatchService}, processed on a worker pool and
+ * written to the output directory atomically (temporary file then rename),
+ * after which the input is removed. Inputs that fail are moved to the
+ * quarantine directory next to a {@code .error} file describing the failure.
+ *
+ * Producers should also write atomically, files whose name starts with a
+ * {@code .} or ends with {@code .tmp} are ignored until renamed.
+ */
+public final class Watcher {
+  private static final int DEFAULT_REPORT_SECONDS = 10;
+  private static final double NS_PER_S = 1e9;
+  private static final int CLOSE_TIMEOUT_SECONDS = 10;
+
+  /**
+   * What to do with files in a watched directory.
+   */
+  public enum Mode {
+    SIGN, VERIFY
+  }
+
+  /**
+   * A watched directory and where its results go.
+   */
+  private static final class Route {
+    private final Mode _mode;
+    private final Path _input;
+    private final Path _output;
+
+    Route(final Mode mode, final Path input, final Path output) {
+      this._mode = mode;
+      this._input = input;
+      this._output = output;
+    }
+  }
+
+  private final Path quarantine;
+  private final boolean preserveCounter;
+  private final Map<WatchKey, Route> routes = new ConcurrentHashMap<>();
+  private final Set<Path> pending = ConcurrentHashMap.newKeySet();
+  private final AtomicLong processed = new AtomicLong();
+  private final AtomicLong failed = new AtomicLong();
+  private final ExecutorService workers;
+  private final ScheduledExecutorService reporter;
+  private final WatchService watchService;
+  private volatile boolean quiet = false;
+  private long lastReportCount = 0;
+  private long lastReportTime = System.nanoTime();
+
+  /**
+   * Create a watcher, directories are added with {@link #watch}.
+   *
+   * @param quarantineDirectory
+   *          where failed inputs are moved
+   * @param threads
+   *          number of files processed concurrently
+   * @param preserve
+   *          keep the counter of signed requests, as for
+   *          {@code --preserveCounter}
+   * @throws IOException
+   *           if the quarantine directory could not be created
+   */
+  public Watcher(final Path quarantineDirectory, final int threads, final boolean preserve)
+      throws IOException {
+    this.quarantine = Files.createDirectories(quarantineDirectory);
+    this.preserveCounter = preserve;
+    this.workers = Executors.newFixedThreadPool(threads);
+    this.reporter = Executors.newSingleThreadScheduledExecutor();
+    this.watchService = FileSystems.getDefault().newWatchService();
+  }
+
+  public void setQuiet(final boolean q) {
+    this.quiet = q;
+  }
+
+  private void log(final boolean error, final String message) {
+    if (!quiet) {
+      String code = "I";
+      if (error) {
+        code = "E";
+      }
+      System.err.println("[" + code + "] [" + ProcessHandle.current().pid() + "] " + message);
+    }
+  }
+
+  /**
+   * Watch a directory, processing files already present and any that arrive
+   * later.
+   *
+   * @param mode
+   *          sign or verify
+   * @param input
+   *          directory to watch
+   * @param output
+   *          directory results are written to
+   * @throws IOException
+   *           if either directory could not be created or watched
+   */
+  public void watch(final Mode mode, final Path input, final Path output) throws IOException {
+    watch(new Route(mode, input, output));
+  }
+
+  private void watch(final Route route) throws IOException {
+    Files.createDirectories(route._input);
+    Files.createDirectories(route._output);
+    WatchKey key = route._input.register(watchService, StandardWatchEventKinds.ENTRY_CREATE);
+    routes.put(key, route);
+    scan(route);
+    log(false, "Watching " + route._input + " (" + route._mode + ") -> " + route._output);
+  }
+
+  /**
+   * Start processing, returns immediately.
+   *
+   * @param reportSeconds
+   *          interval between throughput reports, or 0 for none
+   */
+  public void start(final int reportSeconds) {
+    Thread t = new Thread(this::watchLoop, "xmldsig-watcher");
+    t.setDaemon(true);
+    t.start();
+    if (reportSeconds > 0) {
+      reporter.scheduleAtFixedRate(this::report, reportSeconds, reportSeconds, TimeUnit.SECONDS);
+    }
+  }
+
+  /**
+   * Stop watching, waiting a short time for files already picked up to be
+   * completed.
+   */
+  public void close() {
+    try {
+      watchService.close();
+    } catch (IOException e) {
+    }
+    reporter.shutdown();
+    workers.shutdown();
+    try {
+      workers.awaitTermination(CLOSE_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    synchronized (this) {
+      notifyAll();
+    }
+  }
+
+  public long getProcessed() {
+    return processed.get();
+  }
+
+  public long getFailed() {
+    return failed.get();
+  }
+
+  /**
+   * Files picked up but not yet completed.
+   *
+   * @return backlog depth
+   */
+  public int getBacklog() {
+    return pending.size();
+  }
+
+  synchronized void report() {
+    long now = System.nanoTime();
+    long count = processed.get() + failed.get();
+    double rate = (count - lastReportCount) / ((now - lastReportTime) / NS_PER_S);
+    lastReportCount = count;
+    lastReportTime = now;
+    log(
+        false,
+        String.format(
+            "processed %d, failed %d, backlog %d, %.1f files/s", processed.get(), failed.get(),
+            pending.size(), rate
+        )
+    );
+  }
+
+  private void scan(final Route route) throws IOException {
+    try (Stream<Path> s = Files.list(route._input)) {
+      s.sorted().forEach(p -> submit(route, p));
+    }
+  }
+
+  private void watchLoop() {
+    while (true) {
+      WatchKey key;
+      try {
+        key = watchService.take();
+      } catch (InterruptedException | ClosedWatchServiceException e) {
+        return;
+      }
+      Route route = routes.get(key);
+      if (route != null) {
+        for (WatchEvent<?> event : key.pollEvents()) {
+          if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+            try {
+              scan(route);
+            } catch (IOException e) {
+              log(true, "could not rescan " + route._input + ": " + e.getMessage());
+            }
+          } else {
+            submit(route, route._input.resolve((Path) event.context()));
+          }
+        }
+      }
+      key.reset();
+    }
+  }
+
+  private void submit(final Route route, final Path file) {
+    String name = file.getFileName().toString();
+    if (name.startsWith(".") || name.endsWith(".tmp") || !Files.isRegularFile(file)) {
+      return;
+    }
+    if (!pending.add(file)) {
+      return;
+    }
+    try {
+      workers.execute(() -> {
+        try {
+          process(route, file);
+        } finally {
+          pending.remove(file);
+        }
+      });
+    } catch (Exception e) {
+      pending.remove(file);
+    }
+  }
+
+  private void process(final Route route, final Path file) {
+    String name = file.getFileName().toString();
+    byte[] input;
+    try {
+      input = Files.readAllBytes(file);
+    } catch (NoSuchFileException e) {
+      /* already handled by an earlier event */
+      return;
+    } catch (IOException e) {
+      fail(file, name, e);
+      return;
+    }
+
+    try {
+      byte[] output;
+      if (route._mode == Mode.SIGN) {
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        Sign.verify_and_sign_input_stream(
+            preserveCounter, new ByteArrayInputStream(input), os, Credentials.getInstance()
+        );
+        output = os.toByteArray();
+      } else {
+        output = Validate.validate_input_stream(
+            new ByteArrayInputStream(input), Credentials.getInstance()
+        );
+        /* response without signature */
+        if (output == null) {
+          output = input;
+        }
+      }
+      Path tmp = route._output.resolve("." + name + ".tmp");
+      Files.write(tmp, output);
+      Files.move(
+          tmp, route._output.resolve(name), StandardCopyOption.ATOMIC_MOVE,
+          StandardCopyOption.REPLACE_EXISTING
+      );
+      Files.deleteIfExists(file);
+      processed.incrementAndGet();
+    } catch (Exception e) {
+      fail(file, name, e);
+    }
+  }
+
+  private void fail(final Path file, final String name, final Exception e) {
+    failed.incrementAndGet();
+    log(true, file + " failed: " + e.getMessage());
+    try {
+      Files.write(
+          quarantine.resolve(name + ".error"),
+          (e.getClass().getSimpleName() + ": " + e.getMessage() + "\n")
+              .getBytes(StandardCharsets.UTF_8)
+      );
+      Files.move(file, quarantine.resolve(name), StandardCopyOption.REPLACE_EXISTING);
+    } catch (IOException q) {
+      log(true, "could not quarantine " + file + ": " + q.getMessage());
+    }
+  }
+
+  static void showHelp() {
+    System.out.println(
+        "Usage: java -cp xmldsign.jar uk.co.smartdcc.boxed.xmldsig.Watcher [-s in out]..."
+            + " [-v in out]... -e quarantine [-j threads] [-r seconds] [--preserveCounter] [-q]"
+            + " [-h]"
+    );
+    System.out.println("  -s in out         Sign files dropped in 'in', writing to 'out'");
+    System.out.println("  -v in out         Verify files dropped in 'in', writing to 'out'");
+    System.out.println("  -e quarantine     Directory failed files are moved to");
+    System.out.println("  -j threads        Worker threads (default: number of processors)");
+    System.out.println(
+        "  -r seconds        Report interval, 0 for none (default: " + DEFAULT_REPORT_SECONDS
+            + ")"
+    );
+    System.out.println("  --preserveCounter Keep the counter of signed requests");
+    System.out.println("  -q                Quiet mode (no logging)");
+    System.out.println("  -h                Show this help");
+  }
+
+  public static void main(final String[] args) throws IOException, InterruptedException {
+    Path quarantineDirectory = null;
+    int threads = Runtime.getRuntime().availableProcessors();
+    int reportSeconds = DEFAULT_REPORT_SECONDS;
+    boolean preserve = false;
+    boolean q = false;
+    List<Route> dirs = new ArrayList<>();
+
+    for (int i = 0; i < args.length; i++) {
+      try {
+        switch (args[i]) {
+          case "-s":
+            dirs.add(new Route(Mode.SIGN, Paths.get(args[++i]), Paths.get(args[++i])));
+            break;
+          case "-v":
+            dirs.add(new Route(Mode.VERIFY, Paths.get(args[++i]), Paths.get(args[++i])));
+            break;
+          case "-e":
+            quarantineDirectory = Paths.get(args[++i]);
+            break;
+          case "-j":
+            threads = Integer.parseInt(args[++i]);
+            break;
+          case "-r":
+            reportSeconds = Integer.parseInt(args[++i]);
+            break;
+          case "--preserveCounter":
+            preserve = true;
+            break;
+          case "-q":
+            q = true;
+            break;
+          case "-h":
+          default:
+            showHelp();
+            return;
+        }
+      } catch (ArrayIndexOutOfBoundsException | NumberFormatException e) {
+        showHelp();
+        return;
+      }
+    }
+    if (quarantineDirectory == null || dirs.isEmpty()) {
+      showHelp();
+      return;
+    }
+
+    /* compile schema and load credentials before the workers start */
+    Util.get_document_builder_factory();
+    Credentials.getInstance();
+
+    Watcher watcher = new Watcher(quarantineDirectory, threads, preserve);
+    watcher.setQuiet(q);
+    for (Route route : dirs) {
+      watcher.watch(route);
+    }
+    watcher.start(reportSeconds);
+    Runtime.getRuntime().addShutdownHook(new Thread(watcher::close));
+    synchronized (watcher) {
+      watcher.wait();
+    }
+  }
+}
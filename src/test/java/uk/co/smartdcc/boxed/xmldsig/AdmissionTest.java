@@ -0,0 +1,216 @@
+/*
+ * Created on Mon Oct 19 2026
+ *
+ * Copyright (c) 2026 Smart DCC Limited
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package uk.co.smartdcc.boxed.xmldsig;
+
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+public class AdmissionTest {
+  private static final int PORT = 18101;
+  private HttpServer server;
+  private Admission admission;
+  private final CountDownLatch release = new CountDownLatch(1);
+
+  /* /hold blocks until released, so requests stay in flight */
+  void start(int maxInFlight, int maxQueued, int maxPerClient) throws Exception {
+    admission = new Admission(maxInFlight, maxQueued, maxPerClient);
+    server = HttpServer.create(new InetSocketAddress(PORT), 0);
+    server.setExecutor(admission);
+    server.createContext("/hold", admission.admit(exchange -> {
+      try {
+        release.await(10, TimeUnit.SECONDS);
+      } catch (InterruptedException ignored) {
+      }
+      Server.sendResponse(exchange, 200, Map.of());
+    }));
+    server.start();
+  }
+
+  @AfterEach
+  void stop() {
+    release.countDown();
+    if (server != null) {
+      server.stop(0);
+      admission.close();
+    }
+  }
+
+  static CompletableFuture<Integer> hold() {
+    return CompletableFuture.supplyAsync(() -> {
+      try {
+        return get().getResponseCode();
+      } catch (Exception e) {
+        return -1;
+      }
+    });
+  }
+
+  static HttpURLConnection get() throws Exception {
+    return get("/hold");
+  }
+
+  static HttpURLConnection get(String path) throws Exception {
+    return (HttpURLConnection) new URI("http://localhost:" + PORT + path).toURL()
+        .openConnection();
+  }
+
+  static void awaitGauge(String name, long value) throws InterruptedException {
+    for (int i = 0; i < 100 && !Metrics.getInstance().render().contains(name + " " + value); i++) {
+      Thread.sleep(20);
+    }
+    Assertions.assertTrue(Metrics.getInstance().render().contains(name + " " + value));
+  }
+
+  @Test
+  void overloaded() throws Exception {
+    start(1, 0, 0);
+    CompletableFuture<Integer> first = hold();
+    awaitGauge("xmldsig_requests_in_flight", 1);
+    long before = Metrics.getInstance().get("xmldsig_requests_rejected_total", "reason", "Overloaded");
+    HttpURLConnection conn = get();
+    Assertions.assertEquals(503, conn.getResponseCode());
+    Assertions.assertEquals("1", conn.getHeaderField("Retry-After"));
+    Assertions.assertTrue(new String(conn.getErrorStream().readAllBytes()).contains("Overloaded"));
+    Assertions.assertEquals(
+        before + 1, Metrics.getInstance().get("xmldsig_requests_rejected_total", "reason", "Overloaded")
+    );
+    release.countDown();
+    Assertions.assertEquals(200, first.get(10, TimeUnit.SECONDS));
+  }
+
+  @Test
+  void queued() throws Exception {
+    start(1, 1, 0);
+    CompletableFuture<Integer> first = hold();
+    awaitGauge("xmldsig_requests_in_flight", 1);
+    CompletableFuture<Integer> second = hold();
+    awaitGauge("xmldsig_requests_queued", 1);
+    Assertions.assertEquals(503, get().getResponseCode());
+    release.countDown();
+    Assertions.assertEquals(200, first.get(10, TimeUnit.SECONDS));
+    Assertions.assertEquals(200, second.get(10, TimeUnit.SECONDS));
+  }
+
+  @Test
+  void perClient() throws Exception {
+    start(4, 0, 1);
+    CompletableFuture<Integer> first = hold();
+    awaitGauge("xmldsig_requests_in_flight", 1);
+    HttpURLConnection conn = get();
+    Assertions.assertEquals(429, conn.getResponseCode());
+    Assertions.assertEquals("1", conn.getHeaderField("Retry-After"));
+    release.countDown();
+    Assertions.assertEquals(200, first.get(10, TimeUnit.SECONDS));
+    /* the slot is given back */
+    awaitGauge("xmldsig_requests_in_flight", 0);
+    Assertions.assertEquals(200, get().getResponseCode());
+  }
+
+  @Test
+  void limitsInMetrics() throws Exception {
+    start(3, 7, 2);
+    String metrics = Metrics.getInstance().render();
+    Assertions.assertTrue(metrics.contains("# TYPE xmldsig_requests_in_flight_limit gauge"));
+    Assertions.assertTrue(metrics.contains("xmldsig_requests_in_flight_limit 3"));
+    Assertions.assertTrue(metrics.contains("xmldsig_requests_queued_limit 7"));
+    Assertions.assertTrue(metrics.contains("xmldsig_requests_per_client_limit 2"));
+  }
+
+  @Test
+  void drain() throws Exception {
+    start(2, 0, 0);
+    CompletableFuture<Integer> first = hold();
+    awaitGauge("xmldsig_requests_in_flight", 1);
+    CompletableFuture<Boolean> drained = CompletableFuture.supplyAsync(() -> {
+      try {
+        return admission.drain(10000);
+      } catch (InterruptedException e) {
+        return false;
+      }
+    });
+    for (int i = 0; i < 100 && admission.isReady(); i++) {
+      Thread.sleep(20);
+    }
+    Assertions.assertFalse(admission.isReady());
+    HttpURLConnection conn = get();
+    Assertions.assertEquals(503, conn.getResponseCode());
+    Assertions.assertTrue(new String(conn.getErrorStream().readAllBytes()).contains("Draining"));
+    Assertions.assertFalse(drained.isDone());
+    release.countDown();
+    Assertions.assertEquals(200, first.get(10, TimeUnit.SECONDS));
+    Assertions.assertTrue(drained.get(10, TimeUnit.SECONDS));
+    Assertions.assertTrue(Metrics.getInstance().render().contains("xmldsig_drain_milliseconds "));
+  }
+
+  @Test
+  void rejectionsBounded() throws Exception {
+    admission = new Admission(1, 0, 0);
+    Runnable blocked = () -> {
+      try {
+        release.await(10, TimeUnit.SECONDS);
+      } catch (InterruptedException ignored) {
+      }
+    };
+    /* one on the worker, one on the rejection thread, then the rejection queue */
+    for (int i = 0; i < 2 + Admission.MAX_REJECTIONS_QUEUED; i++) {
+      admission.execute(blocked);
+    }
+    long before = Metrics.getInstance().get("xmldsig_requests_rejected_total", "reason", "Dropped");
+    Assertions.assertThrows(RejectedExecutionException.class, () -> admission.execute(blocked));
+    Assertions.assertEquals(
+        before + 1, Metrics.getInstance().get("xmldsig_requests_rejected_total", "reason", "Dropped")
+    );
+    release.countDown();
+    admission.close();
+  }
+
+  @Test
+  void drainTimeout() throws Exception {
+    start(1, 0, 0);
+    CompletableFuture<Integer> first = hold();
+    awaitGauge("xmldsig_requests_in_flight", 1);
+    Assertions.assertFalse(admission.drain(100));
+    release.countDown();
+    Assertions.assertEquals(200, first.get(10, TimeUnit.SECONDS));
+  }
+
+  @Test
+  void serverDrain() throws Exception {
+    HttpServer created = Server.createServer(new ServerOptions().setPort(PORT));
+    created.start();
+    AtomicBoolean closed = new AtomicBoolean();
+    ((Admission) created.getExecutor()).onClose(() -> closed.set(true));
+    Assertions.assertEquals(405, get("/sign").getResponseCode());
+    Assertions.assertTrue(Server.drain(created, 1000));
+    Assertions.assertTrue(closed.get());
+    Assertions.assertThrows(IOException.class, () -> get("/sign").getResponseCode());
+  }
+}
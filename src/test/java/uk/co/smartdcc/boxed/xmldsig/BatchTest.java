@@ -0,0 +1,227 @@
+/*
+ * Created on Mon Oct 19 2026
+ *
+ * Copyright (c) 2026 Smart DCC Limited
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package uk.co.smartdcc.boxed.xmldsig;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import com.github.stefanbirkner.systemlambda.SystemLambda;
+
+public class BatchTest {
+
+  static void copy(String resource, Path target) throws Exception {
+    Files.createDirectories(target.getParent());
+    try (InputStream is = UtilTest.class.getClassLoader().getResourceAsStream(resource)) {
+      Files.copy(is, target);
+    }
+  }
+
+  @Test
+  void signDirectory_Valid(@TempDir Path tmp) throws Exception {
+    Path in = tmp.resolve("in");
+    Path out = tmp.resolve("out");
+    for (int i = 0; i < 8; i++) {
+      copy("ECS17b_4.1.1_SINGLE_SUCCESS_REQUEST_DUIS.XML", in.resolve("msg" + i + ".xml"));
+    }
+
+    ByteArrayOutputStream err = new ByteArrayOutputStream();
+    ResultCode result = Sign.main_aux(
+        new String[] { "--batch", "-o", out.toString(), "-j", "4", "--preserveCounter", in.toString() },
+        System.in, System.out, new PrintStream(err)
+    );
+
+    Assertions.assertEquals(ResultCode.SUCCESS, result);
+    for (int i = 0; i < 8; i++) {
+      String signed = Files.readString(out.resolve("msg" + i + ".xml"));
+      Assertions.assertTrue(signed.contains("</ds:Signature>"));
+      Assertions.assertTrue(signed.contains("36-CE:1000</sr:RequestID>"));
+    }
+    Assertions.assertTrue(err.toString().contains("processed 8 files"));
+    Assertions.assertTrue(err.toString().contains("8 succeeded, 0 failed"));
+  }
+
+  @Test
+  void signFiles_PartialFailure(@TempDir Path tmp) throws Exception {
+    Path good = tmp.resolve("good.xml");
+    Path bad = tmp.resolve("bad.xml");
+    Path out = tmp.resolve("out");
+    copy("ECS17b_4.1.1_SINGLE_SUCCESS_REQUEST_DUIS.XML", good);
+    copy("ECS17b_4.1.1_SINGLE_SUCCESS_REQUEST_DUIS-invalid.XML", bad);
+
+    ByteArrayOutputStream err = new ByteArrayOutputStream();
+    ResultCode result = Sign.main_aux(
+        new String[] { "--batch", "-o", out.toString(), good.toString(), bad.toString() },
+        System.in, System.out, new PrintStream(err)
+    );
+
+    Assertions.assertEquals(ResultCode.VALIDATION_FAIL, result);
+    Assertions.assertTrue(Files.exists(out.resolve("good.xml")));
+    Assertions.assertFalse(Files.exists(out.resolve("bad.xml")));
+    Assertions.assertTrue(err.toString().contains(bad + ": VALIDATION_FAIL (10)"));
+    Assertions.assertTrue(err.toString().contains(good + ": SUCCESS (0)"));
+    Assertions.assertTrue(err.toString().contains("1 succeeded, 1 failed"));
+  }
+
+  @Test
+  void validateGlob_Valid(@TempDir Path tmp) throws Exception {
+    Path in = tmp.resolve("in");
+    Path out = tmp.resolve("out");
+    copy("readfw-response.xml", in.resolve("a/one.xml"));
+    copy("readfw-response.xml", in.resolve("b/two.xml"));
+    copy("readfw-response.xml", in.resolve("b/ignored.txt"));
+
+    ByteArrayOutputStream err = new ByteArrayOutputStream();
+    ResultCode result = Validate.main_aux(
+        new String[] { "--batch", "-o", out.toString(), in + "/**.xml" },
+        System.in, System.out, new PrintStream(err)
+    );
+
+    Assertions.assertEquals(ResultCode.SUCCESS, result);
+    Assertions.assertFalse(Files.readString(out.resolve("a/one.xml")).contains("</ds:Signature>"));
+    Assertions.assertTrue(Files.exists(out.resolve("b/two.xml")));
+    Assertions.assertFalse(Files.exists(out.resolve("b/ignored.txt")));
+    Assertions.assertTrue(err.toString().contains("processed 2 files"));
+  }
+
+  @Test
+  void validateFiles_BadSignature(@TempDir Path tmp) throws Exception {
+    Path bad = tmp.resolve("bad.xml");
+    copy("readfw-response-badsignature.xml", bad);
+
+    ResultCode result = Validate.main_aux(
+        new String[] { "--batch", "-o", tmp.resolve("out").toString(), bad.toString() },
+        System.in, System.out, new PrintStream(new ByteArrayOutputStream())
+    );
+
+    Assertions.assertEquals(ResultCode.VALIDATION_FAIL, result);
+  }
+
+  @Test
+  void batch_MissingFile(@TempDir Path tmp) throws Exception {
+    ResultCode result = Sign.main_aux(
+        new String[] { "--batch", "-o", tmp.toString(), tmp.resolve("nope.xml").toString() },
+        System.in, System.out, new PrintStream(new ByteArrayOutputStream())
+    );
+    Assertions.assertEquals(ResultCode.GENERIC_ERROR, result);
+  }
+
+  @Test
+  void batch_DuplicateOutput(@TempDir Path tmp) throws Exception {
+    copy("readfw-response.xml", tmp.resolve("a/same.xml"));
+    copy("readfw-response.xml", tmp.resolve("b/same.xml"));
+    ByteArrayOutputStream err = new ByteArrayOutputStream();
+    ResultCode result = Validate.main_aux(
+        new String[] { "--batch", "-o", tmp.resolve("out").toString(), tmp.resolve("a").toString(),
+            tmp.resolve("b").toString() },
+        System.in, System.out, new PrintStream(err)
+    );
+    Assertions.assertEquals(ResultCode.GENERIC_ERROR, result);
+    Assertions.assertTrue(err.toString().contains("more than one input"));
+  }
+
+  @Test
+  void batch_OutputIsInput(@TempDir Path tmp) throws Exception {
+    Path in = tmp.resolve("in");
+    copy("ECS17b_4.1.1_SINGLE_SUCCESS_REQUEST_DUIS.XML", in.resolve("a.xml"));
+    byte[] original = Files.readAllBytes(in.resolve("a.xml"));
+    ByteArrayOutputStream err = new ByteArrayOutputStream();
+    ResultCode result = Sign.main_aux(
+        new String[] { "--batch", "-o", tmp.resolve("in/../in").toString(), in.resolve("a.xml").toString() },
+        System.in, System.out, new PrintStream(err)
+    );
+    Assertions.assertEquals(ResultCode.GENERIC_ERROR, result);
+    Assertions.assertTrue(err.toString().contains("output would overwrite input"));
+    Assertions.assertArrayEquals(original, Files.readAllBytes(in.resolve("a.xml")));
+  }
+
+  @Test
+  void batch_FailureKeepsPreviousOutput(@TempDir Path tmp) throws Exception {
+    Path bad = tmp.resolve("bad.xml");
+    Path out = tmp.resolve("out");
+    copy("ECS17b_4.1.1_SINGLE_SUCCESS_REQUEST_DUIS-invalid.XML", bad);
+    Files.createDirectories(out);
+    Files.writeString(out.resolve("bad.xml"), "previous");
+
+    ResultCode result = Sign.main_aux(
+        new String[] { "--batch", "-o", out.toString(), bad.toString() },
+        System.in, System.out, new PrintStream(new ByteArrayOutputStream())
+    );
+    Assertions.assertEquals(ResultCode.VALIDATION_FAIL, result);
+    Assertions.assertEquals("previous", Files.readString(out.resolve("bad.xml")));
+    try (java.util.stream.Stream<Path> files = Files.list(out)) {
+      Assertions.assertEquals(1, files.count());
+    }
+  }
+
+  @Test
+  void batch_MissingOutputDirectory() throws Exception {
+    ByteArrayOutputStream err = new ByteArrayOutputStream();
+    ResultCode result = Sign.main_aux(
+        new String[] { "--batch", "message.xml" }, System.in, System.out, new PrintStream(err)
+    );
+    Assertions.assertEquals(ResultCode.GENERIC_ERROR, result);
+    Assertions.assertTrue(err.toString().contains("[I] usage: --batch"));
+  }
+
+  @Test
+  void batch_BadThreads() throws Exception {
+    ResultCode result = Validate.main_aux(
+        new String[] { "--batch", "-o", "out", "-j", "x", "message.xml" }, System.in, System.out,
+        new PrintStream(new ByteArrayOutputStream())
+    );
+    Assertions.assertEquals(ResultCode.GENERIC_ERROR, result);
+  }
+
+  @Test
+  void expand_GlobNoMatch(@TempDir Path tmp) throws Exception {
+    Assertions.assertTrue(Batch.expand(List.of(tmp + "/*.xml")).isEmpty());
+    Assertions.assertTrue(Batch.expand(List.of(tmp + "/missing/*.xml")).isEmpty());
+  }
+
+  @Test
+  void expand_GlobSingleLevel(@TempDir Path tmp) throws Exception {
+    copy("readfw-response.xml", tmp.resolve("x.xml"));
+    copy("readfw-response.xml", tmp.resolve("sub/y.xml"));
+    List<String> names = Batch.expand(List.of(tmp + "/*.xml")).stream()
+        .map(Batch.Input::getOutputName).collect(Collectors.toList());
+    Assertions.assertEquals(Arrays.asList("x.xml"), names);
+  }
+
+  @Test
+  void signMain_Batch(@TempDir Path tmp) throws Exception {
+    Path in = tmp.resolve("msg.xml");
+    copy("ECS17b_4.1.1_SINGLE_SUCCESS_REQUEST_DUIS.XML", in);
+    SystemLambda.tapSystemErr(() -> {
+      int statusCode = SystemLambda.catchSystemExit(() -> {
+        Sign.main(new String[] { "--batch", "-o", tmp.resolve("out").toString(), in.toString() });
+      });
+      Assertions.assertEquals(0, statusCode);
+    });
+    Assertions.assertTrue(Files.exists(tmp.resolve("out/msg.xml")));
+  }
+}
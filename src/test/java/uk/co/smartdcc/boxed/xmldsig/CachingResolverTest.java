@@ -0,0 +1,211 @@
+/*
+ * Created on Mon Oct 19 2026
+ *
+ * Copyright (c) 2026 Smart DCC Limited
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package uk.co.smartdcc.boxed.xmldsig;
+
+import java.math.BigInteger;
+import java.security.PrivateKey;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class CachingResolverTest {
+  private static final String EUI64 = "90B3D51F30000002";
+  private static final BigInteger SERIAL = new BigInteger("7DAC7283AAD29BDD23C9EFBFDDB52A41", 16);
+
+  /* the library, counting the calls made to it */
+  private static class CountingResolver implements CredentialResolver {
+    final AtomicInteger eui64Calls = new AtomicInteger();
+    final AtomicInteger keyCalls = new AtomicInteger();
+    final AtomicInteger serialCalls = new AtomicInteger();
+    final AtomicBoolean failing = new AtomicBoolean();
+
+    @Override
+    public X509Certificate lookup(final String eui64) {
+      eui64Calls.incrementAndGet();
+      if (failing.get()) {
+        throw new IllegalStateException("backend down");
+      }
+      return CertificateLibrary.getInstance().lookup(eui64);
+    }
+
+    @Override
+    public PrivateKey lookup_key(final String eui64) {
+      keyCalls.incrementAndGet();
+      return CertificateLibrary.getInstance().lookup_key(eui64);
+    }
+
+    @Override
+    public X509Certificate lookup(final BigInteger serial) {
+      serialCalls.incrementAndGet();
+      return CertificateLibrary.getInstance().lookup(serial);
+    }
+  }
+
+  @Test
+  public void lookup_CachesCertificateAndKey() {
+    CountingResolver backend = new CountingResolver();
+    CachingResolver cache = new CachingResolver(backend);
+
+    X509Certificate cer = cache.lookup(EUI64);
+    Assertions.assertEquals(SERIAL, cer.getSerialNumber());
+    Assertions.assertNotNull(cache.lookup_key(EUI64));
+    Assertions.assertSame(cer, cache.lookup("90-b3-d5-1f-30-00-00-02"));
+    Assertions.assertEquals(1, backend.eui64Calls.get());
+    Assertions.assertEquals(1, backend.keyCalls.get());
+
+    Assertions.assertSame(cer, cache.lookup(SERIAL));
+    Assertions.assertSame(cer, cache.lookup(SERIAL));
+    Assertions.assertEquals(1, backend.serialCalls.get());
+  }
+
+  @Test
+  public void lookup_CachesUnknown() {
+    CountingResolver backend = new CountingResolver();
+    CachingResolver cache = new CachingResolver(backend);
+
+    Assertions.assertNull(cache.lookup("0000000000000000"));
+    Assertions.assertNull(cache.lookup("0000000000000000"));
+    Assertions.assertNull(cache.lookup(BigInteger.ONE));
+    Assertions.assertNull(cache.lookup(BigInteger.ONE));
+    Assertions.assertEquals(1, backend.eui64Calls.get());
+    Assertions.assertEquals(1, backend.serialCalls.get());
+  }
+
+  @Test
+  public void lookup_Expires() throws Exception {
+    CountingResolver backend = new CountingResolver();
+    CachingResolver cache = new CachingResolver(backend, 16, 50, 0);
+
+    cache.lookup(SERIAL);
+    Thread.sleep(100);
+    cache.lookup(SERIAL);
+    Assertions.assertEquals(2, backend.serialCalls.get());
+  }
+
+  @Test
+  public void lookup_DropsLeastRecentlyUsed() {
+    CountingResolver backend = new CountingResolver();
+    CachingResolver cache = new CachingResolver(backend, 2, 60000, 0);
+
+    cache.lookup(BigInteger.ONE);
+    cache.lookup(BigInteger.TWO);
+    cache.lookup(BigInteger.ONE);
+    cache.lookup(BigInteger.TEN);
+    Assertions.assertEquals(2, cache.size());
+    Assertions.assertEquals(3, backend.serialCalls.get());
+
+    cache.lookup(BigInteger.ONE);
+    Assertions.assertEquals(3, backend.serialCalls.get());
+    cache.lookup(BigInteger.TWO);
+    Assertions.assertEquals(4, backend.serialCalls.get());
+  }
+
+  @Test
+  public void lookup_CoalescesMisses() throws Exception {
+    CountDownLatch entered = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+    AtomicInteger calls = new AtomicInteger();
+    CountingResolver backend = new CountingResolver() {
+      @Override
+      public X509Certificate lookup(final BigInteger serial) {
+        calls.incrementAndGet();
+        entered.countDown();
+        try {
+          release.await();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+        return super.lookup(serial);
+      }
+    };
+    CachingResolver cache = new CachingResolver(backend);
+    long coalesced = Metrics.getInstance().get(
+        "xmldsig_credential_lookups_total", "cache", "serial", "result", "coalesced"
+    );
+
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    try {
+      List<Future<X509Certificate>> results = new ArrayList<>();
+      results.add(executor.submit(() -> cache.lookup(SERIAL)));
+      Assertions.assertTrue(entered.await(5, TimeUnit.SECONDS));
+      for (int i = 0; i < 3; i++) {
+        results.add(executor.submit(() -> cache.lookup(SERIAL)));
+      }
+      while (Metrics.getInstance().get(
+          "xmldsig_credential_lookups_total", "cache", "serial", "result", "coalesced"
+      ) < coalesced + 3) {
+        Thread.sleep(1);
+      }
+      release.countDown();
+      for (Future<X509Certificate> result : results) {
+        Assertions.assertEquals(SERIAL, result.get(5, TimeUnit.SECONDS).getSerialNumber());
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+    Assertions.assertEquals(1, calls.get());
+  }
+
+  @Test
+  public void lookup_RefreshesAhead() throws Exception {
+    CountingResolver backend = new CountingResolver();
+    CachingResolver cache = new CachingResolver(backend, 16, 60000, 20);
+
+    X509Certificate cer = cache.lookup(SERIAL);
+    Thread.sleep(50);
+    Assertions.assertSame(cer, cache.lookup(SERIAL));
+    long deadline = System.currentTimeMillis() + 5000;
+    while (backend.serialCalls.get() < 2 && System.currentTimeMillis() < deadline) {
+      Thread.sleep(1);
+    }
+    Assertions.assertEquals(2, backend.serialCalls.get());
+  }
+
+  @Test
+  public void lookup_DoesNotCacheErrors() {
+    CountingResolver backend = new CountingResolver();
+    CachingResolver cache = new CachingResolver(backend);
+
+    backend.failing.set(true);
+    Assertions.assertThrows(IllegalStateException.class, () -> cache.lookup(EUI64));
+    backend.failing.set(false);
+    Assertions.assertNotNull(cache.lookup(EUI64));
+    Assertions.assertEquals(2, backend.eui64Calls.get());
+  }
+
+  @Test
+  public void constructor_RejectsBounds() {
+    CountingResolver backend = new CountingResolver();
+    Assertions.assertThrows(
+        IllegalArgumentException.class, () -> new CachingResolver(backend, 0, 1000)
+    );
+    Assertions.assertThrows(
+        IllegalArgumentException.class, () -> new CachingResolver(backend, 1, 0)
+    );
+  }
+}
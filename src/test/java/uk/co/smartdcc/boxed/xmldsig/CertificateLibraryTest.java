@@ -23,8 +23,13 @@ import java.security.PrivateKey;
 import java.security.PublicKey;
 import java.security.Signature;
 import java.security.cert.X509Certificate;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 import org.javatuples.Triplet;
 import org.junit.jupiter.api.Assertions;
@@ -296,4 +301,45 @@ public class CertificateLibraryTest {
       Assertions.fail(exception.toString());
     }
   }
+
+  @Test
+  public void decodesOnFirstUse() {
+    CertificateLibrary library = CertificateLibrary.getInstance();
+    Assertions.assertEquals(0, library.getDecodedCount());
+    Assertions.assertEquals(2 * certificate_names.length, library.getPendingCount());
+
+    X509Certificate cert = library.lookup("90B3D51F30020000");
+    Assertions.assertSame(cert, library.lookup("90-b3-d5-1f-30-02-00-00"));
+    Assertions.assertSame(cert, library.lookup(cert.getSerialNumber()));
+    Assertions.assertEquals(1, library.getDecodedCount());
+    Assertions.assertNotNull(library.lookup_key(cert.getSerialNumber()));
+    Assertions.assertEquals(2, library.getDecodedCount());
+    Assertions.assertEquals(2 * certificate_names.length - 2, library.getPendingCount());
+    Assertions.assertTrue(
+        Metrics.getInstance().render().contains("xmldsig_library_credentials{state=\"decoded\"} 2\n")
+    );
+
+    Assertions.assertNull(library.lookup("0000000000000000"));
+    Assertions.assertNull(library.lookup(BigInteger.ONE));
+    Assertions.assertEquals(2, library.getDecodedCount());
+  }
+
+  @Test
+  public void decodesOnceUnderContention() throws Exception {
+    CertificateLibrary library = CertificateLibrary.getInstance();
+    ExecutorService executor = Executors.newFixedThreadPool(8);
+    try {
+      List<Future<PrivateKey>> keys = new ArrayList<>();
+      for (int i = 0; i < 32; i++) {
+        keys.add(executor.submit(() -> library.lookup_key("90B3D51F30000002")));
+      }
+      PrivateKey first = keys.get(0).get(10, TimeUnit.SECONDS);
+      for (Future<PrivateKey> key : keys) {
+        Assertions.assertSame(first, key.get(10, TimeUnit.SECONDS));
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+    Assertions.assertEquals(1, library.getDecodedCount());
+  }
 }
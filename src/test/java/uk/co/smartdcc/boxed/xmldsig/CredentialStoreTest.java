@@ -0,0 +1,160 @@
+/*
+ * Created on Mon Oct 19 2026
+ *
+ * Copyright (c) 2026 Smart DCC Limited
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package uk.co.smartdcc.boxed.xmldsig;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigInteger;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.cert.X509Certificate;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class CredentialStoreTest {
+  private static final BigInteger SERIAL = new BigInteger("7DAC7283AAD29BDD23C9EFBFDDB52A41", 16);
+  private static final BigInteger OLD_SERIAL = new BigInteger(
+      "261E9CCC40A78FD13D83BCE07DACFE08", 16
+  );
+
+  @TempDir
+  Path dir;
+  private Path keys;
+  private Path file;
+
+  private void copy(final String resource) throws Exception {
+    try (InputStream is = CredentialStoreTest.class.getClassLoader().getResourceAsStream(resource)) {
+      Files.copy(is, keys.resolve(resource));
+    }
+  }
+
+  @BeforeEach
+  void build() throws Exception {
+    keys = Files.createDirectory(dir.resolve("keys"));
+    file = dir.resolve("test.store");
+    copy("dsp-xml-sign-90B3D51F30000002-ds.pem");
+    copy("dsp-xml-sign-90B3D51F30000002-ds.key");
+    copy("dsp-xml-sign-90B3D51F30000002-ds-pre-1.4.1.pem");
+    copy("xml-sign-90B3D51F30020000-ds.pem");
+    Files.write(keys.resolve("notes.pem"), "not a certificate".getBytes("UTF-8"));
+    Assertions.assertEquals(3, CredentialStore.build(keys, file));
+  }
+
+  @Test
+  public void lookup_ByEui64AndSerial() throws Exception {
+    try (CredentialStore store = CredentialStore.open(file)) {
+      Assertions.assertEquals(3, store.size());
+      Assertions.assertEquals(
+          new BigInteger("1ECC6ED40F92A82835DB58174B4A666D", 16),
+          store.lookup("90-b3-d5-1f-30-02-00-00").getSerialNumber()
+      );
+      Assertions.assertNull(store.lookup_key("90B3D51F30020000"));
+
+      Assertions.assertEquals(SERIAL, store.lookup(SERIAL).getSerialNumber());
+      Assertions.assertEquals(OLD_SERIAL, store.lookup(OLD_SERIAL).getSerialNumber());
+      Assertions.assertNull(store.lookup(BigInteger.ONE));
+      Assertions.assertNull(store.lookup("0000000000000000"));
+      Assertions.assertNull(store.lookup("not an id"));
+    }
+  }
+
+  @Test
+  public void lookup_FirstFileWins() throws Exception {
+    try (CredentialStore store = CredentialStore.open(file)) {
+      /* "-ds-pre-1.4.1.pem" sorts before "-ds.pem" */
+      Assertions.assertEquals(OLD_SERIAL, store.lookup("90B3D51F30000002").getSerialNumber());
+      Assertions.assertNull(store.lookup_key("90B3D51F30000002"));
+    }
+    Files.delete(keys.resolve("dsp-xml-sign-90B3D51F30000002-ds-pre-1.4.1.pem"));
+    CredentialStore.build(keys, file);
+    try (CredentialStore store = CredentialStore.open(file)) {
+      Assertions.assertEquals(
+          CertificateLibrary.getInstance().lookup_key("90B3D51F30000002"),
+          store.lookup_key("90B3D51F30000002")
+      );
+    }
+  }
+
+  @Test
+  public void lookup_ManySlots() throws Exception {
+    X509Certificate cer = CertificateLibrary.getInstance().lookup(SERIAL);
+    Path many = dir.resolve("many.store");
+    try (CredentialStore.Writer writer = new CredentialStore.Writer(many)) {
+      for (long i = 0; i < 10000; i++) {
+        writer.add(
+            cer.getEncoded(), null, String.format("%016x", i * 7919 - 5000),
+            BigInteger.valueOf(i)
+        );
+      }
+      writer.commit();
+    }
+    try (CredentialStore store = CredentialStore.open(many)) {
+      Assertions.assertEquals(10000, store.size());
+      for (long i = 0; i < 10000; i += 97) {
+        Assertions.assertNotNull(store.lookup(String.format("%016X", i * 7919 - 5000)));
+      }
+      Assertions.assertNull(store.lookup(String.format("%016x", 1L)));
+      /* the record holds a certificate of another serial */
+      Assertions.assertNull(store.lookup(BigInteger.valueOf(5)));
+    }
+  }
+
+  @Test
+  public void build_FailureKeepsStore() throws Exception {
+    X509Certificate cer = CertificateLibrary.getInstance().lookup(SERIAL);
+    Path kept = dir.resolve("kept.store");
+    try (CredentialStore.Writer writer = new CredentialStore.Writer(kept)) {
+      writer.add(cer.getEncoded(), null, null, SERIAL);
+      writer.commit();
+    }
+    try (CredentialStore store = CredentialStore.open(kept)) {
+      /* a build failing part way, while the store is mapped */
+      Assertions.assertThrows(IllegalArgumentException.class, () -> {
+        try (CredentialStore.Writer writer = new CredentialStore.Writer(kept)) {
+          writer.add(cer.getEncoded(), null, "not hex", BigInteger.ONE);
+        }
+      });
+      Assertions.assertEquals(SERIAL, store.lookup(SERIAL).getSerialNumber());
+    }
+    try (CredentialStore store = CredentialStore.open(kept)) {
+      Assertions.assertEquals(1, store.size());
+    }
+    try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, "*.tmp")) {
+      Assertions.assertFalse(files.iterator().hasNext());
+    }
+  }
+
+  @Test
+  public void open_Source() throws Exception {
+    CredentialResolver resolver = Credentials.open(CredentialStore.NAME + ":" + file);
+    Assertions.assertTrue(resolver instanceof CachingResolver);
+    Assertions.assertEquals(SERIAL, resolver.lookup(SERIAL).getSerialNumber());
+  }
+
+  @Test
+  public void open_NotAStore() throws Exception {
+    Path other = keys.resolve("xml-sign-90B3D51F30020000-ds.pem");
+    Assertions.assertThrows(IOException.class, () -> CredentialStore.open(other));
+    Path empty = Files.createFile(dir.resolve("empty.store"));
+    Assertions.assertThrows(IOException.class, () -> CredentialStore.open(empty));
+  }
+}
@@ -0,0 +1,106 @@
+/*
+ * Created on Mon Oct 19 2026
+ *
+ * Copyright (c) 2026 Smart DCC Limited
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package uk.co.smartdcc.boxed.xmldsig;
+
+import java.io.InputStream;
+import java.math.BigInteger;
+import java.nio.file.Files;
+import java.nio.file.NotDirectoryException;
+import java.nio.file.Path;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class CredentialsTest {
+  private static final String EUI64 = "90B3D51F30000002";
+  private static final BigInteger SERIAL = new BigInteger("7DAC7283AAD29BDD23C9EFBFDDB52A41", 16);
+
+  @TempDir
+  Path dir;
+
+  private void copy(final String resource) throws Exception {
+    try (InputStream is = CredentialsTest.class.getClassLoader().getResourceAsStream(resource)) {
+      Files.copy(is, dir.resolve(resource));
+    }
+  }
+
+  @Test
+  public void open_Library() throws Exception {
+    Assertions.assertSame(CertificateLibrary.getInstance(), Credentials.open(Credentials.LIBRARY));
+  }
+
+  @Test
+  public void open_Directory() throws Exception {
+    copy("dsp-xml-sign-90B3D51F30000002-ds.pem");
+    copy("dsp-xml-sign-90B3D51F30000002-ds.key");
+    Files.write(dir.resolve("notes.pem"), "not a certificate".getBytes("UTF-8"));
+
+    CredentialResolver resolver = Credentials.open(DirectorySource.NAME + ":" + dir);
+    Assertions.assertTrue(resolver instanceof CachingResolver);
+    Assertions.assertEquals(SERIAL, resolver.lookup(EUI64).getSerialNumber());
+    Assertions.assertEquals(
+        CertificateLibrary.getInstance().lookup_key(EUI64), resolver.lookup_key(EUI64)
+    );
+    Assertions.assertEquals(SERIAL, resolver.lookup(SERIAL).getSerialNumber());
+    Assertions.assertNull(resolver.lookup("90B3D51F30020000"));
+    Assertions.assertNull(resolver.lookup(BigInteger.ONE));
+  }
+
+  @Test
+  public void open_DirectoryWithoutKey() throws Exception {
+    copy("dsp-xml-sign-90B3D51F30000002-ds.pem");
+
+    CredentialResolver resolver = Credentials.open(DirectorySource.NAME + ":" + dir);
+    Assertions.assertNotNull(resolver.lookup(EUI64));
+    Assertions.assertNull(resolver.lookup_key(EUI64));
+  }
+
+  @Test
+  public void open_DirectoryMissing() {
+    Assertions.assertThrows(
+        NotDirectoryException.class,
+        () -> Credentials.open(DirectorySource.NAME + ":" + dir.resolve("missing"))
+    );
+    Assertions.assertThrows(
+        IllegalArgumentException.class, () -> Credentials.open(DirectorySource.NAME)
+    );
+  }
+
+  @Test
+  public void open_Unknown() {
+    IllegalArgumentException e = Assertions.assertThrows(
+        IllegalArgumentException.class, () -> Credentials.open("vault:secret")
+    );
+    Assertions.assertTrue(e.getMessage().contains(Credentials.LIBRARY));
+    Assertions.assertTrue(e.getMessage().contains(DirectorySource.NAME));
+  }
+
+  @Test
+  public void setInstance_UsedBySign() throws Exception {
+    copy("dsp-xml-sign-90B3D51F30000002-ds.pem");
+    CredentialResolver previous = Credentials.getInstance();
+    try {
+      Credentials.setInstance(Credentials.open(DirectorySource.NAME + ":" + dir));
+      Assertions.assertNull(Credentials.getInstance().lookup("90B3D51F30020000"));
+    } finally {
+      Credentials.setInstance(previous);
+    }
+    Assertions.assertNotNull(Credentials.getInstance().lookup("90B3D51F30020000"));
+  }
+}
@@ -0,0 +1,308 @@
+/*
+ * Created on Mon Oct 19 2026
+ *
+ * Copyright (c) 2026 Smart DCC Limited
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package uk.co.smartdcc.boxed.xmldsig;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Assumptions;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.nio.file.attribute.UserPrincipal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+public class DaemonTest {
+  private static Path directory;
+  private static Path socket;
+  private static Daemon daemon;
+
+  @BeforeAll
+  static void startDaemon() throws Exception {
+    Assumptions.assumeTrue(UnixSockets.isSupported());
+    directory = Files.createTempDirectory("xmldsig-daemon");
+    socket = directory.resolve("daemon.sock");
+    daemon = Daemon.start(socket, 4, 0);
+  }
+
+  @AfterAll
+  static void stopDaemon() throws IOException {
+    if (daemon != null) {
+      daemon.close();
+      Files.deleteIfExists(directory);
+    }
+  }
+
+  static String resource(String name) {
+    return UtilTest.class.getClassLoader().getResource(name).getFile();
+  }
+
+  @Test
+  void invokeSign_Valid() throws Exception {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    ByteArrayOutputStream err = new ByteArrayOutputStream();
+    ResultCode result = Daemon.invoke(
+        socket, Daemon.SIGN,
+        new String[] { resource("ECS17b_4.1.1_SINGLE_SUCCESS_REQUEST_DUIS.XML"), "--preserveCounter" },
+        System.in, new PrintStream(out), new PrintStream(err)
+    );
+    Assertions.assertEquals(ResultCode.SUCCESS, result);
+    Assertions.assertTrue(out.toString().contains("</ds:Signature>"));
+    Assertions.assertTrue(out.toString().contains("36-CE:1000</sr:RequestID>"));
+    Assertions.assertTrue(err.toString().contains("[I] passed xsd validation"));
+  }
+
+  @Test
+  void invokeSign_Stdin() throws Exception {
+    InputStream is = UtilTest.class.getClassLoader()
+        .getResourceAsStream("ECS17b_4.1.1_SINGLE_SUCCESS_REQUEST_DUIS.XML");
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    ResultCode result = Daemon.invoke(
+        socket, Daemon.SIGN, new String[] { "-" }, is, new PrintStream(out),
+        new PrintStream(new ByteArrayOutputStream())
+    );
+    Assertions.assertEquals(ResultCode.SUCCESS, result);
+    Assertions.assertTrue(out.toString().contains("</ds:Signature>"));
+  }
+
+  @Test
+  void invokeSign_Invalid() throws Exception {
+    ResultCode result = Daemon.invoke(
+        socket, Daemon.SIGN, new String[] { resource("ECS17b_4.1.1_SINGLE_SUCCESS_REQUEST_DUIS-invalid.XML") },
+        System.in, new PrintStream(new ByteArrayOutputStream()), new PrintStream(new ByteArrayOutputStream())
+    );
+    Assertions.assertEquals(ResultCode.VALIDATION_FAIL, result);
+  }
+
+  @Test
+  void invokeSign_MissingCertificate() throws Exception {
+    ByteArrayOutputStream err = new ByteArrayOutputStream();
+    ResultCode result = Daemon.invoke(
+        socket, Daemon.SIGN,
+        new String[] { resource("ECS17b_4.1.1_SINGLE_SUCCESS_REQUEST_DUIS.XML"), "does-not-exist.pem" },
+        System.in, new PrintStream(new ByteArrayOutputStream()), new PrintStream(err)
+    );
+    Assertions.assertEquals(ResultCode.MISSING_KEY, result);
+    Assertions.assertTrue(err.toString().contains("[E] cert file not found"));
+  }
+
+  @Test
+  void invokeSign_MessageNotFound() throws Exception {
+    ByteArrayOutputStream err = new ByteArrayOutputStream();
+    ResultCode result = Daemon.invoke(
+        socket, Daemon.SIGN, new String[] { "does-not-exist.xml" }, System.in,
+        new PrintStream(new ByteArrayOutputStream()), new PrintStream(err)
+    );
+    Assertions.assertEquals(ResultCode.GENERIC_ERROR, result);
+    Assertions.assertTrue(err.toString().contains("[E] message file not found"));
+  }
+
+  @Test
+  void invokeValidate_Valid() throws Exception {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    ResultCode result = Daemon.invoke(
+        socket, Daemon.VALIDATE, new String[] { resource("readfw-response.xml") }, System.in,
+        new PrintStream(out), new PrintStream(new ByteArrayOutputStream())
+    );
+    Assertions.assertEquals(ResultCode.SUCCESS, result);
+    Assertions.assertFalse(out.toString().contains("</ds:Signature>"));
+  }
+
+  @Test
+  void invokeValidate_BadSignature() throws Exception {
+    ResultCode result = Daemon.invoke(
+        socket, Daemon.VALIDATE, new String[] { resource("readfw-response-badsignature.xml") },
+        System.in, new PrintStream(new ByteArrayOutputStream()), new PrintStream(new ByteArrayOutputStream())
+    );
+    Assertions.assertEquals(ResultCode.VALIDATION_FAIL, result);
+  }
+
+  @Test
+  void invokeUnknownTool() throws Exception {
+    ResultCode result = Daemon.invoke(
+        socket, "Other", new String[] {}, new ByteArrayInputStream(new byte[0]),
+        new PrintStream(new ByteArrayOutputStream()), new PrintStream(new ByteArrayOutputStream())
+    );
+    Assertions.assertEquals(ResultCode.GENERIC_ERROR, result);
+  }
+
+  @Test
+  void invokeConcurrent() throws Exception {
+    ExecutorService pool = Executors.newFixedThreadPool(8);
+    List<Future<ResultCode>> results = new ArrayList<>();
+    for (int i = 0; i < 32; i++) {
+      final String tool = i % 2 == 0 ? Daemon.SIGN : Daemon.VALIDATE;
+      final String file = i % 2 == 0
+          ? resource("ECS17b_4.1.1_SINGLE_SUCCESS_REQUEST_DUIS.XML")
+          : resource("readfw-response.xml");
+      results.add(
+          pool.submit(
+              () -> Daemon.invoke(
+                  socket, tool, new String[] { file }, System.in,
+                  new PrintStream(new ByteArrayOutputStream()), new PrintStream(new ByteArrayOutputStream())
+              )
+          )
+      );
+    }
+    for (Future<ResultCode> f : results) {
+      Assertions.assertEquals(ResultCode.SUCCESS, f.get());
+    }
+    pool.shutdown();
+  }
+
+  @Test
+  void start_AlreadyRunning() {
+    Assertions.assertThrows(IOException.class, () -> Daemon.start(socket, 1, 0));
+  }
+
+  @Test
+  void start_StaleSocket() throws Exception {
+    Path stale = directory.resolve("stale.sock");
+    Files.createFile(stale);
+    Daemon other = Daemon.start(stale, 1, 0);
+    Assertions.assertTrue(other.isOpen());
+    other.close();
+    Assertions.assertFalse(other.isOpen());
+    Assertions.assertFalse(Files.exists(stale));
+  }
+
+  @Test
+  void start_IdleShutdown() throws Exception {
+    Path idle = directory.resolve("idle.sock");
+    Daemon other = Daemon.start(idle, 1, 1);
+    for (int i = 0; i < 50 && other.isOpen(); i++) {
+      Thread.sleep(100);
+    }
+    Assertions.assertFalse(other.isOpen());
+  }
+
+  @Test
+  void invoke_NotRunning() {
+    Assertions.assertThrows(
+        Daemon.NotRunningException.class,
+        () -> Daemon.invoke(
+            directory.resolve("missing.sock"), Daemon.SIGN, new String[] {}, new byte[0],
+            new PrintStream(new ByteArrayOutputStream()), new PrintStream(new ByteArrayOutputStream())
+        )
+    );
+  }
+
+  @Test
+  void invoke_FailsAfterConnect() throws Exception {
+    Path dropping = directory.resolve("dropping.sock");
+    try (ServerSocketChannel server = UnixSockets.bind(dropping)) {
+      Thread acceptor = new Thread(() -> {
+        try (SocketChannel client = server.accept()) {
+          /* hang up without answering */
+        } catch (IOException e) {
+        }
+      });
+      acceptor.start();
+      IOException e = Assertions.assertThrows(
+          IOException.class,
+          () -> Daemon.invoke(
+              dropping, Daemon.SIGN, new String[] {}, new byte[0],
+              new PrintStream(new ByteArrayOutputStream()), new PrintStream(new ByteArrayOutputStream())
+          )
+      );
+      Assertions.assertFalse(e instanceof Daemon.NotRunningException);
+      acceptor.join();
+    } finally {
+      Files.deleteIfExists(dropping);
+    }
+  }
+
+  @Test
+  void invoke_ForeignSocket() throws Exception {
+    Path foreign = directory.resolve("foreign.sock");
+    Daemon other = Daemon.start(foreign, 1, 0);
+    try {
+      UserPrincipal nobody;
+      try {
+        nobody = foreign.getFileSystem().getUserPrincipalLookupService().lookupPrincipalByName("nobody");
+        Files.setOwner(foreign, nobody);
+      } catch (IOException e) {
+        Assumptions.abort("cannot change socket owner: " + e.getMessage());
+      }
+      IOException e = Assertions.assertThrows(
+          IOException.class,
+          () -> Daemon.invoke(
+              foreign, Daemon.VALIDATE, new String[] { resource("readfw-response.xml") }, new byte[0],
+              new PrintStream(new ByteArrayOutputStream()), new PrintStream(new ByteArrayOutputStream())
+          )
+      );
+      Assertions.assertFalse(e instanceof Daemon.NotRunningException);
+      Assertions.assertTrue(e.getMessage().contains("nobody"));
+    } finally {
+      other.close();
+    }
+  }
+
+  @Test
+  void socketPath_Default() {
+    Assertions.assertEquals(Daemon.socketPath(null), Daemon.socketPath("1"));
+    Assertions.assertEquals(Path.of("/tmp/x.sock"), Daemon.socketPath("/tmp/x.sock"));
+    Assertions.assertNotEquals(
+        Paths.get(System.getProperty("java.io.tmpdir")), Daemon.socketPath(null).getParent()
+    );
+  }
+
+  @Test
+  void privateDirectory_Created() throws Exception {
+    Path created = directory.resolve("private");
+    try {
+      Daemon.privateDirectory(created);
+      Assertions.assertEquals("rwx------", PosixFilePermissions.toString(Files.getPosixFilePermissions(created)));
+      Daemon.privateDirectory(created);
+    } finally {
+      Files.deleteIfExists(created);
+    }
+  }
+
+  @Test
+  void privateDirectory_Shared() throws Exception {
+    Path shared = directory.resolve("shared");
+    try {
+      Files.createDirectory(shared);
+      Files.setPosixFilePermissions(shared, PosixFilePermissions.fromString("rwxrwxrwx"));
+      Assertions.assertThrows(IOException.class, () -> Daemon.privateDirectory(shared));
+    } finally {
+      Files.deleteIfExists(shared);
+    }
+  }
+
+  @Test
+  void delegate_Disabled() {
+    Assumptions.assumeTrue(System.getenv(Daemon.ENV) == null);
+    Assertions.assertNull(Daemon.delegate(Daemon.SIGN, new String[] {}));
+  }
+}
@@ -0,0 +1,148 @@
+/*
+ * Created on Mon Oct 19 2026
+ *
+ * Copyright (c) 2026 Smart DCC Limited
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package uk.co.smartdcc.boxed.xmldsig;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.lang.management.ManagementFactory;
+import java.util.Base64;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.dom.DOMSource;
+import javax.xml.transform.stream.StreamResult;
+
+public class DomWriterTest {
+  static byte[] transform(Document doc) throws Exception {
+    ByteArrayOutputStream os = new ByteArrayOutputStream();
+    TransformerFactory.newInstance().newTransformer().transform(
+        new DOMSource(doc), new StreamResult(os)
+    );
+    return os.toByteArray();
+  }
+
+  static Document parse(byte[] xml) throws Exception {
+    return Util.parse_duis_stream(new ByteArrayInputStream(xml), SchemaRegistry.NONE);
+  }
+
+  static Document signed() throws Exception {
+    Document doc = Util.parse_duis_stream(
+        UtilTest.class.getClassLoader()
+            .getResourceAsStream("ECS17b_4.1.1_SINGLE_SUCCESS_REQUEST_DUIS.XML")
+    );
+    Sign.sign_document(true, doc, CertificateLibrary.getInstance());
+    return doc;
+  }
+
+  @Test
+  void write_SameAsTransformer() throws Exception {
+    String[] names = {
+        "ECS17b_4.1.1_SINGLE_SUCCESS_REQUEST_DUIS.XML", "ECS50_9.1_SUCCESS_REQUEST_DUIS.XML",
+        "readfw-response.xml", "read-inventory-response-4g.xml", "acknowledgement-error.xml"
+    };
+    for (String name : names) {
+      Document doc = parse(UtilTest.resource(name));
+      Assertions.assertArrayEquals(
+          transform(doc), new DomWriter().write(doc).toByteArray(), name
+      );
+    }
+    Document doc = signed();
+    Assertions.assertArrayEquals(transform(doc), new DomWriter().write(doc).toByteArray());
+  }
+
+  @Test
+  void write_Signed() throws Exception {
+    byte[] xml = new DomWriter().write(signed()).toByteArray();
+    Assertions.assertNotNull(
+        Validate.validate_input_stream(new ByteArrayInputStream(xml), CertificateLibrary.getInstance())
+    );
+  }
+
+  @Test
+  void write_Escaping() throws Exception {
+    byte[] xml = ("<a b=\"&quot;&lt;&amp;&gt;&#9;&#10;&#13;\">&lt;&amp;&gt;\"&#13;\né€😀"
+        + "<![CDATA[x]]]]><![CDATA[>y]]><!--c--><?p d?></a>").getBytes("UTF-8");
+    Document doc = parse(xml);
+    byte[] written = new DomWriter().write(doc).toByteArray();
+    Assertions.assertArrayEquals(transform(doc), written);
+    Document reparsed = parse(written);
+    Assertions.assertEquals(
+        doc.getDocumentElement().getAttribute("b"), reparsed.getDocumentElement().getAttribute("b")
+    );
+    Assertions.assertEquals(
+        doc.getDocumentElement().getTextContent(), reparsed.getDocumentElement().getTextContent()
+    );
+  }
+
+  @Test
+  void write_Namespaces() throws Exception {
+    DocumentBuilderFactory dbf = DocumentBuilderFactory.newInstance();
+    dbf.setNamespaceAware(true);
+    Document doc = dbf.newDocumentBuilder().newDocument();
+    Element root = doc.createElementNS("urn:a", "a:root");
+    root.setAttributeNS("http://www.w3.org/2000/xmlns/", "xmlns:a", "urn:a");
+    Element child = doc.createElementNS("urn:a", "a:child");
+    child.setAttributeNS("http://www.w3.org/2000/xmlns/", "xmlns:a", "urn:a");
+    child.appendChild(doc.createElementNS("urn:b", "b:undeclared"));
+    root.appendChild(child);
+    doc.appendChild(root);
+    Assertions.assertEquals(
+        "<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"no\"?>"
+            + "<a:root xmlns:a=\"urn:a\"><a:child><b:undeclared xmlns:b=\"urn:b\"/></a:child>"
+            + "</a:root>",
+        new String(new DomWriter().write(doc).toByteArray(), "UTF-8")
+    );
+  }
+
+  @Test
+  void writeBase64To() throws Exception {
+    for (int n = 0; n < 5000; n += 37) {
+      Document doc = parse(("<a>" + "x".repeat(n) + "</a>").getBytes("UTF-8"));
+      DomWriter writer = new DomWriter().write(doc);
+      ByteArrayOutputStream os = new ByteArrayOutputStream();
+      writer.writeBase64To(os);
+      String expected = Base64.getEncoder().encodeToString(writer.toByteArray());
+      Assertions.assertEquals(expected, os.toString("US-ASCII"));
+      Assertions.assertEquals(expected.length(), writer.base64Size());
+    }
+  }
+
+  @Test
+  void write_SteadyStateAllocation() throws Exception {
+    com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    long id = Thread.currentThread().getId();
+    Document doc = signed();
+    DomWriter writer = new DomWriter();
+    ByteArrayOutputStream sink = new ByteArrayOutputStream(64 * 1024);
+    for (int i = 0; i < 100; i++) {
+      writer.write(doc);
+    }
+    long before = threads.getThreadAllocatedBytes(id);
+    for (int i = 0; i < 100; i++) {
+      sink.reset();
+      writer.write(doc).writeBase64To(sink);
+    }
+    long perMessage = (threads.getThreadAllocatedBytes(id) - before) / 100;
+    Assertions.assertTrue(perMessage < 1024, perMessage + " bytes allocated per message");
+  }
+}
@@ -0,0 +1,244 @@
+/*
+ * Created on Mon Oct 19 2026
+ *
+ * Copyright (c) 2026 Smart DCC Limited
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package uk.co.smartdcc.boxed.xmldsig;
+
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.time.Duration;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+
+public class FrameServerTest {
+  private static final int PORT = 18107;
+  private static final int FRAME_PORT = 18108;
+  private List<HttpServer> servers;
+
+  List<HttpServer> start(ServerOptions options) throws IOException {
+    servers = Server.createServers(
+        options.setPort(PORT).setFramePort(FRAME_PORT).setWarmupIterations(0)
+    );
+    servers.forEach(HttpServer::start);
+    return servers;
+  }
+
+  @AfterEach
+  void stop() {
+    if (servers != null) {
+      Server.drain(servers, 1000);
+      servers = null;
+    }
+  }
+
+  @Test
+  void signVerify_RoundTrip() throws Exception {
+    start(new ServerOptions());
+    byte[] message = UtilTest.resource("ECS17b_4.1.1_SINGLE_SUCCESS_REQUEST_DUIS.XML");
+    try (FrameClient client = new FrameClient("localhost", FRAME_PORT)) {
+      client.ping();
+      byte[] signed = client.sign(message, true);
+      Assertions.assertTrue(
+          new String(signed, StandardCharsets.UTF_8).contains("</ds:Signature>")
+      );
+      String verified = new String(client.verify(signed), StandardCharsets.UTF_8);
+      Assertions.assertTrue(verified.contains("RequestID"));
+      Assertions.assertFalse(verified.contains("</ds:Signature>"));
+    }
+  }
+
+  @Test
+  void sign_ManyOutstanding() throws Exception {
+    start(new ServerOptions().setMaxQueued(64));
+    byte[] message = UtilTest.resource("ECS17b_4.1.1_SINGLE_SUCCESS_REQUEST_DUIS.XML");
+    byte[] invalid = UtilTest.resource("ECS17b_4.1.1_SINGLE_SUCCESS_REQUEST_DUIS-invalid.XML");
+    try (FrameClient client = new FrameClient("localhost", FRAME_PORT)) {
+      List<CompletableFuture<byte[]>> responses = new ArrayList<>();
+      for (int i = 0; i < 20; i++) {
+        responses.add(client.signAsync(i % 2 == 0 ? message : invalid, true));
+      }
+      for (int i = 0; i < responses.size(); i++) {
+        if (i % 2 == 0) {
+          Assertions.assertTrue(
+              new String(responses.get(i).get(), StandardCharsets.UTF_8).contains("Signature")
+          );
+        } else {
+          CompletableFuture<byte[]> response = responses.get(i);
+          Assertions.assertTrue(response.handle((r, e) -> e != null).get());
+        }
+      }
+    }
+  }
+
+  @Test
+  void sign_Invalid() throws Exception {
+    start(new ServerOptions());
+    try (FrameClient client = new FrameClient("localhost", FRAME_PORT)) {
+      FrameClient.FrameException e = Assertions.assertThrows(
+          FrameClient.FrameException.class,
+          () -> client.sign(
+              UtilTest.resource("ECS17b_4.1.1_SINGLE_SUCCESS_REQUEST_DUIS-invalid.XML"), false
+          )
+      );
+      Assertions.assertEquals(400, e.getStatus());
+      Assertions.assertEquals("SAXParseException", e.getErrorCode());
+      /* the connection is still usable */
+      client.ping();
+    }
+  }
+
+  @Test
+  void send_UnknownOperation() throws Exception {
+    start(new ServerOptions());
+    try (FrameClient client = new FrameClient("localhost", FRAME_PORT)) {
+      CompletableFuture<byte[]> response = client.send(9, 0, new byte[0]);
+      Throwable e = Assertions.assertThrows(Exception.class, response::join).getCause();
+      Assertions.assertEquals(400, ((FrameClient.FrameException) e).getStatus());
+      Assertions.assertEquals("UnknownOperation", ((FrameClient.FrameException) e).getErrorCode());
+    }
+  }
+
+  @Test
+  void sign_TooLarge() throws Exception {
+    start(new ServerOptions().setMaxRequestBytes(100));
+    try (FrameClient client = new FrameClient("localhost", FRAME_PORT)) {
+      FrameClient.FrameException e = Assertions.assertThrows(
+          FrameClient.FrameException.class, () -> client.sign(new byte[101], false)
+      );
+      Assertions.assertEquals(413, e.getStatus());
+      /* the message was not read, so the connection is closed */
+      Assertions.assertThrows(IOException.class, client::ping);
+    }
+  }
+
+  @Test
+  void sign_HalfClosed() throws Exception {
+    start(new ServerOptions().setMaxQueued(64));
+    byte[] message = UtilTest.resource("ECS17b_4.1.1_SINGLE_SUCCESS_REQUEST_DUIS.XML");
+    try (Socket socket = new Socket("localhost", FRAME_PORT)) {
+      DataOutputStream out = new DataOutputStream(
+          new BufferedOutputStream(socket.getOutputStream())
+      );
+      for (int i = 0; i < 8; i++) {
+        out.writeInt(FrameServer.REQUEST_HEADER + message.length);
+        out.writeInt(i);
+        out.writeByte(FrameServer.SIGN);
+        out.writeByte(FrameServer.PRESERVE_COUNTER);
+        out.write(message);
+      }
+      out.flush();
+      socket.shutdownOutput();
+      /* every request sent before the half close is answered */
+      DataInputStream in = new DataInputStream(socket.getInputStream());
+      Set<Integer> ids = new HashSet<>();
+      for (int i = 0; i < 8; i++) {
+        byte[] frame = new byte[in.readInt()];
+        in.readFully(frame);
+        ByteBuffer header = ByteBuffer.wrap(frame);
+        ids.add(header.getInt());
+        Assertions.assertEquals(200, header.getShort());
+      }
+      Assertions.assertEquals(8, ids.size());
+      Assertions.assertThrows(EOFException.class, in::readInt);
+    }
+  }
+
+  @Test
+  void sign_PeerNotReading() throws Exception {
+    start(new ServerOptions().setMaxQueued(1000));
+    /* a comment makes each response large enough to fill the socket buffers */
+    byte[] message = (new String(
+        UtilTest.resource("ECS17b_4.1.1_SINGLE_SUCCESS_REQUEST_DUIS.XML"),
+        StandardCharsets.UTF_8
+    ) + "<!--" + "x".repeat(64 * 1024) + "-->").getBytes(StandardCharsets.UTF_8);
+    try (Socket stuck = new Socket()) {
+      stuck.setReceiveBufferSize(4096);
+      stuck.connect(new InetSocketAddress("localhost", FRAME_PORT));
+      Thread sender = new Thread(() -> {
+        try {
+          DataOutputStream out = new DataOutputStream(
+              new BufferedOutputStream(stuck.getOutputStream())
+          );
+          for (int i = 0; i < 4 * FrameServer.MAX_OUTSTANDING; i++) {
+            out.writeInt(FrameServer.REQUEST_HEADER + message.length);
+            out.writeInt(i);
+            out.writeByte(FrameServer.SIGN);
+            out.writeByte(FrameServer.PRESERVE_COUNTER);
+            out.write(message);
+          }
+          out.flush();
+        } catch (IOException e) {
+          /* the server stops reading, until the socket is closed */
+        }
+      });
+      sender.setDaemon(true);
+      sender.start();
+      /* responses nobody reads must not hold up the workers */
+      Assertions.assertTimeoutPreemptively(Duration.ofSeconds(20), () -> {
+        try (FrameClient client = new FrameClient("localhost", FRAME_PORT)) {
+          for (int i = 0; i < 4 * FrameServer.MAX_OUTSTANDING; i++) {
+            client.ping();
+          }
+          Assertions.assertTrue(
+              new String(client.sign(message, true), StandardCharsets.UTF_8).contains("Signature")
+          );
+        }
+      });
+    }
+  }
+
+  @Test
+  void drain_ClosesConnections() throws Exception {
+    start(new ServerOptions());
+    try (FrameClient client = new FrameClient("localhost", FRAME_PORT)) {
+      client.ping();
+      Assertions.assertTrue(Server.drain(servers, 1000));
+      servers = null;
+      Assertions.assertThrows(IOException.class, client::ping);
+    }
+    Assertions.assertThrows(IOException.class, () -> new FrameClient("localhost", FRAME_PORT));
+  }
+
+  @Test
+  void loadGenerator_Frames() throws Exception {
+    start(new ServerOptions());
+    LoadGenerator.Result result = new LoadGenerator(
+        new InetSocketAddress("localhost", FRAME_PORT), null, 4
+    ).run(2, 40);
+    Assertions.assertEquals(40, result.getRequests());
+    Assertions.assertEquals(0, result.getErrors());
+    result = new LoadGenerator(
+        new InetSocketAddress("localhost", FRAME_PORT),
+        Warmup.REQUEST.getBytes(StandardCharsets.UTF_8), 2
+    ).run(1, 4);
+    Assertions.assertEquals(0, result.getErrors());
+  }
+}
@@ -0,0 +1,64 @@
+/*
+ * Created on Mon Oct 19 2026
+ *
+ * Copyright (c) 2026 Smart DCC Limited
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package uk.co.smartdcc.boxed.xmldsig;
+
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.net.URI;
+
+public class LoadGeneratorTest {
+  private static final int PORT = 18105;
+
+  static LoadGenerator.Result run(Transport transport, int depth) throws Exception {
+    HttpServer server = Server.createServer(
+        new ServerOptions().setPort(PORT).setTransport(transport).setWarmupIterations(0)
+    );
+    server.start();
+    try {
+      return new LoadGenerator(URI.create("http://localhost:" + PORT + "/health"), null, depth)
+          .run(2, 50);
+    } finally {
+      Server.drain(server, 1000);
+    }
+  }
+
+  @Test
+  void run_JdkTransport() throws Exception {
+    LoadGenerator.Result result = run(Transport.JDK, 1);
+    Assertions.assertEquals(50, result.getRequests());
+    Assertions.assertEquals(0, result.getErrors());
+    Assertions.assertTrue(result.percentile(99) >= result.percentile(50));
+  }
+
+  @Test
+  void run_NioTransportPipelined() throws Exception {
+    LoadGenerator.Result result = run(Transport.NIO, 4);
+    Assertions.assertEquals(50, result.getRequests());
+    Assertions.assertEquals(0, result.getErrors());
+  }
+
+  @Test
+  void run_ConnectionRefused() throws Exception {
+    LoadGenerator.Result result = new LoadGenerator(
+        URI.create("http://localhost:1/health"), null, 1
+    ).run(1, 3);
+    Assertions.assertEquals(3, result.getErrors());
+  }
+}
@@ -0,0 +1,152 @@
+/*
+ * Created on Mon Oct 19 2026
+ *
+ * Copyright (c) 2026 Smart DCC Limited
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package uk.co.smartdcc.boxed.xmldsig;
+
+import com.google.gson.Gson;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Map;
+
+public class MessageLimitsTest {
+  private static final Gson GSON = new Gson();
+  private static final int PORT = 18102;
+  private HttpServer server;
+
+  void start(long maxBytes, int maxElements) throws IOException {
+    server = Server.createServer(
+        new ServerOptions().setPort(PORT).setMaxRequestBytes(maxBytes).setMaxElements(maxElements)
+    );
+    server.start();
+  }
+
+  @AfterEach
+  void stop() {
+    if (server != null) {
+      server.stop(0);
+    }
+  }
+
+  static HttpURLConnection sign(boolean chunked) throws Exception {
+    byte[] message = UtilTest.resource("ECS17b_4.1.1_SINGLE_SUCCESS_REQUEST_DUIS.XML");
+    byte[] body = GSON.toJson(Map.of("message", Base64.getEncoder().encodeToString(message)))
+        .getBytes(StandardCharsets.UTF_8);
+    HttpURLConnection conn = (HttpURLConnection) new URI("http://localhost:" + PORT + "/sign")
+        .toURL().openConnection();
+    conn.setRequestMethod("POST");
+    conn.setDoOutput(true);
+    if (chunked) {
+      conn.setChunkedStreamingMode(256);
+    }
+    try (OutputStream os = conn.getOutputStream()) {
+      os.write(body);
+    } catch (IOException e) {
+      /* the server may answer before the whole body is sent */
+    }
+    return conn;
+  }
+
+  static InputStream xml(MessageLimits limits, String xml) {
+    return limits.xml(new ByteArrayInputStream(xml.getBytes(StandardCharsets.UTF_8)));
+  }
+
+  @Test
+  void contentLength() throws Exception {
+    start(500, 0);
+    long before = Metrics.getInstance().get("xmldsig_requests_rejected_total", "reason", "TooLarge");
+    HttpURLConnection conn = sign(false);
+    Assertions.assertEquals(413, conn.getResponseCode());
+    Assertions.assertTrue(
+        new String(conn.getErrorStream().readAllBytes()).contains("TooLargeException")
+    );
+    Assertions.assertEquals(
+        before + 1, Metrics.getInstance().get("xmldsig_requests_rejected_total", "reason", "TooLarge")
+    );
+  }
+
+  @Test
+  void chunked() throws Exception {
+    start(500, 0);
+    Assertions.assertEquals(413, sign(true).getResponseCode());
+  }
+
+  @Test
+  void withinLimits() throws Exception {
+    start(MessageLimits.DEFAULT_MAX_BYTES, 1000);
+    Assertions.assertEquals(200, sign(true).getResponseCode());
+  }
+
+  @Test
+  void elements() throws Exception {
+    start(MessageLimits.DEFAULT_MAX_BYTES, 5);
+    Assertions.assertEquals(413, sign(false).getResponseCode());
+  }
+
+  @Test
+  void parse() throws Exception {
+    MessageLimits limits = new MessageLimits(0, 1000, MessageLimits.DEFAULT_MAX_DEPTH);
+    Assertions.assertNotNull(
+        Util.parse_duis_stream(
+            limits.xml(
+                new ByteArrayInputStream(
+                    ParserProfileTest.wanMatrixResponse(10)
+                )
+            )
+        )
+    );
+    Assertions.assertThrows(
+        MessageLimits.TooLargeException.class,
+        () -> Util.parse_duis_stream(
+            limits.xml(
+                new ByteArrayInputStream(
+                    ParserProfileTest.wanMatrixResponse(500)
+                )
+            )
+        )
+    );
+    Assertions.assertThrows(
+        MessageLimits.TooLargeException.class,
+        () -> Util.parse_duis_stream(limits.xml(ParserProfileTest.nested(100)), SchemaRegistry.NONE)
+    );
+  }
+
+  @Test
+  void markupNotCounted() throws Exception {
+    String xml = "<?xml version=\"1.0\"?><a x='/>' y=\"<b>\"><!-- <c> </c> -->"
+        + "<![CDATA[<d> ]] </a>]]><?p <e>?><f/><g></g></a>";
+    Assertions.assertEquals(xml.length(), xml(new MessageLimits(0, 3, 2), xml).readAllBytes().length);
+    Assertions.assertThrows(
+        MessageLimits.TooLargeException.class,
+        () -> xml(new MessageLimits(0, 2, 0), xml).readAllBytes()
+    );
+    Assertions.assertThrows(
+        MessageLimits.TooLargeException.class,
+        () -> xml(new MessageLimits(0, 0, 1), xml).readAllBytes()
+    );
+  }
+}
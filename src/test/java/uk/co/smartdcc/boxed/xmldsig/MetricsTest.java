@@ -0,0 +1,73 @@
+/*
+ * Created on Mon Oct 19 2026
+ *
+ * Copyright (c) 2026 Smart DCC Limited
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package uk.co.smartdcc.boxed.xmldsig;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class MetricsTest {
+
+  @Test
+  void increment() {
+    Metrics metrics = new Metrics();
+    Assertions.assertEquals(0, metrics.get("requests", "endpoint", "sign"));
+    metrics.increment("requests", "endpoint", "sign");
+    metrics.increment("requests", "endpoint", "sign");
+    metrics.increment("requests", "endpoint", "verify");
+    Assertions.assertEquals(2, metrics.get("requests", "endpoint", "sign"));
+    Assertions.assertEquals(1, metrics.get("requests", "endpoint", "verify"));
+  }
+
+  @Test
+  void increment_OddLabels() {
+    Metrics metrics = new Metrics();
+    Assertions.assertThrows(IllegalArgumentException.class, () -> metrics.increment("requests", "endpoint"));
+  }
+
+  @Test
+  void render() {
+    Metrics metrics = new Metrics();
+    metrics.increment("b_total");
+    metrics.increment("a_total", "x", "1", "y", "2");
+    metrics.increment("a_total", "x", "0", "y", "2");
+    Assertions.assertEquals(
+        "# TYPE a_total counter\n"
+            + "a_total{x=\"0\",y=\"2\"} 1\n"
+            + "a_total{x=\"1\",y=\"2\"} 1\n"
+            + "# TYPE b_total counter\n"
+            + "b_total 1\n",
+        metrics.render()
+    );
+  }
+
+  @Test
+  void gauge() {
+    Metrics metrics = new Metrics();
+    long[] value = { 5 };
+    metrics.gauge("depth", () -> value[0]);
+    metrics.increment("a_total");
+    value[0] = 7;
+    Assertions.assertEquals(
+        "# TYPE a_total counter\n"
+            + "a_total 1\n"
+            + "# TYPE depth gauge\n"
+            + "depth 7\n",
+        metrics.render()
+    );
+  }
+}
@@ -0,0 +1,270 @@
+/*
+ * Created on Mon Oct 19 2026
+ *
+ * Copyright (c) 2026 Smart DCC Limited
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package uk.co.smartdcc.boxed.xmldsig;
+
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.Executors;
+
+public class NioHttpServerTest {
+  private static final int PORT = 18104;
+  private NioHttpServer server;
+
+  @BeforeEach
+  void start() throws Exception {
+    server = new NioHttpServer(1024);
+    server.bind(new InetSocketAddress("localhost", 0), 0);
+    server.setExecutor(Executors.newFixedThreadPool(2));
+    server.createContext("/echo", exchange -> {
+      byte[] body = exchange.getRequestBody().readAllBytes();
+      exchange.getResponseHeaders().set("X-Method", exchange.getRequestMethod());
+      exchange.sendResponseHeaders(200, body.length == 0 ? -1 : body.length);
+      try (OutputStream os = exchange.getResponseBody()) {
+        os.write(body);
+      }
+    });
+    server.createContext("/fail", exchange -> {
+      throw new IOException("failed");
+    });
+    server.createContext("/error", exchange -> {
+      throw new StackOverflowError();
+    });
+    server.start();
+  }
+
+  @AfterEach
+  void stop() {
+    server.stop(0);
+  }
+
+  Socket connect() throws IOException {
+    return new Socket("localhost", server.getAddress().getPort());
+  }
+
+  static String post(String path, String body) {
+    return "POST " + path + " HTTP/1.1\r\nHost: localhost\r\nContent-Length: " + body.length()
+        + "\r\n\r\n" + body;
+  }
+
+  static String readLine(InputStream in) throws IOException {
+    ByteArrayOutputStream line = new ByteArrayOutputStream();
+    int b;
+    while ((b = in.read()) != '\n') {
+      if (b < 0) {
+        throw new IOException("connection closed");
+      }
+      if (b != '\r') {
+        line.write(b);
+      }
+    }
+    return line.toString(StandardCharsets.ISO_8859_1);
+  }
+
+  /* status line and body of the next response */
+  static String[] response(InputStream in) throws IOException {
+    String status = readLine(in);
+    int length = 0;
+    String line;
+    while (!(line = readLine(in)).isEmpty()) {
+      if (line.toLowerCase().startsWith("content-length:")) {
+        length = Integer.parseInt(line.substring(line.indexOf(':') + 1).trim());
+      }
+    }
+    return new String[] { status, new String(in.readNBytes(length), StandardCharsets.UTF_8) };
+  }
+
+  @Test
+  void pipelinedRequests_AnsweredInOrder() throws Exception {
+    try (Socket socket = connect()) {
+      socket.getOutputStream().write(
+          (post("/echo", "one") + post("/echo", "two") + post("/echo", "three"))
+              .getBytes(StandardCharsets.US_ASCII)
+      );
+      InputStream in = new BufferedInputStream(socket.getInputStream());
+      Assertions.assertEquals("one", response(in)[1]);
+      Assertions.assertEquals("two", response(in)[1]);
+      Assertions.assertEquals("three", response(in)[1]);
+      /* the connection is kept open */
+      socket.getOutputStream().write(post("/echo", "four").getBytes(StandardCharsets.US_ASCII));
+      String[] fourth = response(in);
+      Assertions.assertEquals("HTTP/1.1 200 OK", fourth[0]);
+      Assertions.assertEquals("four", fourth[1]);
+    }
+  }
+
+  @Test
+  void chunkedRequest_Decoded() throws Exception {
+    try (Socket socket = connect()) {
+      socket.getOutputStream().write(
+          ("POST /echo HTTP/1.1\r\nHost: localhost\r\nTransfer-Encoding: chunked\r\n\r\n"
+              + "5\r\nhello\r\n6;ext=1\r\n world\r\n0\r\n\r\n")
+              .getBytes(StandardCharsets.US_ASCII)
+      );
+      Assertions.assertEquals("hello world", response(socket.getInputStream())[1]);
+    }
+  }
+
+  @Test
+  void unknownContext_NotFound() throws Exception {
+    try (Socket socket = connect()) {
+      InputStream in = new BufferedInputStream(socket.getInputStream());
+      socket.getOutputStream().write(post("/other", "x").getBytes(StandardCharsets.US_ASCII));
+      Assertions.assertEquals("HTTP/1.1 404 Not Found", response(in)[0]);
+      socket.getOutputStream().write(post("/echo", "y").getBytes(StandardCharsets.US_ASCII));
+      Assertions.assertEquals("y", response(in)[1]);
+    }
+  }
+
+  @Test
+  void invalidRequest_BadRequestAndClosed() throws Exception {
+    try (Socket socket = connect()) {
+      InputStream in = new BufferedInputStream(socket.getInputStream());
+      socket.getOutputStream().write("nonsense\r\n\r\n".getBytes(StandardCharsets.US_ASCII));
+      Assertions.assertEquals("HTTP/1.1 400 Bad Request", response(in)[0]);
+      Assertions.assertEquals(-1, in.read());
+    }
+  }
+
+  @Test
+  void lineFeedInHeader_BadRequest() throws Exception {
+    try (Socket socket = connect()) {
+      InputStream in = new BufferedInputStream(socket.getInputStream());
+      socket.getOutputStream().write(
+          "POST /echo HTTP/1.1\r\nX: a\nb\r\n\r\n".getBytes(StandardCharsets.US_ASCII)
+      );
+      Assertions.assertEquals("HTTP/1.1 400 Bad Request", response(in)[0]);
+      Assertions.assertEquals(-1, in.read());
+    }
+    /* the server still answers */
+    try (Socket socket = connect()) {
+      socket.getOutputStream().write(post("/echo", "ok").getBytes(StandardCharsets.US_ASCII));
+      Assertions.assertEquals("ok", response(socket.getInputStream())[1]);
+    }
+  }
+
+  @Test
+  void chunkSizeOverflow_NotReadAndClosed() throws Exception {
+    try (Socket socket = connect()) {
+      InputStream in = new BufferedInputStream(socket.getInputStream());
+      socket.getOutputStream().write(
+          ("POST /echo HTTP/1.1\r\nHost: localhost\r\nTransfer-Encoding: chunked\r\n\r\n"
+              + "7fffffffffffffff\r\nhello\r\n")
+              .getBytes(StandardCharsets.US_ASCII)
+      );
+      Assertions.assertEquals("HTTP/1.1 200 OK", response(in)[0]);
+      Assertions.assertEquals(-1, in.read());
+    }
+    try (Socket socket = connect()) {
+      socket.getOutputStream().write(post("/echo", "ok").getBytes(StandardCharsets.US_ASCII));
+      Assertions.assertEquals("ok", response(socket.getInputStream())[1]);
+    }
+  }
+
+  @Test
+  void bodyOverLimit_NotReadAndClosed() throws Exception {
+    try (Socket socket = connect()) {
+      InputStream in = new BufferedInputStream(socket.getInputStream());
+      socket.getOutputStream().write(
+          ("POST /echo HTTP/1.1\r\nHost: localhost\r\nContent-Length: 4096\r\n\r\n")
+              .getBytes(StandardCharsets.US_ASCII)
+      );
+      String[] response = response(in);
+      Assertions.assertEquals("HTTP/1.1 200 OK", response[0]);
+      Assertions.assertEquals("", response[1]);
+      Assertions.assertEquals(-1, in.read());
+    }
+  }
+
+  @Test
+  void handlerFailure_ConnectionClosed() throws Exception {
+    try (Socket socket = connect()) {
+      socket.getOutputStream().write(post("/fail", "x").getBytes(StandardCharsets.US_ASCII));
+      Assertions.assertEquals(-1, socket.getInputStream().read());
+    }
+  }
+
+  @Test
+  void handlerError_ConnectionClosed() throws Exception {
+    try (Socket socket = connect()) {
+      socket.getOutputStream().write(post("/error", "x").getBytes(StandardCharsets.US_ASCII));
+      Assertions.assertEquals(-1, socket.getInputStream().read());
+    }
+  }
+
+  @Test
+  void connectionClose_Honoured() throws Exception {
+    try (Socket socket = connect()) {
+      InputStream in = new BufferedInputStream(socket.getInputStream());
+      socket.getOutputStream().write(
+          "GET /echo HTTP/1.1\r\nHost: localhost\r\nConnection: close\r\n\r\n"
+              .getBytes(StandardCharsets.US_ASCII)
+      );
+      Assertions.assertEquals("HTTP/1.1 200 OK", response(in)[0]);
+      Assertions.assertEquals(-1, in.read());
+    }
+  }
+
+  @Test
+  void serverTransport_SignAndLimit() throws Exception {
+    HttpServer nio = Server.createServer(
+        new ServerOptions().setPort(PORT).setTransport(Transport.NIO).setWarmupIterations(0)
+            .setMaxRequestBytes(64 * 1024)
+    );
+    Assertions.assertTrue(nio instanceof NioHttpServer);
+    nio.start();
+    try {
+      HttpURLConnection conn = (HttpURLConnection) new URI("http://localhost:" + PORT + "/sign")
+          .toURL().openConnection();
+      conn.setRequestMethod("POST");
+      conn.setDoOutput(true);
+      try (OutputStream os = conn.getOutputStream()) {
+        os.write(LoadGenerator.signRequest());
+      }
+      Assertions.assertEquals(200, conn.getResponseCode());
+      Assertions.assertTrue(new String(conn.getInputStream().readAllBytes()).contains("message"));
+
+      conn = (HttpURLConnection) new URI("http://localhost:" + PORT + "/sign")
+          .toURL().openConnection();
+      conn.setRequestMethod("POST");
+      conn.setDoOutput(true);
+      conn.setFixedLengthStreamingMode(128 * 1024);
+      try (OutputStream os = conn.getOutputStream()) {
+        os.write(new byte[128 * 1024]);
+      } catch (IOException ignored) {
+        /* the server answers before the body is sent */
+      }
+      Assertions.assertEquals(413, conn.getResponseCode());
+    } finally {
+      Assertions.assertTrue(Server.drain(nio, 1000));
+    }
+  }
+}
@@ -0,0 +1,125 @@
+/*
+ * Created on Mon Oct 19 2026
+ *
+ * Copyright (c) 2026 Smart DCC Limited
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package uk.co.smartdcc.boxed.xmldsig;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.w3c.dom.Document;
+import org.xml.sax.SAXParseException;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+public class ParserProfileTest {
+  private static final String DEFER = "http://apache.org/xml/features/dom/defer-node-expansion";
+
+  @AfterEach
+  void reset() {
+    Util.set_parser_profile(ParserProfile.DEFAULT);
+  }
+
+  /* a schema valid WAN matrix response with n regions, about 145 bytes each */
+  static byte[] wanMatrixResponse(int n) throws Exception {
+    StringBuilder sb = new StringBuilder(
+        "<?xml version=\"1.0\" encoding=\"UTF-8\"?>"
+            + "<sr:Response xmlns:sr=\"http://www.dccinterface.co.uk/ServiceUserGateway\""
+            + " schemaVersion=\"5.4\"><sr:Header>"
+            + "<sr:RequestID>90-B3-D5-1F-30-01-00-00:90-B3-D5-1F-30-00-00-02:1766940660265"
+            + "</sr:RequestID><sr:ResponseCode>I0</sr:ResponseCode>"
+            + "<sr:ResponseDateTime>2025-12-28T16:51:01.185Z</sr:ResponseDateTime></sr:Header>"
+            + "<sr:Body><sr:ResponseMessage><sr:ServiceReference>8.2</sr:ServiceReference>"
+            + "<sr:ServiceReferenceVariant>8.2</sr:ServiceReferenceVariant>"
+            + "<sr:DSPWANMatrix><sr:Request><sr:UPRN>123456789012</sr:UPRN></sr:Request>"
+    );
+    for (int i = 0; i < n; i++) {
+      sb.append("<sr:DSPWANMatrixResponse><sr:CSPRegion>4G Central</sr:CSPRegion>")
+          .append("<sr:CSPRegionResponseCode>I0</sr:CSPRegionResponseCode>")
+          .append("</sr:DSPWANMatrixResponse>");
+    }
+    sb.append("</sr:DSPWANMatrix></sr:ResponseMessage></sr:Body></sr:Response>");
+    return sb.toString().getBytes(StandardCharsets.UTF_8);
+  }
+
+  static InputStream nested(int depth) {
+    return new ByteArrayInputStream(
+        ("<a>".repeat(depth) + "</a>".repeat(depth)).getBytes(StandardCharsets.UTF_8)
+    );
+  }
+
+  @Test
+  void of() {
+    Assertions.assertEquals(ParserProfile.DEFAULT, ParserProfile.of(null));
+    Assertions.assertEquals(ParserProfile.LARGE, ParserProfile.of("large"));
+    Assertions.assertThrows(IllegalArgumentException.class, () -> ParserProfile.of("huge"));
+  }
+
+  @Test
+  void setParserProfile() throws Exception {
+    Assertions.assertTrue(Util.get_document_builder_factory().getFeature(DEFER));
+    Util.set_parser_profile(ParserProfile.LARGE);
+    Assertions.assertFalse(Util.get_document_builder_factory().getFeature(DEFER));
+    Assertions.assertFalse(
+        SchemaRegistry.getInstance().getDocumentBuilderFactory(SchemaRegistry.MMC)
+            .getFeature(DEFER)
+    );
+    Assertions.assertFalse(
+        SchemaRegistry.getInstance().getDocumentBuilderFactory(SchemaRegistry.NONE)
+            .getFeature(DEFER)
+    );
+  }
+
+  @Test
+  void large_ParsesLargeResponse() throws Exception {
+    Util.set_parser_profile(ParserProfile.LARGE);
+    byte[] message = wanMatrixResponse(20000);
+    Assertions.assertTrue(message.length > 2_000_000);
+    Document doc = Util.parse_duis_stream(new ByteArrayInputStream(message));
+    Assertions.assertEquals(
+        20000, doc.getElementsByTagNameNS(SchemaRegistry.DUIS_NAMESPACE, "CSPRegion").getLength()
+    );
+  }
+
+  @Test
+  void large_ValidatesSamples() throws Exception {
+    Util.set_parser_profile(ParserProfile.LARGE);
+    Assertions.assertNotNull(
+        Validate.validate_input_stream(
+            UtilTest.class.getClassLoader().getResourceAsStream("readfw-response.xml"),
+            CertificateLibrary.getInstance()
+        )
+    );
+    Assertions.assertNotNull(
+        Validate.validate_input_stream(
+            UtilTest.class.getClassLoader().getResourceAsStream("read-inventory-response-5.4.xml"),
+            CertificateLibrary.getInstance()
+        )
+    );
+  }
+
+  @Test
+  void large_LimitsDepth() throws Exception {
+    Assertions.assertNotNull(Util.parse_duis_stream(nested(100), SchemaRegistry.NONE));
+    Util.set_parser_profile(ParserProfile.LARGE);
+    Assertions.assertNotNull(Util.parse_duis_stream(nested(60), SchemaRegistry.NONE));
+    Assertions.assertThrows(
+        SAXParseException.class, () -> Util.parse_duis_stream(nested(100), SchemaRegistry.NONE)
+    );
+  }
+}
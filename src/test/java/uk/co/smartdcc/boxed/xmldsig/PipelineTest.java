@@ -0,0 +1,188 @@
+/*
+ * Created on Mon Oct 19 2026
+ *
+ * Copyright (c) 2026 Smart DCC Limited
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package uk.co.smartdcc.boxed.xmldsig;
+
+import com.google.gson.Gson;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.xml.sax.SAXParseException;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URI;
+import java.security.SignatureException;
+import java.util.Base64;
+import java.util.Map;
+
+public class PipelineTest {
+  private static final int PORT = 18100;
+  private static Pipeline pipeline;
+
+  private static InputStream resource(String name) {
+    return UtilTest.class.getClassLoader().getResourceAsStream(name);
+  }
+
+  @BeforeAll
+  static void start() {
+    pipeline = new Pipeline(2);
+  }
+
+  @AfterAll
+  static void stop() {
+    pipeline.close();
+  }
+
+  /*
+   * signatures are randomised, so compare what was signed rather than the bytes
+   */
+  static byte[] signedContent(byte[] signed) throws Exception {
+    return Validate.validate_input_stream(
+        new ByteArrayInputStream(signed), CertificateLibrary.getInstance()
+    );
+  }
+
+  @Test
+  void sign_SameAsSequential() throws Exception {
+    ByteArrayOutputStream sequential = new ByteArrayOutputStream();
+    Sign.verify_and_sign_input_stream(
+        true, resource("ECS17b_4.1.1_SINGLE_SUCCESS_REQUEST_DUIS.XML"), sequential,
+        CertificateLibrary.getInstance()
+    );
+    ByteArrayOutputStream pipelined = new ByteArrayOutputStream();
+    pipeline.sign(
+        true, resource("ECS17b_4.1.1_SINGLE_SUCCESS_REQUEST_DUIS.XML"), pipelined,
+        CertificateLibrary.getInstance(), null
+    );
+    Assertions.assertArrayEquals(
+        signedContent(sequential.toByteArray()), signedContent(pipelined.toByteArray())
+    );
+  }
+
+  @Test
+  void sign_Invalid() throws Exception {
+    ByteArrayOutputStream os = new ByteArrayOutputStream();
+    Assertions.assertThrows(
+        SAXParseException.class, () -> pipeline.sign(
+            true, resource("ECS17b_4.1.1_SINGLE_SUCCESS_REQUEST_DUIS-invalid.XML"), os,
+            CertificateLibrary.getInstance(), null
+        )
+    );
+    Assertions.assertEquals(0, os.size());
+  }
+
+  @Test
+  void sign_Trusted() throws Exception {
+    ByteArrayOutputStream os = new ByteArrayOutputStream();
+    pipeline.sign(
+        true, resource("ECS17b_4.1.1_SINGLE_SUCCESS_REQUEST_DUIS-invalid.XML"), os,
+        CertificateLibrary.getInstance(), SchemaRegistry.NONE
+    );
+    Assertions.assertTrue(os.size() > 0);
+  }
+
+  @Test
+  void sign_UnknownSchema() {
+    Assertions.assertThrows(
+        IllegalArgumentException.class, () -> pipeline.sign(
+            true, resource("ECS17b_4.1.1_SINGLE_SUCCESS_REQUEST_DUIS.XML"), new ByteArrayOutputStream(),
+            CertificateLibrary.getInstance(), "DUIS-0.1"
+        )
+    );
+  }
+
+  @Test
+  void sign_RejectsDoctype() {
+    Assertions.assertThrows(
+        SAXParseException.class, () -> pipeline.sign(
+            true, resource("duis-xxe.xml"), new ByteArrayOutputStream(),
+            CertificateLibrary.getInstance(), null
+        )
+    );
+  }
+
+  @Test
+  void verify_SameAsSequential() throws Exception {
+    byte[] sequential = Validate.validate_input_stream(
+        resource("readfw-response.xml"), CertificateLibrary.getInstance()
+    );
+    byte[] pipelined = pipeline.verify(
+        resource("readfw-response.xml"), CertificateLibrary.getInstance(), null
+    );
+    Assertions.assertArrayEquals(sequential, pipelined);
+  }
+
+  @Test
+  void verify_Invalid() {
+    Assertions.assertThrows(
+        SAXParseException.class, () -> pipeline.verify(
+            resource("readfw-response-invalid.xml"), CertificateLibrary.getInstance(), null
+        )
+    );
+  }
+
+  @Test
+  void verify_BadSignature() {
+    Assertions.assertThrows(
+        SignatureException.class, () -> pipeline.verify(
+            resource("readfw-response-badsignature.xml"), CertificateLibrary.getInstance(), null
+        )
+    );
+  }
+
+  @Test
+  void verify_Unsigned() throws Exception {
+    Assertions.assertNull(
+        pipeline.verify(
+            resource("readfw-response-no-signature.xml"), CertificateLibrary.getInstance(), null
+        )
+    );
+  }
+
+  @Test
+  void server_Pipelined() throws Exception {
+    HttpServer server = Server.createServer(
+        new ServerOptions().setPort(PORT).setValidationThreads(1)
+    );
+    server.start();
+    try {
+      for (String[] c : new String[][] {
+          { "sign", "ECS17b_4.1.1_SINGLE_SUCCESS_REQUEST_DUIS.XML", "200" },
+          { "sign", "ECS17b_4.1.1_SINGLE_SUCCESS_REQUEST_DUIS-invalid.XML", "400" },
+          { "verify", "readfw-response.xml", "200" },
+          { "verify", "readfw-response-invalid.xml", "400" } }) {
+        HttpURLConnection conn = (HttpURLConnection) new URI("http://localhost:" + PORT + "/" + c[0])
+            .toURL().openConnection();
+        conn.setRequestMethod("POST");
+        conn.setDoOutput(true);
+        try (OutputStream os = conn.getOutputStream()) {
+          String message = Base64.getEncoder().encodeToString(resource(c[1]).readAllBytes());
+          os.write(new Gson().toJson(Map.of("message", message)).getBytes());
+        }
+        Assertions.assertEquals(Integer.parseInt(c[2]), conn.getResponseCode(), c[1]);
+      }
+    } finally {
+      server.stop(0);
+    }
+  }
+}
@@ -0,0 +1,228 @@
+/*
+ * Created on Mon Oct 19 2026
+ *
+ * Copyright (c) 2026 Smart DCC Limited
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package uk.co.smartdcc.boxed.xmldsig;
+
+import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.reflect.Type;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.util.Base64;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class ProxyTest {
+  private static final Gson GSON = new Gson();
+  private static final Type MAP_TYPE = new TypeToken<Map<String, String>>() {
+  }.getType();
+  private static final int UPSTREAM_PORT = 18097;
+  private static final int PORT = 18098;
+  private static final AtomicInteger signedRequests = new AtomicInteger();
+  private static HttpServer upstream;
+
+  static void reply(HttpExchange exchange, int status, byte[] body) throws IOException {
+    exchange.getResponseHeaders().set("Content-Type", "application/xml");
+    exchange.sendResponseHeaders(status, body.length);
+    try (OutputStream os = exchange.getResponseBody()) {
+      os.write(body);
+    }
+  }
+
+  /*
+   * stands in for DCC Boxed, only answers requests that carry a valid signature
+   */
+  @BeforeAll
+  static void startUpstream() throws Exception {
+    upstream = HttpServer.create(new InetSocketAddress(UPSTREAM_PORT), 0);
+    upstream.setExecutor(Executors.newCachedThreadPool());
+    upstream.createContext("/ok", exchange -> {
+      byte[] body = exchange.getRequestBody().readAllBytes();
+      try {
+        Validate.validate_input_stream(
+            new ByteArrayInputStream(body), CertificateLibrary.getInstance()
+        );
+        signedRequests.incrementAndGet();
+        reply(exchange, 200, UtilTest.resource("readfw-response.xml"));
+      } catch (Exception e) {
+        reply(exchange, 400, new byte[0]);
+      }
+    });
+    upstream.createContext("/badsig", exchange -> {
+      exchange.getRequestBody().readAllBytes();
+      reply(exchange, 200, UtilTest.resource("readfw-response-badsignature.xml"));
+    });
+    upstream.createContext("/fail", exchange -> {
+      exchange.getRequestBody().readAllBytes();
+      reply(exchange, 500, new byte[0]);
+    });
+    upstream.createContext("/slow", exchange -> {
+      exchange.getRequestBody().readAllBytes();
+      try {
+        Thread.sleep(2000);
+      } catch (InterruptedException ignored) {
+      }
+      reply(exchange, 200, UtilTest.resource("readfw-response.xml"));
+    });
+    upstream.start();
+  }
+
+  @AfterAll
+  static void stopUpstream() {
+    upstream.stop(0);
+  }
+
+  static HttpServer proxyTo(String path, int timeoutMs) throws IOException {
+    HttpServer server = Server.createServer(
+        new ServerOptions()
+            .setPort(PORT)
+            .setUpstream(URI.create("http://localhost:" + UPSTREAM_PORT + path))
+            .setUpstreamTimeoutMs(timeoutMs)
+    );
+    server.start();
+    return server;
+  }
+
+  static HttpURLConnection post(String endpoint, String fileName) throws Exception {
+    String encoded = Base64.getEncoder().encodeToString(UtilTest.resource(fileName));
+    HttpURLConnection conn = (HttpURLConnection) new URI("http://localhost:" + PORT + "/" + endpoint)
+        .toURL().openConnection();
+    conn.setRequestMethod("POST");
+    conn.setDoOutput(true);
+    conn.setRequestProperty("Content-Type", "application/json");
+    try (OutputStream os = conn.getOutputStream()) {
+      os.write(GSON.toJson(Map.of("message", encoded)).getBytes());
+    }
+    return conn;
+  }
+
+  static Map<String, String> errorBody(HttpURLConnection conn) throws IOException {
+    return GSON.fromJson(new String(conn.getErrorStream().readAllBytes()), MAP_TYPE);
+  }
+
+  @Test
+  void proxyEndpoint_Valid() throws Exception {
+    HttpServer server = proxyTo("/ok", 5000);
+    try {
+      int before = signedRequests.get();
+      for (int i = 0; i < 3; i++) {
+        HttpURLConnection conn = post("proxy", "ECS17b_4.1.1_SINGLE_SUCCESS_REQUEST_DUIS.XML");
+        Assertions.assertEquals(200, conn.getResponseCode());
+        Map<String, String> response = GSON.fromJson(
+            new String(conn.getInputStream().readAllBytes()), MAP_TYPE
+        );
+        String xml = new String(Base64.getDecoder().decode(response.get("message")));
+        Assertions.assertTrue(xml.contains("Response"));
+        Assertions.assertFalse(xml.contains("</ds:Signature>"));
+      }
+      Assertions.assertEquals(before + 3, signedRequests.get());
+    } finally {
+      server.stop(0);
+    }
+  }
+
+  @Test
+  void proxyEndpoint_InvalidRequest() throws Exception {
+    HttpServer server = proxyTo("/ok", 5000);
+    try {
+      HttpURLConnection conn = post("proxy", "ECS17b_4.1.1_SINGLE_SUCCESS_REQUEST_DUIS-invalid.XML");
+      Assertions.assertEquals(400, conn.getResponseCode());
+      Assertions.assertEquals("SAXParseException", errorBody(conn).get("errorCode"));
+    } finally {
+      server.stop(0);
+    }
+  }
+
+  @Test
+  void proxyEndpoint_BadSignature() throws Exception {
+    HttpServer server = proxyTo("/badsig", 5000);
+    try {
+      HttpURLConnection conn = post("proxy", "ECS17b_4.1.1_SINGLE_SUCCESS_REQUEST_DUIS.XML");
+      Assertions.assertEquals(502, conn.getResponseCode());
+      Assertions.assertEquals("SignatureException", errorBody(conn).get("errorCode"));
+    } finally {
+      server.stop(0);
+    }
+  }
+
+  @Test
+  void proxyEndpoint_UpstreamError() throws Exception {
+    HttpServer server = proxyTo("/fail", 5000);
+    try {
+      HttpURLConnection conn = post("proxy", "ECS17b_4.1.1_SINGLE_SUCCESS_REQUEST_DUIS.XML");
+      Assertions.assertEquals(502, conn.getResponseCode());
+      Map<String, String> body = errorBody(conn);
+      Assertions.assertEquals("UpstreamException", body.get("errorCode"));
+      Assertions.assertTrue(body.get("error").contains("500"));
+    } finally {
+      server.stop(0);
+    }
+  }
+
+  @Test
+  void proxyEndpoint_UpstreamTimeout() throws Exception {
+    HttpServer server = proxyTo("/slow", 300);
+    try {
+      HttpURLConnection conn = post("proxy", "ECS17b_4.1.1_SINGLE_SUCCESS_REQUEST_DUIS.XML");
+      Assertions.assertEquals(504, conn.getResponseCode());
+    } finally {
+      server.stop(0);
+    }
+  }
+
+  @Test
+  void proxyEndpoint_NotConfigured() throws Exception {
+    HttpServer server = Server.createServer(PORT);
+    server.start();
+    try {
+      HttpURLConnection conn = post("proxy", "ECS17b_4.1.1_SINGLE_SUCCESS_REQUEST_DUIS.XML");
+      Assertions.assertEquals(404, conn.getResponseCode());
+    } finally {
+      server.stop(0);
+    }
+  }
+
+  @Test
+  void forward_ConcurrencyLimit() throws Exception {
+    Proxy proxy = new Proxy(URI.create("http://localhost:" + UPSTREAM_PORT + "/ok"), 0, 100);
+    Proxy.UpstreamException e = Assertions.assertThrows(
+        Proxy.UpstreamException.class, () -> proxy.forward(new byte[0])
+    );
+    Assertions.assertEquals(503, e.getStatus());
+  }
+
+  @Test
+  void forward_ConnectionRefused() throws Exception {
+    Proxy proxy = new Proxy(URI.create("http://localhost:1/"), 1, 1000);
+    Proxy.UpstreamException e = Assertions.assertThrows(
+        Proxy.UpstreamException.class, () -> proxy.forward(new byte[0])
+    );
+    Assertions.assertEquals(502, e.getStatus());
+  }
+}
@@ -0,0 +1,209 @@
+/*
+ * Created on Mon Oct 19 2026
+ *
+ * Copyright (c) 2026 Smart DCC Limited
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package uk.co.smartdcc.boxed.xmldsig;
+
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+public class ReceiverTest {
+  private static final int PORT = 18099;
+
+  static HttpURLConnection post(String endpoint, byte[] body) throws Exception {
+    HttpURLConnection conn = (HttpURLConnection) new URI("http://localhost:" + PORT + "/" + endpoint)
+        .toURL().openConnection();
+    conn.setRequestMethod("POST");
+    conn.setDoOutput(true);
+    conn.setRequestProperty("Content-Type", "application/xml");
+    try (OutputStream os = conn.getOutputStream()) {
+      os.write(body);
+    }
+    return conn;
+  }
+
+  /* collects delivered and rejected messages for the test to inspect */
+  static final class Collector implements ResponseSink {
+    final BlockingQueue<byte[]> accepted = new LinkedBlockingQueue<>();
+    final BlockingQueue<Exception> rejected = new LinkedBlockingQueue<>();
+
+    @Override
+    public void accept(byte[] message) {
+      accepted.add(message);
+    }
+
+    @Override
+    public void reject(byte[] message, Exception cause) {
+      rejected.add(cause);
+    }
+  }
+
+  @Test
+  void receiveEndpoint_Valid() throws Exception {
+    Collector sink = new Collector();
+    HttpServer server = Server.createServer(new ServerOptions().setPort(PORT).setResponseSink(sink));
+    server.start();
+    try {
+      for (int i = 0; i < 5; i++) {
+        HttpURLConnection conn = post("receive", UtilTest.resource("readfw-response.xml"));
+        Assertions.assertEquals(200, conn.getResponseCode());
+      }
+      for (int i = 0; i < 5; i++) {
+        byte[] message = sink.accepted.poll(10, TimeUnit.SECONDS);
+        Assertions.assertNotNull(message);
+        Assertions.assertFalse(new String(message).contains("</ds:Signature>"));
+      }
+      Assertions.assertTrue(sink.rejected.isEmpty());
+    } finally {
+      server.stop(0);
+    }
+  }
+
+  @Test
+  void receiveEndpoint_BadSignature() throws Exception {
+    Collector sink = new Collector();
+    HttpServer server = Server.createServer(new ServerOptions().setPort(PORT).setResponseSink(sink));
+    server.start();
+    try {
+      HttpURLConnection conn = post("receive", UtilTest.resource("readfw-response-badsignature.xml"));
+      /* acknowledged before verification */
+      Assertions.assertEquals(200, conn.getResponseCode());
+      Exception cause = sink.rejected.poll(10, TimeUnit.SECONDS);
+      Assertions.assertNotNull(cause);
+      Assertions.assertTrue(sink.accepted.isEmpty());
+    } finally {
+      server.stop(0);
+    }
+  }
+
+  @Test
+  void receiveEndpoint_MethodNotAllowed() throws Exception {
+    HttpServer server = Server.createServer(
+        new ServerOptions().setPort(PORT).setResponseSink(new Collector())
+    );
+    server.start();
+    try {
+      HttpURLConnection conn = (HttpURLConnection) new URI("http://localhost:" + PORT + "/receive")
+          .toURL().openConnection();
+      Assertions.assertEquals(405, conn.getResponseCode());
+    } finally {
+      server.stop(0);
+    }
+  }
+
+  @Test
+  void receiveEndpoint_NotConfigured() throws Exception {
+    HttpServer server = Server.createServer(PORT);
+    server.start();
+    try {
+      HttpURLConnection conn = post("receive", UtilTest.resource("readfw-response.xml"));
+      Assertions.assertEquals(404, conn.getResponseCode());
+    } finally {
+      server.stop(0);
+    }
+  }
+
+  @Test
+  void receiveEndpoint_QueueFull() throws Exception {
+    CountDownLatch release = new CountDownLatch(1);
+    ResponseSink blocking = message -> {
+      try {
+        release.await();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    };
+    HttpServer server = Server.createServer(
+        new ServerOptions().setPort(PORT).setResponseSink(blocking).setReceiveQueue(1)
+            .setReceiveThreads(1)
+    );
+    server.start();
+    try {
+      byte[] body = UtilTest.resource("readfw-response.xml");
+      int refused = 0;
+      for (int i = 0; i < 5; i++) {
+        HttpURLConnection conn = post("receive", body);
+        if (conn.getResponseCode() == 503) {
+          Assertions.assertEquals("1", conn.getHeaderField("Retry-After"));
+          refused++;
+        }
+      }
+      /* one being delivered and one queued, at most */
+      Assertions.assertTrue(refused >= 3);
+    } finally {
+      release.countDown();
+      server.stop(0);
+    }
+  }
+
+  @Test
+  void receiver_Counters() throws Exception {
+    Collector sink = new Collector();
+    Receiver receiver = new Receiver(8, 2, sink);
+    receiver.setQuiet(true);
+    receiver.start();
+    Assertions.assertTrue(receiver.offer(UtilTest.resource("readfw-response.xml")));
+    Assertions.assertTrue(receiver.offer("<not-duis/>".getBytes()));
+    Assertions.assertNotNull(sink.accepted.poll(10, TimeUnit.SECONDS));
+    Assertions.assertNotNull(sink.rejected.poll(10, TimeUnit.SECONDS));
+    receiver.close();
+    Assertions.assertFalse(receiver.offer(UtilTest.resource("readfw-response.xml")));
+    Assertions.assertEquals(2, receiver.getAccepted());
+    Assertions.assertEquals(1, receiver.getDelivered());
+    Assertions.assertEquals(1, receiver.getFailed());
+    Assertions.assertEquals(1, receiver.getRefused());
+    Assertions.assertEquals(0, receiver.getBacklog());
+  }
+
+  @Test
+  void directorySink_Valid(@TempDir Path tmp) throws Exception {
+    Receiver receiver = new Receiver(8, 2, new DirectorySink(tmp));
+    receiver.setQuiet(true);
+    receiver.start();
+    receiver.offer(UtilTest.resource("readfw-response.xml"));
+    receiver.offer(UtilTest.resource("readfw-response-badsignature.xml"));
+    receiver.close();
+
+    List<Path> written;
+    try (Stream<Path> s = Files.list(tmp)) {
+      written = s.filter(p -> p.toString().endsWith(".xml")).collect(Collectors.toList());
+    }
+    Assertions.assertEquals(1, written.size());
+    Assertions.assertFalse(Files.readString(written.get(0)).contains("</ds:Signature>"));
+    try (Stream<Path> s = Files.list(tmp.resolve("rejected"))) {
+      List<String> names = s.map(p -> p.getFileName().toString()).sorted()
+          .collect(Collectors.toList());
+      Assertions.assertEquals(2, names.size());
+      Assertions.assertTrue(names.get(0).endsWith(".error"));
+      Assertions.assertTrue(names.get(1).endsWith(".xml"));
+    }
+  }
+}
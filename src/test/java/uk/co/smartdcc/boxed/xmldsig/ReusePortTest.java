@@ -0,0 +1,110 @@
+/*
+ * Created on Mon Oct 19 2026
+ *
+ * Copyright (c) 2026 Smart DCC Limited
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package uk.co.smartdcc.boxed.xmldsig;
+
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Assumptions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.net.HttpURLConnection;
+import java.net.URI;
+import java.util.List;
+
+public class ReusePortTest {
+  private static final int PORT = 18103;
+
+  @BeforeEach
+  void supported() {
+    Assumptions.assumeTrue(NioHttpServer.isReusePortSupported(), "needs SO_REUSEPORT");
+  }
+
+  static long served(int listener) {
+    return Metrics.getInstance().get(
+        "xmldsig_listener_requests_total", "listener", Integer.toString(listener)
+    );
+  }
+
+  /* a new connection each time, so that the kernel picks a listener for each */
+  static int health() throws Exception {
+    HttpURLConnection conn = (HttpURLConnection) new URI("http://localhost:" + PORT + "/health")
+        .toURL().openConnection();
+    conn.setRequestProperty("Connection", "close");
+    int status = conn.getResponseCode();
+    conn.getInputStream().readAllBytes();
+    conn.disconnect();
+    return status;
+  }
+
+  @Test
+  void listeners_SharePort() throws Exception {
+    List<HttpServer> servers = Server.createServers(
+        new ServerOptions().setPort(PORT).setListeners(2).setTransport(Transport.NIO)
+            .setWarmupIterations(0)
+    );
+    Assertions.assertEquals(2, servers.size());
+    Assertions.assertEquals(PORT, servers.get(1).getAddress().getPort());
+    long before0 = served(0);
+    long before1 = served(1);
+    servers.forEach(HttpServer::start);
+    try {
+      for (int i = 0; i < 40; i++) {
+        Assertions.assertEquals(200, health());
+      }
+    } finally {
+      Assertions.assertTrue(Server.drain(servers, 1000));
+    }
+    Assertions.assertEquals(40, served(0) - before0 + served(1) - before1);
+    Assertions.assertTrue(served(0) > before0);
+    Assertions.assertTrue(served(1) > before1);
+  }
+
+  @Test
+  void reusePort_SharedWithAnotherServer() throws Exception {
+    ServerOptions options = new ServerOptions()
+        .setPort(PORT).setReusePort(true).setTransport(Transport.NIO).setWarmupIterations(0);
+    HttpServer first = Server.createServer(options);
+    try {
+      HttpServer second = Server.createServer(options);
+      first.start();
+      second.start();
+      Assertions.assertEquals(200, health());
+      Assertions.assertTrue(Server.drain(second, 1000));
+      Assertions.assertEquals(200, health());
+    } finally {
+      Server.drain(first, 1000);
+    }
+  }
+
+  @Test
+  void createServer_SingleListener() {
+    Assertions.assertThrows(
+        IllegalArgumentException.class,
+        () -> Server.createServer(new ServerOptions().setPort(PORT).setListeners(2))
+    );
+  }
+
+  @Test
+  void listeners_JdkTransport() {
+    Assertions.assertThrows(
+        IllegalArgumentException.class,
+        () -> Server.createServers(new ServerOptions().setPort(PORT).setListeners(2))
+    );
+  }
+}
@@ -0,0 +1,121 @@
+/*
+ * Created on Mon Oct 19 2026
+ *
+ * Copyright (c) 2026 Smart DCC Limited
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package uk.co.smartdcc.boxed.xmldsig;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.net.URL;
+import java.util.Arrays;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import org.w3c.dom.Document;
+import org.xml.sax.SAXParseException;
+
+public class SchemaRegistryTest {
+  private static final URL MMC_XSD = UtilTest.class.getClassLoader().getResource("MMC Schema V5.4.xsd");
+
+  @Test
+  void bundled() {
+    SchemaRegistry registry = new SchemaRegistry();
+    Assertions.assertEquals(Arrays.asList(SchemaRegistry.DUIS, SchemaRegistry.MMC), registry.names());
+  }
+
+  @Test
+  void select_ByNamespace() {
+    SchemaRegistry registry = new SchemaRegistry();
+    Assertions.assertEquals(SchemaRegistry.DUIS, registry.select(SchemaRegistry.DUIS_NAMESPACE, "5.1"));
+    Assertions.assertEquals(SchemaRegistry.MMC, registry.select(SchemaRegistry.MMC_NAMESPACE, null));
+    Assertions.assertEquals(SchemaRegistry.DUIS, registry.select("urn:unknown", "1.0"));
+  }
+
+  @Test
+  void select_ByVersion() throws Exception {
+    SchemaRegistry registry = new SchemaRegistry();
+    registry.register("MMC-5.1", MMC_XSD);
+    Assertions.assertEquals("MMC-5.1", registry.select(SchemaRegistry.MMC_NAMESPACE, "5.10"));
+    Assertions.assertEquals(SchemaRegistry.MMC, registry.select(SchemaRegistry.MMC_NAMESPACE, "5.4"));
+    /* no exact match falls back to the first registered */
+    Assertions.assertEquals(SchemaRegistry.MMC, registry.select(SchemaRegistry.MMC_NAMESPACE, "6"));
+    Assertions.assertEquals(SchemaRegistry.MMC, registry.select(SchemaRegistry.MMC_NAMESPACE, "x"));
+  }
+
+  @Test
+  void select_Peek() throws Exception {
+    SchemaRegistry registry = new SchemaRegistry();
+    try (InputStream is = new BufferedInputStream(
+        UtilTest.class.getClassLoader().getResourceAsStream("readfw-response.xml")
+    )) {
+      Assertions.assertEquals(SchemaRegistry.DUIS, registry.select(is));
+      /* stream is rewound */
+      Assertions.assertEquals('<', is.read());
+    }
+    InputStream mmc = new BufferedInputStream(
+        new ByteArrayInputStream(
+            ("<?xml version=\"1.0\"?><ra:GBCSData xmlns:ra=\"" + SchemaRegistry.MMC_NAMESPACE
+                + "\">00</ra:GBCSData>").getBytes()
+        )
+    );
+    Assertions.assertEquals(SchemaRegistry.MMC, registry.select(mmc));
+    InputStream garbage = new BufferedInputStream(new ByteArrayInputStream("not xml".getBytes()));
+    Assertions.assertEquals(SchemaRegistry.DUIS, registry.select(garbage));
+  }
+
+  @Test
+  void getDocumentBuilderFactory_Cache() throws Exception {
+    SchemaRegistry registry = new SchemaRegistry();
+    DocumentBuilderFactory mmc = registry.getDocumentBuilderFactory(SchemaRegistry.MMC);
+    Assertions.assertSame(mmc, registry.getDocumentBuilderFactory(SchemaRegistry.MMC));
+    Assertions.assertNotSame(mmc, registry.getDocumentBuilderFactory(SchemaRegistry.DUIS));
+    Assertions.assertSame(Util.get_document_builder_factory(), registry.getDocumentBuilderFactory(SchemaRegistry.DUIS));
+  }
+
+  @Test
+  void getDocumentBuilderFactory_Unknown() {
+    SchemaRegistry registry = new SchemaRegistry();
+    Assertions.assertThrows(IllegalArgumentException.class, () -> registry.getDocumentBuilderFactory("DUIS-1.0"));
+  }
+
+  @Test
+  void register_Duplicate() {
+    SchemaRegistry registry = new SchemaRegistry();
+    Assertions.assertThrows(IllegalArgumentException.class, () -> registry.register(SchemaRegistry.MMC, MMC_XSD));
+  }
+
+  @Test
+  void register_NoNamespace() {
+    SchemaRegistry registry = new SchemaRegistry();
+    URL message = UtilTest.class.getClassLoader().getResource("readfw-response.xml");
+    Assertions.assertThrows(IllegalArgumentException.class, () -> registry.register("X-1", message));
+  }
+
+  @Test
+  void parse_NamedSchema() throws Exception {
+    byte[] mmc = ("<?xml version=\"1.0\"?><ra:GBCSData xmlns:ra=\"" + SchemaRegistry.MMC_NAMESPACE
+        + "\" format=\"plain\" sequence=\"1\" name=\"x\" type=\"gbcs\">AA==</ra:GBCSData>").getBytes();
+    Document doc = Util.parse_duis_stream(new ByteArrayInputStream(mmc));
+    Assertions.assertEquals("GBCSData", doc.getDocumentElement().getLocalName());
+
+    InputStream is = UtilTest.class.getClassLoader().getResourceAsStream("readfw-response.xml");
+    Assertions.assertThrows(SAXParseException.class, () -> Util.parse_duis_stream(is, SchemaRegistry.MMC));
+  }
+}
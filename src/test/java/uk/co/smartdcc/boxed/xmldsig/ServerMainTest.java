@@ -63,7 +63,7 @@ public class ServerMainTest {
 
     Thread serverThread = new Thread(() -> {
       try {
-        Server.main(new String[] {});
+        Server.main(new String[] { "--warmup", "0" });
       } catch (IOException e) {
         // Expected when server stops
       }
@@ -93,7 +93,7 @@ public class ServerMainTest {
     int port = 9090;
     Thread serverThread = new Thread(() -> {
       try {
-        Server.main(new String[] { "-p", "" + port });
+        Server.main(new String[] { "-p", "" + port, "--warmup", "0" });
       } catch (IOException e) {
         // Expected when server stops
       }
@@ -119,7 +119,7 @@ public class ServerMainTest {
 
     Thread serverThread = new Thread(() -> {
       try {
-        Server.main(new String[] { "-q" });
+        Server.main(new String[] { "-q", "--warmup", "0" });
       } catch (IOException e) {
         // Expected when server stops
       }
@@ -43,11 +43,12 @@ public class ServerTest {
   private static final Type MAP_TYPE = new TypeToken<Map<String, String>>() {
   }.getType();
   private static final int PORT = 18096;
+  private static final int READY_PORT = 18109;
   private static HttpServer server;
 
   @BeforeAll
   static void startServer() throws Exception {
-    server = Server.createServer(PORT);
+    server = Server.createServer(new ServerOptions().setPort(PORT).setWarmupIterations(0));
     server.start();
   }
 
@@ -332,4 +333,143 @@ public class ServerTest {
     Map<String, String> response = GSON.fromJson(responseJson, MAP_TYPE);
     Assertions.assertEquals("Method not allowed", response.get("error"));
   }
-}
\ No newline at end of file
+
+  HttpURLConnection doPostWithSchema(String fileName, String endpoint, String schema)
+      throws IOException, URISyntaxException {
+    InputStream is = UtilTest.class.getClassLoader().getResourceAsStream(fileName);
+    byte[] xmlBytes = is.readAllBytes();
+    is.close();
+
+    String encoded = Base64.getEncoder().encodeToString(xmlBytes);
+    String requestJson = GSON.toJson(Map.of("message", encoded, "schema", schema));
+
+    HttpURLConnection conn = (HttpURLConnection) new URI("http://localhost:" + PORT + "/" + endpoint)
+        .toURL().openConnection();
+    conn.setRequestMethod("POST");
+    conn.setDoOutput(true);
+    conn.setRequestProperty("Content-Type", "application/json");
+    OutputStream os = conn.getOutputStream();
+    os.write(requestJson.getBytes());
+    os.close();
+
+    return conn;
+  }
+
+  @Test
+  void verifyEndpoint_Schema() throws Exception {
+    HttpURLConnection conn = doPostWithSchema("readfw-response.xml", "verify", SchemaRegistry.DUIS);
+    Assertions.assertEquals(200, conn.getResponseCode());
+
+    /* a DUIS response is not valid against the MMC schema alone */
+    conn = doPostWithSchema("readfw-response.xml", "verify", SchemaRegistry.MMC);
+    Assertions.assertEquals(400, conn.getResponseCode());
+    Map<String, String> response = GSON.fromJson(new String(conn.getErrorStream().readAllBytes()), MAP_TYPE);
+    Assertions.assertEquals("SAXParseException", response.get("errorCode"));
+  }
+
+  @Test
+  void signEndpoint_UnknownSchema() throws Exception {
+    HttpURLConnection conn = doPostWithSchema("ECS17b_4.1.1_SINGLE_SUCCESS_REQUEST_DUIS.XML", "sign", "DUIS-0.1");
+    Assertions.assertEquals(400, conn.getResponseCode());
+    Map<String, String> response = GSON.fromJson(new String(conn.getErrorStream().readAllBytes()), MAP_TYPE);
+    Assertions.assertEquals("IllegalArgumentException", response.get("errorCode"));
+  }
+
+  @Test
+  void signEndpoint_Trusted() throws Exception {
+    Metrics metrics = Metrics.getInstance();
+    long before = metrics.get("xmldsig_requests_total", "endpoint", "sign", "validation", "none", "result", "ok");
+
+    HttpURLConnection conn = doPostWithPreserveCounter(
+        "ECS17b_4.1.1_SINGLE_SUCCESS_REQUEST_DUIS-invalid.XML", PORT, "sign", null
+    );
+    Assertions.assertEquals(400, conn.getResponseCode());
+
+    InputStream is = UtilTest.class.getClassLoader()
+        .getResourceAsStream("ECS17b_4.1.1_SINGLE_SUCCESS_REQUEST_DUIS-invalid.XML");
+    JsonObject request = new JsonObject();
+    request.addProperty("message", Base64.getEncoder().encodeToString(is.readAllBytes()));
+    request.addProperty("trusted", true);
+    is.close();
+    conn = (HttpURLConnection) new URI("http://localhost:" + PORT + "/sign").toURL().openConnection();
+    conn.setRequestMethod("POST");
+    conn.setDoOutput(true);
+    OutputStream os = conn.getOutputStream();
+    os.write(GSON.toJson(request).getBytes());
+    os.close();
+    Assertions.assertEquals(200, conn.getResponseCode());
+    Assertions.assertEquals(
+        before + 1, metrics.get("xmldsig_requests_total", "endpoint", "sign", "validation", "none", "result", "ok")
+    );
+  }
+
+  @Test
+  void verifyEndpoint_Trusted() throws Exception {
+    HttpURLConnection conn = doPostWithSchema("readfw-response.xml", "verify", "unused");
+    Assertions.assertEquals(400, conn.getResponseCode());
+
+    InputStream is = UtilTest.class.getClassLoader().getResourceAsStream("readfw-response.xml");
+    String requestJson = GSON.toJson(
+        Map.of("message", Base64.getEncoder().encodeToString(is.readAllBytes()), "trusted", "true")
+    );
+    is.close();
+    conn = (HttpURLConnection) new URI("http://localhost:" + PORT + "/verify").toURL().openConnection();
+    conn.setRequestMethod("POST");
+    conn.setDoOutput(true);
+    OutputStream os = conn.getOutputStream();
+    os.write(requestJson.getBytes());
+    os.close();
+    Assertions.assertEquals(200, conn.getResponseCode());
+  }
+
+  @Test
+  void metricsEndpoint() throws Exception {
+    doPost("readfw-response.xml", PORT, "verify").getResponseCode();
+    HttpURLConnection conn = (HttpURLConnection) new URI("http://localhost:" + PORT + "/metrics")
+        .toURL().openConnection();
+    Assertions.assertEquals(200, conn.getResponseCode());
+    Assertions.assertTrue(conn.getContentType().startsWith("text/plain"));
+    String body = new String(conn.getInputStream().readAllBytes());
+    Assertions.assertTrue(body.contains("# TYPE xmldsig_requests_total counter"));
+    Assertions.assertTrue(
+        body.contains("xmldsig_requests_total{endpoint=\"verify\",validation=\"schema\",result=\"ok\"}")
+    );
+  }
+
+  static HttpURLConnection get(String path) throws Exception {
+    return get(PORT, path);
+  }
+
+  static HttpURLConnection get(int port, String path) throws Exception {
+    return (HttpURLConnection) new URI("http://localhost:" + port + path).toURL().openConnection();
+  }
+
+  @Test
+  void healthEndpoint() throws Exception {
+    HttpURLConnection conn = get("/health");
+    Assertions.assertEquals(200, conn.getResponseCode());
+    Assertions.assertTrue(new String(conn.getInputStream().readAllBytes()).contains("up"));
+  }
+
+  @Test
+  void readyEndpoint() throws Exception {
+    /* with the default warm-up, unlike the other tests */
+    HttpServer warming = Server.createServer(new ServerOptions().setPort(READY_PORT));
+    warming.start();
+    try {
+      int status = get(READY_PORT, "/ready").getResponseCode();
+      for (int i = 0; i < 600 && status != 200; i++) {
+        Assertions.assertEquals(503, status);
+        Thread.sleep(100);
+        status = get(READY_PORT, "/ready").getResponseCode();
+      }
+      Assertions.assertEquals(200, status);
+      Assertions.assertTrue(Metrics.getInstance().render().contains("xmldsig_ready 1"));
+      HttpURLConnection conn = get(READY_PORT, "/ready");
+      conn.setRequestMethod("POST");
+      Assertions.assertEquals(405, conn.getResponseCode());
+    } finally {
+      Server.drain(warming, 1000);
+    }
+  }
+}
@@ -360,4 +360,31 @@ public class SignTest {
     });
     Assertions.assertEquals(ResultCode.MISSING_KEY.ordinal(), statusCode);
   }
+
+  @Test
+  void trusted_SkipsSchema() throws Exception {
+    String file_name = UtilTest.class.getClassLoader()
+        .getResource("ECS17b_4.1.1_SINGLE_SUCCESS_REQUEST_DUIS-invalid.XML").getFile();
+    int statusCode = SystemLambda.catchSystemExit(() -> {
+      Sign.main(new String[] { file_name });
+    });
+    Assertions.assertEquals(ResultCode.VALIDATION_FAIL.value(), statusCode);
+
+    String out = SystemLambda.tapSystemOut(() -> {
+      int trustedStatusCode = SystemLambda.catchSystemExit(() -> {
+        Sign.main(new String[] { file_name, "--trusted" });
+      });
+      Assertions.assertEquals(0, trustedStatusCode);
+    });
+    Assertions.assertEquals(1, StringUtils.countMatches(out, "</ds:Signature>"));
+  }
+
+  @Test
+  void trusted_RejectsDoctype() throws Exception {
+    String file_name = UtilTest.class.getClassLoader().getResource("duis-xxe.xml").getFile();
+    int statusCode = SystemLambda.catchSystemExit(() -> {
+      Sign.main(new String[] { "--trusted", file_name });
+    });
+    Assertions.assertEquals(ResultCode.VALIDATION_FAIL.value(), statusCode);
+  }
 }
@@ -0,0 +1,47 @@
+/*
+ * Created on Mon Oct 19 2026
+ *
+ * Copyright (c) 2026 Smart DCC Limited
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package uk.co.smartdcc.boxed.xmldsig;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+
+public class TrainingTest {
+  @Test
+  void run() throws Exception {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    Assertions.assertEquals(ResultCode.SUCCESS, Training.run(new PrintStream(out)));
+    String log = out.toString();
+    Assertions.assertTrue(log.contains("[I] sign: SUCCESS"));
+    Assertions.assertTrue(log.contains("[I] validate: SUCCESS"));
+    Assertions.assertTrue(log.contains("[I] server: 200"));
+  }
+
+  @Test
+  void post_Refused() throws Exception {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    Assertions.assertEquals(
+        ResultCode.GENERIC_ERROR,
+        Training.post(new PrintStream(out), "<not-signed/>".getBytes(StandardCharsets.UTF_8))
+    );
+    Assertions.assertTrue(out.toString().contains("[E] server: 400"));
+  }
+}
@@ -0,0 +1,137 @@
+/*
+ * Created on Mon Oct 19 2026
+ *
+ * Copyright (c) 2026 Smart DCC Limited
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package uk.co.smartdcc.boxed.xmldsig;
+
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Assumptions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+public class UnixSocketClientTest {
+  private static final int PORT = 18106;
+
+  @BeforeEach
+  void supported() {
+    Assumptions.assumeTrue(UnixSockets.isSupported(), "needs java 16 or later");
+  }
+
+  static List<HttpServer> start(Path socket) throws IOException {
+    List<HttpServer> servers = Server.createServers(
+        new ServerOptions().setPort(PORT).setSocketPath(socket).setWarmupIterations(0)
+    );
+    servers.forEach(HttpServer::start);
+    return servers;
+  }
+
+  @Test
+  void signVerify_RoundTrip(@TempDir Path tmp) throws Exception {
+    Path socket = tmp.resolve("xmldsig.sock");
+    List<HttpServer> servers = start(socket);
+    try (UnixSocketClient client = new UnixSocketClient(socket)) {
+      byte[] message = UtilTest.resource("ECS17b_4.1.1_SINGLE_SUCCESS_REQUEST_DUIS.XML");
+      for (int i = 0; i < 3; i++) {
+        byte[] signed = client.sign(message, true);
+        Assertions.assertTrue(
+            new String(signed, StandardCharsets.UTF_8).contains("</ds:Signature>")
+        );
+        String verified = new String(client.verify(signed), StandardCharsets.UTF_8);
+        Assertions.assertTrue(verified.contains("RequestID"));
+        Assertions.assertFalse(verified.contains("</ds:Signature>"));
+      }
+    } finally {
+      Server.drain(servers, 1000);
+    }
+  }
+
+  @Test
+  void verify_BadSignature(@TempDir Path tmp) throws Exception {
+    Path socket = tmp.resolve("xmldsig.sock");
+    List<HttpServer> servers = start(socket);
+    try (UnixSocketClient client = new UnixSocketClient(socket)) {
+      IOException e = Assertions.assertThrows(
+          IOException.class,
+          () -> client.verify(UtilTest.resource("readfw-response-badsignature.xml"))
+      );
+      Assertions.assertTrue(e.getMessage().contains("/verify failed with 400"));
+      Assertions.assertEquals(200, client.get("/health").getStatus());
+    } finally {
+      Server.drain(servers, 1000);
+    }
+  }
+
+  @Test
+  void socket_StaleFileReplaced(@TempDir Path tmp) throws Exception {
+    Path socket = tmp.resolve("xmldsig.sock");
+    Files.write(socket, new byte[0]);
+    List<HttpServer> servers = start(socket);
+    Assertions.assertEquals(2, servers.size());
+    try (UnixSocketClient client = new UnixSocketClient(socket)) {
+      Assertions.assertEquals(200, client.get("/health").getStatus());
+    } finally {
+      Assertions.assertTrue(Server.drain(servers, 1000));
+    }
+    Assertions.assertFalse(Files.exists(socket));
+  }
+
+  @Test
+  void socket_InUse(@TempDir Path tmp) throws Exception {
+    Path socket = tmp.resolve("xmldsig.sock");
+    List<HttpServer> servers = start(socket);
+    try {
+      Assertions.assertThrows(
+          IOException.class,
+          () -> Server.createServers(new ServerOptions().setPort(0).setSocketPath(socket))
+      );
+      Assertions.assertTrue(Files.exists(socket));
+    } finally {
+      Server.drain(servers, 1000);
+    }
+  }
+
+  @Test
+  void loadGenerator_Socket(@TempDir Path tmp) throws Exception {
+    Path socket = tmp.resolve("xmldsig.sock");
+    List<HttpServer> servers = start(socket);
+    try {
+      LoadGenerator.Result result = new LoadGenerator(
+          URI.create("http://localhost/health"), null, 4, socket
+      ).run(2, 40);
+      Assertions.assertEquals(40, result.getRequests());
+      Assertions.assertEquals(0, result.getErrors());
+    } finally {
+      Server.drain(servers, 1000);
+    }
+  }
+
+  @Test
+  void createServer_SocketNeedsServers() {
+    Assertions.assertThrows(
+        IllegalArgumentException.class,
+        () -> Server.createServer(new ServerOptions().setSocketPath(Path.of("x.sock")))
+    );
+  }
+}
@@ -46,6 +46,13 @@ public class UtilTest {
 
   private static String DUIS_FILE_NAME;
 
+  /* contents of a test resource, shared by the tests that post messages */
+  static byte[] resource(String name) throws IOException {
+    try (InputStream is = UtilTest.class.getClassLoader().getResourceAsStream(name)) {
+      return is.readAllBytes();
+    }
+  }
+
   @BeforeAll
   public static void beforeAll() throws Exception {
     Field field = Util.class.getDeclaredField("DUIS_FILE_NAME");
@@ -109,6 +116,15 @@ public class UtilTest {
     Assertions.assertSame(dbf, dbf2);
   }
 
+  @Test
+  public void preload() {
+    Util.preload(true);
+    DocumentBuilderFactory dbf = Util.get_document_builder_factory();
+    Assertions.assertNotNull(dbf.getSchema());
+    Assertions.assertNotNull(Util.load_schema());
+    Assertions.assertNotNull(CertificateLibrary.getInstance());
+  }
+
   @Test
   void getDocumentBuilderFactory_NoXXE() throws Exception {
     DocumentBuilderFactory dbf = Util.get_document_builder_factory();
@@ -268,4 +268,20 @@ public class ValidateTest {
     Assertions.assertTrue(out.contains("<sr:Response"));
     Assertions.assertFalse(out.contains("</ds:Signature>"));
   }
+
+  @Test
+  void trusted() throws Exception {
+    String file_name = ValidateTest.class.getClassLoader()
+        .getResource("readfw-response.xml").getFile();
+    String err = SystemLambda.tapSystemErr(() -> {
+      String out = SystemLambda.tapSystemOut(() -> {
+        int statusCode = SystemLambda.catchSystemExit(() -> {
+          Validate.main(new String[] { "--trusted", file_name });
+        });
+        Assertions.assertEquals(0, statusCode);
+      });
+      Assertions.assertFalse(out.contains("</ds:Signature>"));
+    });
+    Assertions.assertTrue(err.contains("[I] skipped xsd validation (trusted)"));
+  }
 }
@@ -0,0 +1,128 @@
+/*
+ * Created on Mon Oct 19 2026
+ *
+ * Copyright (c) 2026 Smart DCC Limited
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package uk.co.smartdcc.boxed.xmldsig;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigInteger;
+import java.security.PrivateKey;
+import java.security.cert.X509Certificate;
+
+public class WarmupTest {
+  @Test
+  void run() {
+    Warmup warmup = new Warmup(3);
+    warmup.setQuiet(true);
+    Assertions.assertFalse(warmup.isDone());
+    Assertions.assertTrue(warmup.run());
+    Assertions.assertTrue(warmup.isDone());
+    Assertions.assertNull(warmup.getError());
+  }
+
+  @Test
+  void loadOnly() {
+    Warmup warmup = new Warmup(0);
+    warmup.setQuiet(true);
+    Assertions.assertTrue(warmup.run());
+    Assertions.assertTrue(warmup.isDone());
+  }
+
+  @Test
+  void cancel() throws Exception {
+    Warmup warmup = new Warmup(1000000);
+    warmup.setQuiet(true);
+    warmup.start();
+    for (int i = 0; i < 100 && warmup.getError() == null; i++) {
+      Warmup.cancel();
+      Thread.sleep(50);
+    }
+    Assertions.assertEquals("cancelled", warmup.getError());
+    Assertions.assertFalse(warmup.isDone());
+    /* a cancelled run is not joined by the next warm-up */
+    Warmup next = new Warmup(3);
+    next.setQuiet(true);
+    Assertions.assertTrue(next.run());
+  }
+
+  @Test
+  void shared() throws Exception {
+    Warmup first = new Warmup(50);
+    Warmup second = new Warmup(50);
+    first.setQuiet(true);
+    second.setQuiet(true);
+    first.start();
+    Assertions.assertTrue(second.run());
+    for (int i = 0; i < 100 && !first.isDone(); i++) {
+      Thread.sleep(20);
+    }
+    /* both waited on the same round trips */
+    Assertions.assertTrue(first.isDone());
+  }
+
+  /* answers nothing, or fails every lookup */
+  static CredentialResolver resolver(boolean broken) {
+    return new CredentialResolver() {
+      @Override
+      public X509Certificate lookup(String eui64) {
+        if (broken) {
+          throw new IllegalStateException("source unavailable");
+        }
+        return null;
+      }
+
+      @Override
+      public PrivateKey lookup_key(String eui64) {
+        return lookup(eui64) == null ? null : null;
+      }
+
+      @Override
+      public X509Certificate lookup(BigInteger serial) {
+        return lookup(serial.toString(16));
+      }
+    };
+  }
+
+  @Test
+  void credentials_Broken() {
+    CredentialResolver configured = Credentials.getInstance();
+    Credentials.setInstance(resolver(true));
+    try {
+      Warmup warmup = new Warmup(0);
+      warmup.setQuiet(true);
+      Assertions.assertFalse(warmup.run());
+      Assertions.assertFalse(warmup.isDone());
+      Assertions.assertEquals("source unavailable", warmup.getError());
+    } finally {
+      Credentials.setInstance(configured);
+    }
+  }
+
+  @Test
+  void credentials_WithoutOriginator() {
+    CredentialResolver configured = Credentials.getInstance();
+    Credentials.setInstance(resolver(false));
+    try {
+      Warmup warmup = new Warmup(0);
+      warmup.setQuiet(true);
+      Assertions.assertTrue(warmup.run());
+    } finally {
+      Credentials.setInstance(configured);
+    }
+  }
+}
@@ -0,0 +1,153 @@
+/*
+ * Created on Mon Oct 19 2026
+ *
+ * Copyright (c) 2026 Smart DCC Limited
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package uk.co.smartdcc.boxed.xmldsig;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+public class WatcherTest {
+  @TempDir
+  Path tmp;
+  Watcher watcher;
+
+  @BeforeEach
+  void createWatcher() throws Exception {
+    watcher = new Watcher(tmp.resolve("quarantine"), 2, true);
+    watcher.setQuiet(true);
+  }
+
+  @AfterEach
+  void closeWatcher() {
+    watcher.close();
+  }
+
+  /* drop a file the way producers should, temporary file then rename */
+  void drop(String resource, Path directory, String name) throws Exception {
+    Path tmpFile = directory.resolve("." + name + ".tmp");
+    try (InputStream is = UtilTest.class.getClassLoader().getResourceAsStream(resource)) {
+      Files.copy(is, tmpFile);
+    }
+    Files.move(tmpFile, directory.resolve(name), StandardCopyOption.ATOMIC_MOVE);
+  }
+
+  static void waitFor(Path p) throws InterruptedException {
+    for (int i = 0; i < 200 && !Files.exists(p); i++) {
+      Thread.sleep(50);
+    }
+    Assertions.assertTrue(Files.exists(p), p + " not created");
+  }
+
+  @Test
+  void sign_Dropped() throws Exception {
+    Path in = tmp.resolve("outbox");
+    Path out = tmp.resolve("signed");
+    watcher.watch(Watcher.Mode.SIGN, in, out);
+    watcher.start(0);
+
+    drop("ECS17b_4.1.1_SINGLE_SUCCESS_REQUEST_DUIS.XML", in, "a.xml");
+    waitFor(out.resolve("a.xml"));
+
+    String signed = Files.readString(out.resolve("a.xml"));
+    Assertions.assertTrue(signed.contains("</ds:Signature>"));
+    Assertions.assertTrue(signed.contains("36-CE:1000</sr:RequestID>"));
+    Assertions.assertFalse(Files.exists(in.resolve("a.xml")));
+    Assertions.assertEquals(1, watcher.getProcessed());
+    Assertions.assertEquals(0, watcher.getFailed());
+  }
+
+  @Test
+  void sign_ExistingOnStart() throws Exception {
+    Path in = Files.createDirectories(tmp.resolve("outbox"));
+    Path out = tmp.resolve("signed");
+    drop("ECS17b_4.1.1_SINGLE_SUCCESS_REQUEST_DUIS.XML", in, "early.xml");
+
+    watcher.watch(Watcher.Mode.SIGN, in, out);
+    watcher.start(0);
+    waitFor(out.resolve("early.xml"));
+  }
+
+  @Test
+  void sign_IgnoresTemporaryFiles() throws Exception {
+    Path in = Files.createDirectories(tmp.resolve("outbox"));
+    Path out = tmp.resolve("signed");
+    Files.writeString(in.resolve("partial.tmp"), "<");
+    Files.writeString(in.resolve(".hidden"), "<");
+
+    watcher.watch(Watcher.Mode.SIGN, in, out);
+    watcher.start(0);
+    drop("ECS17b_4.1.1_SINGLE_SUCCESS_REQUEST_DUIS.XML", in, "b.xml");
+    waitFor(out.resolve("b.xml"));
+
+    Assertions.assertTrue(Files.exists(in.resolve("partial.tmp")));
+    Assertions.assertTrue(Files.exists(in.resolve(".hidden")));
+    Assertions.assertEquals(0, watcher.getFailed());
+  }
+
+  @Test
+  void sign_Invalid_Quarantined() throws Exception {
+    Path in = tmp.resolve("outbox");
+    Path out = tmp.resolve("signed");
+    watcher.watch(Watcher.Mode.SIGN, in, out);
+    watcher.start(0);
+
+    drop("ECS17b_4.1.1_SINGLE_SUCCESS_REQUEST_DUIS-invalid.XML", in, "bad.xml");
+    waitFor(tmp.resolve("quarantine/bad.xml"));
+
+    Assertions.assertTrue(
+        Files.readString(tmp.resolve("quarantine/bad.xml.error")).startsWith("SAXParseException")
+    );
+    Assertions.assertFalse(Files.exists(out.resolve("bad.xml")));
+    Assertions.assertFalse(Files.exists(in.resolve("bad.xml")));
+    Assertions.assertEquals(1, watcher.getFailed());
+  }
+
+  @Test
+  void verify_Dropped() throws Exception {
+    Path in = tmp.resolve("inbox");
+    Path out = tmp.resolve("verified");
+    watcher.watch(Watcher.Mode.VERIFY, in, out);
+    watcher.start(0);
+
+    drop("readfw-response.xml", in, "r.xml");
+    drop("acknowledgement-error.xml", in, "ack.xml");
+    drop("readfw-response-badsignature.xml", in, "bad.xml");
+    waitFor(out.resolve("r.xml"));
+    waitFor(out.resolve("ack.xml"));
+    waitFor(tmp.resolve("quarantine/bad.xml.error"));
+
+    Assertions.assertFalse(Files.readString(out.resolve("r.xml")).contains("</ds:Signature>"));
+    Assertions.assertTrue(
+        Files.readString(tmp.resolve("quarantine/bad.xml.error")).startsWith("SignatureException")
+    );
+  }
+
+  @Test
+  void report_Counts() throws Exception {
+    watcher.setQuiet(false);
+    watcher.report();
+    Assertions.assertEquals(0, watcher.getBacklog());
+  }
+}